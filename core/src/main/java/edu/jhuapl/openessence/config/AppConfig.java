@@ -26,21 +26,30 @@
 
 package edu.jhuapl.openessence.config;
 
+import edu.jhuapl.graphs.controller.GraphDataHandlerInterface;
+import edu.jhuapl.graphs.controller.GraphDataSerializeToDiskHandler;
+import edu.jhuapl.graphs.controller.GraphRenderCache;
+import edu.jhuapl.graphs.controller.GraphSegmentStore;
 import edu.jhuapl.graphs.jfreechart.JFreeChartGraphSource;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
 import edu.jhuapl.openessence.i18n.InspectableResourceBundleMessageSource;
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.inject.Inject;
 
@@ -51,6 +60,22 @@ import javax.inject.Inject;
 @ComponentScan(basePackages = "edu.jhuapl.openessence")
 public class AppConfig {
 
+    public static final String GRAPH_CACHE_SIZE = "graph.cache.size";
+    public static final String GRAPH_STORE = "graph.store";
+    public static final String DETECTION_POOL_SIZE = "detection.pool.size";
+    public static final String DETECTION_QUEUE_SIZE = "detection.queue.size";
+    public static final String DETECTION_TIMEOUT = "detection.timeout";
+    /**
+     * How long, in milliseconds, a request waits for all of its detectors to finish, unless {@link #DETECTION_TIMEOUT}
+     * is set.
+     */
+    public static final long DEFAULT_DETECTION_TIMEOUT = 60000L;
+    public static final String TIMESERIES_CACHE_SIZE = "timeseries.cache.size";
+    public static final String TIMESERIES_CACHE_TIMEOUT = "timeseries.cache.timeout";
+    public static final String POSSIBLEVALUES_CACHE_SIZE = "possiblevalues.cache.size";
+    public static final String POSSIBLEVALUES_CACHE_TIMEOUT = "possiblevalues.cache.timeout";
+    public static final String POSSIBLEVALUES_PRELOAD = "possiblevalues.preload";
+
     @Inject
     private EnvironmentConfig envConfig;
 
@@ -107,4 +132,96 @@ public class AppConfig {
         return new JFreeChartGraphSource();
     }
 
+    /**
+     * Cache of rendered graphs, keyed by their content. Entries only hold the rendering, each request still stores its
+     * own graph data, so they can live as long as stored graph data does.
+     */
+    @Bean
+    public GraphRenderCache graphRenderCache() {
+        int size = env.getProperty(GRAPH_CACHE_SIZE, Integer.class, 100);
+        return new GraphRenderCache(size, envConfig.graphRetention());
+    }
+
+    /**
+     * Cache of time series query results and detector output. Data entry data sources drop the affected entries when
+     * they write, so the timeout only bounds staleness from writes made outside of OpenEssence.
+     */
+    @Bean
+    public QueryResultCache queryResultCache() {
+        int size = env.getProperty(TIMESERIES_CACHE_SIZE, Integer.class, 200);
+        return new QueryResultCache(size, env.getProperty(TIMESERIES_CACHE_TIMEOUT, Long.class, 300000L));
+    }
+
+    /**
+     * Cache of the lookup lists behind dimension combo boxes. These change rarely, so entries live longer than time
+     * series results.
+     */
+    @Bean
+    public PossibleValuesCache possibleValuesCache() {
+        int size = env.getProperty(POSSIBLEVALUES_CACHE_SIZE, Integer.class, 500);
+        return new PossibleValuesCache(size, env.getProperty(POSSIBLEVALUES_CACHE_TIMEOUT, Long.class, 3600000L));
+    }
+
+    /**
+     * Keeps graph data, and the images rendered from it, between the request that creates a graph and the requests for
+     * its image. By default graphs are appended to segment files, which the graph cleanup task deletes a segment at a
+     * time. A new segment is started every quarter of the retention period.
+     */
+    @Bean
+    public GraphDataHandlerInterface graphDataHandler() throws IOException {
+        if ("files".equals(env.getProperty(GRAPH_STORE, "segments"))) {
+            GraphDataSerializeToDiskHandler handler =
+                    new GraphDataSerializeToDiskHandler(envConfig.graphPath().toString());
+            handler.setMetrics(metricsRegistry());
+            return handler;
+        }
+        GraphSegmentStore store =
+                new GraphSegmentStore(envConfig.graphPath().toFile(), envConfig.graphRetention() / 4);
+        store.setMetrics(metricsRegistry());
+        return store;
+    }
+
+    /**
+     * Timings of queries, detectors and graphs, served at /admin/metrics.
+     */
+    @Bean
+    public MetricsRegistry metricsRegistry() {
+        return new MetricsRegistry();
+    }
+
+    /**
+     * Runs time series detectors, so that the series of a multi-series request are analyzed in parallel. When the pool
+     * and queue are full the request thread runs the detector itself, which keeps a burst of large requests from
+     * queueing up work without bound.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor detectionExecutor() {
+        int poolSize = env.getProperty(DETECTION_POOL_SIZE, Integer.class, Runtime.getRuntime().availableProcessors());
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(env.getProperty(DETECTION_QUEUE_SIZE, Integer.class, 100));
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("detection-");
+        registerGauges(executor);
+        return executor;
+    }
+
+    private void registerGauges(final ThreadPoolTaskExecutor executor) {
+        // the pool only exists once Spring has initialized the executor, so look it up when the gauge is read
+        metricsRegistry().gauge("detection.queue.depth", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getThreadPoolExecutor().getQueue().size();
+            }
+        });
+        metricsRegistry().gauge("detection.active", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getActiveCount();
+            }
+        });
+    }
+
 }
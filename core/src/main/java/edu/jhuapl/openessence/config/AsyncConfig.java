@@ -26,21 +26,74 @@
 
 package edu.jhuapl.openessence.config;
 
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.inject.Inject;
 
+/**
+ * Runs @Async methods on a bounded pool. Once the pool and its queue are full, new tasks are rejected instead of
+ * starting ever more threads, and requests that submit them get a 503.
+ */
 @Configuration
 @EnableAsync
 public class AsyncConfig implements AsyncConfigurer {
 
+    public static final String ASYNC_POOL_SIZE = "async.pool.size";
+    public static final String ASYNC_POOL_MAX = "async.pool.max";
+    public static final String ASYNC_QUEUE_SIZE = "async.queue.size";
+
+    @Inject
+    private Environment env;
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
     @Bean
     @Override
-    public ExecutorService getAsyncExecutor() {
-        return Executors.newCachedThreadPool();
+    public InstrumentedThreadPoolExecutor getAsyncExecutor() {
+        int poolSize = env.getProperty(ASYNC_POOL_SIZE, Integer.class, Runtime.getRuntime().availableProcessors());
+        int maxPoolSize = env.getProperty(ASYNC_POOL_MAX, Integer.class, poolSize * 4);
+
+        final InstrumentedThreadPoolExecutor executor =
+                new InstrumentedThreadPoolExecutor(poolSize, Math.max(poolSize, maxPoolSize),
+                                                   env.getProperty(ASYNC_QUEUE_SIZE, Integer.class, 100), "async-");
+
+        metricsRegistry.gauge("async.queue.depth", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getQueueDepth();
+            }
+        });
+        metricsRegistry.gauge("async.active", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getActiveCount();
+            }
+        });
+        metricsRegistry.gauge("async.rejected", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getRejectedCount();
+            }
+        });
+        metricsRegistry.gauge("async.queue.time.mean", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getAverageQueueTime();
+            }
+        });
+        metricsRegistry.gauge("async.run.time.mean", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return executor.getAverageRunTime();
+            }
+        });
+        return executor;
     }
 }
@@ -25,28 +25,62 @@
  */
 
 package edu.jhuapl.openessence.config;
-
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
 
-import groovy.util.GroovyScriptEngine;
-import groovy.util.ResourceException;
-import groovy.util.ScriptException;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
-import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.ResourcePatternResolver;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -55,9 +89,22 @@ import javax.inject.Inject;
  *
  * A singleton instance of this class is added to the application context by {@link AppConfig#dataSourceLoader()}. It's
  * not a @Component because it's needed before component scanning takes place.
+ *
+ * <p> Scripts are compiled in parallel. If {@link #CACHE_DIR} is set, their bytecode is saved there under a hash of
+ * the script and of the OpenEssence build, so a restart only compiles the scripts that changed. The data sources
+ * themselves are created one at a time, in script name order. Scripts can use classes defined by other scripts in
+ * <code>/ds</code>. </p>
  */
 public class DataSourceLoader {
 
+    public static final String COMPILE_THREADS = "datasource.compile.threads";
+    public static final String CACHE_DIR = "datasource.cache.dir";
+
+    private static final String MAIN_CLASS_FILE = "main";
+
+    // changes with every build of the code the scripts are compiled against
+    private static final String CODE_FINGERPRINT = getCodeFingerprint(JdbcOeDataSource.class, DataSourceLoader.class);
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     // Spring configures one of these for every ApplicationContext
@@ -67,6 +114,17 @@ public class DataSourceLoader {
     @Inject
     private ResourcePatternResolver resourcePatternResolver;
 
+    @Inject
+    private Environment env;
+
+    // script file name to the ID of its data source, so a reloaded script replaces the right data source
+    private final ConcurrentMap<String, String> scriptDataSourceIds = new ConcurrentHashMap<String, String>();
+
+    private volatile Path cacheDir;
+
+    // resolves classes defined by other scripts, when compiling and when loading
+    private volatile GroovyClassLoader scriptClassLoader;
+
     /**
      * @param existingDataSources this can't be injected because the code that initializes the data sources delegates to
      *                            this method
@@ -76,47 +134,48 @@ public class DataSourceLoader {
     public ConcurrentMap<String, JdbcOeDataSource> loadDataSources(
             ConcurrentMap<String, JdbcOeDataSource> existingDataSources) {
         try {
-            URL groovyRoot = resourcePatternResolver.getResource("classpath:/ds").getURL();
             Resource[] groovyResources = resourcePatternResolver.getResources("classpath:/ds/*.groovy");
+            scriptClassLoader = createScriptClassLoader(resourcePatternResolver.getResource("classpath:/ds/").getURL());
+            cacheDir = getCacheDir();
 
-            String[] groovyScriptNames = new String[groovyResources.length];
-            for (int i = 0; i < groovyResources.length; i++) {
-                groovyScriptNames[i] = FilenameUtils.getName(groovyResources[i].getFile().getPath());
-            }
-
-            GroovyScriptEngine groovyScriptEngine = new GroovyScriptEngine(new URL[]{groovyRoot});
-
-            for (String scriptName : groovyScriptNames) {
-                try {
-                    log.info("Loading Groovy script {}", scriptName);
-                    Class<?> clazz = groovyScriptEngine.loadScriptByName(scriptName);
-                    JdbcOeDataSource ds = (JdbcOeDataSource) beanFactory.createBean(clazz);
-
-                    existingDataSources.put(ds.getDataSourceId(), ds);
+            int threads = env.getProperty(COMPILE_THREADS, Integer.class, Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads,
+                                                                                         groovyResources.length)));
+            Map<String, Future<CompiledScript>> compiledScripts = new LinkedHashMap<String, Future<CompiledScript>>();
+            try {
+                for (final Resource resource : groovyResources) {
+                    compiledScripts.put(resource.getFilename(), executor.submit(new Callable<CompiledScript>() {
+                        @Override
+                        public CompiledScript call() throws IOException {
+                            return compile(resource);
+                        }
+                    }));
+                }
 
-                    // legacy code expects each DS to be a named bean
-                    // TODO remove this when legacy code is updated
+                // only hand out the data sources once they are all created
+                Map<String, JdbcOeDataSource> dataSources = new LinkedHashMap<String, JdbcOeDataSource>();
+                for (Map.Entry<String, Future<CompiledScript>> entry : compiledScripts.entrySet()) {
                     try {
-                        BeanDefinition
-                                beanDef =
-                                BeanDefinitionReaderUtils.createBeanDefinition(null, clazz.getName(), groovyScriptEngine
-                                        .getGroovyClassLoader());
-                        BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
-                        registry.registerBeanDefinition(clazz.getName(), beanDef);
+                        log.info("Loading Groovy script {}", entry.getKey());
+                        JdbcOeDataSource ds = createDataSource(entry.getValue().get());
+                        dataSources.put(ds.getDataSourceId(), ds);
+                        scriptDataSourceIds.put(entry.getKey(), ds.getDataSourceId());
+                    } catch (ExecutionException e) {
+                        // You can have Exception as last param, see http://slf4j.org/faq.html#paramException
+                        log.error("Exception loading data source {}", entry.getKey(), e.getCause());
                     } catch (ClassNotFoundException e) {
-                        log.error("Exception creating bean definition for class " + clazz.getName(), e);
+                        log.error("Exception loading data source {}", entry.getKey(), e);
                     }
-                } catch (ResourceException e) {
-                    // You can have Exception as last param, see http://slf4j.org/faq.html#paramException
-                    log.error("Exception loading data source {}", scriptName, e);
-                } catch (ScriptException e) {
-                    log.error("Exception loading data source {}", scriptName, e);
                 }
+                existingDataSources.putAll(dataSources);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted loading data sources", e);
+            } finally {
+                executor.shutdownNow();
             }
 
             return existingDataSources;
-        } catch (BeanDefinitionStoreException e) {
-            throw new RuntimeException(e);
         } catch (BeansException e) {
             throw new RuntimeException(e);
         } catch (IOException e) {
@@ -124,4 +183,357 @@ public class DataSourceLoader {
         }
     }
 
+    /**
+     * @return the directory the data source scripts are loaded from, or <code>null</code> if they aren't plain files,
+     *         e.g. in a packed WAR
+     */
+    public Path getScriptDir() {
+        try {
+            return resourcePatternResolver.getResource("classpath:/ds").getFile().toPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compiles a script again, {@link JdbcOeDataSource#validate() validates} its data source against the database and
+     * swaps it into <code>dataSources</code>. Requests that already got the old data source finish with it. If the
+     * script doesn't compile, or its data source can't be created or fails validation, the old data source stays in
+     * place.
+     *
+     * <p> {@link edu.jhuapl.openessence.datasource.jdbc.DimensionJoiner}s of the other data sources join from the new
+     * data source from then on. Other references to the old data source, e.g. ones a script keeps in a field of its
+     * own, aren't updated until that script is reloaded too. </p>
+     *
+     * @return the new data source
+     */
+    public JdbcOeDataSource reloadDataSource(Resource resource, ConcurrentMap<String, JdbcOeDataSource> dataSources)
+            throws IOException, ClassNotFoundException, OeDataSourceException, OeDataSourceAccessException {
+        JdbcOeDataSource ds = createDataSource(compile(resource));
+        if (ds.getDataSourceId() == null) {
+            throw new IllegalStateException("Data source of " + resource.getFilename() + " has no ID");
+        }
+        ds.validate();
+
+        dataSources.put(ds.getDataSourceId(), ds);
+        String oldId = scriptDataSourceIds.put(resource.getFilename(), ds.getDataSourceId());
+        if (oldId != null && !oldId.equals(ds.getDataSourceId())) {
+            dataSources.remove(oldId);
+        }
+
+        for (JdbcOeDataSource eachDs : dataSources.values()) {
+            if (eachDs != ds && eachDs.getDimensionJoiner() != null
+                && eachDs.getDimensionJoiner().replaceJoinedDataSource(ds)) {
+                log.info("{} now joins dimensions from the reloaded {}", eachDs.getDataSourceId(),
+                         ds.getDataSourceId());
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Creates a data source bean from its compiled script.
+     */
+    JdbcOeDataSource createDataSource(CompiledScript script) throws ClassNotFoundException {
+        Class<?> clazz = script.getClassLoader().loadClass(script.getMainClassName());
+        JdbcOeDataSource ds = (JdbcOeDataSource) beanFactory.createBean(clazz);
+
+        // legacy code expects each DS to be a named bean
+        // TODO remove this when legacy code is updated
+        BeanDefinition beanDef = BeanDefinitionReaderUtils.createBeanDefinition(null, clazz.getName(),
+                                                                                script.getClassLoader());
+        BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
+        registry.registerBeanDefinition(clazz.getName(), beanDef);
+
+        return ds;
+    }
+
+    /**
+     * Returns the bytecode of a script, from the cache if the script hasn't changed since it was cached.
+     */
+    CompiledScript compile(Resource resource) throws IOException {
+        Path cacheDir = this.cacheDir;
+        String source;
+        try (InputStream in = resource.getInputStream()) {
+            source = IOUtils.toString(in, StandardCharsets.UTF_8.name());
+        }
+
+        String scriptName = resource.getFilename();
+        Path entryDir = (cacheDir == null) ? null : cacheDir.resolve(scriptName + "-" + hash(scriptName, source));
+        if (entryDir != null && Files.isDirectory(entryDir)) {
+            try {
+                return readCacheEntry(entryDir);
+            } catch (IOException | LinkageError e) {
+                log.warn("Could not read cached classes of {}, recompiling", scriptName, e);
+                FileUtils.deleteQuietly(entryDir.toFile());
+            }
+        }
+
+        log.debug("Compiling Groovy script {}", scriptName);
+        CompilationUnit unit = new CompilationUnit(new CompilerConfiguration(), null, scriptClassLoader);
+        unit.addSource(scriptName, source);
+        try {
+            unit.compile(Phases.CLASS_GENERATION);
+        } catch (CompilationFailedException e) {
+            throw new IOException("Could not compile " + scriptName, e);
+        }
+
+        // classes of other scripts this one uses are compiled along with it, but are loaded from their own scripts
+        Set<String> ownClassNames = new HashSet<String>();
+        int otherScripts = 0;
+        for (ModuleNode module : unit.getAST().getModules()) {
+            if (module.getContext().getName().equals(scriptName)) {
+                for (ClassNode classNode : module.getClasses()) {
+                    ownClassNames.add(classNode.getName());
+                }
+            } else {
+                otherScripts++;
+            }
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        for (Object o : unit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) o;
+            if (isOwnClass(groovyClass.getName(), ownClassNames)) {
+                classes.put(groovyClass.getName(), groovyClass.getBytes());
+            }
+        }
+
+        // the class named after the script, or the script class if there isn't one
+        String mainClassName = FilenameUtils.getBaseName(scriptName);
+        if (!classes.containsKey(mainClassName)) {
+            mainClassName = classes.keySet().iterator().next();
+        }
+
+        CompiledScript script = new CompiledScript(mainClassName, classes, scriptClassLoader);
+        if (entryDir != null && otherScripts == 0) {
+            // the hash only covers this script, so don't cache what was compiled against other scripts
+            writeCacheEntry(entryDir, script);
+        }
+        return script;
+    }
+
+    /**
+     * @return a class loader that finds the scripts in <code>scriptRoot</code> by class name, like {@link
+     *         groovy.util.GroovyScriptEngine} does
+     */
+    static GroovyClassLoader createScriptClassLoader(URL scriptRoot) throws IOException {
+        GroovyClassLoader loader = new GroovyClassLoader(DataSourceLoader.class.getClassLoader());
+        // URLClassLoader only treats URLs ending in a slash as directories
+        loader.addURL(scriptRoot.toString().endsWith("/") ? scriptRoot : new URL(scriptRoot + "/"));
+        return loader;
+    }
+
+    private static boolean isOwnClass(String className, Set<String> ownClassNames) {
+        int dollar = className.indexOf('$');
+        return ownClassNames.contains((dollar < 0) ? className : className.substring(0, dollar));
+    }
+
+    /**
+     * @return the directory for compiled scripts, or <code>null</code> if it isn't configured or can't be used
+     */
+    private Path getCacheDir() {
+        String dir = env.getProperty(CACHE_DIR);
+        if (dir == null) {
+            log.info("{} not set, compiling all data sources", CACHE_DIR);
+            return null;
+        }
+
+        Path cacheDir = Paths.get(dir);
+        try {
+            createCacheDir(cacheDir);
+            log.info("Using {} as compiled data source directory", cacheDir);
+            return cacheDir;
+        } catch (IOException e) {
+            log.warn("Could not use compiled data source directory {}, compiling all data sources", cacheDir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the cache directory, if needed, and checks that it belongs to the user running OpenEssence and that no
+     * one else can write to it. Classes in it are loaded into the application.
+     */
+    static void createCacheDir(Path cacheDir) throws IOException {
+        boolean posix = cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            Files.createDirectories(cacheDir, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(cacheDir);
+        }
+
+        UserPrincipal user = cacheDir.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(cacheDir).equals(user)) {
+            throw new IOException(cacheDir + " is not owned by " + user.getName());
+        }
+        if (posix) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(cacheDir);
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException(cacheDir + " is writable by other users");
+            }
+        }
+    }
+
+    /**
+     * Loads the main class right away, so that a corrupt entry is compiled again rather than failing later.
+     */
+    private CompiledScript readCacheEntry(Path entryDir) throws IOException {
+        String mainClassName = new String(Files.readAllBytes(entryDir.resolve(MAIN_CLASS_FILE)),
+                                          StandardCharsets.UTF_8);
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        try (DirectoryStream<Path> classFiles = Files.newDirectoryStream(entryDir, "*.class")) {
+            for (Path classFile : classFiles) {
+                String fileName = classFile.getFileName().toString();
+                classes.put(fileName.substring(0, fileName.length() - ".class".length()),
+                            Files.readAllBytes(classFile));
+            }
+        }
+        if (!classes.containsKey(mainClassName)) {
+            throw new IOException("Main class " + mainClassName + " missing from " + entryDir);
+        }
+
+        CompiledScript script = new CompiledScript(mainClassName, classes, scriptClassLoader);
+        try {
+            script.getClassLoader().loadClass(mainClassName);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not load " + mainClassName + " from " + entryDir, e);
+        }
+        return script;
+    }
+
+    /**
+     * Writes the entry to a temporary directory first and then moves it in place, so that other instances sharing the
+     * cache never see a partial entry.
+     */
+    private void writeCacheEntry(Path entryDir, CompiledScript script) {
+        Path tempDir = null;
+        try {
+            tempDir = Files.createTempDirectory(entryDir.getParent(), ".tmp");
+            Files.write(tempDir.resolve(MAIN_CLASS_FILE), script.getMainClassName().getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, byte[]> entry : script.getClasses().entrySet()) {
+                Files.write(tempDir.resolve(entry.getKey() + ".class"), entry.getValue());
+            }
+            Files.move(tempDir, entryDir, StandardCopyOption.ATOMIC_MOVE);
+            tempDir = null;
+        } catch (FileAlreadyExistsException e) {
+            // someone else cached it first
+        } catch (IOException e) {
+            log.warn("Could not cache compiled classes of {}", entryDir.getFileName(), e);
+        } finally {
+            if (tempDir != null) {
+                FileUtils.deleteQuietly(tempDir.toFile());
+            }
+        }
+    }
+
+    /**
+     * Scripts compiled by another version of Groovy, or against another build of OpenEssence, are compiled again.
+     */
+    private static String hash(String scriptName, String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(GroovySystem.getVersion().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(CODE_FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(scriptName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hash = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Identifies the jars or class directories that <code>classes</code> come from by their size and modification
+     * time, along with the version in their manifest.
+     */
+    static String getCodeFingerprint(Class<?>... classes) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (Class<?> clazz : classes) {
+            fingerprint.append(clazz.getName()).append(':').append(clazz.getPackage().getImplementationVersion());
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                continue;
+            }
+            try {
+                Path location = Paths.get(codeSource.getLocation().toURI());
+                if (Files.isDirectory(location)) {
+                    // a class directory is only touched where classes changed, so look at the class itself
+                    location = location.resolve(clazz.getName().replace('.', '/') + ".class");
+                }
+                fingerprint.append(':').append(Files.size(location))
+                        .append(':').append(Files.getLastModifiedTime(location).toMillis());
+            } catch (URISyntaxException | IOException | RuntimeException e) {
+                fingerprint.append(':').append(codeSource.getLocation());
+            }
+            fingerprint.append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * The classes compiled from one script, along with a class loader that defines them. Each script gets its own class
+     * loader, so a changed script can be loaded again. The script's own classes are always loaded from its bytecode,
+     * while other classes, including those of other scripts, come from the parent.
+     */
+    static class CompiledScript {
+
+        private final String mainClassName;
+        private final Map<String, byte[]> classes;
+        private final ClassLoader classLoader;
+
+        CompiledScript(String mainClassName, final Map<String, byte[]> classes, ClassLoader parent) {
+            this.mainClassName = mainClassName;
+            this.classes = classes;
+            this.classLoader = new ClassLoader(parent) {
+                @Override
+                protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                    if (!classes.containsKey(name)) {
+                        return super.loadClass(name, resolve);
+                    }
+                    synchronized (getClassLoadingLock(name)) {
+                        Class<?> c = findLoadedClass(name);
+                        if (c == null) {
+                            c = findClass(name);
+                        }
+                        if (resolve) {
+                            resolveClass(c);
+                        }
+                        return c;
+                    }
+                }
+
+                @Override
+                protected Class<?> findClass(String name) throws ClassNotFoundException {
+                    byte[] bytes = classes.get(name);
+                    if (bytes == null) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            };
+        }
+
+        String getMainClassName() {
+            return mainClassName;
+        }
+
+        Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        ClassLoader getClassLoader() {
+            return classLoader;
+        }
+    }
 }
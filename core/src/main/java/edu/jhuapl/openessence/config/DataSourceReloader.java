@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.config;
+
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Inject;
+
+/**
+ * Watches the data source scripts once the application has started, if {@link #RELOAD} is set, and reloads the data
+ * source of a script when it changes. See {@link DataSourceLoader#reloadDataSource}. Deleting a script doesn't remove
+ * its data source, since editors often save by deleting and recreating the file.
+ */
+@Component
+public class DataSourceReloader implements ApplicationListener<ContextRefreshedEvent> {
+
+    public static final String RELOAD = "datasource.reload";
+
+    /**
+     * How long to wait after a change before reloading, so that a save made of several writes is reloaded once.
+     */
+    private static final long SETTLE_TIME = 500;
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceReloader.class);
+
+    @Inject
+    private Environment env;
+
+    @Inject
+    private DataSourceLoader dataSourceLoader;
+
+    @Inject
+    private QueryResultCache queryResultCache;
+
+    @Inject
+    private PossibleValuesCache possibleValuesCache;
+
+    @Resource
+    private ConcurrentMap<String, JdbcOeDataSource> dataSources;
+
+    // only start watching on the first refresh
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile WatchService watchService;
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        boolean reload = env.getProperty(RELOAD, Boolean.class, false);
+        if (!reload || !started.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Path scriptDir = dataSourceLoader.getScriptDir();
+        if (scriptDir == null) {
+            log.warn("Data source scripts aren't in a directory, not watching them for changes");
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            scriptDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                               StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("Unable to watch data source scripts in {}", scriptDir, e);
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(scriptDir);
+            }
+        }, "datasource-reloader");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for data source changes", scriptDir);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch(Path scriptDir) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_TIME);
+
+                Set<String> changed = new TreeSet<String>();
+                for (; key != null; key = watchService.poll()) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        if (context instanceof Path && context.toString().endsWith(".groovy")) {
+                            changed.add(context.toString());
+                        }
+                    }
+                    key.reset();
+                }
+
+                for (String scriptName : changed) {
+                    reload(scriptDir.resolve(scriptName));
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // application is shutting down
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reload(Path script) {
+        log.info("Reloading data source script {}", script.getFileName());
+        try {
+            JdbcOeDataSource ds = dataSourceLoader.reloadDataSource(new FileSystemResource(script.toFile()),
+                                                                    dataSources);
+
+            // cached results and joined dimensions may come from the old definition
+            queryResultCache.clear();
+            possibleValuesCache.clear();
+            for (JdbcOeDataSource eachDs : dataSources.values()) {
+                if (eachDs.getDimensionJoiner() != null) {
+                    eachDs.getDimensionJoiner().invalidate();
+                }
+            }
+            log.info("Reloaded data source {}", ds.getDataSourceId());
+        } catch (Exception e) {
+            // keep serving the old data source
+            log.error("Unable to reload data source script {}", script.getFileName(), e);
+        }
+    }
+}
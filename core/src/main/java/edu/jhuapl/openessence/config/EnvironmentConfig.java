@@ -26,6 +26,8 @@
 
 package edu.jhuapl.openessence.config;
 
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
+
 import com.jolbox.bonecp.BoneCPDataSource;
 
 import org.apache.commons.io.FileUtils;
@@ -60,11 +62,19 @@ public class EnvironmentConfig {
     public static final String GRAPH_DIR = "/oe/config/graph.dir";
     public static final String GRAPH_RETENTION = "/oe/config/graph.retention";
 
+    public static final String DB_PARTITION_COUNT = "db.partitionCount";
+    public static final String DB_MIN_CONNECTIONS = "db.minConnectionsPerPartition";
+    public static final String DB_MAX_CONNECTIONS = "db.maxConnectionsPerPartition";
+    public static final String DB_STATEMENTS_CACHE_SIZE = "db.statementsCacheSize";
+
     private static final Logger log = LoggerFactory.getLogger(EnvironmentConfig.class);
 
     @Inject
     private Environment environment;
 
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
     @Bean(destroyMethod = "close")
     public DataSource mainDataSource() {
         // Container-managed DataSource
@@ -76,18 +86,18 @@ public class EnvironmentConfig {
         log.info("No DataSource found in Environment. Using application-managed connection pool.");
 
         // config values (mostly) copied from http://jolbox.com/configuration-spring.html
-        BoneCPDataSource bcpds = new BoneCPDataSource();
+        BoneCPDataSource bcpds = new InstrumentedBoneCPDataSource(metricsRegistry);
         bcpds.setDriverClass(environment.getRequiredProperty("db.driverClass"));
         bcpds.setJdbcUrl(environment.getRequiredProperty("db.url"));
         bcpds.setUsername(environment.getRequiredProperty("db.username"));
         bcpds.setPassword(environment.getRequiredProperty("db.password"));
         bcpds.setIdleConnectionTestPeriodInMinutes(60);
         bcpds.setIdleMaxAgeInMinutes(240);
-        bcpds.setMaxConnectionsPerPartition(30);
-        bcpds.setMinConnectionsPerPartition(10);
-        bcpds.setPartitionCount(3);
+        bcpds.setMaxConnectionsPerPartition(environment.getProperty(DB_MAX_CONNECTIONS, Integer.class, 30));
+        bcpds.setMinConnectionsPerPartition(environment.getProperty(DB_MIN_CONNECTIONS, Integer.class, 10));
+        bcpds.setPartitionCount(environment.getProperty(DB_PARTITION_COUNT, Integer.class, 3));
         bcpds.setAcquireIncrement(5);
-        bcpds.setStatementsCacheSize(100);
+        bcpds.setStatementsCacheSize(environment.getProperty(DB_STATEMENTS_CACHE_SIZE, Integer.class, 100));
         bcpds.setReleaseHelperThreads(1);
         bcpds.setConnectionTestStatement("SELECT 1");
 
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.config;
+
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
+
+import com.jolbox.bonecp.BoneCP;
+import com.jolbox.bonecp.BoneCPDataSource;
+import com.jolbox.bonecp.ConnectionHandle;
+import com.jolbox.bonecp.ConnectionPartition;
+import com.jolbox.bonecp.Statistics;
+import com.jolbox.bonecp.hooks.AbstractConnectionHook;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BoneCP pool that reports to a {@link MetricsRegistry}: how long {@link #getConnection()} waits, connections leased
+ * and free in total and per partition, statement cache hits and misses, and connections opened and closed (churn).
+ */
+public class InstrumentedBoneCPDataSource extends BoneCPDataSource {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient MetricsRegistry metrics;
+    private final transient ConcurrentMap<ConnectionPartition, PartitionStats> partitions =
+            new ConcurrentHashMap<ConnectionPartition, PartitionStats>();
+    private transient volatile BoneCP pool;
+
+    public InstrumentedBoneCPDataSource(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        setStatisticsEnabled(true);
+        setConnectionHook(new PoolHook());
+        registerGauges();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            metrics.time("db.pool.acquire", System.nanoTime() - start);
+        }
+    }
+
+    private void registerGauges() {
+        metrics.gauge("db.pool.leased", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return pool == null ? 0 : pool.getTotalLeased();
+            }
+        });
+        metrics.gauge("db.pool.free", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return pool == null ? 0 : pool.getTotalFree();
+            }
+        });
+        metrics.gauge("db.pool.created", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                return pool == null ? 0 : pool.getTotalCreatedConnections();
+            }
+        });
+        metrics.gauge("db.pool.statements.cache.hits", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                Statistics statistics = getStatistics();
+                return statistics == null ? 0 : statistics.getCacheHits();
+            }
+        });
+        metrics.gauge("db.pool.statements.cache.misses", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                Statistics statistics = getStatistics();
+                return statistics == null ? 0 : statistics.getCacheMiss();
+            }
+        });
+        metrics.gauge("db.pool.statements.cache.ratio", new MetricsRegistry.Gauge() {
+            @Override
+            public Number getValue() {
+                Statistics statistics = getStatistics();
+                return statistics == null ? 0 : statistics.getCacheHitRatio();
+            }
+        });
+    }
+
+    private Statistics getStatistics() {
+        return pool == null ? null : pool.getStatistics();
+    }
+
+    /**
+     * Partitions are only reachable through their connections, so their gauges are registered the first time one of
+     * their connections is checked out.
+     */
+    private PartitionStats getPartitionStats(final ConnectionPartition partition) {
+        if (partition == null) {
+            return null;
+        }
+        PartitionStats stats = partitions.get(partition);
+        if (stats != null) {
+            return stats;
+        }
+
+        synchronized (partitions) {
+            stats = partitions.get(partition);
+            if (stats != null) {
+                return stats;
+            }
+            final PartitionStats newStats = new PartitionStats();
+            String prefix = "db.pool.partition." + partitions.size();
+            partitions.put(partition, newStats);
+
+            // free connections sit in a queue bounded by the partition size
+            final int maxConnections = getMaxConnectionsPerPartition();
+            metrics.gauge(prefix + ".idle", new MetricsRegistry.Gauge() {
+                @Override
+                public Number getValue() {
+                    return maxConnections - partition.getRemainingCapacity();
+                }
+            });
+            metrics.gauge(prefix + ".inUse", new MetricsRegistry.Gauge() {
+                @Override
+                public Number getValue() {
+                    return newStats.leased.get();
+                }
+            });
+            return newStats;
+        }
+    }
+
+    private static class PartitionStats {
+
+        private final AtomicInteger leased = new AtomicInteger();
+    }
+
+    private class PoolHook extends AbstractConnectionHook {
+
+        @Override
+        public void onAcquire(ConnectionHandle connection) {
+            metrics.counter("db.pool.connections.opened").incrementAndGet();
+        }
+
+        @Override
+        public void onDestroy(ConnectionHandle connection) {
+            metrics.counter("db.pool.connections.closed").incrementAndGet();
+        }
+
+        @Override
+        public void onCheckOut(ConnectionHandle connection) {
+            if (pool == null) {
+                pool = connection.getPool();
+            }
+            PartitionStats stats = getPartitionStats(connection.getOriginatingPartition());
+            if (stats != null) {
+                stats.leased.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onCheckIn(ConnectionHandle connection) {
+            PartitionStats stats = getPartitionStats(connection.getOriginatingPartition());
+            if (stats != null) {
+                stats.leased.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.config;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool with a bounded queue that keeps track of how long tasks wait and run. When all threads are busy and the
+ * queue is full, new tasks are rejected with a {@link RejectedExecutionException}, which controllers turn into a 503.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    // queue and run times are both added once a task finishes, so their averages are over the same tasks
+    private final AtomicLong timedCount = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    /**
+     * @param corePoolSize  threads kept alive when idle
+     * @param maxPoolSize   threads started once the queue is full
+     * @param queueCapacity tasks waiting for a thread. With 0, tasks are only accepted while a thread is free.
+     * @throws IllegalArgumentException if a size is out of range, e.g. a negative queue capacity
+     */
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maxPoolSize, int queueCapacity,
+                                          String threadNamePrefix) {
+        super(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, createQueue(queueCapacity),
+              new CustomizableThreadFactory(threadNamePrefix));
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Server is busy, try again later");
+            }
+        });
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative");
+        }
+        // LinkedBlockingQueue needs room for at least one task
+        return capacity == 0 ? new SynchronousQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(capacity);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedTask(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (r instanceof TimedTask) {
+            ((TimedTask) r).started = System.nanoTime();
+        }
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof TimedTask) {
+            TimedTask task = (TimedTask) r;
+            long runNanos = System.nanoTime() - task.started;
+            totalQueueNanos.addAndGet(task.started - task.submitted);
+            totalRunNanos.addAndGet(runNanos);
+            timedCount.incrementAndGet();
+
+            long max = maxRunNanos.get();
+            while (runNanos > max && !maxRunNanos.compareAndSet(max, runNanos)) {
+                max = maxRunNanos.get();
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return average time, in milliseconds, that finished tasks waited in the queue
+     */
+    public double getAverageQueueTime() {
+        long count = timedCount.get();
+        return count == 0 ? 0 : totalQueueNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return average time, in milliseconds, that finished tasks ran
+     */
+    public double getAverageRunTime() {
+        long count = timedCount.get();
+        return count == 0 ? 0 : totalRunNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return longest time, in milliseconds, that a task ran
+     */
+    public double getMaxRunTime() {
+        return maxRunNanos.get() / 1e6;
+    }
+
+    private static class TimedTask implements Runnable {
+
+        private final Runnable task;
+        private final long submitted = System.nanoTime();
+        private volatile long started;
+
+        private TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
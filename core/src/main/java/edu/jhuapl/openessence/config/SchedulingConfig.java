@@ -26,6 +26,9 @@
 
 package edu.jhuapl.openessence.config;
 
+import edu.jhuapl.graphs.controller.GraphDataHandlerInterface;
+import edu.jhuapl.graphs.controller.GraphSegmentStore;
+
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +59,9 @@ public class SchedulingConfig implements SchedulingConfigurer {
     @Inject
     private EnvironmentConfig envConfig;
 
+    @Inject
+    private GraphDataHandlerInterface graphDataHandler;
+
     @Override
     public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
         // it would be nice if we could use Spring's @Scheduled annotations,
@@ -81,12 +87,23 @@ public class SchedulingConfig implements SchedulingConfigurer {
                 throw new IllegalStateException(msg);
             }
 
+            GraphSegmentStore segmentStore = null;
+            if (graphDataHandler instanceof GraphSegmentStore) {
+                segmentStore = (GraphSegmentStore) graphDataHandler;
+                int deleted = segmentStore.expireSegments(envConfig.graphRetention());
+                log.debug("Deleted {} graph segments", deleted);
+            }
+
             // we can't just delete the entire directory b/c some graphs might still be in use,
             // e.g. in the middle of being written out to client,
             // so only delete if graph was last touched a long time ago
             long now = System.currentTimeMillis();
             try (DirectoryStream<Path> stream = Files.newDirectoryStream(envConfig.graphPath())) {
                 for (Path p : stream) {
+                    if (segmentStore != null && GraphSegmentStore.isSegmentFile(p.getFileName().toString())) {
+                        // the store deletes its own segments
+                        continue;
+                    }
                     long modifiedTime = Files.getLastModifiedTime(p).toMillis();
                     if (modifiedTime + envConfig.graphRetention() < now) {
                         Files.delete(p);
@@ -30,6 +30,7 @@ import edu.jhuapl.openessence.controller.LoginController;
 import edu.jhuapl.openessence.security.Http401AuthenticationFailureHandler;
 import edu.jhuapl.openessence.security.Http403RequestMatcher;
 import edu.jhuapl.openessence.security.OEPasswordEncoder;
+import edu.jhuapl.openessence.security.OEUserCache;
 import edu.jhuapl.openessence.security.OEUserDetailsService;
 import edu.jhuapl.openessence.security.OeAuthenticationSuccessHandler;
 
@@ -37,6 +38,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.authentication.dao.ReflectionSaltSource;
@@ -57,6 +59,16 @@ import javax.inject.Inject;
 public class WebSecurityConfig {
 
     public static final String SECURITY_PROFILE = "security";
+    public static final String USER_CACHE_SIZE = "user.cache.size";
+    public static final String USER_CACHE_TIMEOUT = "user.cache.timeout";
+
+    /**
+     * Pages only administrators may see, e.g. metrics, under either servlet.
+     */
+    private static final String ADMIN_PATTERN = "/admin/**";
+
+    @Inject
+    private Environment env;
 
     /**
      * Configure the shared {@link AuthenticationManager}.
@@ -70,6 +82,7 @@ public class WebSecurityConfig {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService());
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserCache(userCache());
 
         ReflectionSaltSource saltSource = new ReflectionSaltSource();
         saltSource.setUserPropertyToUse("salt");
@@ -84,9 +97,28 @@ public class WebSecurityConfig {
         return new OEUserDetailsService();
     }
 
+    /**
+     * Cache of users and their roles. Both this and the password encoder's cache of verified passwords use the same
+     * short timeout, after which a user's record and password are checked against the database again.
+     */
+    @Bean
+    public OEUserCache userCache() {
+        return new OEUserCache(getUserCacheSize(), getUserCacheTimeout());
+    }
+
     @Bean
     public OEPasswordEncoder passwordEncoder() {
-        return new OEPasswordEncoder();
+        OEPasswordEncoder encoder = new OEPasswordEncoder();
+        encoder.setVerifiedCache(getUserCacheSize(), getUserCacheTimeout());
+        return encoder;
+    }
+
+    private int getUserCacheSize() {
+        return env.getProperty(USER_CACHE_SIZE, Integer.class, 1000);
+    }
+
+    private long getUserCacheTimeout() {
+        return env.getProperty(USER_CACHE_TIMEOUT, Long.class, 60000L);
     }
 
     /**
@@ -101,6 +133,7 @@ public class WebSecurityConfig {
             http
                     .antMatcher("/api/**")
                     .authorizeRequests()
+                    .antMatchers("/api" + ADMIN_PATTERN).hasRole("ADMIN")
                     .anyRequest()
                     .authenticated()
                     .and()
@@ -134,6 +167,7 @@ public class WebSecurityConfig {
             http
                     .authorizeRequests()
                     .antMatchers(loginPage, "/login").permitAll()
+                    .antMatchers("/oe" + ADMIN_PATTERN).hasRole("ADMIN")
                     .anyRequest().authenticated()
                     .and()
 
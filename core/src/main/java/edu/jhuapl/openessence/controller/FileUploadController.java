@@ -28,9 +28,10 @@ package edu.jhuapl.openessence.controller;
 
 import au.com.bytecode.opencsv.CSVReader;
 
-import org.codehaus.jackson.map.ObjectMapper;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -41,19 +42,19 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * Controller for file upload
  */
 @Controller
 public class FileUploadController {
 
+    private static final Logger log = LoggerFactory.getLogger(FileUploadController.class);
+
     /**
      * Accept a CSV file, process it, and give it back to the client. This could all be done on the client with the
      * HTML5 File API, but that's IE10+.
@@ -61,21 +62,65 @@ public class FileUploadController {
      * Unfortunately, there's no standard way to do content negotiation on multipart files. This method uses a parameter
      * (_uploadContentType) instead of a header because HTML forms cannot send custom headers.
      *
-     * This methods returns a ResponseEntity instead of using @ResponseBody because we must return a content type of
-     * text/html (not application/json). This is because the upload form is submitted in an iframe.
+     * This methods writes the response itself instead of using @ResponseBody because we must return a content type of
+     * text/html (not application/json). This is because the upload form is submitted in an iframe. Rows are written as
+     * they are read, so only one row is held in memory at a time.
      */
     // the params=_uploadContentTYpe=text/csv will do a strict comparison, so don't expect real content negotiation.
     // this means text/csv;utf=8 won't work!
     @RequestMapping(value = "/file", method = RequestMethod.POST, params = "_uploadContentType=text/csv")
-    public ResponseEntity<String> uploadCsvFile(@RequestPart MultipartFile file,
-                                                @RequestParam(value = "delimiter", defaultValue = ",") char delimiter,
-                                                @RequestParam(value = "qualifier", defaultValue = "\"") char qualifier,
-                                                @RequestParam(value = "rowsToSkip", defaultValue = "0") int rowsToSkip,
-                                                @RequestParam(value = "numRowsToRead", defaultValue = "-1") int numRowsToRead,
-                                                @RequestParam("fields") String fields,
-                                                @RequestParam("_uploadContentType") String uploadContentType)
+    public void uploadCsvFile(@RequestPart MultipartFile file,
+                              @RequestParam(value = "delimiter", defaultValue = ",") char delimiter,
+                              @RequestParam(value = "qualifier", defaultValue = "\"") char qualifier,
+                              @RequestParam(value = "rowsToSkip", defaultValue = "0") int rowsToSkip,
+                              @RequestParam(value = "numRowsToRead", defaultValue = "-1") int numRowsToRead,
+                              @RequestParam("fields") String fields,
+                              @RequestParam("_uploadContentType") String uploadContentType,
+                              HttpServletResponse response)
             throws IOException {
 
+        // TODO send real array over the wire
+        String[] splitFields = fields.split(",");
+
+        CSVReader csvReader = createReader(file, delimiter, qualifier, rowsToSkip);
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        response.setContentType("text/html;charset=utf-8");
+
+        JsonGenerator json = new JsonFactory().createJsonGenerator(response.getWriter());
+        try {
+            json.writeStartObject();
+            json.writeArrayFieldStart("rows");
+            try {
+                int rowsRead = 0;
+                String[] row;
+                // if numRowsToRead <= 0, give them everything
+                while ((numRowsToRead <= 0 || rowsRead < numRowsToRead) && (row = csvReader.readNext()) != null) {
+                    rowsRead++;
+                    writeRecord(json, row, splitFields);
+                }
+            } catch (IOException e) {
+                // rows may already have been sent, so end the document with the error instead
+                log.error("Unable to read uploaded CSV file", e);
+                json.writeEndArray();
+                json.writeBooleanField("success", false);
+                json.writeStringField("message", e.getMessage());
+                json.writeEndObject();
+                return;
+            }
+            json.writeEndArray();
+            json.writeBooleanField("success", true);
+            json.writeEndObject();
+        } finally {
+            json.close();
+            csvReader.close();
+        }
+    }
+
+    /**
+     * Creates a reader over the rows of an uploaded CSV file.
+     */
+    static CSVReader createReader(MultipartFile file, char delimiter, char qualifier, int rowsToSkip)
+            throws IOException {
         if (rowsToSkip < 0) {
             rowsToSkip = 0;
         }
@@ -86,59 +131,39 @@ public class FileUploadController {
             rowsToSkip = -1;
         }
 
-        // TODO send real array over the wire
-        String[] splitFields = fields.split(",");
-
         // CSVReader wraps the Reader is a buffer already, so don't double buffer
         Reader fileReader = new InputStreamReader(file.getInputStream());
-        CSVReader csvReader = new CSVReader(fileReader, delimiter, qualifier, rowsToSkip);
-        List<String[]> csvData = csvReader.readAll();
-        List<String[]> subList;
-        if (numRowsToRead > 0) {
-            subList = csvData.subList(0, numRowsToRead);
-        } else {
-            // give them everything
-            subList = csvData;
-        }
-
-        Map<String, Object> responseData = new LinkedHashMap<>();
-        responseData.put("rows", gridToMap(subList, splitFields));
-        responseData.put("success", true);
-
-        ObjectMapper mapper = new ObjectMapper();
-        return new ResponseEntity<>(mapper.writeValueAsString(responseData), HttpStatus.CREATED);
+        return new CSVReader(fileReader, delimiter, qualifier, rowsToSkip);
     }
 
     /**
-     * Convert a grid of data to the map format expected by our Ext grids.
-     * TODO think of a better name for this method
+     * Writes a row of data in the map format expected by our Ext grids. Rows where every cell is empty are skipped.
      */
-    private List<Map<String, String>> gridToMap(Collection<String[]> data, String[] fields) {
-        List<Map<String, String>> records = new ArrayList<>();
-
-        for (String[] row : data) {
-            Map<String, String> record = new HashMap<>();
-            int ix = 0;
-            boolean emptyRow = true; // Assume all cells in this row to be empty by default
-
-            for (String field : fields) {
-                // if this row does not have enough fields
-                if (row.length > ix) {
-                    String cell = row[ix];
-                    // if no cell has value so far, then check if current cell has value or not
-                    if (emptyRow && cell != null && !cell.isEmpty()) {
-                        emptyRow = false;
-                    }
-                    record.put(field, cell);
+    private void writeRecord(JsonGenerator json, String[] row, String[] fields) throws IOException {
+        Map<String, String> record = new HashMap<>();
+        boolean emptyRow = true; // Assume all cells in this row to be empty by default
+        int ix = 0;
+
+        for (String field : fields) {
+            // if this row does not have enough fields
+            if (row.length > ix) {
+                String cell = row[ix];
+                // if no cell has value so far, then check if current cell has value or not
+                if (emptyRow && cell != null && !cell.isEmpty()) {
+                    emptyRow = false;
                 }
-                ix++;
-            }
-            // if at least one cell in this row is populated
-            if (!emptyRow) {
-                records.add(record);
+                record.put(field, cell);
             }
+            ix++;
         }
 
-        return records;
+        // if at least one cell in this row is populated
+        if (!emptyRow) {
+            json.writeStartObject();
+            for (Map.Entry<String, String> cell : record.entrySet()) {
+                json.writeStringField(cell.getKey(), cell.getValue());
+            }
+            json.writeEndObject();
+        }
     }
 }
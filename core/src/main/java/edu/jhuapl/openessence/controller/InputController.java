@@ -32,17 +32,25 @@ import edu.jhuapl.openessence.datasource.entry.ChildRecordSet;
 import edu.jhuapl.openessence.datasource.entry.CompleteRecord;
 import edu.jhuapl.openessence.datasource.entry.DbKeyValMap;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
 import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
 import edu.jhuapl.openessence.datasource.jdbc.entry.TableAwareQueryRecord;
 import edu.jhuapl.openessence.model.DeleteRequest;
+import edu.jhuapl.openessence.security.OEUserCache;
 import edu.jhuapl.openessence.upload.FileImporter;
 import edu.jhuapl.openessence.upload.FileImporterRegistry;
+import edu.jhuapl.openessence.upload.RowImporter;
 import edu.jhuapl.openessence.web.util.ControllerUtils;
 import edu.jhuapl.openessence.web.util.ErrorMessageException;
 
+import au.com.bytecode.opencsv.CSVReader;
+
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -59,7 +67,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.Resource;
 import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -78,6 +88,19 @@ public class InputController extends OeController {
     @Inject
     private FileImporterRegistry fileImporters;
 
+    @Inject
+    private QueryResultCache queryResultCache;
+
+    @Inject
+    private PossibleValuesCache possibleValuesCache;
+
+    @Resource
+    private ConcurrentMap<String, JdbcOeDataSource> dataSources;
+
+    // only defined in the security profile
+    @Autowired(required = false)
+    private OEUserCache userCache;
+
     /**
      * Add record to the database with the provided values. Response should be a JSON formatted collection with #success
      * and #record fields indicating status of request and generated keys (if appropriate) for new record.
@@ -111,7 +134,9 @@ public class InputController extends OeController {
                                                                                      dimensions, values),
                                                            ControllerUtils.getChildRecordSets(jdes, request, true));
 
-        return jdes.addCompleteRecord(completeRecord, false);
+        Map<String, Object> keys = jdes.addCompleteRecord(completeRecord, false);
+        invalidateCaches(ds);
+        return keys;
     }
 
     @RequestMapping(value = "/update", method = {POST, PUT})
@@ -157,6 +182,7 @@ public class InputController extends OeController {
 
         completeRecord.setChildrenRecordSets(ControllerUtils.getChildRecordSets(jdes, servletRequest, false));
         jdes.updateCompleteRecord(dbKeyValMap, completeRecord);
+        invalidateCaches(ds);
 
         Map<String, Object> data = data(ds, request);// new HashMap<String, Object>();
         data.put("success", true);
@@ -214,6 +240,7 @@ public class InputController extends OeController {
         }
 
         jdes.deleteQueryRecords(jdes.getTableName(), pksForDeletion);
+        invalidateCaches(ds);
 
         // Build/write response
         Map<String, Object> data = new HashMap<String, Object>();
@@ -241,7 +268,121 @@ public class InputController extends OeController {
             // respond to exception as normal, but with content type text/html
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.getWriter().write(mapper.writeValueAsString(handleException(e)));
+        } finally {
+            // importers may write straight to the tables, and a failed import may still have written some rows
+            queryResultCache.invalidate(ds);
+            possibleValuesCache.invalidate(ds);
+            invalidateCaches(ds);
         }
 
     }
+
+    /**
+     * Imports the rows of a CSV file into the parent table of a data entry source. The file is read, converted and
+     * written a batch at a time, and the response is written as the import goes: an "events" array of "progress" and
+     * "error" entries, followed by the totals. Like {@link #importExcel}, the content type is text/html for Ext, and
+     * the data source must have file import enabled; otherwise the response is a 400.
+     *
+     * @param fields comma separated edit dimension IDs of the file's columns, in order
+     */
+    @RequestMapping(value = "/importCsv", method = POST)
+    public void importCsv(@RequestPart MultipartFile file, @RequestParam("dsId") JdbcOeDataSource ds,
+                          @RequestParam("fields") String fields,
+                          @RequestParam(value = "delimiter", defaultValue = ",") char delimiter,
+                          @RequestParam(value = "qualifier", defaultValue = "\"") char qualifier,
+                          @RequestParam(value = "rowsToSkip", defaultValue = "0") int rowsToSkip,
+                          HttpServletResponse response) throws IOException {
+
+        response.setContentType("text/html;charset=utf-8");
+        ObjectMapper mapper = new ObjectMapper();
+        String refusal = null;
+        if (!(ds instanceof JdbcOeDataEntrySource)) {
+            refusal = ds.getDataSourceId() + " is not a data entry data source";
+        } else if (!((JdbcOeDataEntrySource) ds).isFileImportEnabled()) {
+            refusal = "File import is not enabled for " + ds.getDataSourceId();
+        }
+        if (refusal != null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Object body = handleException(new IllegalArgumentException(refusal));
+            response.getWriter().write(mapper.writeValueAsString(body));
+            return;
+        }
+
+        final JsonGenerator json = mapper.getJsonFactory().createJsonGenerator(response.getWriter());
+        boolean started = false;
+        try {
+            RowImporter importer = new RowImporter((JdbcOeDataEntrySource) ds, fields.split(","),
+                                                   new RowImporter.Listener() {
+                @Override
+                public void rowRejected(int rowNumber, String message) throws IOException {
+                    json.writeStartObject();
+                    json.writeStringField("type", "error");
+                    json.writeNumberField("row", rowNumber);
+                    json.writeStringField("message", message);
+                    json.writeEndObject();
+                }
+
+                @Override
+                public void batchWritten(int rowsWritten) throws IOException {
+                    json.writeStartObject();
+                    json.writeStringField("type", "progress");
+                    json.writeNumberField("rowsWritten", rowsWritten);
+                    json.writeEndObject();
+                    json.flush();
+                }
+            });
+            CSVReader csvReader = FileUploadController.createReader(file, delimiter, qualifier, rowsToSkip);
+
+            json.writeStartObject();
+            json.writeArrayFieldStart("events");
+            started = true;
+            try {
+                int rowNumber = 0;
+                String[] row;
+                while ((row = csvReader.readNext()) != null) {
+                    importer.addRow(++rowNumber, row);
+                }
+                importer.finish();
+            } finally {
+                csvReader.close();
+            }
+            json.writeEndArray();
+            json.writeNumberField("rowsWritten", importer.getRowsWritten());
+            json.writeNumberField("rowsRejected", importer.getRowsRejected());
+            json.writeBooleanField("success", true);
+            json.writeEndObject();
+        } catch (Exception e) {
+            if (started) {
+                // events may already have been sent, so end the document with the error instead
+                log.error("CSV import into {} failed", ds.getDataSourceId(), e);
+                json.writeEndArray();
+                json.writeBooleanField("success", false);
+                json.writeStringField("message", e.getMessage());
+                json.writeEndObject();
+            } else {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                json.writeObject(handleException(e));
+            }
+        } finally {
+            json.close();
+            queryResultCache.invalidate(ds);
+            possibleValuesCache.invalidate(ds);
+            invalidateCaches(ds);
+        }
+    }
+
+    /**
+     * Makes caches that aren't keyed by table pick up an edit made through <code>ds</code>: data sources that cache
+     * dimensions joined from other data sources, e.g. one accumulation per symptom, and cached users.
+     */
+    private void invalidateCaches(JdbcOeDataSource ds) {
+        for (JdbcOeDataSource eachDs : dataSources.values()) {
+            if (eachDs.getDimensionJoiner() != null) {
+                eachDs.getDimensionJoiner().invalidate();
+            }
+        }
+        if (userCache != null) {
+            userCache.invalidate(ds);
+        }
+    }
 }
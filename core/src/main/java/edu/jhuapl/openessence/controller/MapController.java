@@ -147,47 +147,53 @@ public class MapController extends OeController {
                         .getSqlCol();
                 layer.setCqlFilter(requestIdSQLColumn + "=" + nextSequenceValue);
 
-                // Cleanup...
-                int success = mapQueryUtil.performDelete(mapLayerDataEntrySource, current_time, postgresCleanup);
-                log.debug("Delete outcome: " + success);
+                // Map each edit dimension of the layer (minimal set) to a result dimension, using the field map
+                final List<String> columns = new ArrayList<String>();
+                final List<String> resultIds = new ArrayList<String>();
+                for (final Dimension dimension : mapLayerDataEntrySource.getEditDimensions()) {
+                    // Check fieldMapping for dimension, use mapped id
+                    final String dimensionId = (fieldMap == null
+                                                || fieldMap.get(dimension.getId()) == null
+                                                ? dimension.getId() : fieldMap.get(dimension.getId()));
+
+                    if (dimension.getSqlCol().equals(requestIdSQLColumn)
+                        || dimension.getSqlCol().equals("time_requested")) {
+                        // always set to the request id and time below
+                        continue;
+                    }
+                    if (ds.getResultDimension(dimensionId) != null) {
+                        columns.add(dimension.getSqlCol());
+                        resultIds.add(dimensionId);
+                    } else {
+                        log.debug(String.format("No matching result dimension for %s. (%s)", dimensionId,
+                                                dimension.getId()));
+                    }
+                }
+
+                // Add request id and time
+                columns.add(requestIdSQLColumn);
+                columns.add("time_requested");
 
                 // Build insert
                 final Collection<Record> detailsQuery = ds.detailsQuery(
                         new QueryManipulationStore(resultsList, accumulations, filters, sorts, false,
                                                    ControllerUtils.getRequestTimezoneAsHourMinuteString(request)));
+                final List<Object[]> rows = new ArrayList<Object[]>(detailsQuery.size());
                 for (final Record record : detailsQuery) {
-                    final LinkedHashMap<String, Object> updateMap = new LinkedHashMap<String, Object>();
-                    final Collection<String> placeholders = new ArrayList<String>();
-
-                    // Iterate records using destination/edit dimensions (minimal set)
-                    for (final Dimension dimension : mapLayerDataEntrySource.getEditDimensions()) {
-                        // Check fieldMapping for dimension, use mapped id
-                        final String dimensionId = (fieldMap == null
-                                                    || fieldMap.get(dimension.getId()) == null
-                                                    ? dimension.getId() : fieldMap.get(dimension.getId()));
-
-                        if (ds.getResultDimension(dimensionId) != null) {
-                            updateMap.put(dimension.getSqlCol(), record.getValue(dimensionId));
-                            placeholders.add("?");
-                        } else {
-                            log.debug(String.format("No matching result dimension for %s. (%s)", dimensionId,
-                                                    dimension.getId()));
-                        }
+                    final Object[] row = new Object[columns.size()];
+                    int i = 0;
+                    for (final String resultId : resultIds) {
+                        row[i++] = record.getValue(resultId);
                     }
-
-                    // Add request id and time
-                    updateMap.put(mapLayerDataEntrySource.getEditDimension(
-                            mapLayerDataEntrySource.getParentTableDetails().getMapRequestId()).getSqlCol(),
-                                  nextSequenceValue);
-                    placeholders.add("?");
-
-                    updateMap.put("time_requested", current_time);
-                    placeholders.add("?");
-
-                    int updateSuccess = mapQueryUtil.performUpdate(mapLayerDataEntrySource, updateMap, placeholders);
-                    log.debug("INSERT OUTCOME: " + updateSuccess);
+                    row[i++] = nextSequenceValue;
+                    row[i] = current_time;
+                    rows.add(row);
                 }
 
+                // Cleanup and insert in one transaction
+                int inserted = mapQueryUtil.performLayerRefresh(mapLayerDataEntrySource, current_time, postgresCleanup,
+                                                                columns, rows);
+                log.debug("INSERT OUTCOME: " + inserted);
             }
         }
 
@@ -26,6 +26,8 @@
 
 package edu.jhuapl.openessence.controller;
 
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
@@ -61,6 +63,16 @@ public class OeController {
 		}
 	}
 	
+	/**
+	 * Thrown when a bounded executor is full, e.g. the @Async executor, or a data source is running as many queries
+	 * as it may. Clients should back off and retry.
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public @ResponseBody BaseOeResponse handleException(RejectedExecutionException e) {
+		return generateResponse(e);
+	}
+
 	/**
 	 * Default exception handler to set a sane response status and JSON message.
 	 */
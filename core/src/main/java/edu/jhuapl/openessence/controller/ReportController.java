@@ -38,21 +38,28 @@ import edu.jhuapl.graphs.controller.DefaultGraphData;
 import edu.jhuapl.graphs.controller.GraphController;
 import edu.jhuapl.graphs.controller.GraphDataHandlerInterface;
 import edu.jhuapl.graphs.controller.GraphDataInterface;
-import edu.jhuapl.graphs.controller.GraphDataSerializeToDiskHandler;
+import edu.jhuapl.graphs.controller.GraphImageHandlerInterface;
 import edu.jhuapl.graphs.controller.GraphObject;
+import edu.jhuapl.graphs.controller.GraphRenderCache;
+import edu.jhuapl.openessence.config.AppConfig;
 import edu.jhuapl.openessence.datasource.Dimension;
 import edu.jhuapl.openessence.datasource.FieldType;
 import edu.jhuapl.openessence.datasource.Filter;
 import edu.jhuapl.openessence.datasource.OeDataSource;
 import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
 import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
 import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
 import edu.jhuapl.openessence.datasource.dataseries.AccumPoint;
 import edu.jhuapl.openessence.datasource.dataseries.DataSeriesSource;
+import edu.jhuapl.openessence.datasource.dataseries.DenseSeries;
 import edu.jhuapl.openessence.datasource.dataseries.Grouping;
 import edu.jhuapl.openessence.datasource.dataseries.GroupingDimension;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
 import edu.jhuapl.openessence.datasource.jdbc.QueryRecord;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
 import edu.jhuapl.openessence.datasource.jdbc.ResolutionHandler;
 import edu.jhuapl.openessence.datasource.jdbc.dataseries.AccumPointImpl;
 import edu.jhuapl.openessence.datasource.jdbc.dataseries.GroupingImpl;
@@ -69,6 +76,7 @@ import edu.jhuapl.openessence.datasource.ui.DimensionConfiguration;
 import edu.jhuapl.openessence.datasource.ui.PossibleValuesConfiguration;
 import edu.jhuapl.openessence.i18n.InspectableResourceBundleMessageSource;
 import edu.jhuapl.openessence.logging.LogStatements;
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
 import edu.jhuapl.openessence.model.ChartData;
 import edu.jhuapl.openessence.model.ChartModel;
 import edu.jhuapl.openessence.model.DataSourceDetails;
@@ -94,6 +102,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.NoSuchMessageException;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -104,6 +115,7 @@ import org.springframework.web.context.request.WebRequest;
 
 import java.awt.*;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -125,8 +137,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Resource;
+import javax.inject.Inject;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -160,6 +178,27 @@ public class ReportController extends OeController {
     @Resource
     private InspectableResourceBundleMessageSource messageSource;
 
+    @Resource
+    private GraphRenderCache graphRenderCache;
+
+    @Resource
+    private GraphDataHandlerInterface graphDataHandler;
+
+    @Resource
+    private AsyncTaskExecutor detectionExecutor;
+
+    @Resource
+    private QueryResultCache queryResultCache;
+
+    @Resource
+    private PossibleValuesCache possibleValuesCache;
+
+    @Inject
+    private Environment env;
+
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     private Map<String, Integer> intervalMap;
 
     public ReportController() {
@@ -347,7 +386,6 @@ public class ReportController extends OeController {
         List<Dimension> timeseriesDenominators =
                 ControllerUtils.getAccumulationsByIds(ds, model.getTimeseriesDenominator(), false);
 
-        final List<OrderByFilter> sorts = new ArrayList<OrderByFilter>();
         GroupingImpl group = new GroupingImpl(groupId, resolution);
 
         if (resolution.equals(DAILY) && model.getPrepull() < 0) {
@@ -358,18 +396,6 @@ public class ReportController extends OeController {
             model.setPrepull(0);
         }
 
-        //union accumulations to get all results
-        List<Dimension> dimensions = new ArrayList<Dimension>(ControllerUtils.unionDimensions(accumulations,
-                                                                                              timeseriesDenominators));
-        List<Grouping> groupings = new ArrayList<Grouping>();
-        groupings.add(groupingDim.makeGrouping(resolution));
-
-        //create results group dimension + all dimensions
-        final List<Dimension> results = new ArrayList<Dimension>();
-        for (Dimension d : dimensions) {
-            results.add(ds.getResultDimension(d.getId()));
-        }
-
         Map<String, ResolutionHandler> resolutionHandlers = dss.getGroupingDimension(group.getId()).getResolutionsMap();
         List<Filter> filters = new Filters().getFilters(request.getParameterMap(), dss, group.getId(),
                                                         model.getPrepull(), resolution,
@@ -380,10 +406,6 @@ public class ReportController extends OeController {
         if (timezoneEnabledString.equalsIgnoreCase("true")) {
             clientTimezone = ControllerUtils.getRequestTimezoneAsHourMinuteString(request);
         }
-        //details query for all records
-        Collection<Record> records = new DetailsQuery().performDetailsQuery(ds, results, dimensions, filters, sorts,
-                                                                            groupings, false, clientTimezone);
-
         //create graph data and set known configuration
         DefaultGraphData graphData = new DefaultGraphData();
         graphData.setShowSingleSeverityLegends(false);
@@ -407,7 +429,7 @@ public class ReportController extends OeController {
         Map<String, Object> timeseriesResult = createTimeseries(principal.getName(), dss,
                                                                 filters, group, resolution, model.getPrepull(),
                                                                 graphTimeSeriesUrl,
-                                                                records, accumulations, timeseriesDenominators,
+                                                                clientTimezone, accumulations, timeseriesDenominators,
                                                                 model.getTimeseriesDetectorClass(),
                                                                 model.isIncludeDetails(),
                                                                 model.isDisplayIntervalEndDate(), graphData,
@@ -540,7 +562,7 @@ public class ReportController extends OeController {
     private Map<String, Object> createTimeseries(String userPrincipalName, DataSeriesSource dss, List<Filter> filters,
                                                  GroupingImpl group,
                                                  String timeResolution, Integer prepull, String graphTimeSeriesUrl,
-                                                 final Collection<Record> records,
+                                                 String queryTimezone,
                                                  final List<Dimension> accumulations,
                                                  final List<Dimension> timeseriesDenominators,
                                                  String detectorClass, boolean includeDetails,
@@ -585,12 +607,18 @@ public class ReportController extends OeController {
             startDayCal.setTime(startDate);
             startDayCal.add(Calendar.MILLISECOND, timeOffsetMillies);
 
-            //get data grouped by group dimension
-            List<AccumPoint>
-                    points =
-                    extractAccumulationPoints(userPrincipalName, dss, records, startDayCal.getTime(), endDate,
-                                              dimensions, group, resolutionHandlers);
-            if (points.size() > 0) {
+            //get data grouped by group dimension, reusing the result of an identical earlier request if we can
+            String seriesKey = getSeriesCacheKey(dss, filters, group, startDayCal.getTime(), endDate, dimensions,
+                                                 resolutionHandlers, queryTimezone);
+            DenseSeries series = seriesKey == null ? null : (DenseSeries) queryResultCache.get(seriesKey);
+            if (series == null) {
+                series = querySeries(userPrincipalName, dss, filters, group, startDayCal.getTime(), endDate,
+                                     dimensions, resolutionHandlers, queryTimezone);
+                if (seriesKey != null) {
+                    queryResultCache.put(seriesKey, (JdbcOeDataSource) dss, series);
+                }
+            }
+            if (series.getRowCount() > 0 && series.getLength() > 0) {
                 DateFormat dateFormat = getDateFormat(timeResolution); //dateFormat.setTimeZone(timezone);
                 DateFormat tmpDateFormat = (DateFormat) dateFormat.clone();
 
@@ -619,7 +647,7 @@ public class ReportController extends OeController {
                 Date queryStartDate = cal.getTime();
 
                 //-- Handles Denominator Types -- //
-                double[] divisors = new double[points.size()];
+                double[] divisors = new double[series.getLength()];
                 double multiplier = 1.0;
                 boolean percentBased = false;
                 String yAxisLabel = messageSource.getDataSourceMessage("graph.count", dss);
@@ -630,7 +658,7 @@ public class ReportController extends OeController {
                 //if there is a denominator we need to further manipulate the data
                 if (timeseriesDenominators != null && !timeseriesDenominators.isEmpty()) {
                     // divisor is the sum of timeseriesDenominators
-                    divisors = totalSeriesValues(points, timeseriesDenominators);
+                    divisors = series.getTotal(ControllerUtils.getDimensionIdsFromCollection(timeseriesDenominators));
                     multiplier = 100.0;
                     percentBased = true;
                     yAxisLabel = messageSource.getDataSourceMessage("graph.percent", dss);
@@ -657,7 +685,36 @@ public class ReportController extends OeController {
                 //remove extra accumulations in the result set using string ids
                 dimIds.removeAll(accIds);
 
-                //for each accumulation we run detection and gather results
+                //run detection for all accumulations in parallel, unless an earlier request already did
+                List<Future<TemporalDetectorSimpleDataObject>> detections =
+                        new ArrayList<Future<TemporalDetectorSimpleDataObject>>(accumulations.size());
+                String[] detectionKeys = new String[accumulations.size()];
+                boolean[] detectionCached = new boolean[accumulations.size()];
+                String denominatorIds = percentBased
+                                        ? ControllerUtils.getDimensionIdsFromCollection(timeseriesDenominators)
+                                                .toString() : "";
+                for (int i = 0; i < accumulations.size(); i++) {
+                    Dimension accumulation = accumulations.get(i);
+                    if (seriesKey != null) {
+                        detectionKeys[i] = seriesKey + "\n" + detectorClass + " " + accumulation.getId() + " "
+                                           + denominatorIds + " " + startDate.getTime() + " " + timeResolution;
+                    }
+                    TemporalDetectorSimpleDataObject cached = detectionKeys[i] == null ? null
+                            : (TemporalDetectorSimpleDataObject) queryResultCache.get(detectionKeys[i]);
+                    if (cached != null) {
+                        detectionCached[i] = true;
+                        detections.add(new AsyncResult<TemporalDetectorSimpleDataObject>(cached));
+                    } else {
+                        detections.add(detectionExecutor.submit(
+                                new DetectionTask(detectorClass, series.getValues(accumulation.getId()), divisors,
+                                                  multiplier, startDate, timeResolution)));
+                    }
+                }
+
+                //for each accumulation we gather detection results
+                long detectionTimeout = env.getProperty(AppConfig.DETECTION_TIMEOUT, Long.class,
+                                                        AppConfig.DEFAULT_DETECTION_TIMEOUT);
+                long detectionDeadline = System.currentTimeMillis() + detectionTimeout;
                 int aIndex = 0;
                 for (Dimension accumulation : accumulations) {
                     String accumId = accumulation.getId();
@@ -668,9 +725,7 @@ public class ReportController extends OeController {
                         accumIdTranslated = messageSource.getDataSourceMessage(accumulation.getId(), dss);
                     }
 
-                    TemporalDetectorInterface TDI =
-                            (TemporalDetectorInterface) DetectorHelper.createObject(detectorClass);
-                    TemporalDetectorSimpleDataObject TDDO = new TemporalDetectorSimpleDataObject();
+                    TemporalDetectorSimpleDataObject TDDO;
 
                     int[] colors;
                     double[] counts;
@@ -680,37 +735,21 @@ public class ReportController extends OeController {
                     String[] switchInfo;
                     String[] urls;
 
-                    //pull the counts from the accum array points
-                    double[] seriesDoubleArray = generateSeriesValues(points, accumId);
-
-                    //run divisor before detection
-                    for (int i = 0; i < seriesDoubleArray.length; i++) {
-                        double div = divisors[i];
-                        if (div == 0) {
-                            seriesDoubleArray[i] = 0.0;
-                        } else {
-                            seriesDoubleArray[i] = (seriesDoubleArray[i] / div) * multiplier;
-                        }
-                    }
-
-                    //run detection
-                    TDDO.setCounts(seriesDoubleArray);
-                    TDDO.setStartDate(startDate);
-                    TDDO.setTimeResolution(timeResolution);
-
                     try {
-                        TDI.runDetector(TDDO);
+                        TDDO = awaitDetection(detections, aIndex, detectionDeadline);
                     } catch (Exception e) {
-                        log.error("", e);
-                        String errorMessage = "Failure to create timeseries";
-                        if (e.getMessage() != null) {
-                            errorMessage = errorMessage + ":<BR>" + e.getMessage();
-                        }
-                        result.put("message", errorMessage);
+                        log.error("", e instanceof ExecutionException ? e.getCause() : e);
+                        result.put("message", getDetectionErrorMessage(e, detectionTimeout));
                         result.put("success", false);
                         return result;
                     }
 
+                    if (detectionKeys[aIndex] != null && !detectionCached[aIndex]) {
+                        queryResultCache.put(detectionKeys[aIndex], (JdbcOeDataSource) dss, TDDO);
+                    }
+                    // the detection result may be cached, so crop and date a copy of it
+                    TDDO = (TemporalDetectorSimpleDataObject) TDDO.createCopy();
+
                     TDDO.cropStartup(prepull);
                     counts = TDDO.getCounts();
                     int tddoLength = counts.length;
@@ -845,8 +884,7 @@ public class ReportController extends OeController {
 
                 lineSetLabels[aIndex] = "Expected Values";
 
-                GraphDataSerializeToDiskHandler hndl = new GraphDataSerializeToDiskHandler(graphDir);
-                GraphController gc = getGraphController(null, hndl, userPrincipalName);
+                GraphController gc = getGraphController(null, graphDataHandler, userPrincipalName);
                 //TODO figure out why I (hodancj1) added this to be accumulation size ~Feb 2012
                 // gc.setMaxLegendItems(accumulations.size());
 
@@ -1066,7 +1104,6 @@ public class ReportController extends OeController {
             }
         }
 
-        GraphDataSerializeToDiskHandler hndl = new GraphDataSerializeToDiskHandler(graphDir);
         GraphObject graph = null;
 
         Color[] colorsFromHex = null;
@@ -1078,7 +1115,7 @@ public class ReportController extends OeController {
             data.setGraphBaseColors(colorsFromHex);
         }
 
-        GraphController gc = getGraphController(null, hndl, userPrincipalName);
+        GraphController gc = getGraphController(null, graphDataHandler, userPrincipalName);
 
         List<Record> recs = new ArrayList<Record>(records);
 
@@ -1276,10 +1313,19 @@ public class ReportController extends OeController {
                                 @RequestParam(required = false) boolean graphExpectedValues)
             throws GraphException, IOException {
 
-        GraphDataSerializeToDiskHandler hndl = new GraphDataSerializeToDiskHandler(graphDir);
-        GraphController gc = getGraphController(dataId, hndl, req.getUserPrincipal().getName());
+        boolean imageMap = getImageMap != null && (getImageMap.equals("1") || getImageMap.equalsIgnoreCase("true"));
+        String imageKey = null;
+        if (!imageMap && resolution == null) {
+            imageKey = getImageKey("tsgraph", graphTitle, xAxisLabel, yAxisLabel, yAxisMin, yAxisMax, dataDisplayKey,
+                                   graphExpectedValues);
+            if (writeStoredImage(resp, dataId, imageKey)) {
+                return;
+            }
+        }
+
+        GraphController gc = getGraphController(dataId, graphDataHandler, req.getUserPrincipal().getName());
 
-        GraphDataInterface data = hndl.getGraphData(dataId);
+        GraphDataInterface data = graphDataHandler.getGraphData(dataId);
 
         if (graphTitle != null) {
             data.setGraphTitle(graphTitle);
@@ -1294,7 +1340,7 @@ public class ReportController extends OeController {
         GraphObject graph = gc.createTimeSeriesGraph(data, yAxisMin, yAxisMax, dataDisplayKey, graphExpectedValues);
         BufferedOutputStream out = new BufferedOutputStream(resp.getOutputStream());
 
-        if (getImageMap != null && (getImageMap.equals("1") || getImageMap.equalsIgnoreCase("true"))) {
+        if (imageMap) {
             resp.setContentType("text/plain;charset=utf-8");
             StringBuffer sb = new StringBuffer();
             sb.append(graph.getImageMap());
@@ -1314,7 +1360,7 @@ public class ReportController extends OeController {
                     log.error("", e);
                 }
             } else {
-                graph.writeChartAsPNG(out, data.getGraphWidth(), data.getGraphHeight());
+                writePng(graph, data, dataId, imageKey, filename, out);
             }
         }
     }
@@ -1323,10 +1369,14 @@ public class ReportController extends OeController {
     public void graphBar(HttpServletRequest req, HttpServletResponse resp,
                          @RequestParam("graphDataId") String dataId,
                          @RequestParam(required = false) Integer resolution) throws GraphException, IOException {
-        GraphDataSerializeToDiskHandler hndl = new GraphDataSerializeToDiskHandler(graphDir);
-        GraphController gc = getGraphController(dataId, hndl, req.getUserPrincipal().getName());
+        String imageKey = resolution == null ? getImageKey("bargraph") : null;
+        if (imageKey != null && writeStoredImage(resp, dataId, imageKey)) {
+            return;
+        }
+
+        GraphController gc = getGraphController(dataId, graphDataHandler, req.getUserPrincipal().getName());
 
-        GraphDataInterface data = hndl.getGraphData(dataId);
+        GraphDataInterface data = graphDataHandler.getGraphData(dataId);
         GraphObject graph = gc.createBarGraph(data, false);
         String filename = graph.getImageFileName();
         filename = filename.replaceAll("\\s", "_");
@@ -1336,7 +1386,7 @@ public class ReportController extends OeController {
         OutputStream out = resp.getOutputStream();
         // why can't the graph module handle this?
         if (resolution == null) {
-            graph.writeChartAsPNG(out, data.getGraphWidth(), data.getGraphHeight());
+            writePng(graph, data, dataId, imageKey, filename, out);
         } else {
             graph.writeChartAsHighResolutionPNG(out, data.getGraphWidth(), data.getGraphHeight(), resolution);
         }
@@ -1348,10 +1398,14 @@ public class ReportController extends OeController {
                          @RequestParam("graphDataId") String dataId,
                          @RequestParam(required = false) Integer resolution) throws GraphException, IOException {
 
-        GraphDataSerializeToDiskHandler hndl = new GraphDataSerializeToDiskHandler(graphDir);
-        GraphController gc = getGraphController(dataId, hndl, req.getUserPrincipal().getName());
+        String imageKey = resolution == null ? getImageKey("piegraph") : null;
+        if (imageKey != null && writeStoredImage(resp, dataId, imageKey)) {
+            return;
+        }
+
+        GraphController gc = getGraphController(dataId, graphDataHandler, req.getUserPrincipal().getName());
 
-        GraphDataInterface data = hndl.getGraphData(dataId);
+        GraphDataInterface data = graphDataHandler.getGraphData(dataId);
         GraphObject graph = gc.createPieGraph(data);
         String filename = graph.getImageFileName();
         filename = filename.replaceAll("\\s", "_");
@@ -1361,7 +1415,7 @@ public class ReportController extends OeController {
         OutputStream out = resp.getOutputStream();
         // why can't the graph module handle this?
         if (resolution == null) {
-            graph.writeChartAsPNG(out, data.getGraphWidth(), data.getGraphHeight());
+            writePng(graph, data, dataId, imageKey, filename, out);
         } else {
             graph.writeChartAsHighResolutionPNG(out, data.getGraphWidth(), data.getGraphHeight(), resolution);
         }
@@ -1395,9 +1449,19 @@ public class ReportController extends OeController {
             clientTimezone = ControllerUtils
                     .getRequestTimezoneAsHourMinuteString(request);
         }
-        return new DetailsQuery().performDetailsQuery(ds, results, accumulations, filters, sorts, false,
-                                                      clientTimezone,
-                                                      firstRecord, pageSize, true);
+        // combo boxes load their possible values through here
+        String key = possibleValuesCache.createKey(ds, results, accumulations, filters, sorts, clientTimezone,
+                                                   firstRecord, pageSize);
+        DataSourceDetails details = key == null ? null : (DataSourceDetails) possibleValuesCache.get(key);
+        if (details == null) {
+            details = new DetailsQuery().performDetailsQuery(ds, results, accumulations, filters, sorts, false,
+                                                             clientTimezone,
+                                                             firstRecord, pageSize, true);
+            if (key != null) {
+                possibleValuesCache.put(key, ds, details);
+            }
+        }
+        return details;
     }
 
     private int getCalWeekStartDay(Map<String, ResolutionHandler> resolutionHandlers) {
@@ -1443,6 +1507,62 @@ public class ReportController extends OeController {
     }
 
 
+    /**
+     * @return key of the series in the {@link QueryResultCache}, or <code>null</code> if it can't be cached
+     */
+    private String getSeriesCacheKey(DataSeriesSource dss, List<Filter> filters, GroupingImpl group, Date startDate,
+                                     Date endDate, List<Dimension> accumulations,
+                                     Map<String, ResolutionHandler> resolutionHandlers, String queryTimezone) {
+        if (!(dss instanceof JdbcOeDataSource)) {
+            return null;
+        }
+        List<Grouping> groupings = new ArrayList<Grouping>();
+        groupings.add(group);
+        List<String> accumIds = new ArrayList<String>(ControllerUtils.getDimensionIdsFromCollection(accumulations));
+        return QueryResultCache.createKey((JdbcOeDataSource) dss,
+                                          new SeriesQueryManipulationStore(accumIds, groupings, filters,
+                                                                           queryTimezone),
+                                          startDate, endDate, getCalWeekStartDay(resolutionHandlers));
+    }
+
+    /**
+     * Queries the series of each of <code>accumulations</code>. Daily, weekly and monthly series of date dimensions
+     * come straight from the data source, zero-filled from <code>startDate</code> through <code>endDate</code>.
+     *
+     * @param queryTimezone time zone of the query, may be <code>null</code>
+     */
+    private DenseSeries querySeries(String principal, DataSeriesSource dss, List<Filter> filters,
+                                    GroupingImpl group, Date startDate, Date endDate, List<Dimension> accumulations,
+                                    Map<String, ResolutionHandler> resolutionHandlers, String queryTimezone)
+            throws OeDataSourceAccessException {
+        GroupingDimension grpdim = dss.getGroupingDimension(group.getId());
+        List<Grouping> groupings = new ArrayList<Grouping>();
+        groupings.add(grpdim.makeGrouping(group.getResolution()));
+        List<String> accumIds = new ArrayList<String>(ControllerUtils.getDimensionIdsFromCollection(accumulations));
+
+        if (DenseSeries.isSupported(group.getResolution()) && (grpdim.getSqlType() == FieldType.DATE
+                                                               || grpdim.getSqlType() == FieldType.DATE_TIME)) {
+            log.info(LogStatements.TIME_SERIES.getLoggingStmt() + principal);
+            return dss.denseSeriesQuery(new SeriesQueryManipulationStore(accumIds, groupings, filters, queryTimezone),
+                                        startDate, endDate, getCalWeekStartDay(resolutionHandlers));
+        }
+
+        //create results group dimension + all dimensions
+        List<Dimension> results = new ArrayList<Dimension>();
+        for (Dimension d : accumulations) {
+            results.add(dss.getResultDimension(d.getId()));
+        }
+
+        //details query for all records
+        Collection<Record> records = new DetailsQuery().performDetailsQuery(dss, results, accumulations, filters,
+                                                                            new ArrayList<OrderByFilter>(), groupings,
+                                                                            false, queryTimezone);
+        List<AccumPoint> points = extractAccumulationPoints(principal, dss, records, startDate, endDate, accumulations,
+                                                            group, resolutionHandlers);
+        return DenseSeries.fromPoints(startDate, group.getResolution(), points, accumIds,
+                                      getCalWeekStartDay(resolutionHandlers));
+    }
+
     /**
      * Extracts AccumPoint from a Collection of <code>records</code> where
      *
@@ -1576,55 +1696,6 @@ public class ReportController extends OeController {
         return accumPoint;
     }
 
-    /**
-     * Takes a List of SeriesPoints and generates a double array that holds the value of each SeriesPoint
-     *
-     * @param seriespoints - List<AccumPoint> whose values need to be extracted into a double[] for detectors
-     * @param dimId        - The dimension id to pull from each AccumPoint
-     * @return pointarray - double[] that holds all the values from the passed in list of SeriesPoint
-     */
-    private double[] generateSeriesValues(List<AccumPoint> seriespoints, String dimId) {
-        //List<Number> pointlist = new ArrayList<Number>();
-        double[] pointarray = new double[seriespoints.size()];
-        int i = 0;
-        for (AccumPoint point : seriespoints) {
-            //pointlist.add(point.getValue());
-            if (point != null && point.getValue(dimId) != null) {
-                pointarray[i] = point.getValue(dimId).doubleValue();
-            } else {
-                pointarray[i] = Double.NaN;
-            }
-            i++;
-        }
-        return pointarray;
-    }
-
-    /**
-     * Takes a List of AccumPoints and generates a double array that holds the total of accumulations
-     *
-     * @param points     - List<AccumPoint> whose values need to be extracted into a double[] for detectors
-     * @param dimensions - The list of dimensions to sum from each AccumPoint
-     * @return double[] that holds all the values from the passed in list of SeriesPoint
-     */
-    private double[] totalSeriesValues(List<AccumPoint> points, List<Dimension> dimensions) {
-        double[] totalArray = new double[points.size()];
-        int i = 0;
-        for (AccumPoint point : points) {
-            if (point != null) {
-                for (Dimension dim : dimensions) {
-                    Number value = point.getValue(dim.getId());
-                    if (value != null) {
-                        totalArray[i] = totalArray[i] + value.doubleValue();
-                    }
-                }
-            } else {
-                totalArray[i] = Double.NaN;
-            }
-            i++;
-        }
-        return totalArray;
-    }
-
     /**
      * Returns a File Download Dialog for a file containing information in the data details grid.
      *
@@ -1634,7 +1705,7 @@ public class ReportController extends OeController {
     @RequestMapping("/exportGridToFile")
     public void exportGridToFile(@RequestParam("dsId") JdbcOeDataSource ds,
                                  ServletWebRequest request, HttpServletResponse response)
-            throws ErrorMessageException, IOException {
+            throws ErrorMessageException, OeDataSourceAccessException, IOException {
 
         TimeZone timezone = ControllerUtils.getRequestTimezone(request);
         response.setContentType("application/json;charset=utf-8");
@@ -1667,21 +1738,12 @@ public class ReportController extends OeController {
         if (timezoneEnabledString.equalsIgnoreCase("true")) {
             clientTimezone = ControllerUtils.getRequestTimezoneAsHourMinuteString(request);
         }
-        Collection<Record> points =
-                new DetailsQuery().performDetailsQuery(ds, results, accumulations, filters, sorts, false,
-                                                       clientTimezone);
+        final QueryManipulationStore queryManipStore =
+                new QueryManipulationStore(results, accumulations, filters, sorts, false, clientTimezone);
+
         // Translate accumulation int to bool if renderIntToBool set to true
         // if accumulation value is null ==> false else true
         String renderIntToBool = request.getParameter("renderIntToBool");
-        if (renderIntToBool != null && renderIntToBool.equalsIgnoreCase("true")) {
-            for (Record point : points) {
-                Map<String, Object> vals = point.getValues();
-                for (Dimension accum : accumulations) {
-                    Object accumVal = vals.get(accum.getId());
-                    vals.put(accum.getId(), accumVal != null);
-                }
-            }
-        }
 
         response.setContentType("text/csv;charset=utf-8");
 
@@ -1699,8 +1761,10 @@ public class ReportController extends OeController {
         fileDownloadCookie.setPath("/");
         response.addCookie(fileDownloadCookie);
 
-        FileExportUtil.exportGridToCSV(response.getWriter(), columnHeaders.toArray(new String[columnHeaders.size()]),
-                                       points, timezone);
+        // rows are written as they are read so large exports don't have to fit in memory
+        FileExportUtil.exportDetailsToCSV(response.getWriter(),
+                                          columnHeaders.toArray(new String[columnHeaders.size()]), ds,
+                                          queryManipStore, "true".equalsIgnoreCase(renderIntToBool), timezone);
     }
 
     private String appendUrlParameter(String url, String param, String value) {
@@ -1744,6 +1808,70 @@ public class ReportController extends OeController {
         }
     }
 
+    /**
+     * @return key of a graph image rendered with the given request parameters, or <code>null</code> if the graph data
+     *         handler doesn't keep images
+     */
+    private String getImageKey(Object... params) {
+        if (!(graphDataHandler instanceof GraphImageHandlerInterface)) {
+            return null;
+        }
+
+        // the graph font is localized
+        StringBuilder key = new StringBuilder(messageSource.getMessage("graph.font", "Arial"));
+        for (Object param : params) {
+            String value = String.valueOf(param);
+            // length prefix keeps parameters from running into each other
+            key.append(';').append(param == null ? -1 : value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sends a previously rendered graph image, if there is one.
+     *
+     * @return false if the image has to be rendered
+     */
+    private boolean writeStoredImage(HttpServletResponse resp, String dataId, String imageKey) throws IOException {
+        if (imageKey == null) {
+            return false;
+        }
+
+        GraphImageHandlerInterface.StoredImage image =
+                ((GraphImageHandlerInterface) graphDataHandler).getImage(dataId, imageKey);
+        if (image == null) {
+            return false;
+        }
+
+        resp.setContentType("image/png;charset=utf-8");
+        resp.setHeader("Content-disposition", "attachment; filename=" + image.getFileName());
+        resp.setContentLength(image.getLength());
+        OutputStream out = resp.getOutputStream();
+        image.writeTo(out);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Writes the PNG of a graph, keeping a copy with the graph data handler for later requests of the same image.
+     */
+    private void writePng(GraphObject graph, GraphDataInterface data, String dataId, String imageKey, String filename,
+                          OutputStream out) throws IOException {
+        if (imageKey == null) {
+            graph.writeChartAsPNG(out, data.getGraphWidth(), data.getGraphHeight());
+            return;
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        graph.writeChartAsPNG(png, data.getGraphWidth(), data.getGraphHeight());
+        try {
+            ((GraphImageHandlerInterface) graphDataHandler).putImage(dataId, imageKey, filename, png.toByteArray());
+        } catch (GraphException e) {
+            log.warn("Could not store image of graph " + dataId, e);
+        }
+        png.writeTo(out);
+    }
+
     /**
      * Get a new GraphContoller instance with sane metadata
      */
@@ -1791,6 +1919,8 @@ public class ReportController extends OeController {
         translationMap.put("Warning", messageSource.getMessage("graph.warning"));
         translationMap.put("Alert", messageSource.getMessage("graph.alert"));
         graphController.setTranslationMap(translationMap);
+        graphController.setRenderCache(graphRenderCache);
+        graphController.setMetrics(metricsRegistry);
 
         return graphController;
     }
@@ -1872,4 +2002,90 @@ public class ReportController extends OeController {
                     .replaceAll(" ", "%20");
         }
     }
+
+    /**
+     * Waits until <code>deadline</code> for the result of detection <code>index</code>. If it fails or doesn't finish
+     * in time, every detection of the request is cancelled, since the request is going to fail anyway.
+     */
+    static <T> T awaitDetection(List<Future<T>> detections, int index, long deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return detections.get(index).get(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            for (Future<T> detection : detections) {
+                detection.cancel(true);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param e       what {@link #awaitDetection} threw
+     * @param timeout how long detection was given, in milliseconds
+     */
+    static String getDetectionErrorMessage(Exception e, long timeout) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        String errorMessage = "Failure to create timeseries";
+        if (e instanceof TimeoutException) {
+            errorMessage = errorMessage + ":<BR>Detection did not finish within " + timeout + " ms";
+        } else if (cause.getMessage() != null) {
+            errorMessage = errorMessage + ":<BR>" + cause.getMessage();
+        }
+        return errorMessage;
+    }
+
+    /**
+     * Runs the detector on one accumulation's series.
+     */
+    private class DetectionTask implements Callable<TemporalDetectorSimpleDataObject> {
+
+        private final String detectorClass;
+        private final double[] values;
+        private final double[] divisors;
+        private final double multiplier;
+        private final Date startDate;
+        private final String timeResolution;
+
+        private DetectionTask(String detectorClass, double[] values, double[] divisors, double multiplier,
+                              Date startDate, String timeResolution) {
+            this.detectorClass = detectorClass;
+            this.values = values;
+            this.divisors = divisors;
+            this.multiplier = multiplier;
+            this.startDate = startDate;
+            this.timeResolution = timeResolution;
+        }
+
+        @Override
+        public TemporalDetectorSimpleDataObject call() throws Exception {
+            // detectors keep state, so each series gets its own instance
+            TemporalDetectorInterface TDI = (TemporalDetectorInterface) DetectorHelper.createObject(detectorClass);
+            TemporalDetectorSimpleDataObject TDDO = new TemporalDetectorSimpleDataObject();
+
+            //copy the counts, the series may be shared with other tasks
+            double[] seriesDoubleArray = values.clone();
+
+            //run divisor before detection
+            for (int i = 0; i < seriesDoubleArray.length; i++) {
+                double div = divisors[i];
+                if (div == 0) {
+                    seriesDoubleArray[i] = 0.0;
+                } else {
+                    seriesDoubleArray[i] = (seriesDoubleArray[i] / div) * multiplier;
+                }
+            }
+
+            //run detection
+            TDDO.setCounts(seriesDoubleArray);
+            TDDO.setStartDate(startDate);
+            TDDO.setTimeResolution(timeResolution);
+            long start = System.nanoTime();
+            TDI.runDetector(TDDO);
+            metricsRegistry.time("detector." + TDI.getClass().getSimpleName(), System.nanoTime() - start);
+            return TDDO;
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.metrics;
+
+import edu.jhuapl.graphs.controller.GraphMetrics;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryLimiter;
+import edu.jhuapl.openessence.datasource.jdbc.QueryMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process metrics: timers, histograms, counters and gauges, looked up by name. Timers are {@link Histogram}s of
+ * nanoseconds, reported in milliseconds. Data sources and graph code report to the registry through {@link
+ * QueryMetrics} and {@link GraphMetrics}; the snapshot is served by {@link
+ * edu.jhuapl.openessence.controller.MetricsController}.
+ */
+public class MetricsRegistry implements QueryMetrics, GraphMetrics {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    public Histogram timer(String name) {
+        return getOrCreate(timers, name);
+    }
+
+    public Histogram histogram(String name) {
+        return getOrCreate(histograms, name);
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    public void time(String name, long nanos) {
+        timer(name).update(nanos);
+    }
+
+    /**
+     * Registers a value that's read when a snapshot is taken, replacing any gauge of the same name.
+     */
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Records the statement and mapping time of all queries of a type, and the total time per data source.
+     */
+    @Override
+    public void queryExecuted(JdbcOeDataSource ds, String queryType, long sqlNanos, long mappingNanos, long rows) {
+        String prefix = "query." + queryType;
+        time(prefix + ".sql", sqlNanos);
+        time(prefix + ".mapping", mappingNanos);
+        time(prefix + ".ds." + ds.getDataSourceId(), sqlNanos + mappingNanos);
+        histogram(prefix + ".rows").update(rows);
+    }
+
+    /**
+     * Reports how many queries are running and waiting for a data source's {@link QueryLimiter}. The gauges of a
+     * reloaded data source replace those of its old limiter.
+     */
+    @Override
+    public void queryLimited(JdbcOeDataSource ds, final QueryLimiter limiter) {
+        String suffix = ".ds." + ds.getDataSourceId();
+        gauge("query.active" + suffix, new Gauge() {
+            @Override
+            public Number getValue() {
+                return limiter.getActiveQueries();
+            }
+        });
+        gauge("query.waiting" + suffix, new Gauge() {
+            @Override
+            public Number getValue() {
+                return limiter.getWaitingQueries();
+            }
+        });
+    }
+
+    /**
+     * Records how long queries wait for their data source's {@link QueryLimiter}, and how many give up.
+     */
+    @Override
+    public void queryQueued(JdbcOeDataSource ds, long waitNanos, boolean rejected) {
+        String suffix = ".ds." + ds.getDataSourceId();
+        time("query.wait" + suffix, waitNanos);
+        if (rejected) {
+            counter("query.rejected" + suffix).incrementAndGet();
+        }
+    }
+
+    @Override
+    public void record(String operation, long nanos) {
+        time(operation, nanos);
+    }
+
+    /**
+     * @return "timers", "histograms", "counters" and "gauges", each sorted by name
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> timerSnapshots = new TreeMap<String, Object>();
+        for (Map.Entry<String, Histogram> entry : timers.entrySet()) {
+            timerSnapshots.put(entry.getKey(), entry.getValue().getSnapshot(NANOS_PER_MILLI));
+        }
+
+        Map<String, Object> histogramSnapshots = new TreeMap<String, Object>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            histogramSnapshots.put(entry.getKey(), entry.getValue().getSnapshot(1));
+        }
+
+        Map<String, Object> counterValues = new TreeMap<String, Object>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().get());
+        }
+
+        Map<String, Object> gaugeValues = new TreeMap<String, Object>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+        snapshot.put("timers", timerSnapshots);
+        snapshot.put("histograms", histogramSnapshots);
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        return snapshot;
+    }
+
+    private static Histogram getOrCreate(ConcurrentMap<String, Histogram> metrics, String name) {
+        Histogram histogram = metrics.get(name);
+        if (histogram == null) {
+            metrics.putIfAbsent(name, new Histogram());
+            histogram = metrics.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * A value read on demand, e.g. the depth of a queue.
+     */
+    public interface Gauge {
+
+        Number getValue();
+    }
+}
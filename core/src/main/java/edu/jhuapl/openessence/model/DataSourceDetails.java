@@ -32,7 +32,7 @@ import java.util.Map;
 public class DataSourceDetails {
 
     private List<Map<String, Object>> rows;
-    private int totalRecords = -1;
+    private long totalRecords = -1;
 
     public List<Map<String, Object>> getRows() {
         return rows;
@@ -46,11 +46,11 @@ public class DataSourceDetails {
      * Get the total number of records in this result set. This may be more than the number of rows returned if the page
      * size limits the size of the result set.
      */
-    public int getTotalRecords() {
+    public long getTotalRecords() {
         return totalRecords;
     }
 
-    public void setTotalRecords(int totalRecords) {
+    public void setTotalRecords(long totalRecords) {
         this.totalRecords = totalRecords;
     }
 
@@ -33,10 +33,53 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.security.authentication.encoding.PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class OEPasswordEncoder implements PasswordEncoder {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private volatile int verifiedCacheSize = 0;
+    private volatile long verifiedCacheTimeout = 0;
+
+    /**
+     * Digests of recently verified password/hash pairs, mapped to when they were verified. Digests are salted with a
+     * random per-encoder value, so they are useless outside of this process.
+     */
+    private final Map<String, Long> verified = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > verifiedCacheSize;
+        }
+    };
+    private final byte[] verifiedSalt = new byte[16];
+
+    public OEPasswordEncoder() {
+        new SecureRandom().nextBytes(verifiedSalt);
+    }
+
+    /**
+     * Remember successful verifications, so that clients that authenticate on every request, e.g. API clients using
+     * Basic authentication, only pay for hashing (BCrypt is deliberately slow) every <code>timeout</code>
+     * milliseconds. Disabled by default.
+     */
+    public void setVerifiedCache(int size, long timeout) {
+        synchronized (verified) {
+            verifiedCacheSize = size;
+            verifiedCacheTimeout = timeout;
+            verified.clear();
+        }
+    }
+
     /**
      *
      * @param rawPass
@@ -84,6 +127,11 @@ public class OEPasswordEncoder implements PasswordEncoder {
             return false;
         }
         String algorithm = ((EncryptionDetails) encryptDetails).getAlgorithm();
+        String key = getVerifiedKey(encPass, rawPass, (EncryptionDetails) encryptDetails);
+        if (key != null && isVerified(key)) {
+            return true;
+        }
+
         boolean checkPass = false;
         if (algorithm.equals("BCrypt")) {
             checkPass = BCrypt.checkpw(rawPass, encPass);
@@ -91,6 +139,52 @@ public class OEPasswordEncoder implements PasswordEncoder {
             checkPass = encodePassword(rawPass, encryptDetails).equals(encPass);
         }
 
+        if (checkPass && key != null) {
+            synchronized (verified) {
+                verified.put(key, System.currentTimeMillis());
+            }
+        }
         return checkPass;
     }
+
+    private boolean isVerified(String key) {
+        synchronized (verified) {
+            Long time = verified.get(key);
+            if (time == null) {
+                return false;
+            }
+            if (System.currentTimeMillis() - time > verifiedCacheTimeout) {
+                verified.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return digest of the password and its hash, or <code>null</code> if verifications aren't cached
+     */
+    private String getVerifiedKey(String encPass, String rawPass, EncryptionDetails encryptDetails) {
+        if (verifiedCacheSize <= 0 || verifiedCacheTimeout <= 0 || encPass == null || rawPass == null) {
+            return null;
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        digest.update(verifiedSalt);
+        for (String s : new String[]{encryptDetails.getAlgorithm(), encryptDetails.getSalt(), encPass, rawPass}) {
+            digest.update(String.valueOf(s).getBytes(UTF8));
+            digest.update((byte) 0);
+        }
+
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
 }
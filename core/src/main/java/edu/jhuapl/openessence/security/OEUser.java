@@ -56,6 +56,14 @@ public class OEUser extends User {
         this.algorithm = algorithm;
     }
 
+    /**
+     * Copies <code>user</code>, including its password.
+     */
+    public OEUser(OEUser user) {
+        this(user.getUsername(), user.getPassword(), user.getAuthorities(), user.attributes, user.salt,
+             user.algorithm);
+    }
+
     /**
      * Get this user's salt. Used in security.xml (<salt-source user-property="someSalt" />).
      */
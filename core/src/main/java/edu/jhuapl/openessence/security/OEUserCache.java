@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.security;
+
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
+
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Resource;
+
+/**
+ * Cache of the users and roles loaded by {@link OEUserDetailsService}, so that Basic authenticated API clients don't
+ * query the user tables on every request.
+ *
+ * <p> Entries expire after <code>maxAge</code> milliseconds, which should be short since a cached user keeps their
+ * roles until then. Writes through OpenEssence to the tables of the user data sources drop every entry (see {@link
+ * #invalidate}). A cached user whose password doesn't match is reloaded by Spring Security, so password changes take
+ * effect right away. </p>
+ */
+public class OEUserCache implements UserCache {
+
+    /**
+     * Data sources {@link OEUserDetailsService} loads users from.
+     */
+    private static final String[] USER_DATA_SOURCES = {"User", "SecurityMapping"};
+
+    @Resource
+    private Map<String, JdbcOeDataSource> dataSources;
+
+    private final int maxEntries;
+    private final long maxAge;
+    private final Map<String, Entry> entries;
+
+    public OEUserCache(int maxEntries, long maxAge) {
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > OEUserCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached user, since Spring Security erases the credentials of the user it authenticates
+     */
+    @Override
+    public synchronized UserDetails getUserFromCache(String username) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > maxAge) {
+            entries.remove(username);
+            return null;
+        }
+        return new OEUser(entry.user);
+    }
+
+    @Override
+    public synchronized void putUserInCache(UserDetails user) {
+        if (maxEntries > 0 && maxAge > 0 && user instanceof OEUser) {
+            entries.put(user.getUsername(), new Entry(new OEUser((OEUser) user)));
+        }
+    }
+
+    @Override
+    public synchronized void removeUserFromCache(String username) {
+        entries.remove(username);
+    }
+
+    /**
+     * Drops every user if <code>ds</code> writes to a table that users or their roles are read from.
+     */
+    public void invalidate(JdbcOeDataSource ds) {
+        Set<String> written = new HashSet<String>();
+        for (String tableName : QueryResultCache.getWrittenTableNames(ds)) {
+            written.addAll(QueryResultCache.getTableNames(tableName));
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+
+        for (String dsId : USER_DATA_SOURCES) {
+            JdbcOeDataSource userDs = dataSources.get(dsId);
+            if (userDs != null
+                && !Collections.disjoint(QueryResultCache.getTableNames(userDs.getBaseDetailsQuery()), written)) {
+                clear();
+                return;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+
+        private final OEUser user;
+        private final long created;
+
+        private Entry(OEUser user) {
+            this.user = user;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
@@ -27,6 +27,7 @@
 package edu.jhuapl.openessence.upload;
 
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
 
 import org.springframework.stereotype.Component;
 
@@ -34,7 +35,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
- * Registers {@link FileImporter} instances.
+ * Registers {@link FileImporter} instances. Data entry sources without a registered importer that have {@link
+ * JdbcOeDataEntrySource#isFileImportEnabled() file import enabled} get an {@link XlsxRecordImporter} that reads its
+ * fields from the sheet's header row.
  */
 @Component
 public class FileImporterRegistry {
@@ -46,7 +49,13 @@ public class FileImporterRegistry {
     }
 
     public FileImporter<?> get(JdbcOeDataSource dataSource) {
-        return fileImporters.get(dataSource);
+        FileImporter<?> fileImporter = fileImporters.get(dataSource);
+        if (fileImporter == null && dataSource instanceof JdbcOeDataEntrySource
+            && ((JdbcOeDataEntrySource) dataSource).isFileImportEnabled()) {
+            fileImporters.putIfAbsent(dataSource, new XlsxRecordImporter((JdbcOeDataEntrySource) dataSource));
+            fileImporter = fileImporters.get(dataSource);
+        }
+        return fileImporter;
     }
 
     public void add(JdbcOeDataSource dataSource, FileImporter<?> fileImporter) {
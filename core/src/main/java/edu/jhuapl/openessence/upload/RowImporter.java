@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.upload;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.entry.CompleteRecord;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcBulkOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.entry.TableAwareQueryRecord;
+import edu.jhuapl.openessence.web.util.ControllerUtils;
+import edu.jhuapl.openessence.web.util.ErrorMessageException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes rows of an uploaded file into the parent table of a data entry source. Rows are pushed in one at a time,
+ * converted to the types of the data source's edit dimensions and written in batches, so memory use depends on the
+ * batch size and not on the size of the file. Progress and rejected rows are reported to a {@link Listener} as the
+ * import goes.
+ *
+ * <p> {@link JdbcBulkOeDataEntrySource}s write each batch at once. Other data entry sources write one record at a
+ * time. A failed write stops the import, but batches written before it stay written. </p>
+ */
+public class RowImporter {
+
+    /**
+     * Used for data entry sources that don't have a batch size of their own.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final JdbcOeDataEntrySource jdes;
+    private final List<Dimension> columns;
+    private final Set<String> pks;
+    private final Listener listener;
+    private final int batchSize;
+    private final List<TableAwareQueryRecord> batch;
+    private int rowsWritten;
+    private int rowsRejected;
+
+    /**
+     * @param jdes     the data entry source to write to
+     * @param fields   edit dimension IDs of the columns, in order
+     * @param listener receives progress, may be <code>null</code>
+     * @throws IllegalArgumentException if a field is not an edit dimension of the parent table
+     */
+    public RowImporter(JdbcOeDataEntrySource jdes, String[] fields, Listener listener) {
+        this.jdes = jdes;
+        this.pks = jdes.getParentTableDetails().getPks();
+        this.listener = listener;
+
+        List<String> parentDimIds = jdes.getParentTableDetails().getDimensionIds();
+        this.columns = new ArrayList<Dimension>(fields.length);
+        for (String field : fields) {
+            if (!parentDimIds.contains(field)) {
+                throw new IllegalArgumentException("Unknown field " + field);
+            }
+            columns.add(jdes.getEditDimension(field));
+        }
+
+        this.batchSize = (jdes instanceof JdbcBulkOeDataEntrySource)
+                         ? ((JdbcBulkOeDataEntrySource) jdes).getBatchSize() : DEFAULT_BATCH_SIZE;
+        this.batch = new ArrayList<TableAwareQueryRecord>(batchSize);
+    }
+
+    /**
+     * Converts a row and writes the batch if it's full. Rows that can't be converted are reported and skipped, and
+     * rows where every cell is empty are skipped.
+     *
+     * @param rowNumber number of the row in the file, for error messages
+     * @param row       cell values, in the order of the fields. Missing cells are <code>null</code>.
+     */
+    public void addRow(int rowNumber, String[] row) throws IOException, OeDataSourceAccessException {
+        if (isEmpty(row)) {
+            return;
+        }
+
+        try {
+            batch.add(toRecord(row));
+        } catch (ErrorMessageException e) {
+            rowsRejected++;
+            if (listener != null) {
+                listener.rowRejected(rowNumber, e.getMessage());
+            }
+            return;
+        }
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the last, partial batch.
+     *
+     * @return number of records written
+     */
+    public int finish() throws IOException, OeDataSourceAccessException {
+        if (!batch.isEmpty()) {
+            flush();
+        }
+        return rowsWritten;
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public int getRowsRejected() {
+        return rowsRejected;
+    }
+
+    private void flush() throws IOException, OeDataSourceAccessException {
+        if (jdes instanceof JdbcBulkOeDataEntrySource) {
+            ((JdbcBulkOeDataEntrySource) jdes).addRecords(new ArrayList<Record>(batch));
+        } else {
+            for (TableAwareQueryRecord record : batch) {
+                jdes.addCompleteRecord(new CompleteRecord(record), false);
+            }
+        }
+        rowsWritten += batch.size();
+        batch.clear();
+
+        if (listener != null) {
+            listener.batchWritten(rowsWritten);
+        }
+    }
+
+    private TableAwareQueryRecord toRecord(String[] row) throws ErrorMessageException {
+        Map<String, Dimension> dimensions = new LinkedHashMap<String, Dimension>();
+        Map<String, Object> values = new HashMap<String, Object>();
+
+        for (int i = 0; i < columns.size(); i++) {
+            Dimension dimension = columns.get(i);
+            String cell = (i < row.length) ? row[i] : null;
+            if (cell != null && cell.isEmpty() && dimension.getSqlType() != FieldType.TEXT) {
+                cell = null;
+            }
+
+            // Auto generated, special sql, and pk dimensions are not required on adds
+            boolean isRequired = (jdes.getAutoGeneratedDimension(dimension.getId()) == null
+                                  && jdes.getSpecialSqlDimension(dimension.getId()) == null
+                                  && pks.contains(dimension.getId()));
+
+            dimensions.put(dimension.getId(), dimension);
+            values.putAll(ControllerUtils.formatData(dimension.getId(), cell, dimension.getSqlType(), isRequired));
+        }
+
+        // special sql is filled in even when the file doesn't have a column for it
+        for (Dimension dimension : jdes.getEditDimensions()) {
+            if (!dimensions.containsKey(dimension.getId())
+                && jdes.getSpecialSqlDimension(dimension.getId()) != null) {
+                dimensions.put(dimension.getId(), dimension);
+                values.put(dimension.getId(), null);
+            }
+        }
+
+        return new TableAwareQueryRecord(jdes.getTableName(), pks, dimensions, values);
+    }
+
+    private static boolean isEmpty(String[] row) {
+        for (String cell : row) {
+            if (cell != null && !cell.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Receives the progress of an import.
+     */
+    public interface Listener {
+
+        /**
+         * @param rowNumber number of the row in the file
+         */
+        void rowRejected(int rowNumber, String message) throws IOException;
+
+        /**
+         * @param rowsWritten total number of records written so far
+         */
+        void batchWritten(int rowsWritten) throws IOException;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.upload;
+
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Imports the first sheet of an .xlsx workbook into the parent table of a data entry source. The sheet is parsed with
+ * POI's event API rather than loaded as a workbook, and rows go through a {@link RowImporter} as they are parsed, so
+ * memory use doesn't grow with the size of the sheet.
+ *
+ * <p> If no fields are given, the first row of the sheet must hold the edit dimension IDs of the columns. </p>
+ */
+public class XlsxRecordImporter implements FileImporter<Map<String, Object>> {
+
+    /**
+     * Only this many rejected rows are listed in the result, the rest are only counted.
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final JdbcOeDataEntrySource jdes;
+    private final String[] fields;
+    private final int rowsToSkip;
+
+    /**
+     * Creates an importer that reads the fields from the first row of the sheet.
+     */
+    public XlsxRecordImporter(JdbcOeDataEntrySource jdes) {
+        this(jdes, null, 0);
+    }
+
+    /**
+     * @param fields     edit dimension IDs of the columns, in order
+     * @param rowsToSkip number of rows to skip at the top of the sheet, e.g. 1 for a header row
+     */
+    public XlsxRecordImporter(JdbcOeDataEntrySource jdes, String[] fields, int rowsToSkip) {
+        this.jdes = jdes;
+        this.fields = (fields == null) ? null : fields.clone();
+        this.rowsToSkip = rowsToSkip;
+    }
+
+    /**
+     * @return "rowsWritten" and "rowsRejected" counts, and "errors" listing the first rejected rows
+     */
+    @Override
+    public Map<String, Object> importFile(MultipartFile file) throws IOException {
+        // POI would read a stream into memory, but can open a file in place
+        File tempFile = File.createTempFile("import", ".xlsx");
+        try {
+            file.transferTo(tempFile);
+            return importFile(tempFile);
+        } finally {
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    private Map<String, Object> importFile(File file) throws IOException {
+        final List<Map<String, Object>> errors = new ArrayList<Map<String, Object>>();
+        RowImporter.Listener listener = new RowImporter.Listener() {
+            @Override
+            public void rowRejected(int rowNumber, String message) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    Map<String, Object> error = new LinkedHashMap<String, Object>();
+                    error.put("row", rowNumber);
+                    error.put("message", message);
+                    errors.add(error);
+                }
+            }
+
+            @Override
+            public void batchWritten(int rowsWritten) {
+            }
+        };
+
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IllegalArgumentException("Not an .xlsx file", e);
+        }
+
+        SheetHandler sheetHandler = new SheetHandler(listener);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            XMLReader parser = createXmlReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(),
+                                                             new SecureSharedStringsTable(pkg), sheetHandler,
+                                                             new RawValueFormatter(), false));
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IllegalArgumentException("Workbook has no sheets");
+            }
+            InputStream sheet = sheets.next();
+            try {
+                parser.parse(new InputSource(sheet));
+            } finally {
+                sheet.close();
+            }
+            sheetHandler.finish();
+        } catch (ImportException e) {
+            // thrown by SheetHandler for what the importer threw
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (SAXException | OpenXML4JException | ParserConfigurationException | OeDataSourceAccessException e) {
+            throw new IOException(e);
+        } finally {
+            pkg.revert();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("rowsWritten", sheetHandler.importer.getRowsWritten());
+        result.put("rowsRejected", sheetHandler.importer.getRowsRejected());
+        result.put("errors", errors);
+        return result;
+    }
+
+    /**
+     * @return a parser for the uploaded XML that refuses DOCTYPEs and doesn't resolve external entities, so a crafted
+     *         file can't read local files or make requests from the server
+     */
+    static XMLReader createXmlReader() throws ParserConfigurationException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        return factory.newSAXParser().getXMLReader();
+    }
+
+    /**
+     * Shared strings table read with {@link #createXmlReader()} rather than POI's default parser.
+     */
+    private static class SecureSharedStringsTable extends ReadOnlySharedStringsTable {
+
+        private SecureSharedStringsTable(OPCPackage pkg) throws IOException, SAXException {
+            super(pkg);
+        }
+
+        @Override
+        public void readFrom(InputStream is) throws IOException, SAXException {
+            try {
+                XMLReader parser = createXmlReader();
+                parser.setContentHandler(this);
+                parser.parse(new InputSource(is));
+            } catch (ParserConfigurationException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+
+    /**
+     * Collects the cells of each row and hands the row to the importer.
+     */
+    private class SheetHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowImporter.Listener listener;
+        private final List<String> cells = new ArrayList<String>();
+        private RowImporter importer;
+        private int rowNumber;
+
+        private SheetHandler(RowImporter.Listener listener) {
+            this.listener = listener;
+            if (fields != null) {
+                importer = new RowImporter(jdes, fields, listener);
+            }
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            rowNumber = rowNum + 1;
+            cells.clear();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue) {
+            // empty cells aren't reported, so place each cell by its column
+            int col = new CellReference(cellReference).getCol();
+            while (cells.size() <= col) {
+                cells.add(null);
+            }
+            cells.set(col, formattedValue);
+        }
+
+        @Override
+        public void endRow() {
+            if (rowNumber <= rowsToSkip) {
+                return;
+            }
+
+            String[] row = cells.toArray(new String[cells.size()]);
+            if (importer == null) {
+                // header row
+                importer = new RowImporter(jdes, trim(row), listener);
+                return;
+            }
+
+            try {
+                importer.addRow(rowNumber, row);
+            } catch (IOException | OeDataSourceAccessException e) {
+                throw new ImportException(e);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+
+        private void finish() throws IOException, OeDataSourceAccessException {
+            if (importer == null) {
+                throw new IllegalArgumentException("Sheet has no header row");
+            }
+            importer.finish();
+        }
+
+        private String[] trim(String[] row) {
+            List<String> header = new ArrayList<String>(Arrays.asList(row));
+            while (!header.isEmpty() && header.get(header.size() - 1) == null) {
+                header.remove(header.size() - 1);
+            }
+            return header.toArray(new String[header.size()]);
+        }
+    }
+
+    /**
+     * Carries a checked exception out of the SAX callbacks.
+     */
+    private static class ImportException extends RuntimeException {
+
+        private ImportException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Formats numbers the way {@link edu.jhuapl.openessence.web.util.ControllerUtils#formatData} parses them: dates as
+     * epoch milliseconds and other numbers without grouping or rounding.
+     */
+    private static class RawValueFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return formatRawCellContents(value, formatIndex, formatString, false);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString,
+                                            boolean use1904Windowing) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return String.valueOf(DateUtil.getJavaDate(value, use1904Windowing).getTime());
+            }
+            if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+                return String.valueOf((long) value);
+            }
+            return String.valueOf(value);
+        }
+    }
+}
@@ -99,57 +99,87 @@ public class DetailsQuery {
                                                  final boolean totalRequested)
             throws OeDataSourceException, OeDataSourceAccessException {
 
-        final AtomicInteger rowNumber = new AtomicInteger(0);
         final QueryManipulationStore queryManipStore =
                 new QueryManipulationStore(results, accumulations, filters, sorts, isDistinct, timezone);
 
         final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
-        try {
+        long totalRecords;
+        if (pageSize > 0 && ds.supportsPaging()) {
+            // let the database skip to the page, and count separately if we have to
+            queryManipStore.setPage(firstRecord, pageSize);
             ds.detailsQuery(queryManipStore, new RowCallbackHandler() {
-                long rownumber = 0;
-                long first = firstRecord;
-
                 @Override
                 public void processRow(ResultSet rs) throws SQLException {
-                    rownumber = rowNumber.incrementAndGet();
+                    rows.add(mapRow(rs, queryManipStore));
+                }
+            }, ds.getFetchSize());
 
-                    // caller can turn off paging by passing negative pageSize
-                    if (pageSize > 0 && rownumber > firstRecord + pageSize) {
-                        if (!totalRequested) {
-                            throw new DetailsQueryExitEarlyRuntimeException("Stopped on row " + rownumber);
-                        }
-                    } else if (rownumber > first) {
-                        Map<String, Object> row = new LinkedHashMap<String, Object>();
-                        int i = 1;
-                        for (final Dimension dim : queryManipStore.getResults()) {
-                            final Object val = DataTypeConversionHelper.convert2JavaType(rs, dim.getSqlType(), i++);
-                            if (val instanceof Timestamp) {
-                                row.put(dim.getId(), ((Timestamp) val).getTime());
-                            } else if (val instanceof Date) {
-                                row.put(dim.getId(), ((Date) val).getTime());
-                            } else if (val instanceof Number) {
-                                row.put(dim.getId(), (Number) val);
-                            } else if (val instanceof String) {
-                                row.put(dim.getId(), (String) val);
-                            } else if (val instanceof Boolean) {
-                                row.put(dim.getId(), (Boolean) val);
-                            } else if (val == null) {
-                                row.put(dim.getId(), null);
-                            } else {
-                                throw new AssertionError("Unexpected field type \"" + val + "\"");
+            if (rows.size() < pageSize && (rows.size() > 0 || firstRecord == 0)) {
+                // this was the last page
+                totalRecords = firstRecord + rows.size();
+            } else if (totalRequested) {
+                // the data source may have modified the first store while preparing it, so count with a new one
+                totalRecords = ds.countQuery(new QueryManipulationStore(results, accumulations,
+                                                                        new ArrayList<Filter>(filters), sorts,
+                                                                        isDistinct, timezone));
+            } else {
+                totalRecords = firstRecord + rows.size();
+            }
+        } else {
+            final AtomicInteger rowNumber = new AtomicInteger(0);
+            try {
+                ds.detailsQuery(queryManipStore, new RowCallbackHandler() {
+                    long rownumber = 0;
+                    long first = firstRecord;
+
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        rownumber = rowNumber.incrementAndGet();
+
+                        // caller can turn off paging by passing negative pageSize
+                        if (pageSize > 0 && rownumber > firstRecord + pageSize) {
+                            if (!totalRequested) {
+                                throw new DetailsQueryExitEarlyRuntimeException("Stopped on row " + rownumber);
                             }
+                        } else if (rownumber > first) {
+                            rows.add(mapRow(rs, queryManipStore));
                         }
-                        rows.add(row);
                     }
-                }
-            }, ds.getFetchSize());
-        } catch (DetailsQueryExitEarlyRuntimeException e) {
-            log.error(e.getMessage());
+                }, ds.getFetchSize());
+            } catch (DetailsQueryExitEarlyRuntimeException e) {
+                log.error(e.getMessage());
+            }
+            totalRecords = rowNumber.get();
         }
 
         DataSourceDetails details = new DataSourceDetails();
         details.setRows(rows);
-        details.setTotalRecords(rowNumber.get());
+        details.setTotalRecords(totalRecords);
         return details;
     }
+
+    private static Map<String, Object> mapRow(ResultSet rs, QueryManipulationStore queryManipStore)
+            throws SQLException {
+        Map<String, Object> row = new LinkedHashMap<String, Object>();
+        int i = 1;
+        for (final Dimension dim : queryManipStore.getResults()) {
+            final Object val = DataTypeConversionHelper.convert2JavaType(rs, dim.getSqlType(), i++);
+            if (val instanceof Timestamp) {
+                row.put(dim.getId(), ((Timestamp) val).getTime());
+            } else if (val instanceof Date) {
+                row.put(dim.getId(), ((Date) val).getTime());
+            } else if (val instanceof Number) {
+                row.put(dim.getId(), (Number) val);
+            } else if (val instanceof String) {
+                row.put(dim.getId(), (String) val);
+            } else if (val instanceof Boolean) {
+                row.put(dim.getId(), (Boolean) val);
+            } else if (val == null) {
+                row.put(dim.getId(), null);
+            } else {
+                throw new AssertionError("Unexpected field type \"" + val + "\"");
+            }
+        }
+        return row;
+    }
 }
@@ -26,16 +26,28 @@
 
 package edu.jhuapl.openessence.web.util;
 
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
 import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.jdbc.DataTypeConversionHelper;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
 
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.util.StringUtils;
 
 import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
@@ -46,11 +58,9 @@ import java.util.TimeZone;
  */
 public class FileExportUtil {
 
-    public static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-    public static final
-    SimpleDateFormat SIMPLE_DATE_TIME_FORMAT =
-            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS aaa z");
-
+    // SimpleDateFormat isn't thread-safe, so each export creates its own formats from these patterns
+    public static final String DATE_PATTERN = "yyyy-MM-dd";
+    public static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS aaa z";
 
     /**
      * Generates CSV structured text of the data in the DataDetails Grid.
@@ -63,44 +73,128 @@ public class FileExportUtil {
     public static void exportGridToCSV(PrintWriter writer, String[] reportHeaders, Collection<Record> records,
                                        TimeZone timezone) {
 
-        SimpleDateFormat dtFormat = (SimpleDateFormat) SIMPLE_DATE_TIME_FORMAT.clone();
+        DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+        DateFormat dtFormat = new SimpleDateFormat(DATE_TIME_PATTERN);
         dtFormat.setTimeZone(timezone);
 
-        // building csv from the grid's headers
-        String headerList = StringUtils.collectionToDelimitedString(Arrays.asList(reportHeaders), ",");
-        writer.append(headerList);
-        writer.append('\n');
+        writeHeaders(writer, reportHeaders);
 
         // building csv for the collection of Records
         List<String> recordStrings = new ArrayList<String>();
         for (Record r : records) {
             Set<String> rids = r.getResultIds();
             for (String rid : rids) {
-                String value = "";
-                if (r.getValue(rid) != null) {
-                    switch (r.getDimension(rid).getSqlType()) {
-                        case DATE:
-                            Date date = (Date) r.getValue(rid);
-                            value = "\"" + SIMPLE_DATE_FORMAT.format(date) + "\"";
-                            break;
-                        case DATE_TIME:
-                            Date dateTime = (Date) r.getValue(rid);
-                            value = "\"" + dtFormat.format(dateTime) + "\"";
-                            break;
-                        case INTEGER:
-                        case FLOAT:
-                            value = String.valueOf(r.getValue(rid));
-                            break;
-                        default:
-                            value = "\"" + String.valueOf(r.getValue(rid)) + "\"";
-                            break;
-                    }
-                }
-                recordStrings.add(value);
+                recordStrings.add(formatValue(r.getValue(rid), r.getDimension(rid).getSqlType(), dateFormat, dtFormat));
             }
             writer.append(StringUtils.collectionToDelimitedString(recordStrings, ","));
             writer.append('\n');
             recordStrings.clear();
         }
     }
+
+    /**
+     * Runs a details query and writes each row to <code>writer</code> as CSV as it comes back from the database, so the
+     * result set is never held in memory. Produces the same output as {@link #exportGridToCSV} would for the records
+     * of {@link JdbcOeDataSource#detailsQuery(QueryManipulationStore)}.
+     *
+     * @param writer          what to write the CSV data to
+     * @param reportHeaders   The headers in the DataDetails grid
+     * @param ds              data source to query
+     * @param queryManipStore the details query
+     * @param renderIntToBool whether to write accumulations as <code>true</code> if they have a value and
+     *                        <code>false</code> otherwise
+     * @param timezone        time zone of the request/client
+     */
+    public static void exportDetailsToCSV(final PrintWriter writer, String[] reportHeaders,
+                                          final JdbcOeDataSource ds, final QueryManipulationStore queryManipStore,
+                                          final boolean renderIntToBool, TimeZone timezone)
+            throws OeDataSourceException, OeDataSourceAccessException {
+
+        final DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+        final DateFormat dtFormat = new SimpleDateFormat(DATE_TIME_PATTERN);
+        dtFormat.setTimeZone(timezone);
+
+        writeHeaders(writer, reportHeaders);
+        // send the headers before the query runs
+        writer.flush();
+
+        ds.detailsQuery(queryManipStore, new RowCallbackHandler() {
+            private List<Dimension> columns;
+            private boolean[] renderAsBool;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                if (columns == null) {
+                    // the data source reorders the store's dimensions when it builds the query,
+                    // so wait until the first row to look at them
+                    columns = getSelectedColumns(ds, queryManipStore);
+                    renderAsBool = new boolean[columns.size()];
+                    for (int i = 0; i < columns.size(); i++) {
+                        renderAsBool[i] = renderIntToBool && queryManipStore.getAccumulations().contains(columns.get(i));
+                    }
+                }
+
+                for (int i = 0; i < columns.size(); i++) {
+                    FieldType type = columns.get(i).getSqlType();
+                    Object value = DataTypeConversionHelper.convert2JavaType(rs, type, i + 1);
+                    if (renderAsBool[i]) {
+                        value = value != null;
+                    }
+
+                    if (i > 0) {
+                        writer.append(',');
+                    }
+                    writer.append(formatValue(value, type, dateFormat, dtFormat));
+                }
+                writer.append('\n');
+            }
+        }, ds.getFetchSize());
+
+        writer.flush();
+    }
+
+    /**
+     * @return dimensions in the order that the details query selects them: results that aren't accumulations followed
+     *         by the requested accumulations
+     */
+    private static List<Dimension> getSelectedColumns(JdbcOeDataSource ds, QueryManipulationStore queryManipStore) {
+        Set<String> accumulationIds = new HashSet<String>();
+        for (Dimension accumulation : ds.getAccumulations()) {
+            accumulationIds.add(accumulation.getId());
+        }
+
+        List<Dimension> columns = new ArrayList<Dimension>();
+        for (Dimension result : queryManipStore.getResults()) {
+            if (!accumulationIds.contains(result.getId())) {
+                columns.add(result);
+            }
+        }
+        columns.addAll(queryManipStore.getAccumulations());
+        return columns;
+    }
+
+    private static void writeHeaders(PrintWriter writer, String[] reportHeaders) {
+        // building csv from the grid's headers
+        String headerList = StringUtils.collectionToDelimitedString(Arrays.asList(reportHeaders), ",");
+        writer.append(headerList);
+        writer.append('\n');
+    }
+
+    private static String formatValue(Object value, FieldType type, DateFormat dateFormat, DateFormat dtFormat) {
+        if (value == null) {
+            return "";
+        }
+
+        switch (type) {
+            case DATE:
+                return "\"" + dateFormat.format((Date) value) + "\"";
+            case DATE_TIME:
+                return "\"" + dtFormat.format((Date) value) + "\"";
+            case INTEGER:
+            case FLOAT:
+                return String.valueOf(value);
+            default:
+                return "\"" + String.valueOf(value) + "\"";
+        }
+    }
 }
@@ -32,12 +32,18 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Statement;
 import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.sql.DataSource;
 
@@ -49,41 +55,76 @@ public class MapQueryUtil {
 
     private static final Logger log = LoggerFactory.getLogger(MapQueryUtil.class);
 
+    /**
+     * Number of rows sent to the database at a time when inserting map layer rows.
+     */
+    private static final int BATCH_SIZE = 500;
+
     @Resource
     private DataSource mapDataSource;
 
+    private JdbcTemplate pgdb;
+    private TransactionTemplate transactionTemplate;
+
     //TODO steal stuff from DetailsQuery if it is good
 
+    @PostConstruct
+    public void init() {
+        pgdb = new JdbcTemplate(mapDataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(mapDataSource));
+    }
+
     public Timestamp performCurrentTimestampQuery() {
-        JdbcTemplate pgdb = new JdbcTemplate(mapDataSource);
         return pgdb.queryForObject("select current_timestamp", Timestamp.class);
     }
 
     public int performNextSequenceValueQuery(String sequenceForMapRequestId) {
-        JdbcTemplate pgdb = new JdbcTemplate(mapDataSource);
         return pgdb.queryForInt("select nextval(\'" + sequenceForMapRequestId + "\')");
     }
 
     public int performDelete(OeDataEntrySource mapLayerDataEntrySource, Object current_time, String postgresCleanup) {
-        JdbcTemplate pgdb = new JdbcTemplate(mapDataSource);
         String sql = "delete from " + mapLayerDataEntrySource.getTableName() + " where ? > time_requested + interval '"
                      + postgresCleanup + "'";
         log.debug(sql);
         return pgdb.update(sql, current_time);
     }
 
-    public int performUpdate(OeDataEntrySource mapLayerDataEntrySource, LinkedHashMap<String, Object> updateMap,
-                             Collection<String> placeholders) {
-        JdbcTemplate pgdb = new JdbcTemplate(mapDataSource);
-        StringBuilder sb = new StringBuilder();
-        sb.append("insert into ").append(mapLayerDataEntrySource.getTableName());
-        sb.append(" (");
-        sb.append(StringUtils.join(updateMap.keySet(), ", "));
-        sb.append(") values (");
-        sb.append(StringUtils.join(placeholders, ", "));
-        sb.append(")");
-        String sql = sb.toString();
+    /**
+     * Deletes the expired rows of a map layer and inserts <code>rows</code>, all in one transaction. Rows are sent to
+     * the database in batches rather than one statement at a time.
+     *
+     * @param columns SQL columns of the layer table, in the order of the values of each row
+     * @return number of rows inserted
+     */
+    public int performLayerRefresh(final OeDataEntrySource mapLayerDataEntrySource, final Object current_time,
+                                   final String postgresCleanup, final List<String> columns,
+                                   final List<Object[]> rows) {
+        return transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                int deleted = performDelete(mapLayerDataEntrySource, current_time, postgresCleanup);
+                log.debug("Delete outcome: " + deleted);
+                return performBatchInsert(mapLayerDataEntrySource, columns, rows);
+            }
+        });
+    }
+
+    /**
+     * @return number of rows inserted
+     */
+    public int performBatchInsert(OeDataEntrySource mapLayerDataEntrySource, List<String> columns,
+                                  List<Object[]> rows) {
+        String sql = "insert into " + mapLayerDataEntrySource.getTableName() + " (" + StringUtils.join(columns, ", ")
+                     + ") values (" + StringUtils.join(Collections.nCopies(columns.size(), "?"), ", ") + ")";
         log.debug(sql);
-        return pgdb.update(sql, updateMap.values().toArray());
+
+        int inserted = 0;
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            for (int count : pgdb.batchUpdate(sql, rows.subList(i, Math.min(i + BATCH_SIZE, rows.size())))) {
+                // drivers may not report counts of batched statements
+                inserted += (count == Statement.SUCCESS_NO_INFO) ? 1 : count;
+            }
+        }
+        return inserted;
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.web.util;
+
+import edu.jhuapl.openessence.config.AppConfig;
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.entry.ChildTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
+import edu.jhuapl.openessence.datasource.ui.DimensionConfiguration;
+import edu.jhuapl.openessence.datasource.ui.PossibleValuesConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+
+/**
+ * Loads the possible values of every data source's combo boxes into the {@link PossibleValuesCache} once the
+ * application has started, if {@link AppConfig#POSSIBLEVALUES_PRELOAD} is set. The lists are queried the way the
+ * report form queries them, i.e. the first page of the possible values data source's result dimensions, unsorted.
+ */
+@Component
+public class PossibleValuesPreloader implements ApplicationListener<ContextRefreshedEvent> {
+
+    /**
+     * Page size of the report form combo boxes.
+     */
+    private static final long PAGE_SIZE = 400;
+
+    private static final Logger log = LoggerFactory.getLogger(PossibleValuesPreloader.class);
+
+    @Inject
+    private Environment env;
+
+    @Inject
+    private PossibleValuesCache possibleValuesCache;
+
+    @Resource
+    private ConcurrentMap<String, JdbcOeDataSource> dataSources;
+
+    // only preload on the first refresh
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        boolean preload = env.getProperty(AppConfig.POSSIBLEVALUES_PRELOAD, Boolean.class, false);
+        if (!preload || !started.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                preload();
+            }
+        }, "possible-values-preloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void preload() {
+        int loaded = 0;
+        for (JdbcOeDataSource ds : dataSources.values()) {
+            try {
+                for (PossibleValuesConfiguration configuration : getPossibleValuesConfigurations(ds)) {
+                    if (preload(configuration)) {
+                        loaded++;
+                    }
+                }
+            } catch (Exception e) {
+                // e.g. a base query that depends on the logged in user
+                log.warn("Unable to preload possible values of data source " + ds.getDataSourceId(), e);
+            }
+        }
+        log.info("Preloaded {} possible values lists", loaded);
+    }
+
+    private boolean preload(PossibleValuesConfiguration configuration) throws Exception {
+        JdbcOeDataSource pvds = configuration.getDsId() == null ? null : dataSources.get(configuration.getDsId());
+        // possible values that depend on the logged in user are cached per user, so there's nobody to preload them for
+        if (pvds == null || configuration.getResultDimensions() == null || possibleValuesCache.isUserDependent(pvds)) {
+            return false;
+        }
+
+        List<Dimension> results = new ArrayList<Dimension>();
+        for (DimensionConfiguration dc : configuration.getResultDimensions()) {
+            Dimension d = pvds.getResultDimension(dc.getName());
+            if (d == null) {
+                return false;
+            }
+            results.add(d);
+        }
+        List<Dimension> accumulations = new ArrayList<Dimension>();
+        List<Filter> filters = new ArrayList<Filter>();
+        List<OrderByFilter> sorts = new ArrayList<OrderByFilter>();
+
+        String key = possibleValuesCache.createKey(pvds, results, accumulations, filters, sorts, null, 0, PAGE_SIZE);
+        if (key == null || possibleValuesCache.get(key) != null) {
+            return false;
+        }
+        possibleValuesCache.put(key, pvds, new DetailsQuery().performDetailsQuery(pvds, results, accumulations,
+                                                                                  filters, sorts, false, null, 0,
+                                                                                  PAGE_SIZE, true));
+        return true;
+    }
+
+    /**
+     * @return the possible values configurations of the combo boxes of <code>ds</code>. Building them also registers
+     *         their data sources with the cache.
+     */
+    private List<PossibleValuesConfiguration> getPossibleValuesConfigurations(JdbcOeDataSource ds) throws Exception {
+        List<Dimension> dimensions = new ArrayList<Dimension>();
+        dimensions.addAll(ds.getFilterDimensions());
+        dimensions.addAll(ds.getResultDimensions());
+
+        List<PossibleValuesConfiguration> configurations = new ArrayList<PossibleValuesConfiguration>();
+        if (ds instanceof JdbcOeDataEntrySource) {
+            JdbcOeDataEntrySource jdes = (JdbcOeDataEntrySource) ds;
+            dimensions.addAll(jdes.getAllEditDimensions());
+            for (ChildTableDetails ctd : jdes.getChildTableMap().values()) {
+                addIfNotNull(configurations, ds.getPossibleValuesConfigurationFromChildTableDetails(ctd));
+            }
+        }
+        for (Dimension d : dimensions) {
+            addIfNotNull(configurations, d.getPossibleValuesConfiguration());
+        }
+        return configurations;
+    }
+
+    private static void addIfNotNull(List<PossibleValuesConfiguration> configurations,
+                                     PossibleValuesConfiguration configuration) {
+        if (configuration != null) {
+            configurations.add(configuration);
+        }
+    }
+}
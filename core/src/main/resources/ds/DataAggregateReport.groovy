@@ -162,6 +162,8 @@ class DataAggregateReport extends GroovyDataSource {
                 return bean;
             }
         }
+        // reuse the joined dimensions, refreshing them in the background every 5 minutes or after edits
+        dj.setRefreshInterval(300000)
 
         setDimensionJoiner(dj)
     }
@@ -131,6 +131,8 @@ class DataAggregateReport_Entry extends GroovyOeDataEntrySource {
                 return bean;
             }
         }
+        // reuse the joined dimensions, refreshing them in the background every 5 minutes or after edits
+        dj.setRefreshInterval(300000)
 
         setDimensionJoiner(dj)
     }
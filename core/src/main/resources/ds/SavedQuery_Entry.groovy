@@ -27,14 +27,12 @@
 
 import edu.jhuapl.openessence.datasource.FieldType
 import edu.jhuapl.openessence.datasource.Filter
-import edu.jhuapl.openessence.datasource.OeDataSourceException
 import edu.jhuapl.openessence.datasource.QueryManipulationStore
 import edu.jhuapl.openessence.datasource.entry.CompleteRecord
 import edu.jhuapl.openessence.datasource.jdbc.DimensionBean
 import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter
 import edu.jhuapl.openessence.groovy.GroovyOeDataEntrySource
 import edu.jhuapl.openessence.security.OEUser
-import org.springframework.jdbc.core.RowCallbackHandler
 
 class SavedQuery_Entry extends GroovyOeDataEntrySource {
 
@@ -81,13 +79,11 @@ class SavedQuery_Entry extends GroovyOeDataEntrySource {
     }
 
     @Override
-    public void detailsQuery(QueryManipulationStore queryManipStore, RowCallbackHandler rcbh, Integer fzparm) throws OeDataSourceException {
-        // Adds a filter for logged in user
+    public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+        // Adds a filter for logged in user, to details and count queries alike
         Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
         OEUser user = (OEUser) getAuthentication().getPrincipal();
         filters.add(new EqFilter('UserId', user.getAttributes().get("Id")));
         queryManipStore.setWhereClauseFilters(filters);
-
-        super.detailsQuery(queryManipStore, rcbh, fzparm);
     }
 }
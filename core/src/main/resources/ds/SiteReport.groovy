@@ -118,6 +118,8 @@ public class SiteReport extends GroovyDataSource {
                 return bean;
             }
         }
+        // reuse the joined dimensions, refreshing them in the background every 5 minutes or after edits
+        dj.setRefreshInterval(300000)
 
         setDimensionJoiner(dj)
     }
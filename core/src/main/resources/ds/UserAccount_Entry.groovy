@@ -24,9 +24,7 @@
  * FOR LOST PROFITS.
  */
 
-import org.springframework.jdbc.core.RowCallbackHandler
 import edu.jhuapl.openessence.datasource.Filter
-import edu.jhuapl.openessence.datasource.OeDataSourceException
 import edu.jhuapl.openessence.datasource.QueryManipulationStore
 import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter
 import edu.jhuapl.openessence.security.OEUser
@@ -124,13 +122,12 @@ class UserAccount_Entry extends GroovyOeDataEntrySource {
     }
 
     @Override
-    public void detailsQuery(QueryManipulationStore queryManipStore, RowCallbackHandler rcbh, Integer fzparm) throws OeDataSourceException {
-        // Adds a filter for logged in user
+    public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+        // Adds a filter for logged in user, to details and count queries alike
         Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
         OEUser user = (OEUser) getAuthentication().getPrincipal();
         filters.add(new EqFilter("UserName", user.getUsername()));
         queryManipStore.setWhereClauseFilters(filters);
-        super.detailsQuery(queryManipStore, rcbh, fzparm);
     }
 
     @Override
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.config;
+
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncConfigTest {
+
+    private InstrumentedThreadPoolExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolFromProperties() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        executor = config(new MockEnvironment().withProperty(AsyncConfig.ASYNC_POOL_SIZE, "2")
+                                  .withProperty(AsyncConfig.ASYNC_POOL_MAX, "3")
+                                  .withProperty(AsyncConfig.ASYNC_QUEUE_SIZE, "0"), metricsRegistry)
+                .getAsyncExecutor();
+
+        assertEquals(2, executor.getCorePoolSize());
+        assertEquals(3, executor.getMaximumPoolSize());
+        assertTrue(executor.getQueue() instanceof SynchronousQueue);
+
+        Map<?, ?> gauges = (Map<?, ?>) metricsRegistry.getSnapshot().get("gauges");
+        assertEquals(0, gauges.get("async.queue.depth"));
+        assertEquals(0, gauges.get("async.active"));
+        assertEquals(0L, gauges.get("async.rejected"));
+        assertEquals(0.0, gauges.get("async.queue.time.mean"));
+        assertEquals(0.0, gauges.get("async.run.time.mean"));
+    }
+
+    @Test
+    public void testMaxBelowCoreSize() {
+        executor = config(new MockEnvironment().withProperty(AsyncConfig.ASYNC_POOL_SIZE, "4")
+                                  .withProperty(AsyncConfig.ASYNC_POOL_MAX, "1"), new MetricsRegistry())
+                .getAsyncExecutor();
+
+        assertEquals(4, executor.getMaximumPoolSize());
+        assertEquals(100, executor.getQueue().remainingCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeQueueSize() {
+        config(new MockEnvironment().withProperty(AsyncConfig.ASYNC_QUEUE_SIZE, "-1"), new MetricsRegistry())
+                .getAsyncExecutor();
+    }
+
+    private static AsyncConfig config(MockEnvironment env, MetricsRegistry metricsRegistry) {
+        AsyncConfig config = new AsyncConfig();
+        ReflectionTestUtils.setField(config, "env", env);
+        ReflectionTestUtils.setField(config, "metricsRegistry", metricsRegistry);
+        return config;
+    }
+}
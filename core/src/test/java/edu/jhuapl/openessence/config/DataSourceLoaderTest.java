@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.config;
+
+import edu.jhuapl.openessence.config.DataSourceLoader.CompiledScript;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionJoiner;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DataSourceLoaderTest {
+
+    private Path tempDir;
+    private Path scriptDir;
+    private Path cacheDir;
+    private DataSourceLoader loader;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("DataSourceLoaderTest");
+        scriptDir = Files.createDirectory(tempDir.resolve("ds"));
+        cacheDir = tempDir.resolve("cache");
+        DataSourceLoader.createCacheDir(cacheDir);
+
+        loader = new DataSourceLoader();
+        ReflectionTestUtils.setField(loader, "scriptClassLoader",
+                                     DataSourceLoader.createScriptClassLoader(scriptDir.toUri().toURL()));
+        ReflectionTestUtils.setField(loader, "cacheDir", cacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(tempDir.toFile());
+    }
+
+    @Test
+    public void testReloadFromCache() throws Exception {
+        Resource greeting = script("Greeting", "class Greeting { String toString() { 'hello' } }");
+        assertEquals("hello", newInstance(loader.compile(greeting)).toString());
+        Path entry = single(cacheEntries());
+
+        // a changed script gets a new entry
+        script("Greeting", "class Greeting { String toString() { 'bye' } }");
+        assertEquals("bye", newInstance(loader.compile(greeting)).toString());
+        List<Path> entries = cacheEntries();
+        assertEquals(2, entries.size());
+        entries.remove(entry);
+        byte[] byeClass = Files.readAllBytes(single(entries).resolve("Greeting.class"));
+
+        // the original script comes from its entry, so swapping the entry's bytecode shows through
+        script("Greeting", "class Greeting { String toString() { 'hello' } }");
+        Files.write(entry.resolve("Greeting.class"), byeClass);
+        CompiledScript cached = loader.compile(greeting);
+        assertEquals("Greeting", cached.getMainClassName());
+        assertEquals("bye", newInstance(cached).toString());
+    }
+
+    @Test
+    public void testCorruptEntryIsRecompiled() throws Exception {
+        Resource greeting = script("Greeting", "class Greeting { String toString() { 'hello' } }");
+        loader.compile(greeting);
+        byte[] corrupt = "not a class".getBytes(StandardCharsets.UTF_8);
+        Files.write(single(cacheEntries()).resolve("Greeting.class"), corrupt);
+
+        assertEquals("hello", newInstance(loader.compile(greeting)).toString());
+        assertFalse(Arrays.equals(corrupt, Files.readAllBytes(single(cacheEntries()).resolve("Greeting.class"))));
+    }
+
+    @Test
+    public void testIncompleteEntryIsRecompiled() throws Exception {
+        Resource greeting = script("Greeting", "class Greeting { String toString() { 'hello' } }");
+        loader.compile(greeting);
+        Files.delete(single(cacheEntries()).resolve("main"));
+
+        assertEquals("hello", newInstance(loader.compile(greeting)).toString());
+        assertTrue(Files.exists(single(cacheEntries()).resolve("main")));
+    }
+
+    @Test
+    public void testScriptUsesClassOfOtherScript() throws Exception {
+        script("Helper", "class Helper { static String greet() { 'hello from helper' } }");
+        Resource main = script("Main", "class Main { String toString() { Helper.greet() } }");
+
+        CompiledScript compiled = loader.compile(main);
+        assertEquals(Collections.singleton("Main"), compiled.getClasses().keySet());
+        assertEquals("hello from helper", newInstance(compiled).toString());
+
+        // the entry would go stale when Helper changes
+        assertEquals(0, cacheEntries().size());
+    }
+
+    @Test
+    public void testCacheDirWritableByOthers() throws Exception {
+        if (!cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+
+        Files.setPosixFilePermissions(cacheDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        try {
+            DataSourceLoader.createCacheDir(cacheDir);
+            fail("Expected a cache directory anyone can write to to be refused");
+        } catch (IOException e) {
+            assertEquals(cacheDir + " is writable by other users", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNewCacheDirIsPrivate() throws Exception {
+        if (!cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(cacheDir));
+    }
+
+    @Test
+    public void testReloadSwapsValidatedDataSource() throws Exception {
+        Symptoms old = new Symptoms();
+        ConcurrentMap<String, JdbcOeDataSource> dataSources = new ConcurrentHashMap<String, JdbcOeDataSource>();
+        DimensionJoiner joiner = joinedReport(old, dataSources);
+        Symptoms reloaded = new Symptoms();
+
+        assertSame(reloaded, reload(reloaded, dataSources));
+
+        assertEquals(1, reloaded.validations);
+        assertSame(reloaded, dataSources.get("Symptoms"));
+        joiner.joinDimensions();
+        assertEquals(Collections.<JdbcOeDataSource>singleton(reloaded), joiner.getJoinedDimensions().keySet());
+    }
+
+    @Test
+    public void testInvalidDataSourceIsNotSwapped() throws Exception {
+        Symptoms old = new Symptoms();
+        ConcurrentMap<String, JdbcOeDataSource> dataSources = new ConcurrentHashMap<String, JdbcOeDataSource>();
+        DimensionJoiner joiner = joinedReport(old, dataSources);
+        Symptoms reloaded = new Symptoms();
+        reloaded.valid = false;
+
+        try {
+            reload(reloaded, dataSources);
+            fail("Expected the invalid data source to be refused");
+        } catch (OeDataSourceException e) {
+            assertEquals("Unknown column", e.getMessage());
+        }
+
+        assertSame(old, dataSources.get("Symptoms"));
+        joiner.joinDimensions();
+        assertEquals(Collections.<JdbcOeDataSource>singleton(old), joiner.getJoinedDimensions().keySet());
+    }
+
+    /**
+     * Adds <code>symptoms</code> and a report that joins its dimensions to <code>dataSources</code>.
+     *
+     * @return the report's joiner
+     */
+    private static DimensionJoiner joinedReport(Symptoms symptoms,
+                                                ConcurrentMap<String, JdbcOeDataSource> dataSources) {
+        JdbcOeDataSource report = new JdbcOeDataSource();
+        DimensionJoiner joiner = new DimensionJoiner(report, Collections.singletonMap(
+                symptoms, Collections.singletonList(symptoms.getBean("Id"))));
+        report.setDimensionJoiner(joiner);
+        dataSources.put("Symptoms", symptoms);
+        dataSources.put("Report", report);
+        return joiner;
+    }
+
+    /**
+     * Reloads the Symptoms script, with <code>next</code> standing in for the data source it defines.
+     */
+    private JdbcOeDataSource reload(final JdbcOeDataSource next, ConcurrentMap<String, JdbcOeDataSource> dataSources)
+            throws Exception {
+        DataSourceLoader reloader = new DataSourceLoader() {
+            @Override
+            JdbcOeDataSource createDataSource(CompiledScript script) {
+                return next;
+            }
+        };
+        ReflectionTestUtils.setField(reloader, "scriptClassLoader",
+                                     DataSourceLoader.createScriptClassLoader(scriptDir.toUri().toURL()));
+        return reloader.reloadDataSource(script("Symptoms", "class Symptoms {}"), dataSources);
+    }
+
+    private Resource script(String className, String source) throws IOException {
+        Path script = scriptDir.resolve(className + ".groovy");
+        Files.write(script, source.getBytes(StandardCharsets.UTF_8));
+        return new FileSystemResource(script.toFile());
+    }
+
+    private List<Path> cacheEntries() throws IOException {
+        List<Path> entries = new ArrayList<Path>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cacheDir)) {
+            for (Path dir : dirs) {
+                entries.add(dir);
+            }
+        }
+        return entries;
+    }
+
+    private static Path single(List<Path> paths) {
+        assertEquals(paths.toString(), 1, paths.size());
+        return paths.get(0);
+    }
+
+    private static Object newInstance(CompiledScript script) throws Exception {
+        return script.getClassLoader().loadClass(script.getMainClassName()).newInstance();
+    }
+
+    /**
+     * Data source with no records, that fails validation unless {@link #valid}.
+     */
+    private static class Symptoms extends JdbcOeDataSource {
+
+        private boolean valid = true;
+        private int validations;
+
+        private Symptoms() {
+            DimensionBean id = new DimensionBean();
+            id.setId("Id");
+            id.setSqlCol("id");
+            id.setSqlType(FieldType.INTEGER);
+            id.setIsResult(true);
+            setDimensions(Collections.singletonList(id));
+        }
+
+        @Override
+        public void validate() {
+            validations++;
+            if (!valid) {
+                throw new OeDataSourceException("Unknown column");
+            }
+        }
+
+        @Override
+        public Collection<Record> detailsQuery(QueryManipulationStore queryManipStore) {
+            return new ArrayList<Record>();
+        }
+    }
+}
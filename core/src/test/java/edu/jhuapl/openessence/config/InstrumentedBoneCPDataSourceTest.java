@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.config;
+
+import edu.jhuapl.openessence.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedBoneCPDataSourceTest {
+
+    private MetricsRegistry metrics;
+    private InstrumentedBoneCPDataSource ds;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricsRegistry();
+        ds = new InstrumentedBoneCPDataSource(metrics);
+        ds.setDriverClass(StubDriver.class.getName());
+        ds.setJdbcUrl(StubDriver.URL);
+        ds.setUsername("oe");
+        ds.setPassword("");
+        ds.setPartitionCount(1);
+        // a full partition up front, so no connections are added in the background
+        ds.setMinConnectionsPerPartition(2);
+        ds.setMaxConnectionsPerPartition(2);
+        // so that close() checks connections in before it returns
+        ds.setReleaseHelperThreads(0);
+        ds.setDisableJMX(true);
+    }
+
+    @After
+    public void tearDown() {
+        ds.close();
+    }
+
+    @Test
+    public void testGaugesBeforeFirstConnection() {
+        assertEquals(0, gauges().get("db.pool.leased"));
+        assertEquals(0, gauges().get("db.pool.free"));
+        assertEquals(0L, gauges().get("db.pool.statements.cache.hits"));
+    }
+
+    @Test
+    public void testCheckOutAndCheckIn() throws Exception {
+        Connection first = ds.getConnection();
+        Connection second = ds.getConnection();
+
+        assertEquals(2, gauges().get("db.pool.leased"));
+        assertEquals(2, gauges().get("db.pool.partition.0.inUse"));
+        assertEquals(0, gauges().get("db.pool.partition.0.idle"));
+        assertEquals(2L, counters().get("db.pool.connections.opened"));
+        assertTrue(((Map<?, ?>) metrics.getSnapshot().get("timers")).containsKey("db.pool.acquire"));
+
+        first.close();
+        assertEquals(1, gauges().get("db.pool.leased"));
+        assertEquals(1, gauges().get("db.pool.partition.0.inUse"));
+        assertEquals(1, gauges().get("db.pool.partition.0.idle"));
+
+        second.close();
+        assertEquals(0, gauges().get("db.pool.leased"));
+        assertEquals(0, gauges().get("db.pool.partition.0.inUse"));
+        assertEquals(2, gauges().get("db.pool.partition.0.idle"));
+    }
+
+    @Test
+    public void testConnectionsClosedWithPool() throws Exception {
+        ds.getConnection().close();
+        ds.close();
+
+        assertEquals(2L, counters().get("db.pool.connections.closed"));
+    }
+
+    private Map<?, ?> gauges() {
+        return (Map<?, ?>) metrics.getSnapshot().get("gauges");
+    }
+
+    private Map<?, ?> counters() {
+        return (Map<?, ?>) metrics.getSnapshot().get("counters");
+    }
+
+    /**
+     * Hands out connections that do nothing, so the pool can run without a database.
+     */
+    public static class StubDriver implements Driver {
+
+        private static final String URL = "jdbc:oestub:";
+
+        static {
+            try {
+                DriverManager.registerDriver(new StubDriver());
+            } catch (SQLException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            return acceptsURL(url) ? stub(Connection.class) : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        /**
+         * @return an object whose methods return <code>false</code>, 0 or <code>null</code>, except that a connection
+         *         is valid until it's closed and has metadata
+         */
+        private static <T> T stub(final Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[]{type},
+                                                    new InvocationHandler() {
+                private boolean closed;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    Class<?> returnType = method.getReturnType();
+                    if (name.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (name.equals("toString")) {
+                        return "Stub" + type.getSimpleName();
+                    } else if (name.equals("close")) {
+                        closed = true;
+                        return null;
+                    } else if (name.equals("isClosed")) {
+                        return closed;
+                    } else if (name.equals("isValid")) {
+                        return !closed;
+                    } else if (returnType == DatabaseMetaData.class) {
+                        return stub(DatabaseMetaData.class);
+                    } else if (returnType == boolean.class) {
+                        return false;
+                    } else if (returnType == int.class) {
+                        return 0;
+                    } else if (returnType == long.class) {
+                        return 0L;
+                    }
+                    return null;
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.config;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedThreadPoolExecutorTest {
+
+    private InstrumentedThreadPoolExecutor executor;
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRejectsWhenFull() throws Exception {
+        executor = new InstrumentedThreadPoolExecutor(1, 1, 1, "test-");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Blocker(started, release));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(new Blocker(new CountDownLatch(1), release));
+
+        try {
+            executor.execute(new Blocker(new CountDownLatch(1), release));
+            fail("Expected the full pool to reject the task");
+        } catch (RejectedExecutionException e) {
+            assertEquals("Server is busy, try again later", e.getMessage());
+        }
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(1, executor.getActiveCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testNoQueue() throws Exception {
+        executor = new InstrumentedThreadPoolExecutor(1, 2, 0, "test-");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        executor.execute(new Blocker(started, release));
+        executor.execute(new Blocker(started, release));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            executor.execute(new Blocker(new CountDownLatch(1), release));
+            fail("Expected the busy pool to reject the task");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, executor.getRejectedCount());
+        }
+        assertEquals(0, executor.getQueueDepth());
+        release.countDown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeQueue() {
+        executor = new InstrumentedThreadPoolExecutor(1, 1, 0, "test-");
+        new InstrumentedThreadPoolExecutor(1, 1, -1, "test-");
+    }
+
+    @Test
+    public void testTimesCountFinishedTasksOnly() throws Exception {
+        executor = new InstrumentedThreadPoolExecutor(1, 1, 1, "test-");
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch firstRelease = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch secondRelease = new CountDownLatch(1);
+
+        executor.execute(new Blocker(firstStarted, firstRelease));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        executor.execute(new Blocker(secondStarted, secondRelease));
+        Thread.sleep(200);
+        firstRelease.countDown();
+        assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+
+        // the second task waited ~200ms but has not finished, so only the first task is averaged
+        assertTrue(String.valueOf(executor.getAverageQueueTime()), executor.getAverageQueueTime() < 100);
+        assertTrue(String.valueOf(executor.getAverageRunTime()), executor.getAverageRunTime() >= 200);
+        assertTrue(executor.getMaxRunTime() >= 200);
+
+        secondRelease.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertTrue(String.valueOf(executor.getAverageQueueTime()), executor.getAverageQueueTime() >= 100);
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    /**
+     * Counts down <code>started</code>, then runs until <code>release</code> is counted down.
+     */
+    private static class Blocker implements Runnable {
+
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        private Blocker(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.controller;
+
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.entry.ParentTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcBulkOeDataEntrySource;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InputControllerTest {
+
+    private InputController controller;
+    private RecordingDataSource ds;
+
+    @Before
+    public void setUp() {
+        controller = new InputController();
+        ReflectionTestUtils.setField(controller, "queryResultCache", new QueryResultCache(10, 60000));
+        ReflectionTestUtils.setField(controller, "possibleValuesCache", new PossibleValuesCache(10, 60000));
+        ReflectionTestUtils.setField(controller, "dataSources", new ConcurrentHashMap<String, JdbcOeDataSource>());
+
+        ds = new RecordingDataSource();
+        ds.setBatchSize(2);
+        ds.setFileImportEnabled(true);
+    }
+
+    @Test
+    public void testBadRowAndPartialBatch() throws Exception {
+        Map<String, Object> result = importCsv("a,1\nb,x\nc,3\n\nd,4\n");
+
+        assertEquals(Arrays.asList(2, 1), ds.batchSizes);
+        String message = "Request parameter for dimension Count does not match configured type INTEGER.";
+        assertEquals(Arrays.asList(event("type", "error", "row", 2, "message", message),
+                                   event("type", "progress", "rowsWritten", 2),
+                                   event("type", "progress", "rowsWritten", 3)), result.get("events"));
+        assertEquals(3, result.get("rowsWritten"));
+        assertEquals(1, result.get("rowsRejected"));
+        assertEquals(true, result.get("success"));
+    }
+
+    @Test
+    public void testFailedBatchEndsWithError() throws Exception {
+        ds.failOnBatch = 2;
+
+        Map<String, Object> result = importCsv("a,1\nb,2\nc,3\n");
+
+        assertEquals(Collections.singletonList(event("type", "progress", "rowsWritten", 2)), result.get("events"));
+        assertEquals(false, result.get("success"));
+        assertEquals("Batch failed", result.get("message"));
+    }
+
+    @Test
+    public void testFileImportDisabled() throws Exception {
+        ds.setFileImportEnabled(false);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Map<String, Object> result = importCsv(ds, "a,1\n", response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("File import is not enabled for RecordingDataSource", result.get("message"));
+        assertEquals(false, result.get("success"));
+        assertTrue(ds.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void testNotDataEntrySource() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Map<String, Object> result = importCsv(new JdbcOeDataSource(), "a,1\n", response);
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("JdbcOeDataSource is not a data entry data source", result.get("message"));
+        assertEquals(false, result.get("success"));
+    }
+
+    private Map<String, Object> importCsv(String csv) throws Exception {
+        return importCsv(ds, csv, new MockHttpServletResponse());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> importCsv(JdbcOeDataSource target, String csv, MockHttpServletResponse response)
+            throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "visits.csv", "text/csv", csv.getBytes("UTF-8"));
+
+        controller.importCsv(file, target, "Name,Count", ',', '"', 0, response);
+
+        return new ObjectMapper().readValue(response.getContentAsString(), Map.class);
+    }
+
+    private static Map<String, Object> event(Object... keysAndValues) {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            event.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return event;
+    }
+
+    private static DimensionBean bean(String id, FieldType sqlType, boolean autoGen) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(id.toLowerCase());
+        bean.setSqlType(sqlType);
+        bean.setIsEdit(true);
+        bean.setIsAutoGen(autoGen);
+        return bean;
+    }
+
+    /**
+     * Records the size of each batch instead of writing it, and fails the n-th batch, if set.
+     */
+    private static class RecordingDataSource extends JdbcBulkOeDataEntrySource {
+
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        private int failOnBatch;
+
+        private RecordingDataSource() {
+            setTableName("visits");
+            setDimensions(Arrays.asList(bean("Id", FieldType.INTEGER, true), bean("Name", FieldType.TEXT, false),
+                                        bean("Count", FieldType.INTEGER, false)));
+
+            ParentTableDetails parent = new ParentTableDetails();
+            parent.setTableName("visits");
+            parent.setPks(Collections.singleton("Id"));
+            parent.setEditDimensionIds(Arrays.asList("Id", "Name", "Count"));
+            setParentTableDetails(parent);
+        }
+
+        @Override
+        public void addRecords(List<Record> records) {
+            if (batchSizes.size() + 1 == failOnBatch) {
+                throw new IllegalStateException("Batch failed");
+            }
+            batchSizes.add(records.size());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.controller;
+
+import edu.jhuapl.openessence.config.InstrumentedThreadPoolExecutor;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.ExceptionHandlerExceptionResolver;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class OeControllerTest {
+
+    private final InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(1, 1, 0, "test-");
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRejectedTaskIsServiceUnavailable() throws Exception {
+        // @Async adapts a plain executor the same way
+        BusyController controller = new BusyController(new TaskExecutorAdapter(executor));
+        controller.report();
+
+        RejectedExecutionException rejected = null;
+        try {
+            controller.report();
+            fail("Expected the busy executor to reject the task");
+        } catch (RejectedExecutionException e) {
+            rejected = e;
+        }
+        assertEquals(1, executor.getRejectedCount());
+
+        MockHttpServletResponse response = resolve(controller, rejected);
+        assertEquals(503, response.getStatus());
+        Map<?, ?> body = new ObjectMapper().readValue(response.getContentAsString(), Map.class);
+        assertEquals(false, body.get("success"));
+        assertEquals("Server is busy, try again later", body.get("message"));
+    }
+
+    private static MockHttpServletResponse resolve(OeController controller, Exception e) throws Exception {
+        ExceptionHandlerExceptionResolver resolver = new ExceptionHandlerExceptionResolver();
+        resolver.setMessageConverters(
+                Arrays.<HttpMessageConverter<?>>asList(new MappingJacksonHttpMessageConverter()));
+        resolver.afterPropertiesSet();
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(resolver.resolveException(new MockHttpServletRequest(), response,
+                                                new HandlerMethod(controller, "report"), e));
+        return response;
+    }
+
+    /**
+     * Starts a task that runs until the test ends.
+     */
+    private class BusyController extends OeController {
+
+        private final AsyncTaskExecutor taskExecutor;
+
+        private BusyController(AsyncTaskExecutor taskExecutor) {
+            this.taskExecutor = taskExecutor;
+        }
+
+        public @ResponseBody String report() {
+            taskExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            return "started";
+        }
+    }
+}
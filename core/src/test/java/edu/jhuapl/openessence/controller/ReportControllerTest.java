@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.controller;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportControllerTest {
+
+    @Test
+    public void testAwaitDetection() throws Exception {
+        FutureTask<String> done = task("result");
+        done.run();
+
+        assertEquals("result", ReportController.awaitDetection(Arrays.<Future<String>>asList(done), 0,
+                                                               System.currentTimeMillis() + 1000));
+    }
+
+    @Test
+    public void testTimeoutCancelsAllDetections() throws Exception {
+        FutureTask<String> done = task("result");
+        done.run();
+        FutureTask<String> stuck = task("never run");
+        FutureTask<String> queued = task("never run");
+        List<Future<String>> detections = Arrays.<Future<String>>asList(done, stuck, queued);
+
+        long start = System.currentTimeMillis();
+        try {
+            ReportController.awaitDetection(detections, 1, start + 50);
+            fail("Expected the detection to time out");
+        } catch (TimeoutException e) {
+            assertTrue(System.currentTimeMillis() - start >= 50);
+            assertTrue(stuck.isCancelled());
+            assertTrue(queued.isCancelled());
+            assertEquals("Failure to create timeseries:<BR>Detection did not finish within 50 ms",
+                         ReportController.getDetectionErrorMessage(e, 50));
+        }
+    }
+
+    @Test
+    public void testPassedDeadline() throws Exception {
+        FutureTask<String> stuck = task("never run");
+        try {
+            ReportController.awaitDetection(Arrays.<Future<String>>asList(stuck), 0, System.currentTimeMillis() - 1);
+            fail("Expected the detection to time out");
+        } catch (TimeoutException e) {
+            assertTrue(stuck.isCancelled());
+        }
+    }
+
+    @Test
+    public void testFailedDetection() throws Exception {
+        FutureTask<String> failed = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalStateException("Baseline too short");
+            }
+        });
+        failed.run();
+        FutureTask<String> queued = task("never run");
+
+        try {
+            ReportController.awaitDetection(Arrays.<Future<String>>asList(failed, queued), 0,
+                                            System.currentTimeMillis() + 1000);
+            fail("Expected the detection to fail");
+        } catch (ExecutionException e) {
+            assertTrue(queued.isCancelled());
+            assertEquals("Failure to create timeseries:<BR>Baseline too short",
+                         ReportController.getDetectionErrorMessage(e, 1000));
+        }
+    }
+
+    private static FutureTask<String> task(final String result) {
+        return new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                return result;
+            }
+        });
+    }
+}
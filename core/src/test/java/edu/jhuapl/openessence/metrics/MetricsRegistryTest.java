@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.metrics;
+
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryLimiter;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void testQueryLimiterGauges() {
+        Visits ds = new Visits();
+        QueryLimiter limiter = new QueryLimiter(2, 0);
+        registry.queryLimited(ds, limiter);
+        limiter.acquire("Visits");
+
+        assertEquals(1, gauges().get("query.active.ds.Visits"));
+        assertEquals(0, gauges().get("query.waiting.ds.Visits"));
+
+        // a reloaded data source's limiter replaces the old one
+        registry.queryLimited(ds, new QueryLimiter(2, 0));
+        assertEquals(0, gauges().get("query.active.ds.Visits"));
+    }
+
+    @Test
+    public void testQueryQueued() {
+        registry.queryQueued(new Visits(), 1000000, false);
+        registry.queryQueued(new Visits(), 2000000, true);
+
+        assertEquals(1L, counters().get("query.rejected.ds.Visits"));
+        assertTrue(((Map<?, ?>) registry.getSnapshot().get("timers")).containsKey("query.wait.ds.Visits"));
+        assertTrue(gauges().isEmpty());
+    }
+
+    private Map<?, ?> gauges() {
+        return (Map<?, ?>) registry.getSnapshot().get("gauges");
+    }
+
+    private Map<?, ?> counters() {
+        return (Map<?, ?>) registry.getSnapshot().get("counters");
+    }
+
+    private static class Visits extends JdbcOeDataSource {
+    }
+}
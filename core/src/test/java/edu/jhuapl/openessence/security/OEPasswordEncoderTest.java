@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.security;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OEPasswordEncoderTest {
+
+    private static final EncryptionDetails SHA = new EncryptionDetails("salt", "SHA-512");
+
+    private CountingEncoder encoder;
+    private String alice;
+    private String bob;
+    private String carol;
+
+    @Before
+    public void setUp() {
+        encoder = new CountingEncoder();
+        alice = encoder.encodePassword("alice", SHA);
+        bob = encoder.encodePassword("bob", SHA);
+        carol = encoder.encodePassword("carol", SHA);
+        encoder.encoded = 0;
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertEquals(2, encoder.encoded);
+    }
+
+    @Test
+    public void testRemembersVerifications() {
+        encoder.setVerifiedCache(10, 60000);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertEquals(1, encoder.encoded);
+    }
+
+    @Test
+    public void testDoesNotRememberFailures() {
+        encoder.setVerifiedCache(10, 60000);
+        assertFalse(encoder.isPasswordValid(alice, "wrong", SHA));
+        assertFalse(encoder.isPasswordValid(alice, "wrong", SHA));
+        assertEquals(2, encoder.encoded);
+
+        // a verified password doesn't match another hash
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertFalse(encoder.isPasswordValid(bob, "alice", SHA));
+        assertFalse(encoder.isPasswordValid(alice, "alice", new EncryptionDetails("pepper", "SHA-512")));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        encoder.setVerifiedCache(10, 1);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        Thread.sleep(20);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertEquals(2, encoder.encoded);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        encoder.setVerifiedCache(2, 60000);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertTrue(encoder.isPasswordValid(bob, "bob", SHA));
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertTrue(encoder.isPasswordValid(carol, "carol", SHA));
+        assertEquals(3, encoder.encoded);
+
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertEquals(3, encoder.encoded);
+        assertTrue(encoder.isPasswordValid(bob, "bob", SHA));
+        assertEquals(4, encoder.encoded);
+    }
+
+    @Test
+    public void testReconfiguringClears() {
+        encoder.setVerifiedCache(10, 60000);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        encoder.setVerifiedCache(10, 60000);
+        assertTrue(encoder.isPasswordValid(alice, "alice", SHA));
+        assertEquals(2, encoder.encoded);
+    }
+
+    /**
+     * Counts the hashes computed to check passwords.
+     */
+    private static class CountingEncoder extends OEPasswordEncoder {
+
+        private int encoded;
+
+        @Override
+        public String encodePassword(String rawPass, Object encryptDetails) {
+            encoded++;
+            return super.encodePassword(rawPass, encryptDetails);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.security;
+
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class OEUserCacheTest {
+
+    private OEUserCache cache;
+
+    @Before
+    public void setUp() {
+        cache = create(2, 60000);
+    }
+
+    @Test
+    public void testReturnsCopies() {
+        OEUser user = user("alice");
+        cache.putUserInCache(user);
+        user.eraseCredentials();
+
+        OEUser cached = (OEUser) cache.getUserFromCache("alice");
+        assertNotSame(user, cached);
+        assertEquals("secret", cached.getPassword());
+        assertEquals("ROLE_USER", cached.getAuthorities().iterator().next().getAuthority());
+
+        cached.eraseCredentials();
+        assertEquals("secret", cache.getUserFromCache("alice").getPassword());
+    }
+
+    @Test
+    public void testOnlyCachesOEUsers() {
+        cache.putUserInCache(new User("bob", "secret", Collections.<GrantedAuthority>emptyList()));
+        assertNull(cache.getUserFromCache("bob"));
+    }
+
+    @Test
+    public void testDisabled() {
+        OEUserCache noEntries = create(0, 60000);
+        noEntries.putUserInCache(user("alice"));
+        assertNull(noEntries.getUserFromCache("alice"));
+
+        OEUserCache noAge = create(10, 0);
+        noAge.putUserInCache(user("alice"));
+        assertNull(noAge.getUserFromCache("alice"));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        OEUserCache shortLived = create(10, 1);
+        shortLived.putUserInCache(user("alice"));
+        Thread.sleep(20);
+
+        assertNull(shortLived.getUserFromCache("alice"));
+        assertEquals(0, shortLived.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.putUserInCache(user("alice"));
+        cache.putUserInCache(user("bob"));
+        cache.getUserFromCache("alice");
+        cache.putUserInCache(user("carol"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getUserFromCache("alice"));
+        assertNull(cache.getUserFromCache("bob"));
+        assertNotNull(cache.getUserFromCache("carol"));
+    }
+
+    @Test
+    public void testRemove() {
+        cache.putUserInCache(user("alice"));
+        cache.removeUserFromCache("alice");
+        assertNull(cache.getUserFromCache("alice"));
+    }
+
+    @Test
+    public void testInvalidateOnWritesToUserTables() {
+        JdbcOeDataSource users = new JdbcOeDataSource();
+        users.setBaseDetailsQuery("public.users u JOIN user_roles r ON r.user_id = u.id");
+        Map<String, JdbcOeDataSource> dataSources = new HashMap<String, JdbcOeDataSource>();
+        dataSources.put("User", users);
+        ReflectionTestUtils.setField(cache, "dataSources", dataSources);
+        cache.putUserInCache(user("alice"));
+
+        cache.invalidate(new JdbcOeDataSource());
+        cache.invalidate(entrySource("visits"));
+        assertEquals(1, cache.size());
+
+        cache.invalidate(entrySource("user_roles"));
+        assertEquals(0, cache.size());
+    }
+
+    private static OEUserCache create(int maxEntries, long maxAge) {
+        OEUserCache cache = new OEUserCache(maxEntries, maxAge);
+        ReflectionTestUtils.setField(cache, "dataSources", new HashMap<String, JdbcOeDataSource>());
+        return cache;
+    }
+
+    private static JdbcOeDataEntrySource entrySource(String tableName) {
+        JdbcOeDataEntrySource ds = new JdbcOeDataEntrySource();
+        ds.setTableName(tableName);
+        return ds;
+    }
+
+    private static OEUser user(String name) {
+        return new OEUser(name, "secret", Arrays.asList(new SimpleGrantedAuthority("ROLE_USER")), null, "salt",
+                          "BCrypt");
+    }
+}
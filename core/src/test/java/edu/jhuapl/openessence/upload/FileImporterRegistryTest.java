@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.upload;
+
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+
+import org.junit.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FileImporterRegistryTest {
+
+    private final FileImporterRegistry registry = new FileImporterRegistry();
+
+    @Test
+    public void testNoImporterUnlessEnabled() {
+        assertNull(registry.get(new RecordingDataSource()));
+        assertNull(registry.get(new JdbcOeDataSource()));
+    }
+
+    @Test
+    public void testFallbackWhenEnabled() {
+        RecordingDataSource ds = new RecordingDataSource();
+        ds.setFileImportEnabled(true);
+
+        FileImporter<?> importer = registry.get(ds);
+        assertTrue(importer instanceof XlsxRecordImporter);
+        assertSame(importer, registry.get(ds));
+    }
+
+    @Test
+    public void testRegisteredImporterWins() {
+        RecordingDataSource ds = new RecordingDataSource();
+        ds.setFileImportEnabled(true);
+        FileImporter<String> importer = new FileImporter<String>() {
+            @Override
+            public String importFile(MultipartFile file) {
+                return null;
+            }
+        };
+
+        registry.add(ds, importer);
+        assertSame(importer, registry.get(ds));
+    }
+}
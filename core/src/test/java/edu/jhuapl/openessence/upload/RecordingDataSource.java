@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.upload;
+
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.entry.ParentTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcBulkOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bulk data entry source for a "visits" table that keeps the batches it's given instead of writing them. Its edit
+ * dimensions are an auto generated Id, Name, Count, Visit and Score.
+ */
+class RecordingDataSource extends JdbcBulkOeDataEntrySource {
+
+    final List<List<Record>> batches = new ArrayList<List<Record>>();
+
+    RecordingDataSource() {
+        configure(this);
+    }
+
+    /**
+     * Sets up <code>jdes</code> with the table and dimensions of this data source.
+     */
+    static void configure(JdbcOeDataEntrySource jdes) {
+        jdes.setTableName("visits");
+        jdes.setDimensions(Arrays.asList(bean("Id", FieldType.INTEGER, true), bean("Name", FieldType.TEXT, false),
+                                         bean("Count", FieldType.INTEGER, false),
+                                         bean("Visit", FieldType.DATE, false), bean("Score", FieldType.DOUBLE, false)));
+
+        ParentTableDetails parent = new ParentTableDetails();
+        parent.setTableName("visits");
+        parent.setPks(Collections.singleton("Id"));
+        parent.setEditDimensionIds(Arrays.asList("Id", "Name", "Count", "Visit", "Score"));
+        jdes.setParentTableDetails(parent);
+    }
+
+    @Override
+    public void addRecords(List<Record> records) {
+        batches.add(records);
+    }
+
+    /**
+     * @return values of the records of every batch, in order
+     */
+    List<Object> values(String dimensionId) {
+        List<Object> values = new ArrayList<Object>();
+        for (List<Record> batch : batches) {
+            for (Record record : batch) {
+                values.add(record.getValue(dimensionId));
+            }
+        }
+        return values;
+    }
+
+    private static DimensionBean bean(String id, FieldType sqlType, boolean autoGen) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(id.toLowerCase());
+        bean.setSqlType(sqlType);
+        bean.setIsEdit(true);
+        bean.setIsAutoGen(autoGen);
+        return bean;
+    }
+}
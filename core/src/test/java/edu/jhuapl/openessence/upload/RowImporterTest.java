@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.upload;
+
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.entry.CompleteRecord;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RowImporterTest {
+
+    private RecordingDataSource ds;
+    private List<String> events;
+    private RowImporter.Listener listener;
+
+    @Before
+    public void setUp() {
+        ds = new RecordingDataSource();
+        ds.setBatchSize(2);
+
+        events = new ArrayList<String>();
+        listener = new RowImporter.Listener() {
+            @Override
+            public void rowRejected(int rowNumber, String message) {
+                events.add("rejected " + rowNumber);
+            }
+
+            @Override
+            public void batchWritten(int rowsWritten) {
+                events.add("written " + rowsWritten);
+            }
+        };
+    }
+
+    @Test
+    public void testConvertsCells() throws Exception {
+        RowImporter importer = new RowImporter(ds, new String[]{"Name", "Count", "Visit", "Score"}, listener);
+
+        importer.addRow(1, new String[]{"a", "1", "1356998400000", "1.5"});
+        importer.addRow(2, new String[]{"", "", "01-02-2013"});
+        importer.finish();
+
+        assertEquals(Arrays.<Object>asList("a", ""), ds.values("Name"));
+        assertEquals(Arrays.<Object>asList(1, null), ds.values("Count"));
+        assertEquals(new Date(1356998400000L), ds.values("Visit").get(0));
+        assertEquals(Arrays.<Object>asList(1.5, null), ds.values("Score"));
+    }
+
+    @Test
+    public void testRejectedAndEmptyRows() throws Exception {
+        RowImporter importer = new RowImporter(ds, new String[]{"Name", "Count"}, listener);
+
+        importer.addRow(1, new String[]{"a", "one"});
+        importer.addRow(2, new String[]{"", ""});
+        importer.addRow(3, new String[]{"b", "2"});
+        importer.finish();
+
+        assertEquals(Arrays.asList("rejected 1", "written 1"), events);
+        assertEquals(1, importer.getRowsWritten());
+        assertEquals(1, importer.getRowsRejected());
+        assertEquals(Arrays.<Object>asList("b"), ds.values("Name"));
+    }
+
+    @Test
+    public void testWritesFullBatchesThenTheRest() throws Exception {
+        RowImporter importer = new RowImporter(ds, new String[]{"Name"}, listener);
+
+        for (int i = 1; i <= 5; i++) {
+            importer.addRow(i, new String[]{"row " + i});
+        }
+        assertEquals(2, ds.batches.size());
+
+        assertEquals(5, importer.finish());
+        assertEquals(3, ds.batches.size());
+        assertEquals(1, ds.batches.get(2).size());
+        assertEquals(Arrays.asList("written 2", "written 4", "written 5"), events);
+    }
+
+    @Test
+    public void testNonBulkSourceWritesEachRecord() throws Exception {
+        final List<Object> written = new ArrayList<Object>();
+        JdbcOeDataEntrySource single = new JdbcOeDataEntrySource() {
+            @Override
+            public Map<String, Object> addCompleteRecord(CompleteRecord completeRecord, boolean ignoreSpecialSql)
+                    throws OeDataSourceAccessException {
+                written.add(completeRecord.getParentRecord().getValue("Name"));
+                return null;
+            }
+        };
+        RecordingDataSource.configure(single);
+
+        RowImporter importer = new RowImporter(single, new String[]{"Name"}, listener);
+        importer.addRow(1, new String[]{"a"});
+        importer.addRow(2, new String[]{"b"});
+        assertEquals(0, written.size());
+
+        importer.finish();
+        assertEquals(Arrays.<Object>asList("a", "b"), written);
+        assertEquals(Arrays.asList("written 2"), events);
+    }
+
+    @Test
+    public void testUnknownField() {
+        try {
+            new RowImporter(ds, new String[]{"Name", "Bogus"}, listener);
+            fail("Expected an unknown field to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown field Bogus", e.getMessage());
+        }
+    }
+}
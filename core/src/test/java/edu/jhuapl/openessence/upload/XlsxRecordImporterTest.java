@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.upload;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XlsxRecordImporterTest {
+
+    private RecordingDataSource ds;
+    private XSSFWorkbook workbook;
+    private Date visit;
+
+    @Before
+    public void setUp() {
+        ds = new RecordingDataSource();
+        ds.setBatchSize(2);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2013, Calendar.JANUARY, 2);
+        visit = calendar.getTime();
+
+        workbook = new XSSFWorkbook();
+        CellStyle grouped = workbook.createCellStyle();
+        grouped.setDataFormat(workbook.createDataFormat().getFormat("#,##0"));
+        CellStyle date = workbook.createCellStyle();
+        date.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+
+        Sheet sheet = workbook.createSheet();
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Name");
+        header.createCell(1).setCellValue("Count");
+        header.createCell(2).setCellValue("Visit");
+        header.createCell(3).setCellValue("Score");
+
+        Row full = sheet.createRow(1);
+        full.createCell(0).setCellValue("a");
+        full.createCell(1).setCellValue(1234567);
+        full.getCell(1).setCellStyle(grouped);
+        full.createCell(2).setCellValue(visit);
+        full.getCell(2).setCellStyle(date);
+        full.createCell(3).setCellValue(2.5);
+
+        Row bad = sheet.createRow(2);
+        bad.createCell(0).setCellValue("b");
+        bad.createCell(1).setCellValue("x");
+
+        // no Name cell, and a gap before Score
+        Row sparse = sheet.createRow(3);
+        sparse.createCell(1).setCellValue(2);
+        sparse.createCell(3).setCellValue(0.125);
+    }
+
+    @Test
+    public void testFieldsFromHeaderRow() throws Exception {
+        Map<String, Object> result = new XlsxRecordImporter(ds).importFile(file());
+
+        assertEquals(2, result.get("rowsWritten"));
+        assertEquals(1, result.get("rowsRejected"));
+        Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("row", 3);
+        error.put("message", "Request parameter for dimension Count does not match configured type INTEGER.");
+        assertEquals(Collections.singletonList(error), result.get("errors"));
+
+        assertEquals(1, ds.batches.size());
+        assertEquals(Arrays.<Object>asList("a", null), ds.values("Name"));
+        assertEquals(Arrays.<Object>asList(1234567, 2), ds.values("Count"));
+        assertEquals(Arrays.<Object>asList(visit, null), ds.values("Visit"));
+        assertEquals(Arrays.<Object>asList(2.5, 0.125), ds.values("Score"));
+    }
+
+    @Test
+    public void testGivenFieldsSkipHeaderRow() throws Exception {
+        Map<String, Object> result = new XlsxRecordImporter(ds, new String[]{"Name", "Score"}, 1).importFile(file());
+
+        assertEquals(3, result.get("rowsWritten"));
+        assertEquals(0, result.get("rowsRejected"));
+        assertEquals(Arrays.<Object>asList("a", "b", null), ds.values("Name"));
+        assertEquals(Arrays.<Object>asList(2.5, null, 0.125), ds.values("Score"));
+    }
+
+    @Test
+    public void testEmptySheet() throws Exception {
+        workbook = new XSSFWorkbook();
+        workbook.createSheet();
+
+        try {
+            new XlsxRecordImporter(ds).importFile(file());
+            fail("Expected a sheet without a header row to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Sheet has no header row", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSheetWithDoctypeRefused() throws Exception {
+        assertRefused(withDoctype("xl/worksheets/sheet1.xml"));
+    }
+
+    @Test
+    public void testSharedStringsWithDoctypeRefused() throws Exception {
+        assertRefused(withDoctype("xl/sharedStrings.xml"));
+    }
+
+    private void assertRefused(MockMultipartFile file) {
+        try {
+            new XlsxRecordImporter(ds).importFile(file);
+            fail("Expected a file with a DOCTYPE to be refused");
+        } catch (IOException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause().getMessage().contains("DOCTYPE"));
+        }
+        assertTrue(ds.batches.isEmpty());
+    }
+
+    private MockMultipartFile file() throws Exception {
+        return new MockMultipartFile("file", "visits.xlsx", null, bytes());
+    }
+
+    private byte[] bytes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the workbook with a DOCTYPE declaring an external entity added to the part <code>entryName</code>
+     */
+    private MockMultipartFile withDoctype(String entryName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes()));
+        ZipOutputStream zip = new ZipOutputStream(out);
+        boolean found = false;
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                part.write(buffer, 0, n);
+            }
+
+            byte[] content = part.toByteArray();
+            if (entry.getName().equals(entryName)) {
+                found = true;
+                String xml = new String(content, "UTF-8");
+                int start = xml.startsWith("<?xml") ? xml.indexOf("?>") + 2 : 0;
+                xml = xml.substring(0, start) + "<!DOCTYPE x [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>"
+                      + xml.substring(start);
+                content = xml.getBytes("UTF-8");
+            }
+            zip.putNextEntry(new ZipEntry(entry.getName()));
+            zip.write(content);
+            zip.closeEntry();
+        }
+        zip.close();
+        assertTrue(entryName, found);
+        return new MockMultipartFile("file", "visits.xlsx", null, out.toByteArray());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.web.util;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryRecord;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileExportUtilTest {
+
+    private static final String[] HEADERS = {"Id", "Name", "Visit", "Day"};
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void testStreamedMatchesBuffered() throws Exception {
+        RowsDataSource ds = new RowsDataSource(Arrays.asList(
+                new Object[]{1, "alpha", new Date(1356998400000L), new Date(1356998400000L)},
+                new Object[]{2, null, new Date(1357084800123L), null},
+                new Object[]{null, "say \"hi\"", null, new Date(1357171200000L)}));
+
+        StringWriter streamed = new StringWriter();
+        FileExportUtil.exportDetailsToCSV(new PrintWriter(streamed), HEADERS, ds, ds.store(), false, UTC);
+
+        StringWriter buffered = new StringWriter();
+        FileExportUtil.exportGridToCSV(new PrintWriter(buffered), HEADERS, ds.records(), UTC);
+
+        assertEquals(buffered.toString(), streamed.toString());
+        assertEquals(4, streamed.toString().split("\n").length);
+    }
+
+    @Test
+    public void testNoRows() throws Exception {
+        RowsDataSource ds = new RowsDataSource(new ArrayList<Object[]>());
+
+        StringWriter streamed = new StringWriter();
+        FileExportUtil.exportDetailsToCSV(new PrintWriter(streamed), HEADERS, ds, ds.store(), false, UTC);
+
+        assertEquals("Id,Name,Visit,Day\n", streamed.toString());
+    }
+
+    private static DimensionBean bean(String id, FieldType type) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(id.toLowerCase());
+        bean.setSqlType(type);
+        bean.setIsResult(true);
+        return bean;
+    }
+
+    /**
+     * Answers details queries with fixed rows instead of going to the database.
+     */
+    private static class RowsDataSource extends JdbcOeDataSource {
+
+        private final List<Object[]> rows;
+
+        private RowsDataSource(List<Object[]> rows) {
+            this.rows = rows;
+            setDimensions(Arrays.asList(bean("Id", FieldType.INTEGER), bean("Name", FieldType.TEXT),
+                                        bean("Visit", FieldType.DATE_TIME), bean("Day", FieldType.DATE)));
+        }
+
+        private QueryManipulationStore store() {
+            List<Dimension> results = new ArrayList<Dimension>();
+            for (String id : HEADERS) {
+                results.add(getResultDimension(id));
+            }
+            return new QueryManipulationStore(results, new ArrayList<Dimension>(), new ArrayList<Filter>(), null,
+                                              false);
+        }
+
+        /**
+         * @return the records the buffered details query would have returned
+         */
+        private Collection<Record> records() {
+            Collection<Record> records = new ArrayList<Record>();
+            for (Object[] row : rows) {
+                Map<String, Dimension> dimensions = new LinkedHashMap<String, Dimension>();
+                Map<String, Object> values = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < HEADERS.length; i++) {
+                    dimensions.put(HEADERS[i], getResultDimension(HEADERS[i]));
+                    values.put(HEADERS[i], row[i]);
+                }
+                records.add(new QueryRecord(dimensions, values));
+            }
+            return records;
+        }
+
+        @Override
+        public Integer getFetchSize() {
+            return 1;
+        }
+
+        @Override
+        public void detailsQuery(QueryManipulationStore queryManipStore, RowCallbackHandler rcbh, Integer fzparm)
+                throws OeDataSourceException {
+            try {
+                for (Object[] row : rows) {
+                    rcbh.processRow(resultSet(row));
+                }
+            } catch (SQLException e) {
+                throw new OeDataSourceException(e);
+            }
+        }
+    }
+
+    /**
+     * @return a result set positioned on <code>row</code>, with the JDBC types a driver would return
+     */
+    private static ResultSet resultSet(final Object[] row) {
+        return (ResultSet) Proxy.newProxyInstance(FileExportUtilTest.class.getClassLoader(),
+                                                  new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("wasNull")) {
+                    return wasNull;
+                }
+
+                Object value = row[(Integer) args[0] - 1];
+                wasNull = value == null;
+                if (name.equals("getInt")) {
+                    return wasNull ? 0 : value;
+                } else if (name.equals("getString")) {
+                    return value;
+                } else if (name.equals("getTimestamp")) {
+                    return wasNull ? null : new java.sql.Timestamp(((Date) value).getTime());
+                } else if (name.equals("getDate")) {
+                    return wasNull ? null : new java.sql.Date(((Date) value).getTime());
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+}
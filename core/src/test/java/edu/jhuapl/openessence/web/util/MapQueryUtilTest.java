@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.web.util;
+
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MapQueryUtilTest {
+
+    private static final String DELETE = "delete from map_layer where ? > time_requested + interval '1 day'";
+    private static final String INSERT = "insert into map_layer (id, value) values (?, ?)";
+
+    private final List<String> statements = new ArrayList<String>();
+    private boolean failBatch;
+
+    private MapQueryUtil util;
+    private JdbcOeDataEntrySource layer;
+
+    @Before
+    public void setUp() {
+        util = new MapQueryUtil();
+        ReflectionTestUtils.setField(util, "mapDataSource", dataSource());
+        util.init();
+
+        layer = new JdbcOeDataEntrySource();
+        layer.setTableName("map_layer");
+    }
+
+    @Test
+    public void testRefreshCommitsDeleteAndInserts() {
+        int inserted = util.performLayerRefresh(layer, new Timestamp(0), "1 day", Arrays.asList("id", "value"),
+                                                rows(501));
+
+        assertEquals(501, inserted);
+        // the rows go in batches of 500
+        assertEquals(Arrays.asList(DELETE, INSERT, INSERT, "COMMIT"), statements);
+    }
+
+    @Test
+    public void testRefreshRollsBackDeleteWhenInsertFails() {
+        failBatch = true;
+
+        try {
+            util.performLayerRefresh(layer, new Timestamp(0), "1 day", Arrays.asList("id", "value"), rows(2));
+            fail("Expected the insert to fail");
+        } catch (DataAccessException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList(DELETE, INSERT, "ROLLBACK"), statements);
+    }
+
+    private static List<Object[]> rows(int count) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[]{i, "value" + i});
+        }
+        return rows;
+    }
+
+    /**
+     * @return a data source that records the statements run against it, and fails batches if {@link #failBatch} is set
+     */
+    private DataSource dataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getConnection")) {
+                    return connection();
+                }
+                return null;
+            }
+        });
+    }
+
+    private Object connection() {
+        return proxy(java.sql.Connection.class, new InvocationHandler() {
+            private boolean autoCommit = true;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("prepareStatement")) {
+                    return statement((String) args[0]);
+                } else if (name.equals("getMetaData")) {
+                    return metaData();
+                } else if (name.equals("getAutoCommit")) {
+                    return autoCommit;
+                } else if (name.equals("setAutoCommit")) {
+                    autoCommit = (Boolean) args[0];
+                } else if (name.equals("commit")) {
+                    statements.add("COMMIT");
+                } else if (name.equals("rollback")) {
+                    statements.add("ROLLBACK");
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private Object metaData() {
+        return proxy(java.sql.DatabaseMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("supportsBatchUpdates")) {
+                    return true;
+                } else if (method.getName().equals("getDatabaseProductName")) {
+                    return "PostgreSQL";
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private Object statement(final String sql) {
+        return proxy(java.sql.PreparedStatement.class, new InvocationHandler() {
+            private int batchSize;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("executeUpdate")) {
+                    statements.add(sql);
+                    return 3;
+                } else if (name.equals("addBatch")) {
+                    batchSize++;
+                } else if (name.equals("executeBatch")) {
+                    statements.add(sql);
+                    if (failBatch) {
+                        throw new SQLException("Batch failed");
+                    }
+                    int[] counts = new int[batchSize];
+                    Arrays.fill(counts, 1);
+                    batchSize = 0;
+                    return counts;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(MapQueryUtilTest.class.getClassLoader(), new Class<?>[]{type},
+                                                handler));
+    }
+}
@@ -89,6 +89,8 @@ public class GraphController {
     private GraphDataHandlerInterface graphDataHandler = null;
     private int maxLegendItems = defaultMaxLegendItems;
     private Map<String, String> translationMap = new HashMap<String, String>(0);
+    private GraphRenderCache renderCache = null;
+    private GraphMetrics metrics = null;
 
     public GraphController(String graphDataId, GraphDataHandlerInterface graphDataHandler, String userId) {
         if (graphDataId != null && graphDataId.length() > 0) {
@@ -130,6 +132,20 @@ public class GraphController {
         return graphDataId;
     }
 
+    /**
+     * @param renderCache cache to share rendered graphs across controllers, or <code>null</code> to always render
+     */
+    public void setRenderCache(GraphRenderCache renderCache) {
+        this.renderCache = renderCache;
+    }
+
+    /**
+     * @param metrics receives rendering times, may be <code>null</code>
+     */
+    public void setMetrics(GraphMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * @param maxLegendItems Maximum number of items to display in the legend
      */
@@ -294,11 +310,19 @@ public class GraphController {
         List<PointInterface> points = new ArrayList<PointInterface>();
         setPieGraphMetaData(graphData, graphMetaData, points); // I'm ashamed of this code in so many ways
         String graphTitle = (String) graphMetaData.get(GraphSource.GRAPH_TITLE);
+        List<DataSeries> series = Arrays.asList(new DataSeries(points, new HashMap<String, Object>()));
+
+        String cacheKey = getCacheKey("piegraph:" + graphData.percentBased(), graphData, series, graphMetaData, null,
+                                      encoding);
+        GraphObject cached = getCachedGraph(cacheKey, graphData);
+        if (cached != null) {
+            return cached;
+        }
 
         try {
             // add the created chart properties
             JFreeChartGraphSource graphSource = new JFreeChartGraphSource();
-            graphSource.setData(Arrays.asList(new DataSeries(points, new HashMap<String, Object>())));
+            graphSource.setData(series);
             graphSource.setParams(graphMetaData);
             graphSource.initialize();
 
@@ -321,9 +345,7 @@ public class GraphController {
             }
 
             // render the graph to get the image map
-            RenderedGraph
-                    renderedGraph =
-                    graphSource.renderGraph(graphData.getGraphWidth(), graphData.getGraphHeight(), encoding);
+            RenderedGraph renderedGraph = renderGraph(graphSource, graphData, encoding);
             String extension = ".dat";
             switch (encoding) {
                 case JPEG:
@@ -345,6 +367,7 @@ public class GraphController {
                 // store away the graph data file
                 graphDataHandler.putGraphData(graphData, graphDataId);
                 graph = new GraphObject(graphSource, renderedGraph, imageFileName, imageMapName, imageMap, graphDataId);
+                cacheGraph(cacheKey, graph);
             } catch (GraphException e) {
                 System.out.println(e.getMessage());
                 e.printStackTrace();
@@ -1026,6 +1049,12 @@ public class GraphController {
         GraphObject graph = null;
         String graphTitle = graphData.getGraphTitle();
 
+        String cacheKey = getCacheKey(graphType, graphData, series, graphMetaData, legendItems, Encoding.PNG);
+        GraphObject cached = getCachedGraph(cacheKey, graphData);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
             // add the created chart properties
             JFreeChartGraphSource graphSource = new JFreeChartGraphSource();
@@ -1037,8 +1066,7 @@ public class GraphController {
             graphSource.getChart().getCategoryPlot().setFixedLegendItems(legendItems);
 
             // render the graph to get the image map
-            RenderedGraph renderedGraph = graphSource.renderGraph(graphData.getGraphWidth(), graphData.getGraphHeight(),
-                                                                  Encoding.PNG);
+            RenderedGraph renderedGraph = renderGraph(graphSource, graphData, Encoding.PNG);
             String imageFileName = getCleanValue(graphTitle) + "_" + graphType + ".png";
             // get the image map
             String imageMapName = "imageMap" + graphDataId;
@@ -1050,6 +1078,7 @@ public class GraphController {
                 graphDataHandler.putGraphData(graphData, graphDataId);
 
                 graph = new GraphObject(graphSource, renderedGraph, imageFileName, imageMapName, imageMap, graphDataId);
+                cacheGraph(cacheKey, graph);
             } catch (GraphException e) {
                 System.out.println(e.getMessage());
                 e.printStackTrace();
@@ -1062,6 +1091,55 @@ public class GraphController {
         return graph;
     }
 
+    private String getCacheKey(String graphType, GraphDataInterface graphData, List<DataSeries> series,
+                               Map<String, Object> graphMetaData, LegendItemCollection legendItems,
+                               Encoding encoding) {
+        if (renderCache == null) {
+            return null;
+        }
+        return GraphRenderCache.createKey(graphType, series, graphMetaData, legendItems,
+                                          graphData.getLineSetURLTarget(), graphData.getGraphWidth(),
+                                          graphData.getGraphHeight(), encoding);
+    }
+
+    /**
+     * Looks up a previously rendered graph with the same content. On a hit, only the rendering is shared: the graph
+     * data is stored under this controller's own graph data ID, and the image map is named after it, so image and
+     * download URLs never point at another user's graph data.
+     */
+    private GraphObject getCachedGraph(String cacheKey, GraphDataInterface graphData) {
+        if (cacheKey == null) {
+            return null;
+        }
+
+        GraphRenderCache.Entry entry = renderCache.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            String imageMapName = "imageMap" + graphDataId;
+            String imageMap;
+            synchronized (entry.getGraphSource()) {
+                imageMap = appendImageMapTarget(entry.getRenderedGraph().getImageMap(imageMapName),
+                                                graphData.getLineSetURLTarget());
+            }
+            graphDataHandler.putGraphData(graphData, graphDataId);
+            return entry.toGraphObject(imageMapName, imageMap, graphDataId);
+        } catch (GraphException e) {
+            // render the graph again instead
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    private void cacheGraph(String cacheKey, GraphObject graph) {
+        if (cacheKey != null) {
+            renderCache.put(cacheKey, new GraphRenderCache.Entry(graph.getGraphSource(), graph.getRenderedGraph(),
+                                                                 graph.getImageFileName()));
+        }
+    }
+
     private Map<String, Object> dumpGraph(GraphDataInterface graphData) {
         // setup the default metadata
         List<DataSeries> dataSeries = new ArrayList<DataSeries>();
@@ -1196,4 +1274,16 @@ public class GraphController {
         json += "}";
         return json;
     }
+
+    private RenderedGraph renderGraph(GraphSource graphSource, GraphDataInterface graphData, Encoding encoding)
+            throws GraphException {
+        long start = System.nanoTime();
+        try {
+            return graphSource.renderGraph(graphData.getGraphWidth(), graphData.getGraphHeight(), encoding);
+        } finally {
+            if (metrics != null) {
+                metrics.record(GraphMetrics.RENDER, System.nanoTime() - start);
+            }
+        }
+    }
 }
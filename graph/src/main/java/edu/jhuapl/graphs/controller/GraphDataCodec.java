@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Compact binary encoding of graph data. {@link DefaultGraphData} is written field by field, which is several times
+ * smaller and faster than Java serialization. Other implementations of {@link GraphDataInterface} fall back to Java
+ * serialization.
+ *
+ * <p> The encoding starts with a version byte, so that a later format can still read graphs written by this one. </p>
+ */
+public class GraphDataCodec {
+
+    private static final byte VERSION = 1;
+    private static final byte DEFAULT_GRAPH_DATA = 1;
+    private static final byte SERIALIZED = 2;
+
+    private GraphDataCodec() {
+    }
+
+    public static byte[] encode(GraphDataInterface graphData) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        if (graphData.getClass() == DefaultGraphData.class) {
+            out.writeByte(DEFAULT_GRAPH_DATA);
+            writeDefaultGraphData(out, (DefaultGraphData) graphData);
+        } else {
+            out.writeByte(SERIALIZED);
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(graphData);
+            oos.flush();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static GraphDataInterface decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported graph data version " + version);
+        }
+
+        byte kind = in.readByte();
+        switch (kind) {
+            case DEFAULT_GRAPH_DATA:
+                return readDefaultGraphData(in);
+            case SERIALIZED:
+                try {
+                    return (GraphDataInterface) new ObjectInputStream(in).readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            default:
+                throw new IOException("Unknown graph data kind " + kind);
+        }
+    }
+
+    private static void writeDefaultGraphData(DataOutputStream out, DefaultGraphData data) throws IOException {
+        writeDoubles2(out, data.getCounts());
+        writeDoubles2(out, data.getExpecteds());
+        writeDoubles2(out, data.getLevels());
+        writeInts2(out, data.getColors());
+        writeStrings2(out, data.getAltTexts());
+        writeStrings2(out, data.getLineSetURLs());
+        writeString(out, data.getLineSetURLTarget());
+        writeStrings(out, data.getXLabels());
+        writeStrings(out, data.getLineSetLabels());
+        writeBooleans(out, data.displayAlerts());
+        writeBooleans(out, data.displaySeverityAlerts());
+        writeDoubles(out, data.getLineSymbolSizes());
+        writeString(out, data.getGraphTitle());
+        writeString(out, data.getNoDataMessage());
+        writeString(out, data.getXAxisLabel());
+        writeString(out, data.getYAxisLabel());
+        out.writeInt(data.getGraphWidth());
+        out.writeInt(data.getGraphHeight());
+        Color[] baseColors = data.getGraphBaseColors();
+        out.writeInt(baseColors == null ? -1 : baseColors.length);
+        if (baseColors != null) {
+            for (Color color : baseColors) {
+                writeColor(out, color);
+            }
+        }
+        out.writeBoolean(data.showLegend());
+        out.writeBoolean(data.getShowGraphLabels());
+        out.writeBoolean(data.percentBased());
+        out.writeBoolean(data.plotHorizontal());
+        out.writeInt(data.getMaxLabeledCategoryTicks());
+        writeDouble(out, data.getYAxisMin());
+        writeDouble(out, data.getYAxisMax());
+        writeString(out, data.getDataDisplayKey());
+        out.writeBoolean(data.getShowSingleAlertLegend());
+        out.writeBoolean(data.getShowSingleSeverityLegend());
+        writeColor(out, data.getBackgroundColor());
+        writeColor(out, data.getLabelBackgroundColor());
+        Font font = data.getTitleFont();
+        out.writeBoolean(font != null);
+        if (font != null) {
+            writeString(out, font.getName());
+            out.writeInt(font.getStyle());
+            out.writeFloat(font.getSize2D());
+        }
+    }
+
+    private static DefaultGraphData readDefaultGraphData(DataInputStream in) throws IOException {
+        DefaultGraphData data = new DefaultGraphData();
+        data.setCounts(readDoubles2(in));
+        data.setExpecteds(readDoubles2(in));
+        data.setLevels(readDoubles2(in));
+        data.setColors(readInts2(in));
+        data.setAltTexts(readStrings2(in));
+        data.setLineSetURLs(readStrings2(in));
+        data.setLineSetURLTarget(readString(in));
+        data.setXLabels(readStrings(in));
+        data.setLineSetLabels(readStrings(in));
+        data.setDisplayAlerts(readBooleans(in));
+        data.setDisplaySeverityAlerts(readBooleans(in));
+        data.setLineSymbolSizes(readDoubles(in));
+        data.setGraphTitle(readString(in));
+        data.setNoDataMessage(readString(in));
+        data.setXAxisLabel(readString(in));
+        data.setYAxisLabel(readString(in));
+        data.setGraphWidth(in.readInt());
+        data.setGraphHeight(in.readInt());
+        int baseColorCount = in.readInt();
+        Color[] baseColors = null;
+        if (baseColorCount >= 0) {
+            baseColors = new Color[baseColorCount];
+            for (int i = 0; i < baseColorCount; i++) {
+                baseColors[i] = readColor(in);
+            }
+        }
+        data.setGraphBaseColors(baseColors);
+        data.setShowLegend(in.readBoolean());
+        data.setShowGraphLabels(in.readBoolean());
+        data.setPercentBased(in.readBoolean());
+        data.setPlotHorizontal(in.readBoolean());
+        data.setMaxLabeledCategoryTicks(in.readInt());
+        data.setYAxisMin(readDouble(in));
+        data.setYAxisMax(readDouble(in));
+        data.setDataDisplayKey(readString(in));
+        data.setShowSingleAlertLegends(in.readBoolean());
+        data.setShowSingleSeverityLegends(in.readBoolean());
+        data.setBackgroundColor(readColor(in));
+        data.setLabelBackgroundColor(readColor(in));
+        Font font = null;
+        if (in.readBoolean()) {
+            String name = readString(in);
+            int style = in.readInt();
+            float size = in.readFloat();
+            font = new Font(name, style, Math.round(size));
+            if (font.getSize2D() != size) {
+                font = font.deriveFont(size);
+            }
+        }
+        data.setTitleFont(font);
+        return data;
+    }
+
+    // arrays and strings are written with their length first, -1 meaning null
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            // not writeUTF, which is limited to 64K
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (String s : a) {
+                writeString(out, s);
+            }
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        String[] a = new String[length];
+        for (int i = 0; i < length; i++) {
+            a[i] = readString(in);
+        }
+        return a;
+    }
+
+    private static void writeStrings2(DataOutputStream out, String[][] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (String[] s : a) {
+                writeStrings(out, s);
+            }
+        }
+    }
+
+    private static String[][] readStrings2(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        String[][] a = new String[length][];
+        for (int i = 0; i < length; i++) {
+            a[i] = readStrings(in);
+        }
+        return a;
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (double d : a) {
+                out.writeDouble(d);
+            }
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        double[] a = new double[length];
+        for (int i = 0; i < length; i++) {
+            a[i] = in.readDouble();
+        }
+        return a;
+    }
+
+    private static void writeDoubles2(DataOutputStream out, double[][] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (double[] d : a) {
+                writeDoubles(out, d);
+            }
+        }
+    }
+
+    private static double[][] readDoubles2(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        double[][] a = new double[length][];
+        for (int i = 0; i < length; i++) {
+            a[i] = readDoubles(in);
+        }
+        return a;
+    }
+
+    private static void writeInts2(DataOutputStream out, int[][] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (int[] row : a) {
+                out.writeInt(row == null ? -1 : row.length);
+                if (row != null) {
+                    for (int i : row) {
+                        out.writeInt(i);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[][] readInts2(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        int[][] a = new int[length][];
+        for (int i = 0; i < length; i++) {
+            int rowLength = in.readInt();
+            if (rowLength >= 0) {
+                a[i] = new int[rowLength];
+                for (int j = 0; j < rowLength; j++) {
+                    a[i][j] = in.readInt();
+                }
+            }
+        }
+        return a;
+    }
+
+    private static void writeBooleans(DataOutputStream out, boolean[] a) throws IOException {
+        out.writeInt(a == null ? -1 : a.length);
+        if (a != null) {
+            for (boolean b : a) {
+                out.writeBoolean(b);
+            }
+        }
+    }
+
+    private static boolean[] readBooleans(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        boolean[] a = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            a[i] = in.readBoolean();
+        }
+        return a;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double d) throws IOException {
+        out.writeBoolean(d != null);
+        if (d != null) {
+            out.writeDouble(d);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeColor(DataOutputStream out, Color color) throws IOException {
+        out.writeBoolean(color != null);
+        if (color != null) {
+            out.writeInt(color.getRGB());
+        }
+    }
+
+    private static Color readColor(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Color(in.readInt(), true) : null;
+    }
+}
@@ -38,12 +38,21 @@ import java.io.ObjectOutputStream;
 public class GraphDataSerializeToDiskHandler implements GraphDataHandlerInterface {
 
     private String dir;
+    private GraphMetrics metrics;
 
     public GraphDataSerializeToDiskHandler(String dir) {
         this.dir = dir;
     }
 
+    /**
+     * @param metrics receives read and write times, may be <code>null</code>
+     */
+    public void setMetrics(GraphMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void putGraphData(GraphDataInterface graphData, String graphDataId) throws GraphException {
+        long start = System.nanoTime();
         try {
             File serializedFile = new File(dir, graphDataId);
             ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(serializedFile));
@@ -52,12 +61,15 @@ public class GraphDataSerializeToDiskHandler implements GraphDataHandlerInterfac
             oos.close();
         } catch (IOException e) {
             throw new GraphException("Could not write serialized graph data [" + graphDataId + "] to disk", e);
+        } finally {
+            record(GraphMetrics.WRITE, start);
         }
     }
 
     public GraphDataInterface getGraphData(String graphDataId) throws GraphException {
         GraphDataInterface graphData;
 
+        long start = System.nanoTime();
         try {
             ObjectInputStream in = new ObjectInputStream(new FileInputStream(new File(dir, graphDataId)));
             graphData = (GraphDataInterface) in.readObject();
@@ -66,8 +78,16 @@ public class GraphDataSerializeToDiskHandler implements GraphDataHandlerInterfac
             throw new GraphException("Could not read serialized graph data [" + graphDataId + "] from disk", e);
         } catch (ClassNotFoundException e) {
             throw new GraphException("Class [GraphDataInterface] not found", e);
+        } finally {
+            record(GraphMetrics.READ, start);
         }
 
         return graphData;
     }
+
+    private void record(String operation, long start) {
+        if (metrics != null) {
+            metrics.record(operation, System.nanoTime() - start);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import edu.jhuapl.graphs.GraphException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Graph data handler that also keeps encoded images of its graphs, so that repeated image requests don't have to
+ * render the chart again.
+ */
+public interface GraphImageHandlerInterface extends GraphDataHandlerInterface {
+
+    /**
+     * @param imageKey identifies the variant of the image, e.g. the request parameters it was rendered with
+     * @param fileName file name to download the image as
+     */
+    public void putImage(String graphDataId, String imageKey, String fileName, byte[] image) throws GraphException;
+
+    /**
+     * @return the stored image, or <code>null</code> if there is none
+     */
+    public StoredImage getImage(String graphDataId, String imageKey);
+
+    public interface StoredImage {
+
+        public String getFileName();
+
+        public int getLength();
+
+        public void writeTo(OutputStream out) throws IOException;
+    }
+}
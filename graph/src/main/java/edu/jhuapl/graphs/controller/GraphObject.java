@@ -109,7 +109,10 @@ public class GraphObject {
 
     public void writeChartAsPNG(OutputStream out, int graphWidth, int graphHeight)
             throws IOException {
-        ChartUtilities.writeChartAsPNG(out, graphSource.getChart(), graphWidth, graphHeight);
+        // graph source may be shared with other graph objects through the GraphRenderCache
+        synchronized (graphSource) {
+            ChartUtilities.writeChartAsPNG(out, graphSource.getChart(), graphWidth, graphHeight);
+        }
     }
 
     public void writeChartAsHighResolutionPNG(OutputStream out, int graphWidth,
@@ -119,12 +122,15 @@ public class GraphObject {
 
     public void writeChartAsHighResolutionPNG(OutputStream out, int graphWidth,
                                               int graphHeight, int resolution) throws IOException {
-        ChartPanel cp = new ChartPanel(graphSource.getChart());
-        cp.setPreferredSize(new Dimension(graphWidth, graphHeight));
-        cp.setSize(new Dimension(graphWidth, graphHeight));
-        PngEncoder encoder = new PngEncoder(HighResChartUtil.getHighResChartImage(cp, resolution), false, 0, 9);
-        encoder.setDpi(resolution, resolution);
-        byte[] pngData = encoder.pngEncode();
+        byte[] pngData;
+        synchronized (graphSource) {
+            ChartPanel cp = new ChartPanel(graphSource.getChart());
+            cp.setPreferredSize(new Dimension(graphWidth, graphHeight));
+            cp.setSize(new Dimension(graphWidth, graphHeight));
+            PngEncoder encoder = new PngEncoder(HighResChartUtil.getHighResChartImage(cp, resolution), false, 0, 9);
+            encoder.setDpi(resolution, resolution);
+            pngData = encoder.pngEncode();
+        }
         out.write(pngData);
     }
 
@@ -176,14 +182,18 @@ public class GraphObject {
         EPSDocumentGraphics2D g2d = new EPSDocumentGraphics2D(false);
         g2d.setGraphicContext(new GraphicContext());
         g2d.setupDocument(out, graphWidth, graphHeight);
-        graphSource.getChart().draw(g2d, new Rectangle(graphWidth, graphHeight));
+        synchronized (graphSource) {
+            graphSource.getChart().draw(g2d, new Rectangle(graphWidth, graphHeight));
+        }
         g2d.finish();
     }
 
     public void writeChartAsEMF(OutputStream out, int graphWidth, int graphHeight) throws IOException {
         EMFGraphics2D g2d = new EMFGraphics2D(out, new Dimension(graphWidth, graphHeight));
         g2d.startExport();
-        graphSource.getChart().draw((Graphics2D) g2d.create(), new Rectangle(graphWidth, graphHeight));
+        synchronized (graphSource) {
+            graphSource.getChart().draw((Graphics2D) g2d.create(), new Rectangle(graphWidth, graphHeight));
+        }
         g2d.endExport();
         g2d.closeStream();
     }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import edu.jhuapl.graphs.DataSeriesInterface;
+import edu.jhuapl.graphs.Encoding;
+import edu.jhuapl.graphs.PointInterface;
+import edu.jhuapl.graphs.RenderedGraph;
+import edu.jhuapl.graphs.jfreechart.JFreeChartGraphSource;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.jfree.chart.LegendItem;
+import org.jfree.chart.LegendItemCollection;
+
+import java.awt.*;
+import java.awt.geom.RectangularShape;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content-addressed cache of rendered graphs. Graphs are keyed by a digest of everything that goes into rendering
+ * them (the {@link DataSeriesInterface data series}, the graph parameters, the legend and the image size), so two
+ * requests for the same chart share one JFreeChart rendering and one stored graph data file.
+ *
+ * <p> Values that cannot be reduced to their content (i.e. objects that are neither simple values nor {@link
+ * Serializable}) make a graph uncacheable, in which case {@link #createKey} returns <code>null</code>. </p>
+ *
+ * <p> Only the rendering is shared. Each request still stores its own graph data under its own graph data ID, so
+ * entries don't depend on the stored graph data of whoever rendered the graph first. Entries expire after
+ * <code>maxAge</code> milliseconds. </p>
+ */
+public class GraphRenderCache {
+
+    private final int maxEntries;
+    private final long maxAge;
+    private final Map<String, Entry> entries;
+
+    public GraphRenderCache(int maxEntries, long maxAge) {
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > GraphRenderCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached graph for <code>key</code>, or <code>null</code> if there is none or it has expired
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.getCreated() > maxAge) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(String key, Entry entry) {
+        if (maxEntries > 0) {
+            entries.put(key, entry);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Computes the content key of a graph.
+     *
+     * @param graphType   caller-defined type of graph, e.g. "tsgraph" or "piegraph"
+     * @param series      the series to be graphed
+     * @param params      the graph parameters
+     * @param legendItems fixed legend items, may be <code>null</code>
+     * @param urlTarget   target of the image map links, may be <code>null</code>
+     * @return hex digest of the graph content, or <code>null</code> if the graph cannot be cached
+     */
+    public static String createKey(String graphType, List<? extends DataSeriesInterface> series,
+                                   Map<String, Object> params, LegendItemCollection legendItems, String urlTarget,
+                                   int width, int height, Encoding encoding) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+
+        DataOutputStream out = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+        try {
+            out.writeUTF(graphType);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeUTF(encoding.name());
+            if (!writeValue(out, urlTarget) || !writeValue(out, params)) {
+                return null;
+            }
+
+            out.writeInt(series.size());
+            for (DataSeriesInterface s : series) {
+                if (!writeValue(out, s.getMetadata())) {
+                    return null;
+                }
+                out.writeInt(s.getPoints().size());
+                for (PointInterface p : s.getPoints()) {
+                    if (!writeValue(out, p.getValue()) || !writeValue(out, p.getDescriminator())
+                        || !writeValue(out, p.getMetadata())) {
+                        return null;
+                    }
+                }
+            }
+
+            if (legendItems == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(legendItems.getItemCount());
+                for (Iterator<?> it = legendItems.iterator(); it.hasNext(); ) {
+                    LegendItem item = (LegendItem) it.next();
+                    if (!writeValue(out, item.getLabel()) || !writeValue(out, item.getFillPaint())) {
+                        return null;
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Writes the content of <code>value</code>, tagged with its type.
+     *
+     * @return false if <code>value</code> can't be reduced to its content
+     */
+    private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+        } else if (value instanceof String) {
+            out.writeByte(1);
+            out.writeUTF((String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(2);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.writeByte(3);
+            out.writeUTF(value.getClass().getName());
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(4);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Color) {
+            out.writeByte(5);
+            out.writeInt(((Color) value).getRGB());
+        } else if (value instanceof Font) {
+            Font font = (Font) value;
+            out.writeByte(6);
+            out.writeUTF(font.getName());
+            out.writeInt(font.getStyle());
+            out.writeFloat(font.getSize2D());
+        } else if (value instanceof Date) {
+            out.writeByte(7);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            out.writeByte(8);
+            out.writeUTF(value.getClass().getName());
+            out.writeUTF(((Enum<?>) value).name());
+        } else if (value instanceof RectangularShape) {
+            RectangularShape shape = (RectangularShape) value;
+            out.writeByte(9);
+            out.writeUTF(value.getClass().getName());
+            out.writeDouble(shape.getX());
+            out.writeDouble(shape.getY());
+            out.writeDouble(shape.getWidth());
+            out.writeDouble(shape.getHeight());
+        } else if (value instanceof BasicStroke) {
+            BasicStroke stroke = (BasicStroke) value;
+            out.writeByte(10);
+            out.writeFloat(stroke.getLineWidth());
+            out.writeInt(stroke.getEndCap());
+            out.writeInt(stroke.getLineJoin());
+            out.writeFloat(stroke.getMiterLimit());
+            out.writeUTF(Arrays.toString(stroke.getDashArray()));
+            out.writeFloat(stroke.getDashPhase());
+        } else if (value instanceof Map) {
+            // sort so that hash maps with the same content produce the same key
+            Map<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(e.getKey()), e.getValue());
+            }
+            out.writeByte(11);
+            out.writeInt(sorted.size());
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                out.writeUTF(e.getKey());
+                if (!writeValue(out, e.getValue())) {
+                    return false;
+                }
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> values = (Collection<?>) value;
+            out.writeByte(12);
+            out.writeInt(values.size());
+            for (Object o : values) {
+                if (!writeValue(out, o)) {
+                    return false;
+                }
+            }
+        } else if (value instanceof Serializable) {
+            // e.g. axes. Equal content might serialize differently, but that only costs us a cache miss
+            out.writeByte(13);
+            out.writeUTF(value.getClass().getName());
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(value);
+            oos.flush();
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * A rendered graph. Not tied to any graph data ID, since it's shared by every request for the same graph.
+     */
+    public static class Entry {
+
+        private final JFreeChartGraphSource graphSource;
+        private final RenderedGraph renderedGraph;
+        private final String imageFileName;
+        private final long created;
+
+        public Entry(JFreeChartGraphSource graphSource, RenderedGraph renderedGraph, String imageFileName) {
+            this.graphSource = graphSource;
+            this.renderedGraph = renderedGraph;
+            this.imageFileName = imageFileName;
+            this.created = System.currentTimeMillis();
+        }
+
+        public JFreeChartGraphSource getGraphSource() {
+            return graphSource;
+        }
+
+        public RenderedGraph getRenderedGraph() {
+            return renderedGraph;
+        }
+
+        public String getImageFileName() {
+            return imageFileName;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * @return a new graph object backed by this entry's chart and rendered image
+         */
+        public GraphObject toGraphObject(String imageMapName, String imageMap, String graphDataId) {
+            return new GraphObject(graphSource, renderedGraph, imageFileName, imageMapName, imageMap, graphDataId);
+        }
+    }
+}
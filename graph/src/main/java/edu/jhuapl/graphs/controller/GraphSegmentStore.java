@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import edu.jhuapl.graphs.GraphException;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph data handler that appends graph data and encoded images to a few large segment files instead of writing one
+ * serialized file per graph. An in-memory index maps graph data IDs to their records. Graph data is stored with
+ * {@link GraphDataCodec}, and images are copied straight from the segment file to the client.
+ *
+ * <p> A new segment is started every <code>segmentDuration</code> milliseconds, so old graphs are removed by deleting
+ * whole segments with {@link #expireSegments(long)}. Segments written by an earlier run are indexed on startup. </p>
+ *
+ * <p> Segments are read with positional reads rather than kept memory mapped, since a mapped file can't be deleted on
+ * Windows until the mapping is garbage collected. Reads hold a reference to their segment, and an expired segment is
+ * only closed and deleted once its last read is done. </p>
+ */
+public class GraphSegmentStore implements GraphImageHandlerInterface, Closeable {
+
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "graphs-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // record layout: magic, version, type, then the graph data ID, image key, image file name and payload, each
+    // preceded by its length
+    private static final int MAGIC = 0x4F454753;
+    private static final byte VERSION = 1;
+    private static final byte DATA_RECORD = 1;
+    private static final byte IMAGE_RECORD = 2;
+
+    private final File dir;
+    private final long segmentDuration;
+    private final long maxSegmentSize;
+    private final Map<String, Location> index = new HashMap<String, Location>();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private Segment active;
+    private int sequence;
+    private volatile GraphMetrics metrics;
+
+    public GraphSegmentStore(File dir, long segmentDuration) throws IOException {
+        this(dir, segmentDuration, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public GraphSegmentStore(File dir, long segmentDuration, long maxSegmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentDuration = segmentDuration;
+        this.maxSegmentSize = maxSegmentSize;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create graph directory " + dir);
+        }
+        load();
+    }
+
+    /**
+     * @return true if <code>fileName</code> is the name of a segment file, which should only be deleted through {@link
+     *         #expireSegments(long)}
+     */
+    public static boolean isSegmentFile(String fileName) {
+        return fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @param metrics receives graph data read and write times, may be <code>null</code>
+     */
+    public void setMetrics(GraphMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void putGraphData(GraphDataInterface graphData, String graphDataId) throws GraphException {
+        long start = System.nanoTime();
+        try {
+            append(DATA_RECORD, graphDataId, "", "", GraphDataCodec.encode(graphData));
+        } catch (IOException e) {
+            throw new GraphException("Could not write graph data [" + graphDataId + "] to disk", e);
+        } finally {
+            record(GraphMetrics.WRITE, start);
+        }
+    }
+
+    @Override
+    public GraphDataInterface getGraphData(String graphDataId) throws GraphException {
+        Location location = locate(DATA_RECORD, graphDataId, "");
+        if (location == null || !acquire(location.segment)) {
+            throw new GraphException("Graph data [" + graphDataId + "] not found");
+        }
+
+        long start = System.nanoTime();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            while (buffer.hasRemaining()) {
+                if (location.segment.channel.read(buffer, location.position + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return GraphDataCodec.decode(buffer.array());
+        } catch (IOException e) {
+            throw new GraphException("Could not read graph data [" + graphDataId + "] from disk", e);
+        } finally {
+            release(location.segment);
+            record(GraphMetrics.READ, start);
+        }
+    }
+
+    @Override
+    public void putImage(String graphDataId, String imageKey, String fileName, byte[] image) throws GraphException {
+        try {
+            append(IMAGE_RECORD, graphDataId, imageKey, fileName, image);
+        } catch (IOException e) {
+            throw new GraphException("Could not write image of graph [" + graphDataId + "] to disk", e);
+        }
+    }
+
+    @Override
+    public StoredImage getImage(String graphDataId, String imageKey) {
+        final Location location = locate(IMAGE_RECORD, graphDataId, imageKey);
+        if (location == null) {
+            return null;
+        }
+
+        return new StoredImage() {
+            @Override
+            public String getFileName() {
+                return location.name;
+            }
+
+            @Override
+            public int getLength() {
+                return location.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (!acquire(location.segment)) {
+                    throw new FileNotFoundException("Graph segment " + location.segment.file + " has expired");
+                }
+                try {
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long written = 0;
+                    while (written < location.length) {
+                        long n = location.segment.channel.transferTo(location.position + written,
+                                                                     location.length - written, target);
+                        if (n <= 0) {
+                            throw new EOFException("Image in " + location.segment.file + " is truncated");
+                        }
+                        written += n;
+                    }
+                } finally {
+                    release(location.segment);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes segments that haven't been written to for <code>maxAge</code> milliseconds, along with all graphs in
+     * them. Segments that are being read are deleted when their last read is done.
+     *
+     * @return the number of deleted segments
+     */
+    public synchronized int expireSegments(long maxAge) {
+        long cutoff = System.currentTimeMillis() - maxAge;
+        int deleted = 0;
+        for (Iterator<Segment> it = segments.iterator(); it.hasNext(); ) {
+            Segment segment = it.next();
+            if (segment.lastWrite >= cutoff) {
+                continue;
+            }
+
+            it.remove();
+            if (segment == active) {
+                active = null;
+            }
+            for (String key : segment.keys) {
+                Location location = index.get(key);
+                if (location != null && location.segment == segment) {
+                    index.remove(key);
+                }
+            }
+            segment.expired = true;
+            if (segment.readers == 0) {
+                delete(segment);
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.expired = true;
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+        active = null;
+    }
+
+    private void record(String operation, long start) {
+        GraphMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.record(operation, System.nanoTime() - start);
+        }
+    }
+
+    private void append(byte type, String graphDataId, String imageKey, String fileName, byte[] payload)
+            throws IOException {
+        byte[] id = graphDataId.getBytes(UTF8);
+        byte[] key = imageKey.getBytes(UTF8);
+        byte[] name = fileName.getBytes(UTF8);
+        ByteBuffer record = ByteBuffer.allocate(22 + id.length + key.length + name.length + payload.length);
+        record.putInt(MAGIC).put(VERSION).put(type);
+        record.putInt(id.length).put(id);
+        record.putInt(key.length).put(key);
+        record.putInt(name.length).put(name);
+        record.putInt(payload.length);
+        int payloadOffset = record.position();
+        record.put(payload);
+        record.flip();
+
+        synchronized (this) {
+            Segment segment = getActiveSegment();
+            long position = segment.size;
+            while (record.hasRemaining()) {
+                segment.channel.write(record, position + record.position());
+            }
+            segment.size += record.limit();
+            segment.lastWrite = System.currentTimeMillis();
+
+            String indexKey = indexKey(type, graphDataId, imageKey);
+            segment.keys.add(indexKey);
+            index.put(indexKey, new Location(segment, position + payloadOffset, payload.length, fileName));
+        }
+    }
+
+    private synchronized Location locate(byte type, String graphDataId, String imageKey) {
+        return index.get(indexKey(type, graphDataId, imageKey));
+    }
+
+    /**
+     * Keeps <code>segment</code> open until it is {@link #release released}.
+     *
+     * @return false if the segment has expired since it was located
+     */
+    private synchronized boolean acquire(Segment segment) {
+        if (segment.expired) {
+            return false;
+        }
+        segment.readers++;
+        return true;
+    }
+
+    private synchronized void release(Segment segment) {
+        segment.readers--;
+        // a segment closed by close() is expired too, but its file is kept
+        if (segment.readers == 0 && segment.expired && segment.channel.isOpen()) {
+            delete(segment);
+        }
+    }
+
+    private static void delete(Segment segment) {
+        segment.close();
+        if (!segment.file.delete()) {
+            System.out.println("Could not delete graph segment " + segment.file);
+        }
+    }
+
+    private Segment getActiveSegment() throws IOException {
+        long now = System.currentTimeMillis();
+        if (active == null || now - active.created >= segmentDuration || active.size >= maxSegmentSize) {
+            File file = new File(dir, SEGMENT_PREFIX + now + "-" + (sequence++) + SEGMENT_SUFFIX);
+            active = new Segment(file, new RandomAccessFile(file, "rw").getChannel(), now);
+            segments.add(active);
+        }
+        return active;
+    }
+
+    private static String indexKey(byte type, String graphDataId, String imageKey) {
+        return type == DATA_RECORD ? graphDataId : graphDataId + '\n' + imageKey;
+    }
+
+    /**
+     * Indexes the segments left over from an earlier run, oldest first so that newer records win. A truncated record,
+     * e.g. from a crash in the middle of a write, ends the segment.
+     */
+    private void load() throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? f1.getName().compareTo(f2.getName()) : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (!isSegmentFile(file.getName()) || !file.isFile()) {
+                continue;
+            }
+
+            Segment segment;
+            try {
+                segment = new Segment(file, new RandomAccessFile(file, "r").getChannel(), file.lastModified());
+            } catch (FileNotFoundException e) {
+                // deleted by someone else since we listed the directory
+                continue;
+            }
+            segments.add(segment);
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                long position = 0;
+                while (true) {
+                    int magic;
+                    try {
+                        magic = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (magic != MAGIC || in.readByte() != VERSION) {
+                        break;
+                    }
+                    byte type = in.readByte();
+                    byte[] id = new byte[in.readInt()];
+                    in.readFully(id);
+                    byte[] key = new byte[in.readInt()];
+                    in.readFully(key);
+                    byte[] name = new byte[in.readInt()];
+                    in.readFully(name);
+                    int length = in.readInt();
+                    if (in.skipBytes(length) != length) {
+                        break;
+                    }
+
+                    long payloadPosition = position + 22 + id.length + key.length + name.length;
+                    String indexKey = indexKey(type, new String(id, UTF8), new String(key, UTF8));
+                    segment.keys.add(indexKey);
+                    index.put(indexKey, new Location(segment, payloadPosition, length, new String(name, UTF8)));
+                    position = payloadPosition + length;
+                }
+            } catch (IOException e) {
+                System.out.println("Stopped reading truncated graph segment " + file + ": " + e.getMessage());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static class Segment {
+
+        private final File file;
+        private final FileChannel channel;
+        private final long created;
+        private final List<String> keys = new ArrayList<String>();
+        private long size;
+        private long lastWrite;
+        // reads in progress and whether the segment was expired, guarded by the store
+        private int readers;
+        private boolean expired;
+
+        private Segment(File file, FileChannel channel, long created) throws IOException {
+            this.file = file;
+            this.channel = channel;
+            this.created = created;
+            this.size = channel.size();
+            this.lastWrite = created;
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Could not close graph segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final long position;
+        private final int length;
+        private final String name;
+
+        private Location(Segment segment, long position, int length, String name) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.name = name;
+        }
+    }
+}
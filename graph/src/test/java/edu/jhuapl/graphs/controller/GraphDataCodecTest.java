@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.graphs.controller;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+public class GraphDataCodecTest extends TestCase {
+
+    public void testRoundTripsEveryField() throws Exception {
+        DefaultGraphData data = fullGraphData();
+        DefaultGraphData decoded = (DefaultGraphData) GraphDataCodec.decode(GraphDataCodec.encode(data));
+
+        DefaultGraphData defaults = new DefaultGraphData();
+        for (Field field : DefaultGraphData.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            // a field left at its default here would not show that the codec writes it
+            assertFalse("Set " + field.getName() + " in fullGraphData()",
+                        deepEquals(field.get(defaults), field.get(data)));
+            assertTrue(field.getName(), deepEquals(field.get(data), field.get(decoded)));
+        }
+    }
+
+    public void testRoundTripsDefaults() throws Exception {
+        DefaultGraphData defaults = new DefaultGraphData();
+        DefaultGraphData decoded = (DefaultGraphData) GraphDataCodec.decode(GraphDataCodec.encode(defaults));
+
+        for (Field field : DefaultGraphData.class.getDeclaredFields()) {
+            field.setAccessible(true);
+            assertTrue(field.getName(), deepEquals(field.get(defaults), field.get(decoded)));
+        }
+    }
+
+    public void testSubclassesAreSerialized() throws Exception {
+        TitledGraphData data = new TitledGraphData();
+        data.setGraphTitle("Title");
+        data.subtitle = "Subtitle";
+
+        TitledGraphData decoded = (TitledGraphData) GraphDataCodec.decode(GraphDataCodec.encode(data));
+        assertEquals("Title", decoded.getGraphTitle());
+        assertEquals("Subtitle", decoded.subtitle);
+    }
+
+    public void testRejectsOtherVersions() throws Exception {
+        byte[] encoded = GraphDataCodec.encode(new DefaultGraphData());
+        encoded[0] = 2;
+        try {
+            GraphDataCodec.decode(encoded);
+            fail("Should not decode another version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("version 2"));
+        }
+    }
+
+    public void testRejectsUnknownKinds() throws Exception {
+        byte[] encoded = GraphDataCodec.encode(new DefaultGraphData());
+        encoded[1] = 42;
+        try {
+            GraphDataCodec.decode(encoded);
+            fail("Should not decode an unknown kind");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("kind 42"));
+        }
+    }
+
+    public void testRejectsTruncatedData() throws Exception {
+        byte[] encoded = GraphDataCodec.encode(fullGraphData());
+        try {
+            GraphDataCodec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+            fail("Should not decode truncated data");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static DefaultGraphData fullGraphData() {
+        DefaultGraphData data = new DefaultGraphData();
+        data.setCounts(new double[][]{{1, 2, 3}, {4, Double.NaN, 6}, null});
+        data.setExpecteds(new double[][]{{1.5, 2.5}});
+        data.setLevels(new double[][]{{0.01, 0.5}, {}});
+        data.setColors(new int[][]{{1, 2, 3}, null});
+        data.setAltTexts(new String[][]{{"a", null, "\u00e9"}});
+        data.setLineSetURLs(new String[][]{{"http://example.com/?a=1&b=2"}});
+        data.setLineSetURLTarget("_blank");
+        data.setXLabels(new String[]{"Jan", "Feb"});
+        data.setLineSetLabels(new String[]{"Series", null});
+        data.setDisplayAlerts(new boolean[]{true, false});
+        data.setDisplaySeverityAlerts(new boolean[]{false, true});
+        data.setLineSymbolSizes(new double[]{2, 4.5});
+        data.setGraphTitle("Title");
+        data.setNoDataMessage("Nothing here");
+        data.setXAxisLabel("Date");
+        data.setYAxisLabel("Count");
+        data.setGraphWidth(800);
+        data.setGraphHeight(500);
+        data.setGraphBaseColors(new Color[]{Color.RED, new Color(1, 2, 3, 4)});
+        data.setShowLegend(false);
+        data.setShowGraphLabels(false);
+        data.setPercentBased(true);
+        data.setPlotHorizontal(true);
+        data.setMaxLabeledCategoryTicks(7);
+        data.setYAxisMin(-1.0);
+        data.setYAxisMax(10.5);
+        data.setDataDisplayKey("key");
+        data.setShowSingleAlertLegends(true);
+        data.setShowSingleSeverityLegends(true);
+        data.setBackgroundColor(Color.BLACK);
+        data.setLabelBackgroundColor(new Color(10, 20, 30, 40));
+        data.setTitleFont(new Font("Serif", Font.ITALIC, 11).deriveFont(11.5f));
+        return data;
+    }
+
+    private static boolean deepEquals(Object a, Object b) {
+        return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+    }
+
+    private static class TitledGraphData extends DefaultGraphData {
+
+        private static final long serialVersionUID = 1L;
+
+        private String subtitle;
+    }
+}
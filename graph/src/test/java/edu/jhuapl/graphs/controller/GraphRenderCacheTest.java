@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import edu.jhuapl.graphs.DataPoint;
+import edu.jhuapl.graphs.DataSeries;
+import edu.jhuapl.graphs.Encoding;
+import edu.jhuapl.graphs.GraphException;
+import edu.jhuapl.graphs.GraphSource;
+import edu.jhuapl.graphs.PointInterface;
+import edu.jhuapl.graphs.jfreechart.JFreeChartCategoryGraphSource;
+import edu.jhuapl.graphs.jfreechart.utils.SparselyLabeledCategoryAxis;
+
+import junit.framework.TestCase;
+
+import org.jfree.chart.LegendItem;
+import org.jfree.chart.LegendItemCollection;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GraphRenderCacheTest extends TestCase {
+
+    public void testSameContentSameKey() {
+        String key1 = createKey(5, Color.RED, "Counts");
+        String key2 = createKey(5, Color.RED, "Counts");
+
+        assertNotNull(key1);
+        assertEquals(key1, key2);
+    }
+
+    public void testDifferentContentDifferentKey() {
+        String key = createKey(5, Color.RED, "Counts");
+
+        assertFalse(key.equals(createKey(6, Color.RED, "Counts")));
+        assertFalse(key.equals(createKey(5, Color.BLUE, "Counts")));
+        assertFalse(key.equals(createKey(5, Color.RED, "Percent")));
+    }
+
+    public void testAxisParams() {
+        Map<String, Object> params1 = new HashMap<String, Object>();
+        params1.put(JFreeChartCategoryGraphSource.DOMAIN_AXIS, new SparselyLabeledCategoryAxis(12, Color.lightGray));
+        Map<String, Object> params2 = new HashMap<String, Object>();
+        params2.put(JFreeChartCategoryGraphSource.DOMAIN_AXIS, new SparselyLabeledCategoryAxis(12, Color.lightGray));
+
+        String key1 = GraphRenderCache.createKey("tsgraph", new ArrayList<DataSeries>(), params1, null, null, 400, 250,
+                                                 Encoding.PNG);
+        String key2 = GraphRenderCache.createKey("tsgraph", new ArrayList<DataSeries>(), params2, null, null, 400, 250,
+                                                 Encoding.PNG);
+        assertNotNull(key1);
+        assertEquals(key1, key2);
+    }
+
+    public void testUncacheableValue() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(GraphSource.GRAPH_TITLE, new Object());
+
+        assertNull(GraphRenderCache.createKey("tsgraph", new ArrayList<DataSeries>(), params, null, null, 400, 250,
+                                              Encoding.PNG));
+    }
+
+    public void testEviction() {
+        GraphRenderCache cache = new GraphRenderCache(2, Long.MAX_VALUE);
+        cache.put("a", entry("a"));
+        cache.put("b", entry("b"));
+        cache.get("a");
+        cache.put("c", entry("c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("c", cache.get("c").getImageFileName());
+    }
+
+    public void testExpiry() {
+        GraphRenderCache cache = new GraphRenderCache(2, -1);
+        cache.put("a", entry("a"));
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testHitKeepsOwnGraphDataId() {
+        final Map<String, GraphDataInterface> stored = new HashMap<String, GraphDataInterface>();
+        GraphDataHandlerInterface handler = new GraphDataHandlerInterface() {
+            @Override
+            public void putGraphData(GraphDataInterface graphData, String graphDataId) throws GraphException {
+                stored.put(graphDataId, graphData);
+            }
+
+            @Override
+            public GraphDataInterface getGraphData(String graphDataId) throws GraphException {
+                return stored.get(graphDataId);
+            }
+        };
+        GraphRenderCache cache = new GraphRenderCache(10, Long.MAX_VALUE);
+
+        GraphController controllerA = new GraphController(null, handler, "userA");
+        controllerA.setRenderCache(cache);
+        GraphObject graphA = controllerA.createBarGraph(barGraphData(), false);
+        GraphController controllerB = new GraphController(null, handler, "userB");
+        controllerB.setRenderCache(cache);
+        GraphObject graphB = controllerB.createBarGraph(barGraphData(), false);
+
+        assertEquals(1, cache.size());
+        assertSame(graphA.getRenderedGraph(), graphB.getRenderedGraph());
+        assertTrue(graphB.getGraphDataId().startsWith("userB"));
+        assertEquals(controllerB.getGraphDataId(), graphB.getGraphDataId());
+        assertEquals("imageMap" + graphB.getGraphDataId(), graphB.getImageMapName());
+        assertTrue(graphB.getImageMap().contains(graphB.getImageMapName()));
+        assertTrue(stored.containsKey(graphA.getGraphDataId()));
+        assertTrue(stored.containsKey(graphB.getGraphDataId()));
+    }
+
+    private static DefaultGraphData barGraphData() {
+        DefaultGraphData data = new DefaultGraphData();
+        data.setGraphTitle("Title");
+        data.setCounts(new double[][]{{1, 2, 3}});
+        data.setXLabels(new String[]{"a", "b", "c"});
+        return data;
+    }
+
+    private static GraphRenderCache.Entry entry(String imageFileName) {
+        return new GraphRenderCache.Entry(null, null, imageFileName);
+    }
+
+    private static String createKey(double value, Color color, String yAxisLabel) {
+        List<PointInterface> points = new ArrayList<PointInterface>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> pointMetaData = new HashMap<String, Object>();
+            pointMetaData.put(GraphSource.ITEM_COLOR, color);
+            pointMetaData.put(GraphSource.ITEM_TOOL_TIP, "point " + i);
+            points.add(new DataPoint(value + i, "day" + i, pointMetaData));
+        }
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(GraphSource.GRAPH_TITLE, "Title");
+        params.put(GraphSource.GRAPH_Y_LABEL, yAxisLabel);
+        params.put(GraphSource.GRAPH_FONT, new Font("Arial", Font.BOLD, 14));
+
+        LegendItemCollection legendItems = new LegendItemCollection();
+        legendItems.add(new LegendItem("Series", color));
+
+        return GraphRenderCache.createKey("tsgraph",
+                                          Arrays.asList(new DataSeries(points, new HashMap<String, Object>())),
+                                          params, legendItems, null, 400, 250, Encoding.PNG);
+    }
+}
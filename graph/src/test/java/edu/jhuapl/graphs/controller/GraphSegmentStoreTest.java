@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.graphs.controller;
+
+import edu.jhuapl.graphs.GraphException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+
+public class GraphSegmentStoreTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = new File(FileUtils.getTempDirectory(), "graphSegmentStoreTest" + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testGraphData() throws Exception {
+        GraphSegmentStore store = new GraphSegmentStore(dir, Long.MAX_VALUE);
+        store.putGraphData(graphData("Title"), "graph1");
+
+        DefaultGraphData data = (DefaultGraphData) store.getGraphData("graph1");
+        assertEquals("Title", data.getGraphTitle());
+        assertTrue(Arrays.deepEquals(new double[][]{{1, 2, 3}, {4, Double.NaN, 6}}, data.getCounts()));
+        assertTrue(Arrays.deepEquals(new int[][]{{1, 2, 3}, null}, data.getColors()));
+        assertTrue(Arrays.deepEquals(new String[][]{{"a", null, "c"}}, data.getAltTexts()));
+        assertTrue(Arrays.equals(new boolean[]{true, false}, data.displayAlerts()));
+        assertNull(data.getLineSetURLs());
+        assertNull(data.getYAxisMin());
+        assertEquals(10.5, data.getYAxisMax());
+        assertEquals(new Color(255, 255, 255, 0), data.getLabelBackgroundColor());
+        assertEquals(new Font("Arial", Font.BOLD, 14), data.getTitleFont());
+        assertTrue(Arrays.equals(new DefaultGraphData().getGraphBaseColors(), data.getGraphBaseColors()));
+        store.close();
+    }
+
+    public void testImages() throws Exception {
+        GraphSegmentStore store = new GraphSegmentStore(dir, Long.MAX_VALUE);
+        store.putImage("graph1", "400x250", "small.png", new byte[]{1, 2, 3});
+        store.putImage("graph1", "800x500", "large.png", new byte[]{4, 5});
+
+        GraphImageHandlerInterface.StoredImage image = store.getImage("graph1", "800x500");
+        assertEquals("large.png", image.getFileName());
+        assertEquals(2, image.getLength());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        image.writeTo(out);
+        assertTrue(Arrays.equals(new byte[]{4, 5}, out.toByteArray()));
+        assertNull(store.getImage("graph1", "100x100"));
+        assertNull(store.getImage("graph2", "400x250"));
+        store.close();
+    }
+
+    public void testReload() throws Exception {
+        GraphSegmentStore store = new GraphSegmentStore(dir, Long.MAX_VALUE);
+        store.putGraphData(graphData("Old"), "graph1");
+        store.putGraphData(graphData("New"), "graph1");
+        store.putImage("graph1", "400x250", "small.png", new byte[]{1, 2, 3});
+        store.close();
+
+        store = new GraphSegmentStore(dir, Long.MAX_VALUE);
+        assertEquals("New", store.getGraphData("graph1").getGraphTitle());
+        GraphImageHandlerInterface.StoredImage image = store.getImage("graph1", "400x250");
+        assertEquals("small.png", image.getFileName());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        image.writeTo(out);
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, out.toByteArray()));
+        store.close();
+    }
+
+    public void testExpiry() throws Exception {
+        // a new segment for each write
+        GraphSegmentStore store = new GraphSegmentStore(dir, 0);
+        store.putGraphData(graphData("Title"), "graph1");
+        store.putGraphData(graphData("Title"), "graph2");
+        assertEquals(2, store.getSegmentCount());
+
+        assertEquals(0, store.expireSegments(Long.MAX_VALUE));
+        assertEquals(2, store.expireSegments(-1));
+        assertEquals(0, store.getSegmentCount());
+        assertEquals(0, dir.list().length);
+        try {
+            store.getGraphData("graph1");
+            fail("Expired graph data should be gone");
+        } catch (GraphException e) {
+            // expected
+        }
+
+        // the store keeps working after expiring its active segment
+        store.putGraphData(graphData("Title"), "graph3");
+        assertEquals("Title", store.getGraphData("graph3").getGraphTitle());
+        store.close();
+    }
+
+    public void testExpiryWaitsForReads() throws Exception {
+        final GraphSegmentStore store = new GraphSegmentStore(dir, 0);
+        store.putImage("graph1", "400x250", "small.png", new byte[]{1, 2, 3});
+        GraphImageHandlerInterface.StoredImage image = store.getImage("graph1", "400x250");
+        final File segment = dir.listFiles()[0];
+
+        // expire the segment while the image is being copied out of it
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (size() == 0) {
+                    assertEquals(1, store.expireSegments(-1));
+                    assertTrue(segment.exists());
+                }
+                super.write(b, off, len);
+            }
+        };
+        image.writeTo(out);
+
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, out.toByteArray()));
+        assertFalse(segment.exists());
+        assertNull(store.getImage("graph1", "400x250"));
+        try {
+            image.writeTo(new ByteArrayOutputStream());
+            fail("Expired image should be gone");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        store.close();
+    }
+
+    private static DefaultGraphData graphData(String title) {
+        DefaultGraphData data = new DefaultGraphData();
+        data.setGraphTitle(title);
+        data.setCounts(new double[][]{{1, 2, 3}, {4, Double.NaN, 6}});
+        data.setColors(new int[][]{{1, 2, 3}, null});
+        data.setAltTexts(new String[][]{{"a", null, "c"}});
+        data.setDisplayAlerts(new boolean[]{true, false});
+        data.setYAxisMax(10.5);
+        return data;
+    }
+}
@@ -65,7 +65,10 @@ public class Ears {
     }
 
     /**
-     * Calculates the results of the CDC ears algorithms.
+     * Calculates the results of the CDC ears algorithms. The baseline mean and standard deviation are kept as running
+     * sums over a ring buffer of the baseline window, so each day costs the same regardless of the baseline length. The
+     * sums are of the values minus a shift taken from the window, which keeps the variance accurate for large counts
+     * that vary little.
      *
      * @param data      data array from first day to last, no interuptions.
      * @param baseline  how many days of baseline to use.
@@ -78,28 +81,76 @@ public class Ears {
     private static double[] calculate(double[] data, int baseline, int baseLag, int cusumFlag,
                                       double cusumK, double minSigma, double thresh) {
 
-        double sigmaEstimate = minSigma;
         double[] earStat = new double[data.length];
-        for (int i = 0; i < earStat.length; i++) {
-            earStat[i] = 0;
-        }
         double cusum0 = 0;
         double cusum1 = 0;
 
-        int ndxBase = 0;
         double estMean = 0;
         double estSigma = 0;
         double currSum = 0;
 
+        double[] window = new double[baseline];
+        int windowStart = 0;
+        // sums of the finite values minus shift
+        double shift = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        // NaN and infinite values are counted instead of summed
+        int nonFinite = 0;
+
         for (int i = baseline + baseLag; i < data.length; i++) {
-            ndxBase = i - (baseline + baseLag);
-            ArrayList list = new ArrayList();
-            for (int j = 0; j < baseline; j++) {
-                list.add(new Double(data[ndxBase]));
-                ndxBase++;
+            if (i == baseline + baseLag) {
+                System.arraycopy(data, 0, window, 0, baseline);
+            } else {
+                double oldest = window[windowStart];
+                double newest = data[i - baseLag - 1];
+                window[windowStart] = newest;
+                windowStart = (windowStart + 1) % baseline;
+
+                if (isFinite(oldest)) {
+                    sum -= oldest - shift;
+                    sumSquares -= (oldest - shift) * (oldest - shift);
+                } else {
+                    nonFinite--;
+                }
+                if (isFinite(newest)) {
+                    sum += newest - shift;
+                    sumSquares += (newest - shift) * (newest - shift);
+                } else {
+                    nonFinite++;
+                }
+            }
+
+            // start over from the window every time around the ring so that rounding errors can't build up
+            if (windowStart == 0) {
+                shift = 0;
+                for (double value : window) {
+                    if (isFinite(value)) {
+                        shift = value;
+                        break;
+                    }
+                }
+                sum = 0;
+                sumSquares = 0;
+                nonFinite = 0;
+                for (double value : window) {
+                    if (isFinite(value)) {
+                        sum += value - shift;
+                        sumSquares += (value - shift) * (value - shift);
+                    } else {
+                        nonFinite++;
+                    }
+                }
+            }
+
+            if (nonFinite > 0) {
+                // same as getAverage and getStdDev, which give up on a list with NaN or infinite values
+                estMean = 0;
+                estSigma = minSigma;
+            } else {
+                estMean = checkFinite(shift + sum / baseline);
+                estSigma = Math.max(minSigma, getStdDev(sum, sumSquares, baseline));
             }
-            estMean = getAverage(list);
-            estSigma = Math.max(minSigma, getStdDev(list));
 
             currSum = Math.max(0, data[i] - estMean - cusumK * estSigma) / estSigma;
             if (Double.isNaN(currSum) || Double.isInfinite(currSum)) {
@@ -116,6 +167,27 @@ public class Ears {
         return earStat;
     }
 
+    /**
+     * Computes the sample standard deviation from running sums. The values should be shifted by one of them, otherwise
+     * n * sum(x^2) - sum(x)^2 cancels out most of its precision when the values are large and close together.
+     *
+     * @param sum        sum of the shifted values
+     * @param sumSquares sum of the squares of the shifted values
+     * @param count      number of values
+     */
+    private static double getStdDev(double sum, double sumSquares, int count) {
+        double variance = (count * sumSquares - sum * sum) / ((double) count * (count - 1));
+        return checkFinite(Math.sqrt(Math.max(0, variance)));
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    private static double checkFinite(double value) {
+        return isFinite(value) ? value : 0;
+    }
+
     /**
      * Computes the standard deviation.
      *
@@ -26,9 +26,7 @@
 
 package edu.jhuapl.bsp.detector;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 
 import static edu.jhuapl.bsp.detector.OpenMath.dataInd;
 import static edu.jhuapl.bsp.detector.OpenMath.find;
@@ -41,6 +39,7 @@ public class FilterBaselineZeros3 {
     //
     private double thresholdProb;
     private int minNumZeros;
+    private int[] runStarts, runEnds, runOrder;
 
     //
     public FilterBaselineZeros3() {
@@ -69,11 +68,8 @@ public class FilterBaselineZeros3 {
     }
 
     public int[] filterBaselineZeros(double[] dt, int len) {
-        double[] dt2 = new double[len];
-        for (int i = 0; i < len; i++) {
-            dt2[i] = dt[i];
-        }
-        return filterBaselineZeros(dt2);
+        int[] ndxOK = new int[len];
+        return Arrays.copyOf(ndxOK, filterBaselineZeros(dt, len, ndxOK));
     }
 
     /**
@@ -84,126 +80,92 @@ public class FilterBaselineZeros3 {
      * @return An array of indices that hold valid data
      */
     public int[] filterBaselineZeros(double[] dt) {
-        double testData[];
-        int i, ndxOK[], ndx1, ndx2, ndxOut[];
-        ArrayList<Integer> ndxStart, ndxEnd;
-        ndxStart = new ArrayList<Integer>();
-        ndxEnd = new ArrayList<Integer>();
-        Double numZerosTest[];
-//
-        testData = new double[1 + dt.length];
-        testData[0] = 1;
-        for (i = 0; i < dt.length; i++) {
-            testData[i + 1] = dt[i];
+        return filterBaselineZeros(dt, dt.length);
+    }
+
+    /**
+     * Same as {@link #filterBaselineZeros(double[])}, but only looks at the first <code>len</code> values of
+     * <code>dt</code> and writes the indices to <code>ndxOK</code> instead of allocating. Scratch space is kept between
+     * calls, so an instance must not be shared between threads.
+     *
+     * @param ndxOK receives the indices that hold valid data, must hold at least <code>len</code> values
+     * @return number of valid indices
+     */
+    public int filterBaselineZeros(double[] dt, int len, int[] ndxOK) {
+        if (runStarts == null || runStarts.length < len) {
+            runStarts = new int[len];
+            runEnds = new int[len];
+            runOrder = new int[len];
         }
-        for (i = 0; i < testData.length - 1; i++) {
-            if (testData[i] != 0 && testData[i + 1] == 0) {
-                ndxStart.add(i);
+
+        // strings of zeros, a string starts after a non-zero and ends before a non-zero
+        int numRuns = 0;
+        for (int i = 0; i < len; i++) {
+            if ((i == 0 ? 1 : dt[i - 1]) != 0 && dt[i] == 0) {
+                runStarts[numRuns] = i;
             }
-        }
-        for (i = 0; i < dt.length; i++) {
-            testData[i] = dt[i];
-        }
-        testData[i] = 1;
-        for (i = 0; i < testData.length - 1; i++) {
-            if (testData[i] == 0 && testData[i + 1] != 0) {
-                ndxEnd.add(i);
+            if (dt[i] == 0 && (i == len - 1 ? 1 : dt[i + 1]) != 0) {
+                runEnds[numRuns++] = i;
             }
         }
-        numZerosTest = new Double[ndxStart.size()];
-        for (i = 0; i < ndxStart.size(); i++) {
-            numZerosTest[i] = new Double(ndxEnd.get(i) - ndxStart.get(i) + 1);
+
+        // longest strings first, keeping the original order of strings of the same length
+        for (int i = 0; i < numRuns; i++) {
+            int run = i;
+            int j = i;
+            while (j > 0 && runLength(runOrder[j - 1]) < runLength(run)) {
+                runOrder[j] = runOrder[j - 1];
+                j--;
+            }
+            runOrder[j] = run;
         }
-        CompD co = new CompD(numZerosTest);
-        Integer[] idx = co.createIdx();
-        Arrays.sort(idx, co);
-//
-        //for (int k : idx) { System.out.println (k+" "+numZerosTest[k]); }
-
-        ndxOK = new int[dt.length];
-        for (i = 0; i < dt.length; i++) {
+
+        int numOK = len;
+        int numZerosOK = 0;
+        for (int i = 0; i < len; i++) {
             ndxOK[i] = i;
+            if (dt[i] == 0) {
+                numZerosOK++;
+            }
         }
-        for (i = 0; i < idx.length; i++) {
-            int key = idx[i];
-            double val = numZerosTest[key];
+        for (int i = 0; i < numRuns; i++) {
+            int run = runOrder[i];
+            double val = runLength(run);
             if (val < minNumZeros) {
                 continue;
             }
-            for (ndx1 = 0; ndx1 < dt.length; ndx1++) {
-                if (ndxOK[ndx1] == ndxStart.get(key)) {
-                    break;
-                }
-            }
-            for (ndx2 = 0; ndx2 < dt.length; ndx2++) {
-                if (ndxOK[ndx2] == ndxEnd.get(key)) {
-                    break;
-                }
+            int ndx1 = 0;
+            while (ndxOK[ndx1] != runStarts[run]) {
+                ndx1++;
             }
-            ndxOut = new int[ndxOK.length - (ndx2 - ndx1 + 1)];
-            int k = 0;
+            int ndx2 = ndx1 + runLength(run) - 1;
 
-            //    System.out.println (ndxOK.length+" "+ndxOut.length+" "+ndx2+" "+ndx1);
-
-            for (int j = 0; j < ndx1; j++) {
-                ndxOut[k++] = ndxOK[j];
-            }
-            for (int j = ndx2 + 1; j < ndxOK.length; j++) {
-                ndxOut[k++] = ndxOK[j];
-            }
-            int numValuesOut = ndxOut.length;
+            int numValuesOut = numOK - (ndx2 - ndx1 + 1);
             if (numValuesOut == 0) {
                 break;
             }
-            double[] dtOut = dataInd(dt, ndxOut);
-            int nsum = 0;
-            for (int j = 0; j < dtOut.length; j++) {
-                if (dtOut[j] == 0) {
-                    nsum++;
-                }
-            }
+            // the removed values are all zeros
+            int nsum = numZerosOK - (ndx2 - ndx1 + 1);
             double numZerosOut = Math.max(1, nsum);
-
-//      System.out.println ("nsum="+nsum+" "+numZerosOut+" "+" "+numValuesOut+" "+val);
-
             if (Math.pow(numZerosOut / numValuesOut, val) > thresholdProb) {
                 break;
             }
-            ndxOK = ndxOut;
+            System.arraycopy(ndxOK, ndx2 + 1, ndxOK, ndx1, numOK - ndx2 - 1);
+            numOK = numValuesOut;
+            numZerosOK = nsum;
         }
-        double[] dtOut = dataInd(dt, ndxOK);
+
         int nsum = 0;
-        for (int j = 0; j < dtOut.length; j++) {
-            if (dtOut[j] > 0) {
+        for (int j = 0; j < numOK; j++) {
+            if (dt[ndxOK[j]] > 0) {
                 nsum++;
             }
         }
-        if (nsum < 2) {
-            ndxOK = new int[0];
-        }
-        return ndxOK;
+        return nsum < 2 ? 0 : numOK;
     }
 
-    class CompD implements Comparator<Integer> {
-
-        private final Double[] a;
-
-        public CompD(Double[] a) {
-            this.a = a;
-        }
-
-        public Integer[] createIdx() {
-            Integer[] idx = new Integer[a.length];
-            for (int i = 0; i < a.length; i++) {
-                idx[i] = i;
-            }
-            return idx;
-        }
-
-        @Override
-        public int compare(Integer i1, Integer i2) {
-            return a[i2].compareTo(a[i1]);
-        }
+    private int runLength(int run) {
+        return runEnds[run] - runStarts[run] + 1;
     }
 
     public static boolean filterBaselineZerosTest(double[] d) {
@@ -30,6 +30,7 @@ import edu.jhuapl.bsp.detector.exception.DetectorException;
 
 import de.jollyday.HolidayManager;
 
+import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.TDistribution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,28 +38,18 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Properties;
 
-import static edu.jhuapl.bsp.detector.OpenMath.any;
-import static edu.jhuapl.bsp.detector.OpenMath.arrayAbs;
 import static edu.jhuapl.bsp.detector.OpenMath.arrayAdd;
-import static edu.jhuapl.bsp.detector.OpenMath.arrayAdd2;
-import static edu.jhuapl.bsp.detector.OpenMath.arrayMod;
 import static edu.jhuapl.bsp.detector.OpenMath.copya;
-import static edu.jhuapl.bsp.detector.OpenMath.dataInd;
 import static edu.jhuapl.bsp.detector.OpenMath.dataInd_js;
 import static edu.jhuapl.bsp.detector.OpenMath.dataVec;
-import static edu.jhuapl.bsp.detector.OpenMath.find;
-import static edu.jhuapl.bsp.detector.OpenMath.findLT;
-import static edu.jhuapl.bsp.detector.OpenMath.ismember;
 import static edu.jhuapl.bsp.detector.OpenMath.mean;
 import static edu.jhuapl.bsp.detector.OpenMath.median;
-import static edu.jhuapl.bsp.detector.OpenMath.normcdf;
-import static edu.jhuapl.bsp.detector.OpenMath.numel;
 import static edu.jhuapl.bsp.detector.OpenMath.ones;
 import static edu.jhuapl.bsp.detector.OpenMath.reshape;
-import static edu.jhuapl.bsp.detector.OpenMath.std;
 import static edu.jhuapl.bsp.detector.OpenMath.transpose;
 import static java.lang.Math.abs;
 import static java.lang.Math.log;
@@ -93,6 +84,19 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
     private double levels[], pvalues[], expectedData[], colors[], r2Levels[], switchFlags[], test_stat[];
 
     private static final Logger log = LoggerFactory.getLogger(GSSages.class);
+
+    /**
+     * Yellow alert quantiles of the Student t distribution for 1 to {@link #BASELINE} degrees of freedom, shared by
+     * all instances since computing them is expensive.
+     */
+    private static final double[] UCL_Y = new double[BASELINE];
+    private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(0, 1);
+
+    static {
+        for (int k = 0; k < BASELINE; k++) {
+            UCL_Y[k] = new TDistribution(k + 1).inverseCumulativeProbability(1 - 0.05);
+        }
+    }
     private HolidayManager holidayManager;
 
     public GSSages() {
@@ -168,12 +172,8 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
         FilterBaselineZeros3 zf = new FilterBaselineZeros3();
         boolean bSparseFlag;
         int i;
-        double ck, c0[], ytemp[] = new double[0];
-        double UCL_R[], UCL_Y[], sigmaCoeff[], deltaSigma[], Sigma = 0, minSigma[];
-        UCL_R = new double[Baseline];
-        UCL_Y = new double[Baseline];
-        int degFreedom;
-        minSigma = new double[Baseline];
+        double ck, c0[];
+        double Sigma = 0;
         //
         levels = ones(data.length, 0.5);
         pvalues = ones(data.length, -9999);
@@ -201,7 +201,8 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
         // Depending on the mean of the baseline choose smoothing coefficients
         // alpha is a vector with 3 coefficients - alpha(1) - level alpha(2)- trend
         // alpha(3) is seasonality (corresponds to alpha beta and gamma in the paper
-        if (median(reshape(datakr)) == 0) {
+        boolean datakrMedianZero = median(reshape(datakr)) == 0;
+        if (datakrMedianZero) {
             alpha[0] = 0.4;
             alpha[1] = 0;
             alpha[2] = 0;
@@ -254,17 +255,26 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
         double denom[] = ones(y.length, 0);
         //
         double y_Pred[] = ones(y.length, 0); // initialize predictions
-        int ndxBaseline[] = new int[14];
-        for (i = 0; i < 14; i++) {
-            ndxBaseline[i] = i + 1;
-        } // starting baseline
+        // the baseline is always the contiguous range of (1-based) days ndxBaselineStart..ndxBaselineEnd
+        int ndxBaselineStart = 1;
+        int ndxBaselineEnd = 14; // starting baseline
+        // scratch space, reused for every day
+        double baselineData[] = new double[Baseline];
+        double work[] = new double[Baseline];
+        int ndxOK[] = new int[Baseline];
+        int ndxBaselineOK[] = new int[Baseline];
+        int memList[] = new int[Baseline];
         //
         for (i = 2 * season + GUARDBAND; i < y.length; i++) { // beginning at day 15 + Guardband
             // use the indices of the entire baseline period
             // checking that there are at least 7 non-zero values "together"
-            int ndxOK[] = zf.filterBaselineZeros(dataInd_js(datak, ndxBaseline));
-            int ndxBaselineOK[] = dataInd(ndxBaseline, ndxOK);
-            if (numel(ndxBaselineOK) >= 7) {
+            int numBaseline = ndxBaselineEnd - ndxBaselineStart + 1;
+            System.arraycopy(datak, ndxBaselineStart - 1, baselineData, 0, numBaseline);
+            int numOK = zf.filterBaselineZeros(baselineData, numBaseline, ndxOK);
+            for (int k = 0; k < numOK; k++) {
+                ndxBaselineOK[k] = ndxBaselineStart + ndxOK[k];
+            }
+            if (numOK >= 7) {
                 if (HOL[i] == 1
                         && !((y[i] < (c[i - 6] * m[i - 6] + denom[i - 1]) && y[i] > (c[i - 6] * m[i - 6] - denom[i - 1])) || HOLfac == 1.0)) {
                     // if holiday - check if the values within reasonable limits (+/- 1 standard deviation from the
@@ -275,18 +285,16 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
                 }
                 // If mean of the recent "good" data all of a sudden is greater
                 // than 5 - start updating seasonal coefficients;
-                // System.out.println
-                // (datak.length+" "+ndxBaselineOK.length+" "+datakr.length+" "+datakr[0].length+" "+ndxBaseline[ndxBaseline.length-1]);
-                if ((mean(dataInd_js(datak, ndxBaselineOK)) >= 5) && (median(reshape(datakr)) == 0)) {
-                    // System.out.println ("1");
+                if ((meanOf(work, gather(datak, ndxBaselineOK, numOK, work)) >= 5) && datakrMedianZero) {
                     alpha[2] = 0.05;
                     bSparseFlag = false;
-                    if ((numel(ndxBaselineOK) >= 14)
-                            && (ndxBaselineOK[ndxBaselineOK.length - 1] - ndxBaselineOK[ndxBaselineOK.length - 1 - 13] == 13)) {
+                    if ((numOK >= 14)
+                            && (ndxBaselineOK[numOK - 1] - ndxBaselineOK[numOK - 1 - 13] == 13)) {
                         datakr =
                                 reshape(dataInd_js(y,
-                                        dataVec(ndxBaselineOK, ndxBaselineOK.length - 1 - 13, ndxBaselineOK.length - 1)),
+                                        dataVec(Arrays.copyOf(ndxBaselineOK, numOK), numOK - 1 - 13, numOK - 1)),
                                         7, 2);
+                        datakrMedianZero = median(reshape(datakr)) == 0;
                         c0 = mean(transpose(datakr));
                         ck = mean(mean(transpose(datakr)));
                         for (int k = i - season, n0 = 0; k < i; k++, n0++) {
@@ -311,65 +319,54 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
                 c[i] = c[i - season];
             }
             //
-            int memList2[] = findLT(arrayAbs(arrayAdd2(dataVec(c, i - 6, i), -c[i])), 0.1);
-            int memList3[] = arrayMod(arrayAdd2(memList2, i + 2), 7);
-            int memList[] = ismember(arrayMod(ndxBaselineOK, 7), memList3);
-            int HOLlist[] = dataInd_js(HOL, ndxBaselineOK);
-            for (int k = 0; k < ndxBaselineOK.length; k++) {
-                if (HOLlist[k] == 1) {
-                    memList[k] = 0;
+            // days of the week whose seasonality coefficient is close to today's
+            int similarDays = 0;
+            for (int k = 0; k < 7; k++) {
+                if (abs(c[i - 6 + k] - c[i]) < 0.1) {
+                    similarDays |= 1 << ((k + i + 2 + 7) % 7);
+                }
+            }
+            // baseline days on those days of the week that aren't holidays
+            int numMem = 0;
+            for (int k = 0; k < numOK; k++) {
+                if ((similarDays & (1 << ((ndxBaselineOK[k] + 7) % 7))) != 0 && HOL[ndxBaselineOK[k] - 1] != 1) {
+                    memList[numMem++] = k;
                 }
             }
-            memList = find(memList);
-            if (numel(dataInd_js(y, dataInd(ndxBaseline, memList))) <= 4) {
-                // System.out.println ("2");
-                denom[i] = std(dataInd_js(y, ndxBaseline));
+            if (numMem <= 4) {
+                System.arraycopy(y, ndxBaselineStart - 1, work, 0, numBaseline);
+                denom[i] = stdOf(work, numBaseline);
             } else {
-                // System.out.println ("3");
-                denom[i] = std(dataInd_js(y, dataInd(ndxBaselineOK, memList)));
+                for (int k = 0; k < numMem; k++) {
+                    work[k] = y[ndxBaselineOK[memList[k]] - 1];
+                }
+                denom[i] = stdOf(work, numMem);
             }
             // For EWMA switch
             // the term due to the smoothed data
             if (bSparseFlag) {
-                for (int k = 0; k < Baseline; k++) {
-                    TDistribution tdist = new TDistribution(k + 1);
-                    UCL_R[k] = tdist.inverseCumulativeProbability(1 - 0.01);
-                    UCL_Y[k] = tdist.inverseCumulativeProbability(1 - 0.05);
-                }
-                degFreedom = numel(ndxBaselineOK) - 1;
-                double Term1 = alpha[0] / (2.0 - alpha[0]);
-                // the term due to the baseline mean
-                double Term2[] = new double[Baseline];
-                for (int k = 0; k < Term2.length; k++) {
-                    Term2[k] = 1.0 / (2.0 + k);
-                }
-                // the term due to twice their covariance
-                double Term3[] = new double[Baseline];
-                for (int k = 0; k < Term3.length; k++) {
-                    Term3[k] = -2 * pow(1 - alpha[0], GUARDBAND + 1) * (1 - pow(1 - alpha[0], 2.0 + k)) / (2.0 + k);
-                }
-                // the correction factor for sigma
-                sigmaCoeff = new double[Baseline];
-                for (int k = 0; k < Baseline; k++) {
-                    sigmaCoeff[k] = Math.sqrt(Term1 + Term2[k] + Term3[k]);
-                }
-                deltaSigma = new double[Baseline];
-                for (int k = 0; k < Baseline; k++) {
-                    deltaSigma[k] =
+                int degFreedom = numOK - 1;
+                gather(y, ndxBaselineOK, numOK, work);
+                if (!anyOf(work, numOK)) {
+                    Sigma = 0;
+                } else {
+                    int k = degFreedom - 1;
+                    double Term1 = alpha[0] / (2.0 - alpha[0]);
+                    // the term due to the baseline mean
+                    double Term2 = 1.0 / (2.0 + k);
+                    // the term due to twice their covariance
+                    double Term3 = -2 * pow(1 - alpha[0], GUARDBAND + 1) * (1 - pow(1 - alpha[0], 2.0 + k)) / (2.0 + k);
+                    // the correction factor for sigma
+                    double sigmaCoeff = Math.sqrt(Term1 + Term2 + Term3);
+                    double deltaSigma =
                             (alpha[0] / UCL_Y[k])
                                     * (0.1289 - (0.2414 - 0.1826 * pow(1 - alpha[0], 4)) * log(10 * 0.05)); // hard-coded
                                                                                                             // yellow
                                                                                                             // threshold
                                                                                                             // to 0.05
-                }
-                if (!any(dataInd_js(y, ndxBaselineOK))) {
-                    Sigma = 0;
-                } else {
-                    Sigma = sigmaCoeff[degFreedom - 1] * std(dataInd_js(y, ndxBaselineOK)) + deltaSigma[degFreedom - 1];
-                    for (int k = 0; k < Baseline; k++) {
-                        minSigma[k] = (alpha[0] / UCL_Y[k]) * (1 + 0.5 * (1 - alpha[0]) * (1 - alpha[0]));
-                    }
-                    Sigma = max(Sigma, minSigma[degFreedom - 1]);
+                    Sigma = sigmaCoeff * stdOf(work, numOK) + deltaSigma;
+                    double minSigma = (alpha[0] / UCL_Y[k]) * (1 + 0.5 * (1 - alpha[0]) * (1 - alpha[0]));
+                    Sigma = max(Sigma, minSigma);
                 }
             }
             //
@@ -385,8 +382,9 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
             // 2) prediction is negative
             // 3) Holiday
             // 4) Day after holiday
-            if (((abs(y_Pred[i] - y[i] + Adj) / denom[i] > APE_LIMIT) && (numel(ndxBaseline) == numel(ndxBaselineOK)) && (y[i] > c[8 + (i % 7) - 1]
-                    * OpenMath.percentile(dataInd_js(y, ndxBaseline), 95.0)))
+            if (((abs(y_Pred[i] - y[i] + Adj) / denom[i] > APE_LIMIT) && (numBaseline == numOK)
+                    && (y[i] > c[8 + (i % 7) - 1]
+                            * OpenMath.percentile(Arrays.copyOfRange(y, ndxBaselineStart - 1, ndxBaselineEnd), 95.0)))
                     || HOL[i] == 1) {
                 m[i] = m[i - 1];
                 b[i] = b[i - 1];
@@ -395,29 +393,24 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
             test_stat[i] = (y[i] - y_Pred[i] - Adj) / denom[i]; // Calculating the test statistics(removing the
                                                                 // adjustment added on line 69
             if (bSparseFlag) {
-                ytemp = dataInd_js(y, ndxBaselineOK);
                 Sigma = Math.max(Sigma, 0.5);
-                test_stat[i] = (m[i] - mean(ytemp) + Adj) / Sigma;
+                test_stat[i] = (m[i] - meanOf(work, gather(y, ndxBaselineOK, numOK, work)) + Adj) / Sigma;
             }
             if ((y[i] - Adj) == 0) { // if value is 0 to begin with - return 0 for the statistic
                 test_stat[i] = 0;
             }
-            if (ndxBaselineOK.length == 0) {
+            if (numOK == 0) {
                 test_stat[i] = 0;
             }
-            pvalues[i] = 1 - normcdf(test_stat[i], 0, 1); // Using Gaussian (normal) 0,1 distribution table value
-            if (ndxBaseline[ndxBaseline.length - 1] < Baseline) {
+            // Using Gaussian (normal) 0,1 distribution table value
+            pvalues[i] = 1 - STANDARD_NORMAL.cumulativeProbability(test_stat[i]);
+            if (ndxBaselineEnd < Baseline) {
                 // increase baseline vector
-                int bt[] = ndxBaseline;
-                ndxBaseline = new int[bt.length + 1];
-                ndxBaseline[0] = 0;
-                for (int k = 1; k < ndxBaseline.length; k++) {
-                    ndxBaseline[k] = bt[k - 1];
-                }
+                ndxBaselineStart = 0;
             }
-            arrayAdd(ndxBaseline, 1); // go forward by one day
-            // System.out.println (String.format ("%.4f %.4f %.4f %.4f %.4f %.4f %.4f %.4f %.4f",
-            // denom[i], pvalues[i], m[i], c[i], test_stat[i], y_Pred[i], (bSparseFlag?1.0:0.0), m0, multFac));
+            // go forward by one day
+            ndxBaselineStart++;
+            ndxBaselineEnd++;
         }
         arrayAdd(y_Pred, -Adj); // remove adjustment from prediction
         //
@@ -427,6 +420,64 @@ public class GSSages implements TemporalDetectorInterface, TemporalDetector {
         expectedData = y_Pred;
     }
 
+    /**
+     * Copies the values at the (1-based) indices <code>ndx</code> into <code>out</code>.
+     *
+     * @return number of values copied
+     */
+    private static int gather(double[] d, int[] ndx, int n, double[] out) {
+        for (int k = 0; k < n; k++) {
+            out[k] = d[ndx[k] - 1];
+        }
+        return n;
+    }
+
+    /**
+     * Same as {@link OpenMath#mean(double[])} of the first <code>n</code> values.
+     */
+    private static double meanOf(double[] d, int n) {
+        if (n > 0) {
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += d[k];
+            }
+            double result = sum / n;
+            if (Double.isNaN(result) || Double.isInfinite(result)) {
+                return 0;
+            }
+            return result;
+        }
+        return 0;
+    }
+
+    /**
+     * Same as {@link OpenMath#std(double[])} of the first <code>n</code> values.
+     */
+    private static double stdOf(double[] d, int n) {
+        if (n > 1) {
+            double sum = 0;
+            double avg = meanOf(d, n);
+            for (int k = 0; k < n; k++) {
+                sum += ((d[k] - avg) * (d[k] - avg));
+            }
+            double stddev = Math.sqrt(sum / (n - 1));
+            if (Double.isNaN(stddev) || Double.isInfinite(stddev)) {
+                return 0;
+            }
+            return stddev;
+        }
+        return 0.0;
+    }
+
+    private static boolean anyOf(double[] d, int n) {
+        for (int k = 0; k < n; k++) {
+            if (d[k] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void readConfigFile() {
         Properties defaultProps = new Properties();
         InputStream in = getClass().getResourceAsStream("/GSSages.properties");
@@ -28,9 +28,12 @@ package edu.jhuapl.bsp.detector;
 
 import de.jollyday.HolidayManager;
 
-import java.util.Calendar;
+import java.util.BitSet;
 import java.util.Date;
 
+/**
+ * Holiday lookups for detectors, backed by the shared {@link HolidayIndex} of each holiday manager.
+ */
 public class HolidayChecker {
 
     /**
@@ -44,15 +47,12 @@ public class HolidayChecker {
      */
     public static int[] getHolidays(Date startDate, int numberOfDays, HolidayManager holidayManager) {
         int holidays[] = new int[numberOfDays];
-        Calendar cal = Calendar.getInstance();
-        cal.setFirstDayOfWeek(Calendar.SUNDAY);
-        cal.setTime(startDate);
-        for (int i = 0; i < numberOfDays; i++) {
-            // if holiday manager defined
-            if (holidayManager != null) {
-                holidays[i] = holidayManager.isHoliday(cal) ? 1 : 0;
+        // if holiday manager defined
+        if (holidayManager != null) {
+            BitSet mask = HolidayIndex.forManager(holidayManager).getHolidays(startDate, numberOfDays);
+            for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+                holidays[i] = 1;
             }
-            cal.add(Calendar.DAY_OF_MONTH, 1);
         }
         return holidays;
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.bsp.detector;
+
+import de.jollyday.Holiday;
+import de.jollyday.HolidayManager;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holidays of a {@link HolidayManager}, kept as one bit per day of the year. Each year is asked of the holiday manager
+ * once and shared by every detector using the same manager, so marking the holidays of a series is a bit test per day
+ * instead of a holiday lookup.
+ *
+ * <p> Instances are thread-safe. Use {@link #forManager(HolidayManager)} to get the shared index of a manager. </p>
+ */
+public class HolidayIndex {
+
+    private static final ConcurrentMap<HolidayManager, HolidayIndex> INDEXES =
+            new ConcurrentHashMap<HolidayManager, HolidayIndex>();
+
+    private final HolidayManager holidayManager;
+    private final ConcurrentMap<Integer, BitSet> years = new ConcurrentHashMap<Integer, BitSet>();
+
+    public HolidayIndex(HolidayManager holidayManager) {
+        this.holidayManager = holidayManager;
+    }
+
+    /**
+     * @return the index shared by everyone using <code>holidayManager</code>
+     */
+    public static HolidayIndex forManager(HolidayManager holidayManager) {
+        HolidayIndex index = INDEXES.get(holidayManager);
+        if (index == null) {
+            HolidayIndex newIndex = new HolidayIndex(holidayManager);
+            index = INDEXES.putIfAbsent(holidayManager, newIndex);
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param year calendar year
+     * @return holidays of <code>year</code>, bit <code>n</code> being day of year <code>n</code> (1-based). Callers
+     *         must not modify it.
+     */
+    public BitSet getYear(int year) {
+        BitSet days = years.get(year);
+        if (days == null) {
+            // computing a year twice on a race is harmless, both threads get equal sets
+            days = new BitSet(367);
+            for (Holiday holiday : holidayManager.getHolidays(year)) {
+                // HolidayManager.isHoliday only matches holidays that fall within the requested year
+                if (holiday.getDate().getYear() == year) {
+                    days.set(holiday.getDate().getDayOfYear());
+                }
+            }
+            BitSet existing = years.putIfAbsent(year, days);
+            if (existing != null) {
+                days = existing;
+            }
+        }
+        return days;
+    }
+
+    public boolean isHoliday(Calendar cal) {
+        return getYear(cal.get(Calendar.YEAR)).get(cal.get(Calendar.DAY_OF_YEAR));
+    }
+
+    /**
+     * @param startDate    first day of the range
+     * @param numberOfDays number of days in the range
+     * @return a mask with bit <code>i</code> set if day <code>i</code> from <code>startDate</code> is a holiday
+     */
+    public BitSet getHolidays(Date startDate, int numberOfDays) {
+        BitSet mask = new BitSet(numberOfDays);
+        // holiday dates are ISO dates, so walk a Gregorian calendar whatever the default locale is
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(startDate);
+        int year = cal.get(Calendar.YEAR);
+        int dayOfYear = cal.get(Calendar.DAY_OF_YEAR);
+        int yearLength = cal.getActualMaximum(Calendar.DAY_OF_YEAR);
+        BitSet days = getYear(year);
+        for (int i = 0; i < numberOfDays; i++) {
+            if (dayOfYear > yearLength) {
+                year++;
+                dayOfYear = 1;
+                yearLength = cal.isLeapYear(year) ? 366 : 365;
+                days = getYear(year);
+            }
+            if (days.get(dayOfYear)) {
+                mask.set(i);
+            }
+            dayOfYear++;
+        }
+        return mask;
+    }
+}
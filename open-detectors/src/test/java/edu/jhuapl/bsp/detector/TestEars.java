@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *                      
+ * This material may be used, modified, or reproduced by or for the U.S. 
+ * Government pursuant to the rights granted under the clauses at             
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *                      
+ * Licensed under the Apache License, Version 2.0 (the "License");            
+ * you may not use this file except in compliance with the License.           
+ * You may obtain a copy of the License at                                    
+ *                                                                             
+ *     http://www.apache.org/licenses/LICENSE-2.0                             
+ *                                                                             
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,     
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR    
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.bsp.detector;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TestEars extends TestCase {
+
+    public void testCountsMatchListCalculation() {
+        Random random = new Random(42);
+        double[] data = new double[3 * 365];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(i % 7 == 0 ? 3 : 40);
+        }
+        assertAllMatch(data);
+    }
+
+    public void testFractionsMatchListCalculation() {
+        Random random = new Random(7);
+        double[] data = new double[3 * 365];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextDouble() * 1000;
+        }
+        assertAllMatch(data);
+    }
+
+    public void testNonFiniteValuesMatchListCalculation() {
+        Random random = new Random(11);
+        double[] data = new double[200];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(20);
+        }
+        data[20] = Double.NaN;
+        data[60] = Double.POSITIVE_INFINITY;
+        data[61] = Double.NaN;
+        assertAllMatch(data);
+    }
+
+    public void testLargeCountsMatchListCalculation() {
+        Random random = new Random(13);
+        double[] data = new double[3 * 365];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 1e8 + random.nextInt(4);
+        }
+        // the list calculation rounds its mean at this magnitude too
+        assertMatches(calculate(data, 7, 0, 0, 1, .1, 2), Ears.calculateC1(data), 1e-6);
+        assertMatches(calculate(data, 7, 2, 1, 1, .1, 2), Ears.calculateC3(data), 1e-6);
+    }
+
+    public void testShortSeries() {
+        assertAllMatch(new double[0]);
+        assertAllMatch(new double[]{1, 2, 3});
+        assertAllMatch(new double[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    private static void assertAllMatch(double[] data) {
+        assertMatches(calculate(data, 7, 0, 0, 1, .1, 2), Ears.calculateC1(data));
+        assertMatches(calculate(data, 7, 2, 0, 1, .1, 2), Ears.calculateC2(data));
+        assertMatches(calculate(data, 7, 2, 1, 1, .1, 2), Ears.calculateC3(data));
+        assertMatches(calculate(data, 7, 2, 1, 1, .02, 2), Ears.gettestC3(data));
+    }
+
+    private static void assertMatches(double[] expected, double[] actual) {
+        assertMatches(expected, actual, 1e-9);
+    }
+
+    private static void assertMatches(double[] expected, double[] actual, double delta) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("day " + i, expected[i], actual[i], delta);
+        }
+    }
+
+    /**
+     * Recomputes the baseline from scratch for each day, the way Ears used to.
+     */
+    private static double[] calculate(double[] data, int baseline, int baseLag, int cusumFlag,
+                                      double cusumK, double minSigma, double thresh) {
+        double[] earStat = new double[data.length];
+        double cusum0 = 0;
+        double cusum1 = 0;
+
+        for (int i = baseline + baseLag; i < data.length; i++) {
+            ArrayList list = new ArrayList();
+            for (int j = i - (baseline + baseLag); j < i - baseLag; j++) {
+                list.add(data[j]);
+            }
+            double estMean = Ears.getAverage(list);
+            double estSigma = Math.max(minSigma, Ears.getStdDev(list));
+
+            double currSum = Math.max(0, data[i] - estMean - cusumK * estSigma) / estSigma;
+            if (Double.isNaN(currSum) || Double.isInfinite(currSum)) {
+                currSum = 0;
+            }
+            earStat[i] = currSum + cusumFlag * (cusum0 + cusum1);
+            cusum0 = cusum1;
+            cusum1 = currSum >= thresh ? 0 : currSum;
+        }
+        return earStat;
+    }
+}
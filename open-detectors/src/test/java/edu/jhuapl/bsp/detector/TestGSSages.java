@@ -32,6 +32,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -502,4 +503,20 @@ public class TestGSSages extends TestCase {
             assertEquals(dataReal[i], tddo.getLevels()[i], 0.001);
         }
     }
+
+    @Test
+    public void testReusedDetector() {
+        HolidayManager holidayManager = HolidayManager.getInstance(getClass().getResource("/Holidays_2.xml"));
+        Calendar cal = Calendar.getInstance();
+        cal.set(2007, 0, 10);
+
+        // a detector that already ran must give the same results as a new one
+        for (double[] data : new double[][]{vec1, vec2, vec3, vec1}) {
+            double[][] fresh = new GSSages(holidayManager).runDetector(data, cal.getTime());
+            double[][] reused = detector.runDetector(data, cal.getTime());
+            for (int i = 0; i < fresh.length; i++) {
+                assertTrue(Arrays.equals(fresh[i], reused[i]));
+            }
+        }
+    }
 }
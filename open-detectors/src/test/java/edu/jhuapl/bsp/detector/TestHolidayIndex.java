@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *                      
+ * This material may be used, modified, or reproduced by or for the U.S. 
+ * Government pursuant to the rights granted under the clauses at             
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *                      
+ * Licensed under the Apache License, Version 2.0 (the "License");            
+ * you may not use this file except in compliance with the License.           
+ * You may obtain a copy of the License at                                    
+ *                                                                             
+ *     http://www.apache.org/licenses/LICENSE-2.0                             
+ *                                                                             
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,     
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR    
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.bsp.detector;
+
+import de.jollyday.HolidayManager;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestHolidayIndex {
+
+    private final HolidayManager holidayManager =
+            HolidayManager.getInstance(getClass().getResource("/Holidays_2.xml"));
+
+    @Test
+    public void testSharedIndex() {
+        assertSame(HolidayIndex.forManager(holidayManager), HolidayIndex.forManager(holidayManager));
+    }
+
+    @Test
+    public void testMatchesHolidayManager() {
+        Calendar cal = Calendar.getInstance();
+        cal.set(1999, Calendar.DECEMBER, 1);
+        // crosses the 2000 leap year and several year boundaries
+        int numberOfDays = 5 * 365;
+        BitSet mask = HolidayIndex.forManager(holidayManager).getHolidays(cal.getTime(), numberOfDays);
+
+        Calendar day = (Calendar) cal.clone();
+        for (int i = 0; i < numberOfDays; i++) {
+            assertEquals("day " + i, holidayManager.isHoliday(day), mask.get(i));
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+}
@@ -53,6 +53,9 @@ public class QueryManipulationStore {
     private List<Grouping> groupings;
     private String timezone;
 
+    private long firstRecord;
+    private long pageSize = -1;
+
 
     /**
      * @param results            dimensions that should appear as results in select query
@@ -153,4 +156,28 @@ public class QueryManipulationStore {
     public void setTimezone(String timezone) {
         this.timezone = timezone;
     }
+
+    /**
+     * Restricts the query to one page of results. Data sources apply the page in SQL, so the query needs a stable sort
+     * order for pages to be consistent.
+     *
+     * @param firstRecord number of records to skip
+     * @param pageSize    maximum number of records to return, or a negative number for all of them
+     */
+    public void setPage(long firstRecord, long pageSize) {
+        this.firstRecord = firstRecord;
+        this.pageSize = pageSize;
+    }
+
+    public long getFirstRecord() {
+        return firstRecord;
+    }
+
+    public long getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isPaged() {
+        return pageSize >= 0;
+    }
 }
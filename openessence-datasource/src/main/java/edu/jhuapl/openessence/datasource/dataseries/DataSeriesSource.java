@@ -32,6 +32,7 @@ import edu.jhuapl.openessence.datasource.OeDataSourceException;
 import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -67,4 +68,17 @@ public interface DataSeriesSource extends OeDataSource {
      */
     public List<AccumPoint> seriesQuery(SeriesQueryManipulationStore seriesQueryManipulationStore)
             throws OeDataSourceException, OeDataSourceAccessException;
+
+    /**
+     * Runs a series query with a single date grouping and returns it as a zero-filled {@link DenseSeries}.
+     *
+     * @param startDate      first date of the series
+     * @param endDate        last date of the series
+     * @param firstDayOfWeek {@link java.util.Calendar} day that weekly intervals start on
+     * @throws OeDataSourceException If the query fails, or the grouping isn't a {@link DenseSeries#isSupported(String)
+     *                               supported} resolution of a date dimension.
+     */
+    public DenseSeries denseSeriesQuery(SeriesQueryManipulationStore seriesQueryManipulationStore, Date startDate,
+                                        Date endDate, int firstDayOfWeek)
+            throws OeDataSourceException, OeDataSourceAccessException;
 }
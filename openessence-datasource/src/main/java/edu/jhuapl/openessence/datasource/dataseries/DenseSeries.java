@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.dataseries;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Columnar time series: one <code>double[]</code> per accumulation, with one value per interval from the start date
+ * on. Intervals without data are zero-filled. Values that were <code>null</code> are <code>NaN</code>.
+ *
+ * <p> Intervals are computed with epoch-day arithmetic in the server's default time zone, which is also the time zone
+ * {@link edu.jhuapl.openessence.datasource.jdbc.ResolutionHandler resolution handlers} build their dates in. </p>
+ */
+public class DenseSeries {
+
+    public static final String DAILY = "daily";
+    public static final String WEEKLY = "weekly";
+    public static final String MONTHLY = "monthly";
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final Date startDate;
+    private final String resolution;
+    private final int length;
+    private final Map<String, double[]> values;
+    private final long startInterval;
+    private final int firstDayOfWeek;
+    private int rowCount;
+
+    /**
+     * @param values         the values of each accumulation, all of the same length
+     * @param firstDayOfWeek {@link Calendar} day that weekly intervals start on
+     */
+    public DenseSeries(Date startDate, String resolution, Map<String, double[]> values, int firstDayOfWeek) {
+        this.startDate = startDate;
+        this.resolution = resolution;
+        this.values = values;
+        this.firstDayOfWeek = firstDayOfWeek;
+        this.length = values.isEmpty() ? 0 : values.values().iterator().next().length;
+        this.startInterval = isSupported(resolution) ? getInterval(startDate) : 0;
+        this.rowCount = length;
+    }
+
+    /**
+     * Creates a zero-filled series that covers <code>startDate</code> through <code>endDate</code>.
+     *
+     * @param resolution one of the {@link #isSupported(String) supported resolutions}
+     */
+    public static DenseSeries create(Date startDate, Date endDate, String resolution, int firstDayOfWeek,
+                                     Collection<String> accumIds) {
+        if (!isSupported(resolution)) {
+            throw new IllegalArgumentException("Unsupported resolution " + resolution);
+        }
+
+        DenseSeries empty = new DenseSeries(startDate, resolution, new LinkedHashMap<String, double[]>(),
+                                            firstDayOfWeek);
+        int length = (int) Math.max(0, empty.getInterval(endDate) - empty.startInterval + 1);
+
+        Map<String, double[]> values = new LinkedHashMap<String, double[]>(accumIds.size());
+        for (String accumId : accumIds) {
+            values.put(accumId, new double[length]);
+        }
+        DenseSeries series = new DenseSeries(startDate, resolution, values, firstDayOfWeek);
+        series.setRowCount(0);
+        return series;
+    }
+
+    /**
+     * Copies a list of points, one per interval, into a series.
+     *
+     * @param firstDayOfWeek {@link Calendar} day that weekly intervals start on
+     */
+    public static DenseSeries fromPoints(Date startDate, String resolution, List<AccumPoint> points,
+                                         Collection<String> accumIds, int firstDayOfWeek) {
+        Map<String, double[]> values = new LinkedHashMap<String, double[]>(accumIds.size());
+        for (String accumId : accumIds) {
+            double[] v = new double[points.size()];
+            int i = 0;
+            for (AccumPoint point : points) {
+                Number value = point == null ? null : point.getValue(accumId);
+                v[i++] = value == null ? Double.NaN : value.doubleValue();
+            }
+            values.put(accumId, v);
+        }
+        return new DenseSeries(startDate, resolution, values, firstDayOfWeek);
+    }
+
+    /**
+     * @return true if series of this resolution can be {@link #create created}
+     */
+    public static boolean isSupported(String resolution) {
+        return DAILY.equalsIgnoreCase(resolution) || WEEKLY.equalsIgnoreCase(resolution)
+               || MONTHLY.equalsIgnoreCase(resolution);
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return number of intervals
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return number of query rows that went into this series, 0 if the query didn't return anything
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * @return the values of the accumulation, or <code>null</code> if it isn't part of this series. The array is
+     *         backed by the series.
+     */
+    public double[] getValues(String accumId) {
+        return values.get(accumId);
+    }
+
+    /**
+     * @return new array of the per-interval sums of the given accumulations, skipping <code>NaN</code>s
+     */
+    public double[] getTotal(Collection<String> accumIds) {
+        double[] total = new double[length];
+        for (String accumId : accumIds) {
+            double[] v = values.get(accumId);
+            if (v != null) {
+                for (int i = 0; i < length; i++) {
+                    if (!Double.isNaN(v[i])) {
+                        total[i] += v[i];
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return index of the interval that <code>date</code> falls into, or -1 if it's outside of this series
+     */
+    public int indexOf(Date date) {
+        long index = getInterval(date) - startInterval;
+        return index < 0 || index >= length ? -1 : (int) index;
+    }
+
+    /**
+     * Adds <code>value</code> to the accumulation's value at <code>index</code>.
+     */
+    public void add(String accumId, int index, double value) {
+        values.get(accumId)[index] += value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DenseSeries[").append(resolution).append(" from ").append(startDate);
+        for (Map.Entry<String, double[]> e : values.entrySet()) {
+            sb.append(", ").append(e.getKey()).append('=').append(Arrays.toString(e.getValue()));
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return sequential number of the interval that <code>date</code> falls into
+     */
+    private long getInterval(Date date) {
+        long day = getEpochDay(date);
+        if (WEEKLY.equalsIgnoreCase(resolution)) {
+            // 1970-01-01 was a Thursday
+            int dayOfWeek = (int) floorMod(day + Calendar.THURSDAY - 1, 7) + 1;
+            long weekStart = day - floorMod(dayOfWeek - firstDayOfWeek, 7);
+            return floorDiv(weekStart, 7);
+        } else if (MONTHLY.equalsIgnoreCase(resolution)) {
+            return getEpochMonth(day);
+        }
+        return day;
+    }
+
+    private static long getEpochDay(Date date) {
+        long millis = date.getTime();
+        return floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return months since 1970-01, from the proleptic Gregorian date of <code>epochDay</code>
+     */
+    private static long getEpochMonth(long epochDay) {
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        // months counted from March
+        long mp = (5 * dayOfYear + 2) / 153;
+        long month = mp < 10 ? mp + 2 : mp - 10;
+        long year = yearOfEra + era * 400 + (month < 2 ? 1 : 0);
+        return (year - 1970) * 12 + month;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
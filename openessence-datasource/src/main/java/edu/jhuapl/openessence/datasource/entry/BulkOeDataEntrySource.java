@@ -27,9 +27,7 @@
 package edu.jhuapl.openessence.datasource.entry;
 
 import edu.jhuapl.openessence.datasource.Record;
-import edu.jhuapl.openessence.datasource.dataseries.GroupingDimension;
 
-import java.util.Collection;
 import java.util.List;
 
 public interface BulkOeDataEntrySource extends OeDataEntrySource {
@@ -39,6 +37,4 @@ public interface BulkOeDataEntrySource extends OeDataEntrySource {
     public void updateRecords(List<Object> targetPkeys, List<Object> replacementRecords);
 
     public void deleteRecords(List<Object> targetPkeys);
-
-    public void deleteRecords(Collection<GroupingDimension> groupings);
 }
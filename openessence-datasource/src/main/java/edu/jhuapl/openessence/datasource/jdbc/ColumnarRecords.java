@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.Record;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Query results stored by column instead of as one {@link QueryRecord} per row. The dimensions are shared by all rows,
+ * and values are kept in primitive arrays chosen by the type of the first value in each column, with strings
+ * dictionary encoded. Columns that turn out to hold mixed types fall back to plain object arrays.
+ *
+ * <p> The records of this list are lightweight, read-only views of a row. Their values are boxed on access. </p>
+ */
+public class ColumnarRecords extends AbstractList<Record> {
+
+    private final Map<String, Dimension> dimensions;
+    private final Map<String, Integer> columnIndexes;
+    private final ColumnData[] columns;
+    private int size;
+
+    /**
+     * @param columnDimensions dimensions of the values passed to {@link #addRow(Object[])}, in order. If an ID repeats,
+     *                         the last column with that ID wins, like repeated puts into a map.
+     */
+    public ColumnarRecords(List<Dimension> columnDimensions) {
+        Map<String, Dimension> dims = new LinkedHashMap<String, Dimension>(columnDimensions.size());
+        columnIndexes = new HashMap<String, Integer>(columnDimensions.size());
+        columns = new ColumnData[columnDimensions.size()];
+        for (int i = 0; i < columns.length; i++) {
+            Dimension d = columnDimensions.get(i);
+            dims.put(d.getId(), d);
+            columnIndexes.put(d.getId(), i);
+            columns[i] = new ColumnData();
+        }
+        dimensions = Collections.unmodifiableMap(dims);
+    }
+
+    /**
+     * Appends a row. The array is copied, so callers may reuse it for the next row.
+     */
+    public void addRow(Object[] values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].set(size, values[i]);
+        }
+        size++;
+    }
+
+    /**
+     * Releases memory only needed while adding rows.
+     */
+    public void trimToSize() {
+        for (ColumnData column : columns) {
+            if (column.column != null) {
+                column.column.trimToSize(size);
+            }
+        }
+    }
+
+    @Override
+    public Record get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+        return new Row(row);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Object getValue(String resultId, int row) {
+        Integer column = columnIndexes.get(resultId);
+        return column == null ? null : columns[column].get(row);
+    }
+
+    private class Row implements Record {
+
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Set<String> getResultIds() {
+            return dimensions.keySet();
+        }
+
+        @Override
+        public Object getValue(String resultId) {
+            return ColumnarRecords.this.getValue(resultId, row);
+        }
+
+        @Override
+        public Dimension getDimension(String resultId) {
+            return dimensions.get(resultId);
+        }
+
+        @Override
+        public Map<String, Dimension> getDimensions() {
+            return dimensions;
+        }
+
+        @Override
+        public Map<String, Object> getValues() {
+            return new RowValues(row);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Record) {
+                Record r = (Record) o;
+                return getValues().equals(r.getValues()) && dimensions.equals(r.getDimensions());
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return getValues().hashCode() + dimensions.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder res = new StringBuilder("{");
+            boolean first = true;
+            for (String key : dimensions.keySet()) {
+                if (first) {
+                    first = false;
+                } else {
+                    res.append(", ");
+                }
+                res.append(key).append(":").append(getValue(key)).append("(")
+                        .append(dimensions.get(key).getSqlType()).append(")");
+            }
+            return res.append("}").toString();
+        }
+    }
+
+    /**
+     * Read-only map view of the values of a row, in dimension order.
+     */
+    private class RowValues extends AbstractMap<String, Object> {
+
+        private final int row;
+
+        private RowValues(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? getValue((String) key, row) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return dimensions.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return dimensions.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<String> ids = dimensions.keySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return ids.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            String id = ids.next();
+                            return new SimpleImmutableEntry<String, Object>(id, getValue(id, row));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return dimensions.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Nulls of a column, and the typed column holding its other values. The typed column is picked when the first
+     * non-null value arrives.
+     */
+    private static class ColumnData {
+
+        private final BitSet nulls = new BitSet();
+        private Column column;
+
+        private Object get(int row) {
+            return column == null || nulls.get(row) ? null : column.get(row);
+        }
+
+        private void set(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+            if (column == null) {
+                column = Column.forValue(value);
+            }
+            if (!column.set(row, value)) {
+                // mixed types, keep the values as they are
+                ObjectColumn objects = new ObjectColumn();
+                for (int i = 0; i < row; i++) {
+                    if (!nulls.get(i)) {
+                        objects.set(i, column.get(i));
+                    }
+                }
+                column = objects;
+                column.set(row, value);
+            }
+        }
+    }
+
+    private abstract static class Column {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private static Column forValue(Object value) {
+            Class<?> type = value.getClass();
+            if (type == Integer.class) {
+                return new IntColumn();
+            } else if (type == Long.class) {
+                return new LongColumn();
+            } else if (type == Double.class) {
+                return new DoubleColumn();
+            } else if (type == Float.class) {
+                return new FloatColumn();
+            } else if (type == Boolean.class) {
+                return new BooleanColumn();
+            } else if (type == Date.class) {
+                return new DateColumn();
+            } else if (type == String.class) {
+                return new StringColumn();
+            } else {
+                return new ObjectColumn();
+            }
+        }
+
+        protected static int grow(int length, int row) {
+            return Math.max(row + 1, Math.max(INITIAL_CAPACITY, length * 2));
+        }
+
+        abstract Object get(int row);
+
+        /**
+         * @return false if <code>value</code> doesn't fit in this column
+         */
+        abstract boolean set(int row, Object value);
+
+        abstract void trimToSize(int size);
+    }
+
+    private static class IntColumn extends Column {
+
+        private int[] values = new int[0];
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Integer.class) {
+                return false;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Integer) value;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class LongColumn extends Column {
+
+        private long[] values = new long[0];
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Long.class) {
+                return false;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Long) value;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Double.class) {
+                return false;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Double) value;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class FloatColumn extends Column {
+
+        private float[] values = new float[0];
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Float.class) {
+                return false;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (Float) value;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class BooleanColumn extends Column {
+
+        private final BitSet values = new BitSet();
+
+        @Override
+        Object get(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Boolean.class) {
+                return false;
+            }
+            values.set(row, (Boolean) value);
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+        }
+    }
+
+    /**
+     * Plain {@link Date}s as epoch milliseconds. Subclasses such as Timestamp carry more than that, so they go to an
+     * {@link ObjectColumn}.
+     */
+    private static class DateColumn extends Column {
+
+        private long[] values = new long[0];
+
+        @Override
+        Object get(int row) {
+            return new Date(values[row]);
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != Date.class) {
+                return false;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = ((Date) value).getTime();
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Dictionary encoded strings. A column of mostly distinct strings, e.g. free text, gains nothing from the
+     * dictionary, so it gives up and becomes an {@link ObjectColumn}.
+     */
+    private static class StringColumn extends Column {
+
+        private static final int MIN_DICTIONARY_LIMIT = 1024;
+
+        private int[] codes = new int[0];
+        private final ArrayList<String> strings = new ArrayList<String>();
+        private Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+        @Override
+        Object get(int row) {
+            return strings.get(codes[row]);
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (value.getClass() != String.class) {
+                return false;
+            }
+
+            Integer code = dictionary == null ? null : dictionary.get(value);
+            if (code == null) {
+                if (dictionary == null
+                    || (strings.size() >= MIN_DICTIONARY_LIMIT && strings.size() > row / 2)) {
+                    return false;
+                }
+                code = strings.size();
+                strings.add((String) value);
+                dictionary.put((String) value, code);
+            }
+            if (row >= codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length, row));
+            }
+            codes[row] = code;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            codes = Arrays.copyOf(codes, size);
+            // no more rows are coming
+            dictionary = null;
+            strings.trimToSize();
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+
+        private Object[] values = new Object[0];
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean set(int row, Object value) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+            return true;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -29,6 +29,7 @@ package edu.jhuapl.openessence.datasource.jdbc;
 import edu.jhuapl.openessence.datasource.FieldType;
 import edu.jhuapl.openessence.datasource.OeDataSourceException;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -36,6 +37,8 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DataTypeConversionHelper {
 
@@ -73,61 +76,255 @@ public class DataTypeConversionHelper {
     }
 
     public static Object convert2JavaType(ResultSet rs, int col) throws SQLException {
+        return createColumnReader(rs.getMetaData(), col).read(rs);
+    }
+
+    public static Number convert2JavaNumberType(ResultSet rs, int col) throws SQLException, OeDataSourceException {
+        return createNumberColumnReader(rs.getMetaData(), col).read(rs);
+    }
+
+    /**
+     * Resolves a reader for every column of a result set, converting values the same way as {@link
+     * #convert2JavaType(ResultSet, int)}. Resolve the readers once per result set and reuse them for every row.
+     */
+    public static ColumnReader[] createColumnReaders(ResultSetMetaData rsMetadata) throws SQLException {
+        ColumnReader[] readers = new ColumnReader[rsMetadata.getColumnCount()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = createColumnReader(rsMetadata, i + 1);
+        }
+        return readers;
+    }
+
+    public static ColumnReader createColumnReader(ResultSetMetaData rsMetadata, int col) throws SQLException {
+        switch (rsMetadata.getColumnType(col)) {
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return new IntColumnReader(col);
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new DoubleColumnReader(col);
+            case Types.BOOLEAN:
+                return new BooleanColumnReader(col);
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return new TimestampColumnReader(col);
+            default:
+                // VARCHAR, NCHAR, NVARCHAR, and punting to getString() if we can't guess the type from the metadata
+                return new StringColumnReader(col);
+        }
+    }
+
+    /**
+     * Like {@link #createColumnReader(ResultSetMetaData, int)} but for columns that must hold numbers, as read by
+     * {@link #convert2JavaNumberType(ResultSet, int)}.
+     *
+     * @throws OeDataSourceException if the column is not a number type
+     */
+    public static NumberColumnReader createNumberColumnReader(ResultSetMetaData rsMetadata, int col)
+            throws SQLException, OeDataSourceException {
+        ColumnReader reader = createColumnReader(rsMetadata, col);
+        if (reader instanceof NumberColumnReader) {
+            return (NumberColumnReader) reader;
+        }
+        throw new OeDataSourceException("Not a number type");
+    }
+
+    /**
+     * Reads the value of one column of the current row, or <code>null</code> if it is SQL NULL.
+     */
+    public abstract static class ColumnReader {
+
+        protected final int col;
+
+        protected ColumnReader(int col) {
+            this.col = col;
+        }
+
+        public int getColumn() {
+            return col;
+        }
+
         // NOTE: To return NULL when needed - rs.wasNull() test needs to be performed
         // http://docstore.mik.ua/orelly/java-ent/jenut/ch02_06.htm
-        ResultSetMetaData rsMetadata = rs.getMetaData();
+        public abstract Object read(ResultSet rs) throws SQLException;
+    }
+
+    public abstract static class NumberColumnReader extends ColumnReader {
+
+        protected NumberColumnReader(int col) {
+            super(col);
+        }
+
+        @Override
+        public abstract Number read(ResultSet rs) throws SQLException;
+    }
+
+    private static class IntColumnReader extends NumberColumnReader {
+
+        IntColumnReader(int col) {
+            super(col);
+        }
 
-        if (rsMetadata.getColumnType(col) == Types.INTEGER ||
-            rsMetadata.getColumnType(col) == Types.BIGINT) {
+        @Override
+        public Number read(ResultSet rs) throws SQLException {
             int intValue = rs.getInt(col);
             return (rs.wasNull()) ? null : intValue;
-        } else if (rsMetadata.getColumnType(col) == Types.DOUBLE ||
-                   rsMetadata.getColumnType(col) == Types.FLOAT ||
-                   rsMetadata.getColumnType(col) == Types.REAL ||
-                   rsMetadata.getColumnType(col) == Types.DECIMAL ||
-                   rsMetadata.getColumnType(col) == Types.NUMERIC) {
+        }
+    }
+
+    private static class DoubleColumnReader extends NumberColumnReader {
+
+        DoubleColumnReader(int col) {
+            super(col);
+        }
+
+        @Override
+        public Number read(ResultSet rs) throws SQLException {
             double doubleValue = rs.getDouble(col);
             return (rs.wasNull()) ? null : doubleValue;
-        } else if (rsMetadata.getColumnType(col) == Types.VARCHAR ||
-                   rsMetadata.getColumnType(col) == Types.NCHAR ||
-                   rsMetadata.getColumnType(col) == Types.NVARCHAR) {
+        }
+    }
+
+    private static class StringColumnReader extends ColumnReader {
+
+        StringColumnReader(int col) {
+            super(col);
+        }
+
+        @Override
+        public Object read(ResultSet rs) throws SQLException {
             String strValue = rs.getString(col);
             return (rs.wasNull()) ? null : strValue;
-        } else if (rsMetadata.getColumnType(col) == Types.BOOLEAN) {
+        }
+    }
+
+    private static class BooleanColumnReader extends ColumnReader {
+
+        BooleanColumnReader(int col) {
+            super(col);
+        }
+
+        @Override
+        public Object read(ResultSet rs) throws SQLException {
             boolean boolValue = rs.getBoolean(col);
             return (rs.wasNull()) ? null : boolValue;
-        } else if (rsMetadata.getColumnType(col) == Types.DATE ||
-                   rsMetadata.getColumnType(col) == Types.TIME ||
-                   rsMetadata.getColumnType(col) == Types.TIMESTAMP) {
+        }
+    }
+
+    private static class TimestampColumnReader extends ColumnReader {
+
+        TimestampColumnReader(int col) {
+            super(col);
+        }
+
+        @Override
+        public Object read(ResultSet rs) throws SQLException {
             java.sql.Timestamp sqlDate = rs.getTimestamp(col);
             return (rs.wasNull()) ? null : new java.util.Date(sqlDate.getTime());
-        } else {
-            // punting to getString() if we can't guess the type from the metadata
-            String strValue = rs.getString(col);
-            return (rs.wasNull()) ? null : strValue;
         }
+    }
+
+    /**
+     * Binds a prepared statement argument of one class.
+     */
+    public abstract static class ArgumentBinder {
 
+        public abstract void bind(PreparedStatement ps, int index, Object o) throws SQLException;
     }
 
-    public static Number convert2JavaNumberType(ResultSet rs, int col) throws SQLException, OeDataSourceException {
-        // NOTE: To return NULL when needed - rs.wasNull() test needs to be performed
-        // http://docstore.mik.ua/orelly/java-ent/jenut/ch02_06.htm
-        ResultSetMetaData rsMetadata = rs.getMetaData();
+    private static final ArgumentBinder TIMESTAMP_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setTimestamp(index, (Timestamp) o);
+        }
+    };
 
-        if (rsMetadata.getColumnType(col) == Types.INTEGER ||
-            rsMetadata.getColumnType(col) == Types.BIGINT) {
-            int intValue = rs.getInt(col);
-            return (rs.wasNull()) ? null : intValue;
-        } else if (rsMetadata.getColumnType(col) == Types.DOUBLE ||
-                   rsMetadata.getColumnType(col) == Types.FLOAT ||
-                   rsMetadata.getColumnType(col) == Types.REAL ||
-                   rsMetadata.getColumnType(col) == Types.DECIMAL ||
-                   rsMetadata.getColumnType(col) == Types.NUMERIC) {
-            double doubleValue = rs.getDouble(col);
-            return (rs.wasNull()) ? null : doubleValue;
-        } else {
-            throw new OeDataSourceException("Not a number type");
+    private static final ArgumentBinder DATE_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setTimestamp(index, new Timestamp(((java.util.Date) o).getTime()));
+        }
+    };
+
+    private static final ArgumentBinder INTEGER_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setInt(index, (Integer) o);
+        }
+    };
+
+    private static final ArgumentBinder LONG_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setLong(index, (Long) o);
+        }
+    };
+
+    private static final ArgumentBinder FLOAT_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setFloat(index, (Float) o);
+        }
+    };
+
+    private static final ArgumentBinder DOUBLE_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setDouble(index, (Double) o);
+        }
+    };
+
+    private static final ArgumentBinder STRING_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setString(index, (String) o);
+        }
+    };
+
+    private static final ArgumentBinder BOOLEAN_BINDER = new ArgumentBinder() {
+        @Override
+        public void bind(PreparedStatement ps, int index, Object o) throws SQLException {
+            ps.setBoolean(index, (Boolean) o);
+        }
+    };
+
+    private static final ConcurrentMap<Class<?>, ArgumentBinder> argumentBinders =
+            new ConcurrentHashMap<Class<?>, ArgumentBinder>();
+
+    static {
+        argumentBinders.put(Timestamp.class, TIMESTAMP_BINDER);
+        argumentBinders.put(java.util.Date.class, DATE_BINDER);
+        argumentBinders.put(Integer.class, INTEGER_BINDER);
+        argumentBinders.put(Long.class, LONG_BINDER);
+        argumentBinders.put(Float.class, FLOAT_BINDER);
+        argumentBinders.put(Double.class, DOUBLE_BINDER);
+        argumentBinders.put(String.class, STRING_BINDER);
+        argumentBinders.put(Boolean.class, BOOLEAN_BINDER);
+    }
+
+    /**
+     * Looks up the binder for arguments of class <code>c</code>. Subclasses of the supported types, e.g. {@link
+     * java.sql.Date}, are resolved on first use and then cached with the rest.
+     *
+     * @return the binder, or <code>null</code> if arguments of class <code>c</code> can't be bound
+     */
+    public static ArgumentBinder getArgumentBinder(Class<?> c) {
+        ArgumentBinder binder = argumentBinders.get(c);
+        if (binder == null) {
+            if (Timestamp.class.isAssignableFrom(c)) {
+                binder = TIMESTAMP_BINDER;
+            } else if (java.util.Date.class.isAssignableFrom(c)) {
+                binder = DATE_BINDER;
+            } else {
+                return null;
+            }
+            argumentBinders.putIfAbsent(c, binder);
         }
+        return binder;
     }
 
     public static Object convert2JavaType(Object o) throws OeDataSourceException {
@@ -30,61 +30,225 @@ import edu.jhuapl.openessence.datasource.FieldType;
 import edu.jhuapl.openessence.datasource.QueryManipulationStore;
 import edu.jhuapl.openessence.datasource.Record;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Joins dimensions, i.e. adds dimensions from one datasource into another. *
+ * Joins dimensions, i.e. adds dimensions from one datasource into another.
+ *
+ * <p> By default the joined datasources are queried on every join. Once a {@link #setRefreshInterval(long) refresh
+ * interval} is set, the joined dimensions are cached: after the first join, {@link #joinDimensions()} returns right
+ * away, and a background thread queries the joined datasources once the interval has passed. After the joiner has been
+ * {@link #invalidate() invalidated}, e.g. because a joined datasource was edited, the next join queries them before it
+ * returns. </p>
+ *
+ * <p> Each refresh builds the complete set of joined dimensions before it updates the base datasource, in one {@link
+ * JdbcOeDataSource#replaceDimensions batch}. </p>
  */
 public class DimensionJoiner {
 
+    private static final Logger log = LoggerFactory.getLogger(DimensionJoiner.class);
+
+    public static final long DEFAULT_REFRESH_INTERVAL = 0;
+
+    private static final Executor refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "dimension-joiner");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private JdbcOeDataSource baseDs;
     private Map<? extends JdbcOeDataSource, ? extends Collection<DimensionBean>> dimensionJoinMapping;
-    private Map<JdbcOeDataSource, Collection<DimensionBean>> previouslyJoinedDimensions;
+
+    /**
+     * Unmodifiable snapshot of the dimensions joined into the base datasource, by the datasource they came from.
+     */
+    private volatile Map<JdbcOeDataSource, Set<DimensionBean>> joinedDimensions;
+    private volatile long joinedTime;
+    /**
+     * Counts {@link #invalidate()} calls; the joined dimensions are stale while they were joined before the latest one.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long joinedInvalidations;
+    private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
     public DimensionJoiner(JdbcOeDataSource baseDs,
                            Map<? extends JdbcOeDataSource, ? extends Collection<DimensionBean>> dimensionJoinMapping) {
         this.baseDs = baseDs;
         this.dimensionJoinMapping = dimensionJoinMapping;
-        this.previouslyJoinedDimensions = new HashMap<JdbcOeDataSource, Collection<DimensionBean>>();
     }
 
     public void joinDimensions() {
+        if (refreshInterval <= 0) {
+            refresh();
+        } else if (isStale()) {
+            refreshIfStale();
+        } else if (System.currentTimeMillis() - joinedTime > refreshInterval && refreshing.compareAndSet(false, true)) {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        // keep the dimensions we have, try again once the interval has passed
+                        log.error("Exception joining dimensions into " + baseDs.getDataSourceId(), e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Refreshes unless another thread already did while this one waited, so a burst of queries after an edit only
+     * queries the joined datasources once.
+     */
+    private synchronized void refreshIfStale() {
+        if (isStale()) {
+            refresh();
+        }
+    }
+
+    private boolean isStale() {
+        return joinedDimensions == null || joinedInvalidations != invalidations.get();
+    }
+
+    /**
+     * Queries the joined datasources and updates the base datasource's dimensions.
+     */
+    public synchronized void refresh() {
+        // an invalidate() from here on asks for another refresh
+        long invalidationsBefore = invalidations.get();
+        Map<JdbcOeDataSource, Set<DimensionBean>> joined = new LinkedHashMap<JdbcOeDataSource, Set<DimensionBean>>();
         for (Entry<? extends JdbcOeDataSource, ? extends Collection<DimensionBean>> e : dimensionJoinMapping
                 .entrySet()) {
-            Collection<DimensionBean> dimensionsToJoin = e.getValue();
-            Collection<DimensionBean> dimensionsJustAdded = new HashSet<DimensionBean>();
+            Set<DimensionBean> dimensionsJustAdded = new LinkedHashSet<DimensionBean>();
 
-            for (DimensionBean otherDimension : dimensionsToJoin) {
+            for (DimensionBean otherDimension : e.getValue()) {
                 QueryManipulationStore
                         store =
                         new QueryManipulationStore(e.getKey().getResultDimensions(), null, null, null, false);
 
                 for (Record r : e.getKey().detailsQuery(store)) {
                     DimensionBean joinedDimension = onDimensionJoin(e.getKey(), otherDimension, r);
-                    baseDs.addDimension(joinedDimension);
-                    // dimension has now been joined
+                    // the last dimension with an ID wins, as it would in the base datasource
+                    dimensionsJustAdded.remove(joinedDimension);
                     dimensionsJustAdded.add(joinedDimension);
                 }
             }
-            // check for otherDs's previously joined dimensions
-            // remove all previously joined dimensions that no longer exist
-            if (previouslyJoinedDimensions.containsKey(e.getKey())) {
-                Iterator<? extends DimensionBean> iterator = previouslyJoinedDimensions.get(e.getKey()).iterator();
-                while (iterator.hasNext()) {
-                    DimensionBean oldBean = iterator.next();
-                    if (!dimensionsJustAdded.contains(oldBean)) {
-                        baseDs.removeDimension(oldBean);
-                        iterator.remove();
+            joined.put(e.getKey(), Collections.unmodifiableSet(dimensionsJustAdded));
+        }
+
+        // only now that all the queries are done do we touch the base datasource
+        List<DimensionBean> added = new ArrayList<DimensionBean>();
+        for (Set<DimensionBean> dimensions : joined.values()) {
+            added.addAll(dimensions);
+        }
+        // remove all previously joined dimensions that no longer exist
+        List<DimensionBean> removed = new ArrayList<DimensionBean>();
+        if (joinedDimensions != null) {
+            for (Entry<JdbcOeDataSource, Set<DimensionBean>> e : joinedDimensions.entrySet()) {
+                Set<DimensionBean> stillJoined = joined.get(e.getKey());
+                for (DimensionBean oldBean : e.getValue()) {
+                    if (stillJoined == null || !stillJoined.contains(oldBean)) {
+                        removed.add(oldBean);
                     }
                 }
             }
-            previouslyJoinedDimensions.put(e.getKey(), dimensionsJustAdded);
         }
+        baseDs.replaceDimensions(removed, added);
+
+        joinedDimensions = Collections.unmodifiableMap(joined);
+        joinedTime = System.currentTimeMillis();
+        joinedInvalidations = invalidationsBefore;
+    }
+
+    /**
+     * Joins from <code>ds</code> instead of the joined datasource with the same ID, e.g. after its definition was
+     * reloaded. The dimensions to join are looked up in <code>ds</code> by ID, and the next {@link #joinDimensions()}
+     * queries it before it returns.
+     *
+     * @return whether this joiner joined from a datasource with the ID of <code>ds</code>
+     */
+    public synchronized boolean replaceJoinedDataSource(JdbcOeDataSource ds) {
+        Map<JdbcOeDataSource, Collection<DimensionBean>> mapping =
+                new LinkedHashMap<JdbcOeDataSource, Collection<DimensionBean>>();
+        boolean replaced = false;
+        for (Entry<? extends JdbcOeDataSource, ? extends Collection<DimensionBean>> e : dimensionJoinMapping
+                .entrySet()) {
+            if (!e.getKey().getDataSourceId().equals(ds.getDataSourceId())) {
+                mapping.put(e.getKey(), e.getValue());
+                continue;
+            }
+
+            List<DimensionBean> dimensions = new ArrayList<DimensionBean>();
+            for (DimensionBean oldBean : e.getValue()) {
+                DimensionBean bean = ds.getBean(oldBean.getId());
+                if (bean == null) {
+                    log.warn("{} no longer has dimension {}, still joining it into {}", ds.getDataSourceId(),
+                             oldBean.getId(), baseDs.getDataSourceId());
+                    bean = oldBean;
+                }
+                dimensions.add(bean);
+            }
+            mapping.put(ds, dimensions);
+            replaced = true;
+        }
+
+        if (replaced) {
+            dimensionJoinMapping = mapping;
+            invalidate();
+        }
+        return replaced;
+    }
+
+    /**
+     * Makes the next {@link #joinDimensions()} query the joined datasources before it returns, e.g. after they have been
+     * edited.
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * @return the dimensions currently joined into the base datasource, by the datasource they came from
+     */
+    public Map<JdbcOeDataSource, Set<DimensionBean>> getJoinedDimensions() {
+        Map<JdbcOeDataSource, Set<DimensionBean>> joined = joinedDimensions;
+        return joined == null ? Collections.<JdbcOeDataSource, Set<DimensionBean>>emptyMap() : joined;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * @param refreshInterval how long, in milliseconds, to use the joined dimensions before querying the joined
+     *                        datasources again in the background. Default is {@link #DEFAULT_REFRESH_INTERVAL 0},
+     *                        which queries them every time.
+     */
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
     }
 
     /**
@@ -45,6 +45,7 @@ import edu.jhuapl.openessence.datasource.jdbc.filter.SqlGeneratingFilter;
 import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
 import edu.jhuapl.openessence.datasource.timeresolution.ResolutionHandlerFactory;
 import edu.jhuapl.openessence.datasource.ui.PossibleValuesConfiguration;
+import edu.jhuapl.openessence.datasource.util.CopyOnWriteMap;
 import edu.jhuapl.openessence.datasource.util.DbConfigHelper;
 import edu.jhuapl.openessence.datasource.util.DbTypesEnum;
 
@@ -56,10 +57,11 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -72,15 +74,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -88,6 +93,16 @@ import javax.sql.DataSource;
 
 public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware, InitializingBean {
 
+    /**
+     * Environment property with the default of {@link #setMaxConcurrentQueries(int)}.
+     */
+    public static final String MAX_QUERIES = "datasource.max.queries";
+
+    /**
+     * Environment property with the default of {@link #setQueryWaitTimeout(long)}.
+     */
+    public static final String QUERY_WAIT = "datasource.query.wait";
+
     protected final Logger log = LoggerFactory.getLogger(getClass());
     private ApplicationContext ctx;
     protected JdbcTemplate jdbcTemplate;
@@ -130,21 +145,48 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
 
     private DimensionJoiner dimensionJoiner;
 
+    @Autowired(required = false)
+    private PossibleValuesCache possibleValuesCache;
+
+    @Autowired(required = false)
+    private QueryMetrics queryMetrics;
+
     private Set<String> roles;
 
+    private static final int MAX_CACHED_COUNTS = 100;
+    private static final int DEFAULT_SQL_TEMPLATE_CACHE_SIZE = 100;
+    private static final int DEFAULT_MAX_QUERIES = 10;
+    private static final long DEFAULT_QUERY_WAIT = 30000;
+
+    private SqlTemplateCache sqlTemplateCache = new SqlTemplateCache(DEFAULT_SQL_TEMPLATE_CACHE_SIZE);
+
+    private long countCacheTimeout = 0;
+    private int maxConcurrentQueries = -1;
+    private long queryWaitTimeout = -1;
+    private QueryLimiter queryLimiter;
+    private final Map<String, CachedCount> countCache = new LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+            return size() > MAX_CACHED_COUNTS;
+        }
+    };
+
     public JdbcOeDataSource() {
-        accumulationMap = new LinkedHashMap<String, DimensionBean>();
-        resultMap = new LinkedHashMap<String, DimensionBean>();
-        childResultMap = new LinkedHashMap<String, DimensionBean>();
-        superResultMap = new LinkedHashMap<String, DimensionBean>();
-        resultFilterIds = new ArrayList<String>();
-        editMap = new LinkedHashMap<String, DimensionBean>();
-        childEditMap = new LinkedHashMap<String, DimensionBean>();
-        superEditMap = new LinkedHashMap<String, DimensionBean>();
-        autoGenMap = new LinkedHashMap<String, DimensionBean>();
-        specialSqlMap = new LinkedHashMap<String, DimensionBean>();
-        groupingMap = new LinkedHashMap<String, DimensionBean>();
-        filterMap = new LinkedHashMap<String, DimensionBean>();
+        // dimensions are copied on write, so a DimensionJoiner can update them while queries read them
+        accumulationMap = new CopyOnWriteMap<String, DimensionBean>();
+        resultMap = new CopyOnWriteMap<String, DimensionBean>();
+        childResultMap = new CopyOnWriteMap<String, DimensionBean>();
+        superResultMap = new CopyOnWriteMap<String, DimensionBean>();
+        resultFilterIds = new CopyOnWriteArrayList<String>();
+        editMap = new CopyOnWriteMap<String, DimensionBean>();
+        childEditMap = new CopyOnWriteMap<String, DimensionBean>();
+        superEditMap = new CopyOnWriteMap<String, DimensionBean>();
+        autoGenMap = new CopyOnWriteMap<String, DimensionBean>();
+        specialSqlMap = new CopyOnWriteMap<String, DimensionBean>();
+        groupingMap = new CopyOnWriteMap<String, DimensionBean>();
+        filterMap = new CopyOnWriteMap<String, DimensionBean>();
         metadata = new LinkedHashMap<String, Object>();
 
         roles = new HashSet<String>();
@@ -166,63 +208,123 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         if (dimension.getFilterBeanId() != null && dimension.getFilterBeanId().length() > 0) {
             resultFilterIds.add(dimension.getFilterBeanId());
         }
+        for (Map<String, DimensionBean> map : getDimensionMaps(dimension)) {
+            map.put(dimension.getId(), dimension);
+        }
+    }
+
+    public void removeDimension(DimensionBean dimension) {
+        if (dimension.getFilterBeanId() != null && dimension.getFilterBeanId().length() > 0) {
+            resultFilterIds.remove(dimension.getFilterBeanId());
+        }
+        for (Map<String, DimensionBean> map : getAllDimensionMaps()) {
+            map.remove(dimension.getId());
+        }
+    }
+
+    /**
+     * Removes <code>removed</code> and then adds <code>added</code>, like {@link #removeDimension} and {@link
+     * #addDimension} would, but copies each dimension map once for the whole batch instead of once per dimension.
+     */
+    @SuppressWarnings("unchecked")
+    public void replaceDimensions(Collection<DimensionBean> removed, Collection<DimensionBean> added) {
+        Set<String> removedIds = new HashSet<String>();
+        List<String> removedFilterIds = new ArrayList<String>();
+        for (DimensionBean dimension : removed) {
+            removedIds.add(dimension.getId());
+            if (dimension.getFilterBeanId() != null && dimension.getFilterBeanId().length() > 0) {
+                removedFilterIds.add(dimension.getFilterBeanId());
+            }
+        }
+
+        Map<Map<String, DimensionBean>, Map<String, DimensionBean>>
+                additions =
+                new IdentityHashMap<Map<String, DimensionBean>, Map<String, DimensionBean>>();
+        List<String> addedFilterIds = new ArrayList<String>();
+        for (DimensionBean dimension : added) {
+            if (dimension.getFilterBeanId() != null && dimension.getFilterBeanId().length() > 0) {
+                addedFilterIds.add(dimension.getFilterBeanId());
+            }
+            for (Map<String, DimensionBean> map : getDimensionMaps(dimension)) {
+                Map<String, DimensionBean> toAdd = additions.get(map);
+                if (toAdd == null) {
+                    toAdd = new LinkedHashMap<String, DimensionBean>();
+                    additions.put(map, toAdd);
+                }
+                toAdd.put(dimension.getId(), dimension);
+            }
+        }
+
+        for (Map<String, DimensionBean> map : getAllDimensionMaps()) {
+            Map<String, DimensionBean> toAdd = additions.get(map);
+            if (toAdd == null) {
+                toAdd = Collections.emptyMap();
+            }
+            if (map instanceof CopyOnWriteMap) {
+                ((CopyOnWriteMap<String, DimensionBean>) map).update(removedIds, toAdd);
+            } else {
+                map.keySet().removeAll(removedIds);
+                map.putAll(toAdd);
+            }
+        }
+
+        for (String filterId : removedFilterIds) {
+            resultFilterIds.remove(filterId);
+        }
+        resultFilterIds.addAll(addedFilterIds);
+    }
+
+    /**
+     * @return the maps <code>dimension</code> belongs in, according to its flags
+     */
+    private List<Map<String, DimensionBean>> getDimensionMaps(DimensionBean dimension) {
+        List<Map<String, DimensionBean>> maps = new ArrayList<Map<String, DimensionBean>>();
         if (dimension.getIsResult()) {
-            resultMap.put(dimension.getId(), dimension);
-            superResultMap.put(dimension.getId(), dimension);
+            maps.add(resultMap);
+            maps.add(superResultMap);
         }
 
         if (dimension.getIsChildResult()) {
-            childResultMap.put(dimension.getId(), dimension);
-            superResultMap.put(dimension.getId(), dimension);
+            maps.add(childResultMap);
+            maps.add(superResultMap);
         }
 
         if (dimension.getIsFilter()) {
-            filterMap.put(dimension.getId(), dimension);
+            maps.add(filterMap);
         }
 
         if (dimension.getIsAccumulation()) {
-            accumulationMap.put(dimension.getId(), dimension);
+            maps.add(accumulationMap);
         }
 
         /** CRUD - DataEntry related ONLY isEdit, isChildEdit, hasSpecialSql, isAutoGen */
         if (dimension.getIsEdit()) {
-            editMap.put(dimension.getId(), dimension);
-            superEditMap.put(dimension.getId(), dimension);
+            maps.add(editMap);
+            maps.add(superEditMap);
         }
 
         if (dimension.getIsChildEdit()) {
-            childEditMap.put(dimension.getId(), dimension);
-            superEditMap.put(dimension.getId(), dimension);
+            maps.add(childEditMap);
+            maps.add(superEditMap);
         }
 
         if (dimension.hasSpecialSql()) {
-            specialSqlMap.put(dimension.getId(), dimension);
+            maps.add(specialSqlMap);
         }
 
         if (dimension.isAutoGen()) {
-            autoGenMap.put(dimension.getId(), dimension);
+            maps.add(autoGenMap);
         }
 
         if (dimension.getIsGrouping()) {
-            groupingMap.put(dimension.getId(), dimension);
+            maps.add(groupingMap);
         }
+        return maps;
     }
 
-    public void removeDimension(DimensionBean dimension) {
-        resultMap.remove(dimension.getId());
-        superResultMap.remove(dimension.getId());
-        if (dimension.getFilterBeanId() != null && dimension.getFilterBeanId().length() > 0) {
-            resultFilterIds.remove(dimension.getFilterBeanId());
-        }
-        childResultMap.remove(dimension.getId());
-        filterMap.remove(dimension.getId());
-        accumulationMap.remove(dimension.getId());
-        editMap.remove(dimension.getId());
-        superEditMap.remove(dimension.getId());
-        childEditMap.remove(dimension.getId());
-        specialSqlMap.remove(dimension.getId());
-        autoGenMap.remove(dimension.getId());
-        groupingMap.remove(dimension.getId());
+    private List<Map<String, DimensionBean>> getAllDimensionMaps() {
+        return Arrays.asList(resultMap, superResultMap, childResultMap, filterMap, accumulationMap, editMap,
+                             superEditMap, childEditMap, specialSqlMap, autoGenMap, groupingMap);
     }
 
     public void setDimensions(Collection<? extends DimensionBean> dimensions) {
@@ -256,10 +358,11 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
     }
 
     public void setAccumulations(final List<DimensionBean> accumulations) {
-        this.accumulationMap = new LinkedHashMap<String, DimensionBean>(accumulations.size());
+        Map<String, DimensionBean> map = new LinkedHashMap<String, DimensionBean>(accumulations.size());
         for (final DimensionBean bean : accumulations) {
-            this.accumulationMap.put(bean.getId(), bean);
+            map.put(bean.getId(), bean);
         }
+        this.accumulationMap = new CopyOnWriteMap<String, DimensionBean>(map);
     }
 
     @Override
@@ -438,6 +541,7 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         if (dsId != null) {
             final Object dsObject = ctx.getBean(dsId);
             if (dsObject instanceof OeDataSource) {
+                addPossibleValuesDataSource(dsId);
                 configuration = new PossibleValuesConfiguration(bean, (OeDataSource) dsObject);
             } else {
                 throw new OeDataSourceException(dsId + " is not an OeDataSource.");
@@ -459,6 +563,7 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         if (dsId != null) {
             final Object dsObject = ctx.getBean(dsId);
             if (dsObject instanceof OeDataSource) {
+                addPossibleValuesDataSource(dsId);
                 configuration = new PossibleValuesConfiguration(ctd, (OeDataSource) dsObject);
             } else {
                 throw new OeDataSourceException("DS \"" + dsId + "\" is not an OeDataSource.");
@@ -468,6 +573,15 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         return configuration;
     }
 
+    /**
+     * Lets the {@link PossibleValuesCache} cache the lookup lists read from <code>dsId</code>.
+     */
+    private void addPossibleValuesDataSource(String dsId) {
+        if (possibleValuesCache != null) {
+            possibleValuesCache.addDataSource(dsId);
+        }
+    }
+
     protected <T> Collection<T> getDimension(final Collection<DimensionBean> beans, final DimBeanExec<T> ctr) {
         return new AbstractCollection<T>() {
 
@@ -576,6 +690,9 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
     protected Record createRecord(final List<Dimension> queryDimensions, final ResultSet rs,
                                   final List<DimensionBean> groupingDimensions, final List<ResolutionHandler> handlers,
                                   final List<Integer> colAddedCounts) throws SQLException {
+        final Object[] row = new Object[queryDimensions.size() + groupingDimensions.size()];
+        readValues(queryDimensions, rs, groupingDimensions, handlers, colAddedCounts, row);
+
         final
         Map<String, Dimension>
                 dimensions =
@@ -585,21 +702,43 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
                 values =
                 new LinkedHashMap<String, Object>(queryDimensions.size() + groupingDimensions.size());
 
-        int colCount = 0;
         for (int i = 0; i < queryDimensions.size(); i++) {
             final Dimension d = queryDimensions.get(i);
             dimensions.put(d.getId(), d);
-            values.put(d.getId(), DataTypeConversionHelper.convert2JavaType(rs, d.getSqlType(), i + 1 + 0));
+            values.put(d.getId(), row[i]);
+        }
+        for (int i = 0; i < groupingDimensions.size(); i += 1) {
+            DimensionBean dim = groupingDimensions.get(i);
+            dimensions.put(dim.getId(), new DimensionBeanAdapter(dim, JdbcOeDataSource.this));
+            values.put(dim.getId(), row[queryDimensions.size() + i]);
+        }
+        return new QueryRecord(dimensions, values);
+    }
+
+    /**
+     * Reads the values of a details query row into <code>row</code>: first the query dimensions, then the grouping
+     * dimensions (if any), whose values are built by their resolution handlers.
+     */
+    protected void readValues(final List<Dimension> queryDimensions, final ResultSet rs,
+                              final List<DimensionBean> groupingDimensions, final List<ResolutionHandler> handlers,
+                              final List<Integer> colAddedCounts, final Object[] row) throws SQLException {
+        int colCount = 0;
+        for (int i = 0; i < queryDimensions.size(); i++) {
+            final Dimension d = queryDimensions.get(i);
+            row[i] = DataTypeConversionHelper.convert2JavaType(rs, d.getSqlType(), i + 1);
             colCount++;
         }
 
+        if (groupingDimensions == null) {
+            return;
+        }
         for (int i = 0; i < groupingDimensions.size(); i += 1) {
             ResolutionHandler handler = handlers.get(i);
             DimensionBean dim = groupingDimensions.get(i);
-            dimensions.put(dim.getId(), new DimensionBeanAdapter(dim, JdbcOeDataSource.this));
 
             if (handler == null) {
-                values.put(dim.getId(), DataTypeConversionHelper.convert2JavaType(rs, dim.getSqlType(), colCount));
+                row[queryDimensions.size() + i] =
+                        DataTypeConversionHelper.convert2JavaType(rs, dim.getSqlType(), colCount);
                 colCount += 1;
             } else {
                 int size = colAddedCounts.get(i);
@@ -608,16 +747,13 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
                     vals[j] = rs.getObject(colCount + 1 + j);
                 }
                 colCount += size;
-                Object kernelObj;
                 try {
-                    kernelObj = handler.buildKernel(vals);
+                    row[queryDimensions.size() + i] = handler.buildKernel(vals);
                 } catch (OeDataSourceException e) {
                     throw new SQLException(e);
                 }
-                values.put(dim.getId(), kernelObj);
             }
         }
-        return new QueryRecord(dimensions, values);
     }
 
 
@@ -675,12 +811,52 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         queryManipStore.setAccumulations(accumList);
     }
 
+    /**
+     * Hook for subclasses to add filters to a query, e.g. to only return the records of the logged in user. Called
+     * before details, count and series queries build their SQL, so they all see the same records. Default does
+     * nothing.
+     */
     public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
         // Default does nothing
     }
 
-    public void detailsQuery(final QueryManipulationStore queryManipStore, final RowCallbackHandler rcbh,
-                             final Integer fzparm) throws OeDataSourceException {
+    /**
+     * Checks the definition against the database with a details query of every result dimension that returns no rows,
+     * e.g. before a reloaded definition replaces the old one. {@link #updateQueryManipStore} isn't called, since it may
+     * need a logged in user. On databases that don't {@link #supportsPaging() support paging}, only the dimensions are
+     * checked. Data sources without result dimensions, which can't be queried, aren't checked.
+     */
+    public void validate() throws OeDataSourceException, OeDataSourceAccessException {
+        if (getResultDimensions().isEmpty()) {
+            return;
+        }
+
+        QueryManipulationStore store = new QueryManipulationStore(new ArrayList<Dimension>(getResultDimensions()),
+                                                                  null, null, null, false);
+        store.setPage(0, 0);
+        prepareDetailsQuery(store, false);
+        if (supportsPaging()) {
+            jdbcTemplate.query(new DetailsPreparedStatementCreator(store), new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) {
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks the query and fills in its arguments. Used by the queries that build their SQL with {@link
+     * DetailsPreparedStatementCreator} and no groupings.
+     */
+    private void prepareDetailsQuery(final QueryManipulationStore queryManipStore) throws OeDataSourceException {
+        prepareDetailsQuery(queryManipStore, true);
+    }
+
+    /**
+     * @param updateQuery whether to call {@link #updateQueryManipStore}
+     */
+    private void prepareDetailsQuery(final QueryManipulationStore queryManipStore, boolean updateQuery)
+            throws OeDataSourceException {
 
         if (jdbcTemplate == null) {
             throw new OeDataSourceException("No JDBC Template configured");
@@ -697,7 +873,14 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         fixAccumDimensions(queryManipStore);
 
         // helper method to override/apply additional filters
-        updateQueryManipStore(queryManipStore);
+        if (updateQuery) {
+            updateQueryManipStore(queryManipStore);
+        }
+
+        // update joined dimensions
+        if (getDimensionJoiner() != null) {
+            getDimensionJoiner().joinDimensions();
+        }
 
         final Collection<Dimension> results = queryManipStore.getResults();
         if (!CollectionUtils.isEmpty(results)) {
@@ -741,16 +924,191 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
 
         final List<Object> arguments = getArguments(filters);
         queryManipStore.setArguments(arguments);
+    }
+
+    /**
+     * Runs a details query, handing each row to <code>rcbh</code> as it is read. If the store {@link
+     * QueryManipulationStore#isPaged() is paged}, only that page is read from the database.
+     */
+    public void detailsQuery(final QueryManipulationStore queryManipStore, final RowCallbackHandler rcbh,
+                             final Integer fzparm) throws OeDataSourceException {
+
+        prepareDetailsQuery(queryManipStore);
 
         final int fz = (fzparm != null ? fzparm : jdbcTemplate.getFetchSize());
-        jdbcTemplate.query(new DetailsPreparedStatementCreator(queryManipStore) {
-            @Override
-            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-                PreparedStatement ps = super.createPreparedStatement(con);
-                ps.setFetchSize(fz);
-                return ps;
+        acquireQuerySlot();
+        try {
+            final QueryTimer timer = new QueryTimer();
+            jdbcTemplate.query(new DetailsPreparedStatementCreator(queryManipStore) {
+                @Override
+                public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                    PreparedStatement ps = super.createPreparedStatement(con);
+                    ps.setFetchSize(fz);
+                    return ps;
+                }
+            }, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    timer.startRows();
+                    timer.row();
+                    rcbh.processRow(rs);
+                }
+            });
+            timer.done(QueryMetrics.DETAILS);
+        } finally {
+            releaseQuerySlot();
+        }
+    }
+
+    /**
+     * Counts the records a details query would return, ignoring any page set on the store. Filters added by {@link
+     * #updateQueryManipStore} apply, so data sources that restrict their records (e.g. to the logged in user) count the
+     * same records they return. Subclasses that restrict records some other way should override this as well. Counts
+     * are cached for {@link #setCountCacheTimeout(long) countCacheTimeout} milliseconds, so paging through a large
+     * result doesn't count it again for every page.
+     */
+    public long countQuery(final QueryManipulationStore queryManipStore) throws OeDataSourceException {
+        prepareDetailsQuery(queryManipStore);
+
+        final DetailsPreparedStatementCreator psc = new DetailsPreparedStatementCreator(queryManipStore, true);
+        final String key;
+        try {
+            key = psc.getSql() + queryManipStore.getArguments();
+        } catch (SQLException e) {
+            throw new OeDataSourceException(e);
+        }
+
+        if (countCacheTimeout > 0) {
+            synchronized (countCache) {
+                CachedCount cached = countCache.get(key);
+                if (cached != null && System.currentTimeMillis() - cached.created <= countCacheTimeout) {
+                    return cached.count;
+                }
+            }
+        }
+
+        final long count;
+        acquireQuerySlot();
+        try {
+            count = jdbcTemplate.query(psc, new ResultSetExtractor<Long>() {
+                @Override
+                public Long extractData(ResultSet rs) throws SQLException {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } finally {
+            releaseQuerySlot();
+        }
+
+        if (countCacheTimeout > 0) {
+            synchronized (countCache) {
+                countCache.put(key, new CachedCount(count));
             }
-        }, rcbh);
+        }
+        return count;
+    }
+
+    /**
+     * @return whether {@link #detailsQuery(QueryManipulationStore, RowCallbackHandler, Integer)} can read a single page
+     *         from the database. If not, callers have to skip to their page themselves.
+     */
+    public boolean supportsPaging() throws OeDataSourceAccessException {
+        return showMeDbType() != DbTypesEnum.UNKNOWN;
+    }
+
+    public long getCountCacheTimeout() {
+        return countCacheTimeout;
+    }
+
+    /**
+     * @param countCacheTimeout how long, in milliseconds, to reuse the result of {@link #countQuery}. Default is 0,
+     *                          which disables caching.
+     */
+    public void setCountCacheTimeout(long countCacheTimeout) {
+        this.countCacheTimeout = countCacheTimeout;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    /**
+     * @param maxConcurrentQueries how many queries this data source may run at once, 0 for no limit. Default is the
+     *                             {@link #MAX_QUERIES} property, or {@link #getDefaultMaxConcurrentQueries()} if that
+     *                             isn't set. Must be set before the data source is initialized.
+     */
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+    }
+
+    /**
+     * @return limit of concurrent queries when neither {@link #setMaxConcurrentQueries(int)} nor the {@link
+     *         #MAX_QUERIES} property is set. Report queries can be slow, so they're limited to 10.
+     */
+    protected int getDefaultMaxConcurrentQueries() {
+        return DEFAULT_MAX_QUERIES;
+    }
+
+    public long getQueryWaitTimeout() {
+        return queryWaitTimeout;
+    }
+
+    /**
+     * @param queryWaitTimeout how long, in milliseconds, a query waits once {@link #setMaxConcurrentQueries(int)
+     *                         maxConcurrentQueries} are running. Default is the {@link #QUERY_WAIT} property, or 30
+     *                         seconds if that isn't set.
+     */
+    public void setQueryWaitTimeout(long queryWaitTimeout) {
+        this.queryWaitTimeout = queryWaitTimeout;
+    }
+
+    /**
+     * @return the limiter of concurrent queries, or <code>null</code> if they aren't limited
+     */
+    public QueryLimiter getQueryLimiter() {
+        return queryLimiter;
+    }
+
+    /**
+     * Waits for a slot of the {@link #getQueryLimiter() query limiter}, if there is one. Queries that subclasses run
+     * themselves should call this before running their statement and {@link #releaseQuerySlot()} in a finally block.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if no slot frees up in time
+     */
+    protected void acquireQuerySlot() {
+        if (queryLimiter == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean rejected = true;
+        try {
+            queryLimiter.acquire(getDataSourceId());
+            rejected = false;
+        } finally {
+            if (queryMetrics != null) {
+                queryMetrics.queryQueued(this, System.nanoTime() - start, rejected);
+            }
+        }
+    }
+
+    protected void releaseQuerySlot() {
+        if (queryLimiter != null) {
+            queryLimiter.release();
+        }
+    }
+
+    protected SqlTemplateCache getSqlTemplateCache() {
+        return sqlTemplateCache;
+    }
+
+    /**
+     * @param size maximum number of generated queries to keep. Set to 0 for data sources whose SQL changes in ways
+     *             that {@link SqlTemplateCache} keys don't capture, e.g. because they override the SQL building
+     *             methods.
+     */
+    public void setSqlTemplateCacheSize(int size) {
+        this.sqlTemplateCache = new SqlTemplateCache(size);
     }
 
     @Override
@@ -909,7 +1267,7 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
             }
         } else {
             // DetailsPreparedStatementCreator puts accum dimensions at the end of results,
-            // however, DetailsRowMapper does not know about this. That is why rearranging results.
+            // however, DetailsResultSetExtractor does not know about this. That is why rearranging results.
             // Remove accums and add them at the end.
             for (final Iterator<Dimension> iterator = results2.iterator(); iterator.hasNext(); ) {
                 final Dimension dimension = iterator.next();
@@ -922,10 +1280,18 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
             }
         }
 
-        return (Collection<Record>) jdbcTemplate.query(new DetailsPreparedStatementCreator(queryManipStore, groupCols),
-                                                       new DetailsRowMapper(results2, groupingDimensions, handlers,
-                                                                            colAddedCounts));
-
+        acquireQuerySlot();
+        try {
+            QueryTimer timer = new QueryTimer();
+            Collection<Record> records =
+                    jdbcTemplate.query(new DetailsPreparedStatementCreator(queryManipStore, groupCols),
+                                       new DetailsResultSetExtractor(results2, groupingDimensions, handlers,
+                                                                     colAddedCounts, timer));
+            timer.done(groupingDimensions.isEmpty() ? QueryMetrics.DETAILS : QueryMetrics.SERIES);
+            return records;
+        } finally {
+            releaseQuerySlot();
+        }
     }
 
     protected void setArguments(List<Object> arguments, PreparedStatement pStmt)
@@ -935,24 +1301,13 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
             // TODO NEED TO ADDRESS THE USE CASES FOR THIS null...POKUAM1...what if not nullable column?
             if (o == null) {
                 pStmt.setObject(argCount, null);
-            } else if (o instanceof java.sql.Timestamp) {
-                pStmt.setTimestamp(argCount, (java.sql.Timestamp) o);
-            } else if (o instanceof java.util.Date) {
-                pStmt.setTimestamp(argCount, new java.sql.Timestamp(((java.util.Date) o).getTime()));
-            } else if (o instanceof Integer) {
-                pStmt.setInt(argCount, (Integer) o);
-            } else if (o instanceof Long) {
-                pStmt.setLong(argCount, (Long) o);
-            } else if (o instanceof Float) {
-                pStmt.setFloat(argCount, (Float) o);
-            } else if (o instanceof Double) {
-                pStmt.setDouble(argCount, (Double) o);
-            } else if (o instanceof String) {
-                pStmt.setString(argCount, (String) o);
-            } else if (o instanceof Boolean) {
-                pStmt.setBoolean(argCount, (Boolean) o);
             } else {
-                throw new AssertionError("Unexpected object " + o + " " + o.getClass());
+                DataTypeConversionHelper.ArgumentBinder binder =
+                        DataTypeConversionHelper.getArgumentBinder(o.getClass());
+                if (binder == null) {
+                    throw new AssertionError("Unexpected object " + o + " " + o.getClass());
+                }
+                binder.bind(pStmt, argCount, o);
             }
             argCount += 1;
         }
@@ -1056,6 +1411,28 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
         query.append(StringUtils.collectionToDelimitedString(groupBySql, ", "));
     }
 
+    /**
+     * Restricts a query to one page of records. The page size and first record are bound, in that order, after the
+     * query's other arguments, so that the SQL is the same for every page. The default <code>LIMIT</code>/<code>OFFSET</code>
+     * syntax works for PostgreSQL and MySQL.
+     */
+    protected void addPageClause(final StringBuilder query) {
+        query.append(" LIMIT ? OFFSET ?");
+    }
+
+    /**
+     * @param queryType distinguishes different kinds of queries built from the same parts
+     * @return a key builder for {@link #getSqlTemplateCache() cached SQL}, primed with the parts of this data source
+     *         that go into every query
+     */
+    protected SqlTemplateCache.KeyBuilder createSqlKey(String queryType) {
+        return new SqlTemplateCache.KeyBuilder(this)
+                .add(queryType)
+                .add(getBaseDetailsQuery())
+                .add(baseWhereClauses)
+                .add(baseHavingClauses);
+    }
+
     protected static interface DimBeanExec<T> {
 
         public T exec(DimensionBean b);
@@ -1065,11 +1442,21 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
 
         private final QueryManipulationStore queryManipulationStore;
         private List<String> groupingCols;
+        private boolean count;
+        private String sql;
 
         private DetailsPreparedStatementCreator(QueryManipulationStore queryManipulationStore) {
             this.queryManipulationStore = queryManipulationStore;
         }
 
+        /**
+         * @param count true to select the number of records instead of the records themselves
+         */
+        private DetailsPreparedStatementCreator(QueryManipulationStore queryManipulationStore, boolean count) {
+            this.queryManipulationStore = queryManipulationStore;
+            this.count = count;
+        }
+
         private DetailsPreparedStatementCreator(QueryManipulationStore queryManipulationStore,
                                                 List<String> groupingCols) {
             this.queryManipulationStore = queryManipulationStore;
@@ -1079,6 +1466,73 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
 
         @Override
         public PreparedStatement createPreparedStatement(final Connection connection) throws SQLException {
+            PreparedStatement
+                    pStmt =
+                    connection.prepareStatement(getSql(), ResultSet.TYPE_FORWARD_ONLY,
+                                                ResultSet.CONCUR_READ_ONLY);
+
+            List<Object> arguments = queryManipulationStore.getArguments();
+            if (queryManipulationStore.isPaged() && !count) {
+                arguments = new ArrayList<Object>(arguments);
+                arguments.add(queryManipulationStore.getPageSize());
+                arguments.add(queryManipulationStore.getFirstRecord());
+            }
+            setArguments(arguments, pStmt);
+            if (log.isDebugEnabled()) {
+                log.debug("DETAILS QUERY w/ args: " + pStmt);
+            }
+            return pStmt;
+        }
+
+        private String getSql() throws SQLException {
+            if (sql == null) {
+                String key = getSqlKey();
+                sql = sqlTemplateCache.get(key);
+                if (sql == null) {
+                    sql = buildSql();
+                    log.debug("DETAILS QUERY: " + sql);
+                    sqlTemplateCache.put(key, sql);
+                }
+            }
+            return sql;
+        }
+
+        /**
+         * @return key of everything that {@link #buildSql()} reads, or <code>null</code> if it can't be cached
+         */
+        private String getSqlKey() {
+            SqlTemplateCache.KeyBuilder key = createSqlKey(count ? "count" : "details")
+                    .add(queryManipulationStore.getDistinctFilterSql())
+                    .add(groupingCols)
+                    .add(queryManipulationStore.isPaged());
+
+            for (Dimension result : queryManipulationStore.getResults()) {
+                DimensionBean bean = getBean(result.getId());
+                key.add(result.getId()).add(result.getSqlCol()).add(accumulationMap.containsKey(result.getId()))
+                        .add(bean == null ? null : bean.getSqlColAlias());
+            }
+            for (Dimension accumulation : queryManipulationStore.getAccumulations()) {
+                key.add(accumulation.getSqlCol());
+            }
+
+            key.addFilters(queryManipulationStore.getWhereClauseFilters());
+
+            Collection<OrderByFilter> sorters = queryManipulationStore.getOrderByFilters();
+            key.add(sorters == null ? null : sorters.size());
+            if (sorters != null) {
+                for (OrderByFilter sorter : sorters) {
+                    DimensionBean bean = getBean(sorter.getFilterId());
+                    key.addSorter(sorter)
+                            .add(getResultDimension(sorter.getFilterId()) != null)
+                            .add(bean == null ? null : bean.getSqlCol())
+                            .add(bean == null ? null : bean.getSqlColAlias());
+                }
+            }
+
+            return key.build();
+        }
+
+        private String buildSql() throws SQLException {
             final StringBuilder query = new StringBuilder();
             query.append("SELECT ");
             // 2013/02/05, S. Chris Carr, I don't see how this syntax would work (it certainly doesn't in PostgreSQL).  "SELECT  DISTINCT , col1, ...."
@@ -1164,6 +1618,11 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
 
             addHavingClauses(query);
 
+            if (count) {
+                // the page and sort order don't change the count
+                return "SELECT COUNT(*) FROM (" + query + ") oe_count";
+            }
+
             try {
 
                 Collection<OrderByFilter> mysorters = queryManipulationStore.getOrderByFilters();
@@ -1180,40 +1639,110 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
                 throw new SQLException("Error occured while building Order By clause.", e);
             }
 
-            PreparedStatement
-                    pStmt =
-                    connection.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY,
-                                                ResultSet.CONCUR_READ_ONLY);
-            log.debug("DETAILS QUERY w/ params: " + pStmt);
-            setArguments(queryManipulationStore.getArguments(), pStmt);
-            log.info("DETAILS QUERY w/ args: " + pStmt);
-            return pStmt;
+            if (queryManipulationStore.isPaged()) {
+                addPageClause(query);
+            }
+
+            return query.toString();
+        }
+    }
+
+    private static class CachedCount {
+
+        private final long count;
+        private final long created;
+
+        private CachedCount(long count) {
+            this.count = count;
+            this.created = System.currentTimeMillis();
         }
     }
 
-    private class DetailsRowMapper implements RowMapper<Record> {
+    /**
+     * Collects details query rows into {@link ColumnarRecords}, so that large results don't cost two maps per row.
+     */
+    private class DetailsResultSetExtractor implements ResultSetExtractor<Collection<Record>> {
 
         private final List<Dimension> dimensions;
         private List<ResolutionHandler> handlers;
         private List<Integer> colAddedCounts;
         private List<DimensionBean> groupingDimensions;
+        private final QueryTimer timer;
 
-        public DetailsRowMapper(List<Dimension> results2, List<DimensionBean> groupingDimensions,
-                                List<ResolutionHandler> handlers, List<Integer> colAddedCounts) {
+        public DetailsResultSetExtractor(List<Dimension> results2, List<DimensionBean> groupingDimensions,
+                                         List<ResolutionHandler> handlers, List<Integer> colAddedCounts,
+                                         QueryTimer timer) {
             this.dimensions = results2;
             this.groupingDimensions = groupingDimensions;
             this.handlers = handlers;
             this.colAddedCounts = colAddedCounts;
+            this.timer = timer;
         }
 
         @Override
-        public Record mapRow(ResultSet rs, int rowNum) throws SQLException {
+        public Collection<Record> extractData(ResultSet rs) throws SQLException {
+            List<Dimension> columns = new ArrayList<Dimension>(dimensions);
+            List<DimensionBean> grouping = null;
             if (groupingDimensions != null && groupingDimensions.size() > 0) {
-                return createRecord(dimensions, rs, groupingDimensions, handlers, colAddedCounts);
-            } else {
-                return createRecord(dimensions, rs);
+                grouping = groupingDimensions;
+                for (DimensionBean dim : grouping) {
+                    columns.add(new DimensionBeanAdapter(dim, JdbcOeDataSource.this));
+                }
+            }
+
+            ColumnarRecords records = new ColumnarRecords(columns);
+            Object[] row = new Object[columns.size()];
+            timer.startRows();
+            while (rs.next()) {
+                readValues(dimensions, rs, grouping, handlers, colAddedCounts, row);
+                records.addRow(row);
+                timer.row();
+            }
+            records.trimToSize();
+            return records;
+        }
+    }
+
+    /**
+     * Splits the time of a query into running the statement and reading its rows, for {@link QueryMetrics}. Start one
+     * right before running the statement.
+     */
+    protected class QueryTimer {
+
+        private final long start = System.nanoTime();
+        private long firstRow = -1;
+        private long rows;
+
+        public QueryTimer() {
+        }
+
+        /**
+         * Marks the end of running the statement. Only the first call counts.
+         */
+        public void startRows() {
+            if (firstRow < 0) {
+                firstRow = System.nanoTime();
             }
+        }
+
+        public void row() {
+            rows++;
+        }
 
+        /**
+         * Reports the query to the {@link QueryMetrics}, if there are any.
+         *
+         * @param queryType e.g. {@link QueryMetrics#SERIES}
+         */
+        public void done(String queryType) {
+            if (queryMetrics == null) {
+                return;
+            }
+            long end = System.nanoTime();
+            if (firstRow < 0) {
+                firstRow = end;
+            }
+            queryMetrics.queryExecuted(JdbcOeDataSource.this, queryType, firstRow - start, end - firstRow, rows);
         }
     }
 
@@ -1399,6 +1928,26 @@ public class JdbcOeDataSource implements OeDataSource, ApplicationContextAware,
     @PostConstruct
     private void init() {
         jdbcTemplate.setDataSource(getMainDataSource());
+
+        if (ctx != null) {
+            Environment env = ctx.getEnvironment();
+            if (maxConcurrentQueries < 0) {
+                maxConcurrentQueries = env.getProperty(MAX_QUERIES, Integer.class, getDefaultMaxConcurrentQueries());
+            }
+            if (queryWaitTimeout < 0) {
+                queryWaitTimeout = env.getProperty(QUERY_WAIT, Long.class, DEFAULT_QUERY_WAIT);
+            }
+        }
+        if (maxConcurrentQueries < 0) {
+            maxConcurrentQueries = getDefaultMaxConcurrentQueries();
+        }
+        if (maxConcurrentQueries > 0) {
+            queryLimiter = new QueryLimiter(maxConcurrentQueries,
+                                            queryWaitTimeout < 0 ? DEFAULT_QUERY_WAIT : queryWaitTimeout);
+            if (queryMetrics != null) {
+                queryMetrics.queryLimited(this, queryLimiter);
+            }
+        }
     }
 
     public DataSource getMainDataSource() {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.SqlGeneratingFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the lookup lists behind dimension combo boxes, e.g. regions, syndromes and facilities. Only details queries
+ * against data sources that some dimension names as its possible values data source are cached; see {@link
+ * #addDataSource}. Entries are keyed per data source and requested dimensions (see {@link #createKey}), and also per
+ * user for data sources that may restrict their records to the logged in user.
+ *
+ * <p> Like the {@link QueryResultCache}, entries expire after <code>maxAge</code> milliseconds, the least recently
+ * used are dropped once there are more than <code>maxEntries</code>, and writes through a data entry data source drop
+ * the lists read from the tables it writes to. </p>
+ */
+public class PossibleValuesCache {
+
+    private final QueryResultCache results;
+    private final Set<String> dataSourceIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public PossibleValuesCache(int maxEntries, long maxAge) {
+        results = new QueryResultCache(maxEntries, maxAge);
+    }
+
+    /**
+     * Marks <code>dsId</code> as a possible values data source, i.e. one whose details queries may be cached.
+     */
+    public void addDataSource(String dsId) {
+        dataSourceIds.add(dsId);
+    }
+
+    public boolean isPossibleValuesDataSource(String dsId) {
+        return dataSourceIds.contains(dsId);
+    }
+
+    public Set<String> getDataSourceIds() {
+        return Collections.unmodifiableSet(dataSourceIds);
+    }
+
+    /**
+     * @return the cached possible values for <code>key</code>, or <code>null</code> if there are none or they have
+     *         expired
+     */
+    public Object get(String key) {
+        return results.get(key);
+    }
+
+    /**
+     * Caches <code>value</code>, possible values read from <code>ds</code>.
+     */
+    public void put(String key, JdbcOeDataSource ds, Object value) {
+        results.put(key, ds, value);
+    }
+
+    /**
+     * Drops the possible values read from <code>ds</code> or from the tables it writes to.
+     */
+    public void invalidate(JdbcOeDataSource ds) {
+        results.invalidate(ds);
+    }
+
+    public void invalidate(String dsId, Collection<String> tableNames) {
+        results.invalidate(dsId, tableNames);
+    }
+
+    public void clear() {
+        results.clear();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Computes the key of a possible values details query.
+     *
+     * @return the key, or <code>null</code> if <code>ds</code> isn't a possible values data source or the query can't
+     *         be reduced to a key
+     */
+    public String createKey(JdbcOeDataSource ds, List<Dimension> resultDimensions, List<Dimension> accumulations,
+                            List<Filter> filters, List<OrderByFilter> sorts, String timezone, long firstRecord,
+                            long pageSize) {
+        if (!isPossibleValuesDataSource(ds.getDataSourceId())) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(ds.getDataSourceId()).append('\n');
+        key.append(ds.getBaseDetailsQuery()).append('\n');
+        for (Dimension d : resultDimensions) {
+            key.append(d.getId()).append(' ');
+        }
+        key.append('\n');
+        for (Dimension d : accumulations) {
+            key.append(d.getId()).append(' ');
+        }
+        key.append('\n');
+
+        List<String> filterKeys = new ArrayList<String>();
+        for (Filter filter : filters) {
+            if (!(filter instanceof SqlGeneratingFilter)) {
+                return null;
+            }
+            SqlGeneratingFilter sqlFilter = (SqlGeneratingFilter) filter;
+            filterKeys.add(sqlFilter.getSqlSnippet(ds) + " " + QueryResultCache.toKey(sqlFilter.getArguments(ds)));
+        }
+        Collections.sort(filterKeys);
+        key.append(filterKeys).append('\n');
+
+        for (OrderByFilter sort : sorts) {
+            key.append(sort.getFilterId()).append(':').append(sort.getOperator()).append(' ');
+        }
+        key.append('\n');
+
+        key.append(timezone).append('\n');
+        key.append(firstRecord).append(':').append(pageSize);
+        if (isUserDependent(ds)) {
+            key.append('\n').append(QueryResultCache.getUserKey());
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return whether <code>ds</code> overrides one of the hooks data sources use to restrict their records, e.g. to
+     *         the logged in user's, in which case its possible values are cached per user
+     * @see QueryResultCache#isUserDependent(JdbcOeDataSource)
+     */
+    public boolean isUserDependent(JdbcOeDataSource ds) {
+        return QueryResultCache.isUserDependent(ds);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many queries a data source runs at once, so a data source with slow queries can't hold every pooled
+ * connection while other data sources (e.g. login and data entry) wait for one. Queries over the limit wait up to a
+ * timeout for a slot and are then rejected.
+ */
+public class QueryLimiter {
+
+    private final int maxQueries;
+    private final long timeout;
+    private final Semaphore slots;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxQueries maximum number of queries running at once
+     * @param timeout    how long, in milliseconds, a query waits for a slot
+     */
+    public QueryLimiter(int maxQueries, long timeout) {
+        if (maxQueries < 1) {
+            throw new IllegalArgumentException("maxQueries must be positive");
+        }
+        this.maxQueries = maxQueries;
+        this.timeout = timeout;
+        this.slots = new Semaphore(maxQueries, true);
+    }
+
+    /**
+     * Waits for a slot. Every successful call must be followed by a call to {@link #release()}.
+     *
+     * @throws RejectedExecutionException if no slot frees up within the timeout
+     */
+    public void acquire(String dataSourceId) {
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Data source " + dataSourceId + " is busy, try again later");
+        }
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    public int getMaxQueries() {
+        return maxQueries;
+    }
+
+    public int getActiveQueries() {
+        return maxQueries - slots.availablePermits();
+    }
+
+    public int getWaitingQueries() {
+        return slots.getQueueLength();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+/**
+ * Receives how long {@link JdbcOeDataSource} queries take, e.g. to feed a metrics registry. Data sources pick up a
+ * bean implementing this interface if there is one. Implementations must be thread safe.
+ */
+public interface QueryMetrics {
+
+    /**
+     * Query for records, one row per record.
+     */
+    String DETAILS = "details";
+
+    /**
+     * Query grouped by one or more grouping dimensions, e.g. a time series.
+     */
+    String SERIES = "series";
+
+    /**
+     * @param ds           data source that ran the query
+     * @param queryType    {@link #DETAILS} or {@link #SERIES}
+     * @param sqlNanos     time until the first row could be read, i.e. running the statement
+     * @param mappingNanos time reading and mapping the rows
+     * @param rows         number of rows read
+     */
+    void queryExecuted(JdbcOeDataSource ds, String queryType, long sqlNanos, long mappingNanos, long rows);
+
+    /**
+     * Called once when a data source creates its {@link QueryLimiter}, e.g. to report how many queries are running.
+     * A reloaded data source creates a new limiter.
+     */
+    void queryLimited(JdbcOeDataSource ds, QueryLimiter limiter);
+
+    /**
+     * Called before each query of a data source that has a {@link QueryLimiter}.
+     *
+     * @param waitNanos time waiting for a slot
+     * @param rejected  whether the query gave up waiting
+     */
+    void queryQueued(JdbcOeDataSource ds, long waitNanos, boolean rejected);
+}
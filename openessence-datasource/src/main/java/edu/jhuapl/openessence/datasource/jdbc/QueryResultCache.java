@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
+import edu.jhuapl.openessence.datasource.dataseries.Grouping;
+import edu.jhuapl.openessence.datasource.entry.ChildTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.dataseries.GroupingImpl;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.filter.SqlGeneratingFilter;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process cache of query results, e.g. accumulated time series and their detector output. Entries are keyed by a
+ * normalized form of the query (see {@link #createKey}), and also per user for data sources that may restrict their
+ * records to the logged in user. They remember which data source they were read from and the
+ * tables named in its base query, so that writes to a table can drop every result that might include it.
+ *
+ * <p> Entries expire after <code>maxAge</code> milliseconds, and the least recently used entries are dropped once
+ * there are more than <code>maxEntries</code>. </p>
+ */
+public class QueryResultCache {
+
+    /**
+     * Methods a data source overrides to change which records its queries return.
+     */
+    private static final Set<String> USER_HOOKS = new HashSet<String>(Arrays.asList("updateQueryManipStore",
+                                                                                   "detailsQuery"));
+
+    private static final Map<Class<?>, Boolean> userDependentClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private final int maxEntries;
+    private final long maxAge;
+    private final Map<String, Entry> entries;
+
+    public QueryResultCache(int maxEntries, long maxAge) {
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > QueryResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value for <code>key</code>, or <code>null</code> if there is none or it has expired
+     */
+    public synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > maxAge) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches <code>value</code>, a result read from <code>ds</code>.
+     */
+    public synchronized void put(String key, JdbcOeDataSource ds, Object value) {
+        if (maxEntries > 0 && maxAge > 0) {
+            entries.put(key, new Entry(ds.getDataSourceId(), getTableNames(ds.getBaseDetailsQuery()), value));
+        }
+    }
+
+    /**
+     * Drops every result read from <code>ds</code> or from a base query that names one of the tables <code>ds</code>
+     * writes to. Call this after writing through a data entry data source.
+     */
+    public void invalidate(JdbcOeDataSource ds) {
+        invalidate(ds.getDataSourceId(), getWrittenTableNames(ds));
+    }
+
+    /**
+     * @return the parent and child tables <code>ds</code> writes to, empty if it isn't a data entry data source
+     */
+    public static Set<String> getWrittenTableNames(JdbcOeDataSource ds) {
+        Set<String> tableNames = new HashSet<String>();
+        if (ds instanceof JdbcOeDataEntrySource) {
+            JdbcOeDataEntrySource jdes = (JdbcOeDataEntrySource) ds;
+            tableNames.add(jdes.getTableName());
+            if (jdes.getChildTableMap() != null) {
+                for (ChildTableDetails details : jdes.getChildTableMap().values()) {
+                    tableNames.add(details.getTableName());
+                }
+            }
+        }
+        return tableNames;
+    }
+
+    /**
+     * Drops every result read from data source <code>dsId</code> or from a base query that names one of
+     * <code>tableNames</code>.
+     */
+    public synchronized void invalidate(String dsId, Collection<String> tableNames) {
+        Set<String> names = new HashSet<String>();
+        for (String tableName : tableNames) {
+            if (tableName != null) {
+                names.addAll(getTableNames(tableName));
+            }
+        }
+
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.dsId.equals(dsId) || !Collections.disjoint(entry.tableNames, names)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Computes the key of a series query. Filters and accumulations are sorted, so requests that only list them in a
+     * different order share a key. The key includes the logged in user if the data source {@link #isUserDependent may
+     * restrict its records}, since the filters those hooks add aren't in <code>store</code> yet.
+     *
+     * @param ds     data source the query runs against
+     * @param store  the query
+     * @param extras anything else the result depends on, e.g. the date range or the detector
+     * @return the key, or <code>null</code> if the query can't be reduced to a key
+     */
+    public static String createKey(JdbcOeDataSource ds, SeriesQueryManipulationStore store, Object... extras) {
+        StringBuilder key = new StringBuilder(ds.getDataSourceId()).append('\n');
+        key.append(ds.getBaseDetailsQuery()).append('\n');
+
+        List<String> accumIds = new ArrayList<String>(store.getAccumIds());
+        Collections.sort(accumIds);
+        key.append(accumIds).append('\n');
+
+        for (Grouping grouping : store.getGroupings()) {
+            if (!(grouping instanceof GroupingImpl)) {
+                return null;
+            }
+            GroupingImpl group = (GroupingImpl) grouping;
+            key.append(group.getId()).append(':').append(group.getResolution()).append(' ');
+        }
+        key.append('\n');
+
+        List<String> filters = new ArrayList<String>();
+        if (store.getWhereClauseFilters() != null) {
+            for (Filter filter : store.getWhereClauseFilters()) {
+                if (!(filter instanceof SqlGeneratingFilter)) {
+                    return null;
+                }
+                SqlGeneratingFilter sqlFilter = (SqlGeneratingFilter) filter;
+                filters.add(sqlFilter.getSqlSnippet(ds) + " " + toKey(sqlFilter.getArguments(ds)));
+            }
+        }
+        Collections.sort(filters);
+        key.append(filters).append('\n');
+
+        key.append(store.getTimezone()).append('\n');
+        key.append(toKey(Arrays.asList(extras)));
+        if (isUserDependent(ds)) {
+            key.append('\n').append(getUserKey());
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return whether <code>ds</code> overrides one of the hooks data sources use to restrict their records, e.g. to
+     *         the logged in user's, in which case its results are cached per user
+     */
+    public static boolean isUserDependent(JdbcOeDataSource ds) {
+        Boolean userDependent = userDependentClasses.get(ds.getClass());
+        if (userDependent == null) {
+            userDependent = false;
+            for (Class<?> c = ds.getClass(); c != JdbcOeDataSource.class && c != null; c = c.getSuperclass()) {
+                for (Method method : c.getDeclaredMethods()) {
+                    if (USER_HOOKS.contains(method.getName())) {
+                        userDependent = true;
+                    }
+                }
+            }
+            userDependentClasses.put(ds.getClass(), userDependent);
+        }
+        return userDependent;
+    }
+
+    /**
+     * @return the logged in user's name and roles
+     */
+    static String getUserKey() {
+        Authentication authentication = JdbcOeDataSource.getAuthentication();
+        if (authentication == null) {
+            return "anonymous";
+        }
+        List<String> roles = new ArrayList<String>();
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Collections.sort(roles);
+        return authentication.getName() + " " + roles;
+    }
+
+    static String toKey(List<Object> values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Object value : values) {
+            // Date.toString() drops the milliseconds
+            sb.append(value instanceof Date ? ((Date) value).getTime() : value).append(", ");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return lower case identifiers in <code>sql</code>, both schema qualified and not, as a conservative superset of
+     *         the tables it reads
+     */
+    public static Set<String> getTableNames(String sql) {
+        Set<String> names = new HashSet<String>();
+        if (sql == null) {
+            return names;
+        }
+        for (String token : sql.toLowerCase(Locale.ENGLISH).split("[^a-z0-9_$.\"]+")) {
+            token = token.replace("\"", "");
+            if (!token.isEmpty()) {
+                names.add(token);
+                int dot = token.lastIndexOf('.');
+                if (dot >= 0) {
+                    names.add(token.substring(dot + 1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static class Entry {
+
+        private final String dsId;
+        private final Set<String> tableNames;
+        private final Object value;
+        private final long created;
+
+        private Entry(String dsId, Set<String> tableNames, Object value) {
+            this.dsId = dsId;
+            this.tableNames = tableNames;
+            this.value = value;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.AndFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.FieldFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.GtFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.GteqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.ILikeFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.InFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.LikeFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.LtFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.LteqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.MultiFilterCombiner;
+import edu.jhuapl.openessence.datasource.jdbc.filter.NeqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.NotFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.OneArgOpFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.OrFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.SqlGeneratingFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of generated SQL. Queries are keyed by their shape (the columns, filter types and arity, groupings and sort
+ * order that go into the SQL, but not the filter arguments), so that requests that only differ in their arguments
+ * reuse the same SQL text and only have to bind their arguments.
+ *
+ * <p> Keys are built with a {@link KeyBuilder}. Filters and sorters that the key builder doesn't know (including
+ * subclasses of known ones) make a query uncacheable, since their SQL could depend on anything. </p>
+ */
+public class SqlTemplateCache {
+
+    /**
+     * Filters whose SQL only depends on their class and the column of their dimension.
+     */
+    private static final Set<Class<?>> ONE_ARG_FILTERS = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            EqFilter.class, NeqFilter.class, GtFilter.class, GteqFilter.class, LtFilter.class, LteqFilter.class,
+            LikeFilter.class, ILikeFilter.class));
+
+    private final int maxTemplates;
+    private final Map<String, String> templates;
+
+    /**
+     * @param maxTemplates maximum number of queries to keep, 0 to disable the cache
+     */
+    public SqlTemplateCache(int maxTemplates) {
+        this.maxTemplates = maxTemplates;
+        this.templates = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > SqlTemplateCache.this.maxTemplates;
+            }
+        };
+    }
+
+    /**
+     * @return SQL for a query of this shape, or <code>null</code> if there is none
+     */
+    public synchronized String get(String key) {
+        return key == null ? null : templates.get(key);
+    }
+
+    public synchronized void put(String key, String sql) {
+        if (key != null && maxTemplates > 0) {
+            templates.put(key, sql);
+        }
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * Builds the key of a query from the parts that go into its SQL.
+     */
+    public static class KeyBuilder {
+
+        private final JdbcOeDataSource ds;
+        private final StringBuilder key = new StringBuilder();
+        private boolean cacheable = true;
+
+        public KeyBuilder(JdbcOeDataSource ds) {
+            this.ds = ds;
+        }
+
+        public KeyBuilder add(Object part) {
+            // separator that can't be confused with SQL
+            key.append(part).append('\u0000');
+            return this;
+        }
+
+        public KeyBuilder addFilters(Collection<? extends Filter> filters) {
+            if (filters == null) {
+                return add(null);
+            }
+
+            add(filters.size());
+            for (Filter filter : filters) {
+                addFilter(filter);
+            }
+            return this;
+        }
+
+        /**
+         * Adds the sort direction of <code>sorter</code>. The caller adds its column.
+         */
+        public KeyBuilder addSorter(OrderByFilter sorter) {
+            // subclasses override getSqlSnippet, e.g. to add NULLS LAST
+            if (sorter == null || sorter.getClass() != OrderByFilter.class) {
+                cacheable = false;
+                return this;
+            }
+            return add(sorter.getFilterId()).add(sorter.getOperator());
+        }
+
+        private void addFilter(Filter filter) {
+            if (filter == null) {
+                cacheable = false;
+            } else if (ONE_ARG_FILTERS.contains(filter.getClass())) {
+                OneArgOpFilter f = (OneArgOpFilter) filter;
+                add(f.getOperator()).add(getSqlCol(f));
+            } else if (filter.getClass() == InFilter.class) {
+                InFilter f = (InFilter) filter;
+                add("IN").add(getSqlCol(f)).add(f.getArguments().size());
+            } else if (filter.getClass() == AndFilter.class || filter.getClass() == OrFilter.class) {
+                Collection<SqlGeneratingFilter> subFilters = ((MultiFilterCombiner) filter).getSubFilters();
+                add(filter.getClass().getSimpleName()).addFilters(subFilters);
+            } else if (filter.getClass() == NotFilter.class) {
+                add("NOT").addFilter(((NotFilter) filter).getSubFilter());
+            } else {
+                cacheable = false;
+            }
+        }
+
+        private String getSqlCol(FieldFilter filter) {
+            DimensionBean bean = ds.getBean(filter.getFilterId());
+            return bean == null ? null : bean.getSqlCol();
+        }
+
+        /**
+         * @return the key, or <code>null</code> if the query can't be cached
+         */
+        public String build() {
+            return cacheable ? key.toString() : null;
+        }
+    }
+}
@@ -27,12 +27,16 @@
 package edu.jhuapl.openessence.datasource.jdbc.dataseries;
 
 import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
 import edu.jhuapl.openessence.datasource.Filter;
 import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
 import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.Record;
 import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
 import edu.jhuapl.openessence.datasource.dataseries.AccumPoint;
 import edu.jhuapl.openessence.datasource.dataseries.DataSeriesSource;
+import edu.jhuapl.openessence.datasource.dataseries.DenseSeries;
 import edu.jhuapl.openessence.datasource.dataseries.Grouping;
 import edu.jhuapl.openessence.datasource.dataseries.GroupingDimension;
 import edu.jhuapl.openessence.datasource.jdbc.DataTypeConversionHelper;
@@ -40,9 +44,13 @@ import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
 import edu.jhuapl.openessence.datasource.jdbc.DimensionBeanAdapter;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
 import edu.jhuapl.openessence.datasource.jdbc.PluggableResolutionHandler;
+import edu.jhuapl.openessence.datasource.jdbc.QueryMetrics;
 import edu.jhuapl.openessence.datasource.jdbc.QueryRecord;
 import edu.jhuapl.openessence.datasource.jdbc.ResolutionHandler;
+import edu.jhuapl.openessence.datasource.jdbc.SqlTemplateCache;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
 import edu.jhuapl.openessence.datasource.timeresolution.ResolutionHandlerFactory;
+import edu.jhuapl.openessence.datasource.util.CopyOnWriteMap;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.PreparedStatementCreator;
@@ -51,8 +59,11 @@ import org.springframework.jdbc.core.ResultSetExtractor;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -64,7 +75,7 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
 
     public JdbcDataSeriesSource() {
         super();
-        groupingMap = new LinkedHashMap<String, DimensionBean>();
+        groupingMap = new CopyOnWriteMap<String, DimensionBean>();
     }
 
     public String getDataSourceId() {
@@ -105,10 +116,115 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
     @Override
     public List<AccumPoint> seriesQuery(SeriesQueryManipulationStore seriesQueryManipStore)
             throws OeDataSourceException, OeDataSourceAccessException {
-        final List<String> accumIds = seriesQueryManipStore.getAccumIds();
+        SeriesColumns columns = getSeriesColumns(seriesQueryManipStore);
+        if (isDetailsQueryOverridden()) {
+            List<AccumPoint> points = new LinkedList<AccumPoint>();
+            for (Record record : detailsQuery(columns.store)) {
+                Map<String, Number> accumValues = new LinkedHashMap<String, Number>(columns.accumIds.size());
+                for (String accumId : columns.accumIds) {
+                    Object value = record.getValue(accumId);
+                    accumValues.put(accumId, value instanceof Number ? (Number) value : null);
+                }
+                points.add(new AccumPointImpl(accumValues, record));
+            }
+            return points;
+        }
+
+        acquireQuerySlot();
+        try {
+            QueryTimer timer = new QueryTimer();
+            List<AccumPoint> points = jdbcTemplate.query(
+                    new SeriesPreparedStatementCreator(columns.accumIds, columns.groupCols, columns.filters,
+                                                       columns.arguments),
+                    new SeriesResultSetExtractor(columns.accumIds, columns.groupingDimensions, columns.handlers,
+                                                 columns.colAddedCounts, timer));
+            timer.done(QueryMetrics.SERIES);
+            return points;
+        } finally {
+            releaseQuerySlot();
+        }
+    }
+
+    @Override
+    public DenseSeries denseSeriesQuery(SeriesQueryManipulationStore seriesQueryManipStore, Date startDate,
+                                        Date endDate, int firstDayOfWeek)
+            throws OeDataSourceException, OeDataSourceAccessException {
         List<Grouping> groupings = seriesQueryManipStore.getGroupings();
-        Collection<Filter> filters = seriesQueryManipStore.getWhereClauseFilters();
+        if (groupings == null || groupings.size() != 1 || !(groupings.get(0) instanceof GroupingImpl)) {
+            throw new OeDataSourceException("Dense series queries need exactly one grouping.");
+        }
+
+        String resolution = ((GroupingImpl) groupings.get(0)).getResolution();
+        if (!DenseSeries.isSupported(resolution)) {
+            throw new OeDataSourceException("Unsupported resolution \"" + resolution + "\" for dense series query");
+        }
+
+        SeriesColumns columns = getSeriesColumns(seriesQueryManipStore);
+        DimensionBean dim = columns.groupingDimensions.get(0);
+        if (dim.getSqlType() != FieldType.DATE && dim.getSqlType() != FieldType.DATE_TIME) {
+            throw new OeDataSourceException("Dense series queries need a date grouping, \"" + dim.getId()
+                                            + "\" is " + dim.getSqlType());
+        }
+
+        DenseSeries series = DenseSeries.create(startDate, endDate, resolution, firstDayOfWeek, columns.accumIds);
+        if (isDetailsQueryOverridden()) {
+            return fillSeries(series, dim.getId(), columns.accumIds, detailsQuery(columns.store));
+        }
+
+        acquireQuerySlot();
+        try {
+            QueryTimer timer = new QueryTimer();
+            DenseSeries result = jdbcTemplate.query(
+                    new SeriesPreparedStatementCreator(columns.accumIds, columns.groupCols, columns.filters,
+                                                       columns.arguments),
+                    new DenseSeriesResultSetExtractor(series, columns.accumIds, dim, columns.handlers.get(0),
+                                                      columns.colAddedCounts.get(0), timer));
+            timer.done(QueryMetrics.SERIES);
+            return result;
+        } finally {
+            releaseQuerySlot();
+        }
+    }
+
+    /**
+     * Adds grouped details query <code>records</code> to <code>series</code>.
+     */
+    private static DenseSeries fillSeries(DenseSeries series, String groupId, List<String> accumIds,
+                                          Collection<Record> records) {
+        for (Record record : records) {
+            Object date = record.getValue(groupId);
+            int index = date instanceof Date ? series.indexOf((Date) date) : -1;
+            if (index < 0) {
+                continue;
+            }
+            for (String accumId : accumIds) {
+                Object value = record.getValue(accumId);
+                series.add(accumId, index, value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+            }
+        }
+        series.setRowCount(records.size());
+        return series;
+    }
+
+    /**
+     * @return true if a subclass, e.g. a Groovy data source, overrides the grouped {@link
+     *         #detailsQuery(QueryManipulationStore) details query}. Series of such data sources are read through it so
+     *         that they match the details grid.
+     */
+    protected boolean isDetailsQueryOverridden() {
+        try {
+            return getClass().getMethod("detailsQuery", QueryManipulationStore.class).getDeclaringClass()
+                   != JdbcOeDataSource.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
+    /**
+     * Validates a series query and works out the columns to group by.
+     */
+    private SeriesColumns getSeriesColumns(SeriesQueryManipulationStore seriesQueryManipStore)
+            throws OeDataSourceException {
         // first check types, make sure that each of the accumulations,
         // groupings, and filters exist
         if (accumulationMap == null) {
@@ -116,27 +232,57 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
                     "Data source not initialized properly: missing accumulations property");
         }
 
-        if (accumIds == null) {
+        if (seriesQueryManipStore.getAccumIds() == null) {
             throw new OeDataSourceException("Accumulations cannot be null.");
         }
 
-        if (groupings == null) {
+        if (seriesQueryManipStore.getGroupings() == null) {
             throw new OeDataSourceException("Groupings cannot be null.");
         }
 
-        if (filters == null) {
+        if (seriesQueryManipStore.getWhereClauseFilters() == null) {
             throw new OeDataSourceException("Filters cannot be null.");
         }
 
-        if (accumIds.isEmpty()) {
-            throw new OeDataSourceException("At least one accumulation must be provided.");
+        List<Dimension> results = new ArrayList<Dimension>();
+        List<Dimension> accumulations = new ArrayList<Dimension>();
+        for (String accumId : seriesQueryManipStore.getAccumIds()) {
+            Dimension accumulation = getAccumulation(accumId);
+            if (accumulation == null) {
+                throw new OeDataSourceException("Unknown accumulation \"" + accumId + "\"");
+            }
+            accumulations.add(accumulation);
+            Dimension result = getResultDimension(accumId);
+            if (result != null) {
+                results.add(result);
+            }
         }
 
-        for (String accumId : accumIds) {
-            DimensionBean bean = accumulationMap.get(accumId);
-            if (bean == null) {
-                throw new OeDataSourceException("Unknown accumulation \"" + accumId + "\"");
+        // same store and hooks as the grouped details query, so series see the filters the details grid sees
+        QueryManipulationStore store =
+                new QueryManipulationStore(results, accumulations,
+                                           new ArrayList<Filter>(seriesQueryManipStore.getWhereClauseFilters()),
+                                           new ArrayList<OrderByFilter>(), seriesQueryManipStore.getGroupings(),
+                                           false, seriesQueryManipStore.getTimezone());
+        fixResultDimensions(store);
+        fixAccumDimensions(store);
+        updateQueryManipStore(store);
+        if (getDimensionJoiner() != null) {
+            getDimensionJoiner().joinDimensions();
+        }
+
+        final List<String> accumIds = new ArrayList<String>();
+        for (Dimension accumulation : store.getAccumulations()) {
+            if (accumulationMap.get(accumulation.getId()) == null) {
+                throw new OeDataSourceException("Unknown accumulation \"" + accumulation.getId() + "\"");
             }
+            accumIds.add(accumulation.getId());
+        }
+        List<Grouping> groupings = store.getGroupings();
+        Collection<Filter> filters = store.getWhereClauseFilters();
+
+        if (accumIds.isEmpty()) {
+            throw new OeDataSourceException("At least one accumulation must be provided.");
         }
 
         List<DimensionBean> groupingDimensions = new LinkedList<DimensionBean>();
@@ -186,7 +332,7 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
 
                 List<String>
                         resolutionCols =
-                        handler.getResolutionColumns(bean.getSqlCol(), seriesQueryManipStore.getTimezone());
+                        handler.getResolutionColumns(bean.getSqlCol(), store.getTimezone());
                 handlers.add(handler);
                 groupCols.addAll(resolutionCols);
                 colAddedCounts.add(resolutionCols.size());
@@ -205,11 +351,32 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
         }
 
         checkFilters(filters);
-        List<Object> arguments = getArguments(filters);
 
-        return (List<AccumPoint>) jdbcTemplate
-                .query(new SeriesPreparedStatementCreator(accumIds, groupCols, filters, arguments),
-                       new SeriesResultSetExtractor(accumIds, groupingDimensions, handlers, colAddedCounts));
+        SeriesColumns columns = new SeriesColumns();
+        columns.store = store;
+        columns.accumIds = accumIds;
+        columns.groupingDimensions = groupingDimensions;
+        columns.handlers = handlers;
+        columns.colAddedCounts = colAddedCounts;
+        columns.groupCols = groupCols;
+        columns.filters = filters;
+        columns.arguments = getArguments(filters);
+        return columns;
+    }
+
+    /**
+     * The parts of a validated series query.
+     */
+    private static class SeriesColumns {
+
+        private QueryManipulationStore store;
+        private List<String> accumIds;
+        private List<DimensionBean> groupingDimensions;
+        private List<ResolutionHandler> handlers;
+        private List<Integer> colAddedCounts;
+        private List<String> groupCols;
+        private Collection<Filter> filters;
+        private List<Object> arguments;
     }
 
     private class SeriesPreparedStatementCreator implements PreparedStatementCreator {
@@ -229,6 +396,29 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
 
         @Override
         public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+            SqlTemplateCache.KeyBuilder key = createSqlKey("series").add(groupingCols).add(accumIds.size());
+            for (String accumId : accumIds) {
+                key.add(accumulationMap.get(accumId).getSqlCol());
+            }
+            String cacheKey = key.addFilters(filters).build();
+
+            String sql = getSqlTemplateCache().get(cacheKey);
+            if (sql == null) {
+                sql = buildSql();
+                log.debug("SERIES QUERY: " + sql);
+                getSqlTemplateCache().put(cacheKey, sql);
+            }
+
+            PreparedStatement ps = con.prepareStatement(sql);
+            setArguments(arguments, ps);
+            if (log.isDebugEnabled()) {
+                log.debug("SERIES QUERY pstmt w/ args: " + ps);
+            }
+
+            return ps;
+        }
+
+        private String buildSql() {
             StringBuilder query = new StringBuilder();
             query.append("SELECT ");
 
@@ -279,12 +469,7 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
                 query.append(nameList);
             }
 
-            PreparedStatement ps = con.prepareStatement(query.toString());
-            log.debug("SERIES QUERY pstmt w/ params: " + ps);
-            setArguments(arguments, ps);
-            log.debug("SERIES QUERY pstmt w/ args: " + ps);
-
-            return ps;
+            return query.toString();
         }
     }
 
@@ -294,31 +479,35 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
         private final List<DimensionBean> groupingDimensions;
         private final List<ResolutionHandler> handlers;
         private final List<Integer> colAddedCounts;
-
+        private final QueryTimer timer;
 
         public SeriesResultSetExtractor(List<String> accumIds, List<DimensionBean> groupingDimensions,
-                                        List<ResolutionHandler> handlers, List<Integer> colAddedCounts) {
+                                        List<ResolutionHandler> handlers, List<Integer> colAddedCounts,
+                                        QueryTimer timer) {
             this.accumIds = accumIds;
             this.groupingDimensions = groupingDimensions;
             this.handlers = handlers;
             this.colAddedCounts = colAddedCounts;
+            this.timer = timer;
         }
 
         @Override
         public List<AccumPoint> extractData(ResultSet rs) throws SQLException, DataAccessException {
             List<AccumPoint> result = new LinkedList<AccumPoint>();
+            DataTypeConversionHelper.NumberColumnReader[] accumReaders = null;
 
+            timer.startRows();
             while (rs.next()) {
+                timer.row();
+                if (accumReaders == null) {
+                    accumReaders = createAccumReaders(rs.getMetaData());
+                }
+
                 Map<String, Number> accumValues = new LinkedHashMap<String, Number>(accumIds.size());
                 int colCount = 1;
                 for (String accumId : accumIds) {
-                    try {
-                        accumValues.put(accumId, DataTypeConversionHelper.convert2JavaNumberType(rs, colCount));
-                        colCount += 1;
-                    } catch (OeDataSourceException e) {
-                        throw new OeDataSourceException(
-                                "Accumulation result of series " + accumId + " is not a number");
-                    }
+                    accumValues.put(accumId, accumReaders[colCount - 1].read(rs));
+                    colCount += 1;
                 }
 
                 Map<String, Object> values = new LinkedHashMap<String, Object>(groupingDimensions.size());
@@ -352,5 +541,91 @@ public class JdbcDataSeriesSource extends JdbcOeDataSource implements DataSeries
             return result;
         }
 
+        /**
+         * Resolves the accumulation column types once per result set.
+         */
+        private DataTypeConversionHelper.NumberColumnReader[] createAccumReaders(ResultSetMetaData rsMetadata)
+                throws SQLException {
+            DataTypeConversionHelper.NumberColumnReader[] readers =
+                    new DataTypeConversionHelper.NumberColumnReader[accumIds.size()];
+            for (int i = 0; i < readers.length; i++) {
+                try {
+                    readers[i] = DataTypeConversionHelper.createNumberColumnReader(rsMetadata, i + 1);
+                } catch (OeDataSourceException e) {
+                    throw new OeDataSourceException(
+                            "Accumulation result of series " + accumIds.get(i) + " is not a number");
+                }
+            }
+            return readers;
+        }
+
+    }
+
+    /**
+     * Reads the accumulation values straight into a {@link DenseSeries}, without building a point per row.
+     */
+    private class DenseSeriesResultSetExtractor implements ResultSetExtractor<DenseSeries> {
+
+        private final DenseSeries series;
+        private final List<String> accumIds;
+        private final DimensionBean groupingDimension;
+        private final ResolutionHandler handler;
+        private final int groupingColCount;
+        private final QueryTimer timer;
+
+        public DenseSeriesResultSetExtractor(DenseSeries series, List<String> accumIds,
+                                             DimensionBean groupingDimension, ResolutionHandler handler,
+                                             int groupingColCount, QueryTimer timer) {
+            this.series = series;
+            this.accumIds = accumIds;
+            this.groupingDimension = groupingDimension;
+            this.handler = handler;
+            this.groupingColCount = groupingColCount;
+            this.timer = timer;
+        }
+
+        @Override
+        public DenseSeries extractData(ResultSet rs) throws SQLException, DataAccessException {
+            int accumCount = accumIds.size();
+            Object[] vals = new Object[groupingColCount];
+            int rowCount = 0;
+
+            timer.startRows();
+            while (rs.next()) {
+                rowCount += 1;
+                timer.row();
+
+                Object kernel;
+                if (handler == null) {
+                    kernel = DataTypeConversionHelper.convert2JavaType(rs, groupingDimension.getSqlType(),
+                                                                       accumCount + 1);
+                } else {
+                    for (int j = 0; j < groupingColCount; j += 1) {
+                        vals[j] = rs.getObject(accumCount + 1 + j);
+                    }
+                    kernel = handler.buildKernel(vals);
+                }
+                if (kernel != null && !(kernel instanceof Date)) {
+                    throw new OeDataSourceException(
+                            "Grouping \"" + groupingDimension.getId() + "\" did not produce a date: " + kernel);
+                }
+
+                int index = kernel == null ? -1 : series.indexOf((Date) kernel);
+                if (index < 0) {
+                    continue;
+                }
+
+                for (int i = 0; i < accumCount; i += 1) {
+                    double value = rs.getDouble(i + 1);
+                    if (rs.wasNull()) {
+                        value = Double.NaN;
+                    }
+                    series.add(accumIds.get(i), index, value);
+                }
+            }
+
+            series.setRowCount(rowCount);
+            return series;
+        }
     }
 }
@@ -26,37 +26,412 @@
 
 package edu.jhuapl.openessence.datasource.jdbc.entry;
 
-import java.util.Collection;
-import java.util.List;
-
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
 import edu.jhuapl.openessence.datasource.Record;
-import edu.jhuapl.openessence.datasource.dataseries.GroupingDimension;
 import edu.jhuapl.openessence.datasource.entry.BulkOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.entry.TableAwareRecord;
+import edu.jhuapl.openessence.datasource.jdbc.DataTypeConversionHelper;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Data entry data source that writes many records at a time. Statements are sent to the database in JDBC batches of
+ * {@link #getBatchSize() batchSize} records, each batch in its own transaction, so a failure only rolls back the batch
+ * it happened in. On PostgreSQL, inserts that don't need their generated keys use <code>COPY</code> instead.
+ *
+ * <p> Records are {@link TableAwareRecord}s for the table they belong to, or plain {@link Record}s for the parent
+ * table. Values are keyed by edit dimension ID, and child records must already have their foreign keys set. </p>
+ */
 public class JdbcBulkOeDataEntrySource extends JdbcOeDataEntrySource implements BulkOeDataEntrySource {
-	
-  public String getDataSourceId(){
-    return this.getClass().getSimpleName();
-  }
-  
-  @Override
-  public void addRecords(List<Record> records) {
-      // TODO it hurts me that this file was ever checked in
-    //To change body of implemented methods use File | Settings | File Templates.
-  }
-
-  @Override
-  public void updateRecords(List<Object> targetPkeys, List<Object> replacementRecords) {
-    //To change body of implemented methods use File | Settings | File Templates.
-  }
-
-  @Override
-  public void deleteRecords(List<Object> targetPkeys) {
-    //To change body of implemented methods use File | Settings | File Templates.
-  }
-
-  @Override
-  public void deleteRecords(Collection<GroupingDimension> groupings) {
-    //To change body of implemented methods use File | Settings | File Templates.
-  }
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean copyEnabled = true;
+
+    public String getDataSourceId() {
+        return this.getClass().getSimpleName();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public boolean isCopyEnabled() {
+        return copyEnabled;
+    }
+
+    /**
+     * Whether to use PostgreSQL's <code>COPY</code> for {@link #addRecords}. Other databases always use batched
+     * INSERTs.
+     */
+    public void setCopyEnabled(boolean copyEnabled) {
+        this.copyEnabled = copyEnabled;
+    }
+
+    @Override
+    public void addRecords(List<Record> records) {
+        boolean copy;
+        try {
+            copy = copyEnabled && isPostgreSqlDBMS();
+        } catch (OeDataSourceAccessException e) {
+            throw new OeDataSourceException(e);
+        }
+
+        List<Row> rows = new ArrayList<Row>(records.size());
+        for (Record record : records) {
+            rows.add(createInsertRow(record));
+        }
+        execute(rows, copy, null);
+    }
+
+    /**
+     * Inserts <code>records</code> in batches, like {@link #addRecords}, but reads back the primary keys of the new
+     * parent records.
+     *
+     * @return primary key IDs and values of each record, in the order of <code>records</code>. Child records have
+     *         <code>null</code> keys.
+     */
+    public List<Map<String, Object>> addRecordsWithKeys(List<? extends Record> records) {
+        List<Row> rows = new ArrayList<Row>(records.size());
+        for (Record record : records) {
+            rows.add(createInsertRow(record));
+        }
+        List<Map<String, Object>> keys = new ArrayList<Map<String, Object>>(records.size());
+        execute(rows, false, keys);
+        return keys;
+    }
+
+    /**
+     * @param targetPkeys        primary key IDs mapped to values of each record to update
+     * @param replacementRecords the new values of each record, as {@link Record}s
+     */
+    @Override
+    public void updateRecords(List<Object> targetPkeys, List<Object> replacementRecords) {
+        if (targetPkeys.size() != replacementRecords.size()) {
+            throw new OeDataSourceException("Got " + targetPkeys.size() + " keys for " + replacementRecords.size()
+                                            + " records");
+        }
+
+        List<Row> rows = new ArrayList<Row>(targetPkeys.size());
+        for (int i = 0; i < targetPkeys.size(); i++) {
+            Map<String, Object> pks = toKeyMap(targetPkeys.get(i));
+            Record record = (Record) replacementRecords.get(i);
+
+            // we do NOT want to alter the PK in an update
+            List<String> setIds = getEditDimensionIds(record.getValues().keySet());
+            setIds.removeAll(pks.keySet());
+            if (setIds.isEmpty()) {
+                throw new OeDataSourceException("No columns to update after removing primary keys");
+            }
+
+            StringBuilder sql = new StringBuilder("UPDATE ").append(getTableName(record)).append(" SET ");
+            appendColumns(sql, setIds, " = ?", ", ");
+
+            Map<String, Object> values = new HashMap<String, Object>(record.getValues());
+            values.putAll(pks);
+            List<String> argIds = new ArrayList<String>(setIds);
+            argIds.addAll(pks.keySet());
+            rows.add(new Row(appendWhereClause(sql, pks.keySet()), argIds, values, false));
+        }
+        execute(rows, false, null);
+    }
+
+    /**
+     * Deletes parent records. Assumes ON CASCADE is configured on the database to delete their children.
+     *
+     * @param targetPkeys primary key IDs mapped to values of each record to delete
+     */
+    @Override
+    public void deleteRecords(List<Object> targetPkeys) {
+        List<Row> rows = new ArrayList<Row>(targetPkeys.size());
+        for (Object targetPkey : targetPkeys) {
+            Map<String, Object> pks = toKeyMap(targetPkey);
+            StringBuilder sql = new StringBuilder("DELETE FROM ").append(getTableName());
+            rows.add(new Row(appendWhereClause(sql, pks.keySet()), new ArrayList<String>(pks.keySet()), pks, false));
+        }
+        execute(rows, false, null);
+    }
+
+    private Row createInsertRow(Record record) {
+        // auto-generated columns are filled in by the database
+        List<String> dimIds = getEditDimensionIds(record.getValues().keySet());
+        dimIds.removeAll(getAutoGenMap().keySet());
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(getTableName(record)).append(" (");
+        appendColumns(sql, dimIds, "", ", ");
+        sql.append(") VALUES (");
+
+        // special sql is written into the statement instead of being set as an argument
+        List<String> argIds = new ArrayList<String>();
+        for (int i = 0; i < dimIds.size(); i++) {
+            Dimension dimension = getEditDimension(dimIds.get(i));
+            sql.append(i == 0 ? "" : ", ");
+            if (dimension.hasSpecialSql()) {
+                sql.append(dimension.getSpecialSql());
+            } else {
+                sql.append('?');
+                argIds.add(dimIds.get(i));
+            }
+        }
+        sql.append(')');
+
+        Row row = new Row(sql.toString(), argIds, record.getValues(), argIds.size() == dimIds.size());
+        row.table = getTableName(record);
+        row.isParent = row.table.equals(getTableName());
+        return row;
+    }
+
+    /**
+     * Runs <code>rows</code> in batches of <code>batchSize</code>, each in its own transaction.
+     *
+     * @param keys if not <code>null</code>, the generated keys of each row are added to it
+     */
+    private void execute(List<Row> rows, final boolean copy, final List<Map<String, Object>> keys) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(getTransactionManager());
+        int start = 0;
+        try {
+            for (; start < rows.size(); start += batchSize) {
+                final List<Row> chunk = rows.subList(start, Math.min(start + batchSize, rows.size()));
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        jdbcTemplate.execute(new ConnectionCallback<Object>() {
+                            @Override
+                            public Object doInConnection(Connection con) throws SQLException {
+                                executeChunk(con, chunk, copy && PgCopyWriter.isSupported(con), keys);
+                                return null;
+                            }
+                        });
+                    }
+                });
+            }
+        } catch (DataAccessException e) {
+            throw batchFailed(start, e);
+        } catch (TransactionException e) {
+            // e.g. the commit of the batch failed
+            throw batchFailed(start, e);
+        } finally {
+            if (start > 0) {
+                invalidateQueryResults();
+            }
+        }
+    }
+
+    private static OeDataSourceException batchFailed(int start, Exception cause) {
+        return new OeDataSourceException("Bulk write failed in the batch starting at record " + start
+                                         + ". Earlier batches were committed.", cause);
+    }
+
+    private void executeChunk(Connection con, List<Row> chunk, boolean copy, List<Map<String, Object>> keys)
+            throws SQLException {
+        // consecutive rows with the same statement go into one JDBC batch
+        int from = 0;
+        while (from < chunk.size()) {
+            int to = from + 1;
+            while (to < chunk.size() && chunk.get(to).sql.equals(chunk.get(from).sql)) {
+                to++;
+            }
+
+            List<Row> batch = chunk.subList(from, to);
+            if (copy && batch.get(0).copyable) {
+                copyBatch(con, batch);
+            } else {
+                executeBatch(con, batch, keys);
+            }
+            from = to;
+        }
+    }
+
+    private void executeBatch(Connection con, List<Row> batch, List<Map<String, Object>> keys) throws SQLException {
+        Row first = batch.get(0);
+        log.debug("Batch of {}: {}", batch.size(), first.sql);
+        PreparedStatement ps = (keys == null) ? con.prepareStatement(first.sql)
+                                              : con.prepareStatement(first.sql, Statement.RETURN_GENERATED_KEYS);
+        try {
+            for (Row row : batch) {
+                setArgumentsOnSqlType(ps, row.dimIds, row.values);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            if (keys != null) {
+                readGeneratedKeys(ps, batch, keys);
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    private void copyBatch(Connection con, List<Row> batch) throws SQLException {
+        Row first = batch.get(0);
+        List<String> columns = new ArrayList<String>();
+        for (String dimId : first.dimIds) {
+            columns.add(getEditDimension(dimId).getSqlCol());
+        }
+
+        List<Object[]> values = new ArrayList<Object[]>(batch.size());
+        for (Row row : batch) {
+            Object[] rowValues = new Object[row.dimIds.size()];
+            for (int i = 0; i < rowValues.length; i++) {
+                rowValues[i] = toSqlValue(getEditDimension(row.dimIds.get(i)), row.values.get(row.dimIds.get(i)));
+            }
+            values.add(rowValues);
+        }
+
+        log.debug("Copying {} rows into {}", batch.size(), first.table);
+        PgCopyWriter.copy(con, first.table, columns, values);
+    }
+
+    /**
+     * Reads the primary keys of the parent records of <code>batch</code>. Depending on the driver, the generated keys
+     * are either all columns of the new rows (PostgreSQL) or just the auto-increment column (MySQL).
+     */
+    private void readGeneratedKeys(PreparedStatement ps, List<Row> batch, List<Map<String, Object>> keys)
+            throws SQLException {
+        if (!batch.get(0).isParent) {
+            for (int i = 0; i < batch.size(); i++) {
+                keys.add(null);
+            }
+            return;
+        }
+
+        Set<String> pkIds = getParentTableDetails().getPks();
+        ResultSet rs = ps.getGeneratedKeys();
+        try {
+            ResultSetMetaData md = rs.getMetaData();
+            for (Row row : batch) {
+                boolean hasKeys = rs.next();
+                Map<String, Object> rowKeys = new LinkedHashMap<String, Object>();
+                for (String pkId : pkIds) {
+                    // keys that weren't generated are the ones we inserted
+                    Object value = row.values.get(pkId);
+                    if (hasKeys) {
+                        String sqlCol = getEditDimension(pkId).getSqlCol();
+                        for (int col = 1; col <= md.getColumnCount(); col++) {
+                            if (md.getColumnLabel(col).equalsIgnoreCase(sqlCol)) {
+                                value = rs.getObject(col);
+                            }
+                        }
+                        if (value == null && md.getColumnCount() == 1 && getAutoGenMap().containsKey(pkId)) {
+                            value = rs.getObject(1);
+                        }
+                    }
+                    rowKeys.put(pkId, value);
+                }
+                keys.add(rowKeys);
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static Object toSqlValue(Dimension dimension, Object value) {
+        if (dimension.getSqlType() == FieldType.DATE_TIME) {
+            return DataTypeConversionHelper.convert2SqlTimestampType(value);
+        }
+        return DataTypeConversionHelper.convert2SqlType(value);
+    }
+
+    /**
+     * @return the IDs in <code>ids</code> that are edit dimensions, sorted so that records with the same values share a
+     *         statement
+     */
+    private List<String> getEditDimensionIds(Collection<String> ids) {
+        List<String> dimIds = new ArrayList<String>();
+        for (String id : ids) {
+            if (getEditDimension(id) != null) {
+                dimIds.add(id);
+            }
+        }
+        Collections.sort(dimIds);
+        return dimIds;
+    }
+
+    private String getTableName(Record record) {
+        if (record instanceof TableAwareRecord && ((TableAwareRecord) record).getTableName() != null) {
+            return ((TableAwareRecord) record).getTableName();
+        }
+        return getTableName();
+    }
+
+    private void appendColumns(StringBuilder sql, List<String> dimIds, String suffix, String separator) {
+        for (int i = 0; i < dimIds.size(); i++) {
+            sql.append(i == 0 ? "" : separator).append(getEditDimension(dimIds.get(i)).getSqlCol()).append(suffix);
+        }
+    }
+
+    private String appendWhereClause(StringBuilder sql, Collection<String> pkIds) {
+        sql.append(" WHERE ");
+        appendColumns(sql, new ArrayList<String>(pkIds), " = ?", " AND ");
+        return sql.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toKeyMap(Object targetPkey) {
+        if (!(targetPkey instanceof Map) || ((Map<?, ?>) targetPkey).isEmpty()) {
+            throw new OeDataSourceException("Expected primary key IDs mapped to values, got " + targetPkey);
+        }
+        // sorted, so that records with the same keys share a statement
+        Map<String, Object> pks = new LinkedHashMap<String, Object>();
+        List<String> pkIds = new ArrayList<String>(((Map<String, Object>) targetPkey).keySet());
+        Collections.sort(pkIds);
+        for (String pkId : pkIds) {
+            if (getEditDimension(pkId) == null) {
+                throw new OeDataSourceException("Primary key " + pkId + " is not an edit dimension");
+            }
+            pks.put(pkId, ((Map<String, Object>) targetPkey).get(pkId));
+        }
+        return pks;
+    }
+
+    /**
+     * One record's statement and arguments.
+     */
+    private static class Row {
+
+        private final String sql;
+        private final List<String> dimIds;
+        private final Map<String, Object> values;
+        private final boolean copyable;
+        private String table;
+        private boolean isParent;
+
+        private Row(String sql, List<String> dimIds, Map<String, Object> values, boolean copyable) {
+            this.sql = sql;
+            this.dimIds = dimIds;
+            this.values = values;
+            this.copyable = copyable;
+        }
+    }
 }
@@ -44,10 +44,13 @@ import edu.jhuapl.openessence.datasource.jdbc.DataTypeConversionHelper;
 import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
 import edu.jhuapl.openessence.datasource.jdbc.DimensionBeanAdapter;
 import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.PossibleValuesCache;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
 import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.bidimap.DualHashBidiMap;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.PreparedStatementCreator;
@@ -85,6 +88,13 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
     protected ParentTableDetails parentTableDetails;
 
     private boolean isVersioningMode = false;
+    private boolean fileImportEnabled = false;
+
+    @Autowired(required = false)
+    private QueryResultCache queryResultCache;
+
+    @Autowired(required = false)
+    private PossibleValuesCache possibleValuesCache;
 
     public JdbcOeDataEntrySource() {
         childTableMap = new LinkedHashMap<String, ChildTableDetails>();
@@ -147,6 +157,47 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
         this.childTableMap = childTableMap;
     }
 
+    public boolean isFileImportEnabled() {
+        return fileImportEnabled;
+    }
+
+    /**
+     * Whether spreadsheets can be imported into the parent table without an importer of their own, with the columns'
+     * edit dimension IDs in the header row. Off by default.
+     */
+    public void setFileImportEnabled(boolean fileImportEnabled) {
+        this.fileImportEnabled = fileImportEnabled;
+    }
+
+    /**
+     * Data entry is what the limit on report queries keeps responsive, so it isn't limited unless configured.
+     */
+    @Override
+    protected int getDefaultMaxConcurrentQueries() {
+        return 0;
+    }
+
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public void setPossibleValuesCache(PossibleValuesCache possibleValuesCache) {
+        this.possibleValuesCache = possibleValuesCache;
+    }
+
+    /**
+     * Drops cached query results and possible values that might include the tables of this data source. Called after
+     * every committed write.
+     */
+    protected void invalidateQueryResults() {
+        if (queryResultCache != null) {
+            queryResultCache.invalidate(this);
+        }
+        if (possibleValuesCache != null) {
+            possibleValuesCache.invalidate(this);
+        }
+    }
+
     /**
      * @return autoGenMap map of dimension id to dimension bean that is auto-generated during sql insert
      */
@@ -385,6 +436,7 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
             }
 
             getTransactionManager().commit(status);
+            invalidateQueryResults();
             return parentKeys;
 
         } catch (DuplicateKeyException dae) {
@@ -622,6 +674,7 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
                 addCompleteRecord(replacementRecord, false);
             }
             getTransactionManager().commit(status);
+            invalidateQueryResults();
         } catch (DataAccessException de) {
             getTransactionManager().rollback(status);
             throw new OeDataSourceAccessException(
@@ -727,6 +780,7 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
             // assumes "CASCADE ON DELETE" was configured on table to automatically delete children tables
             deleteParentRecord(pkIdsValueMap);
             getTransactionManager().commit(status);
+            invalidateQueryResults();
         } catch (DataAccessException de) {
             getTransactionManager().rollback(status);
             throw new OeDataSourceAccessException(
@@ -762,6 +816,7 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
         try {
             editableDeleteStatement(tableName, pkIdsValueMap);
             getTransactionManager().commit(status);
+            invalidateQueryResults();
         } catch (DataAccessException de) {
             getTransactionManager().rollback(status);
             throw new OeDataSourceAccessException(
@@ -784,6 +839,7 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
                 editableDeleteStatement(tablename, dbKeys);
             }
             getTransactionManager().commit(status);
+            invalidateQueryResults();
         } catch (DataAccessException de) {
             getTransactionManager().rollback(status);
             throw new OeDataSourceAccessException(
@@ -1195,6 +1251,8 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
         List<String> columnList;
         @SuppressWarnings("unused")
         DbKeyValMap keyvalmap;
+        private ResultSet readersResultSet;
+        private DataTypeConversionHelper.ColumnReader[] readers;
 
         public GeneratedKeysRowMapper(List<String> columnList) {
             this.columnList = columnList;
@@ -1212,11 +1270,17 @@ public class JdbcOeDataEntrySource extends JdbcOeDataSource implements OeDataEnt
          */
         @Override
         public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (rs != readersResultSet) {
+                // resolve the column types once per result set rather than for every row
+                readers = DataTypeConversionHelper.createColumnReaders(rs.getMetaData());
+                readersResultSet = rs;
+            }
+
             Map<String, Object> values = new LinkedHashMap<String, Object>(columnList.size());
             int i = 0;
             for (String keyId : columnList) {
+                values.put(keyId, readers[i].read(rs));
                 i++;
-                values.put(keyId, DataTypeConversionHelper.convert2JavaType(rs, i));
             }
             return values;
         }
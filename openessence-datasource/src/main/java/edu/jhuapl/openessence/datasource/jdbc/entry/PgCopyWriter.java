@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc.entry;
+
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes rows with PostgreSQL's <code>COPY ... FROM STDIN</code>, which is much faster than even batched INSERTs. The
+ * PostgreSQL driver is a compile dependency of this module. {@link JdbcBulkOeDataEntrySource} only calls this class
+ * once it knows it is talking to PostgreSQL, so other databases never load the driver's classes.
+ */
+final class PgCopyWriter {
+
+    private PgCopyWriter() {
+    }
+
+    /**
+     * @return whether <code>con</code> (possibly wrapped by a connection pool) is a PostgreSQL connection
+     */
+    static boolean isSupported(Connection con) throws SQLException {
+        return con.isWrapperFor(PGConnection.class);
+    }
+
+    /**
+     * Copies <code>rows</code> into <code>tableName</code>.
+     *
+     * @param values values of each row, in the order of <code>columns</code>, already converted to their SQL types
+     * @return number of rows copied
+     */
+    static long copy(Connection con, String tableName, List<String> columns, List<Object[]> values)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("COPY ").append(tableName).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns.get(i));
+        }
+        sql.append(") FROM STDIN WITH CSV");
+
+        try {
+            return con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql.toString(),
+                                                                      new StringReader(toCsv(values)));
+        } catch (IOException e) {
+            throw new SQLException("Unable to copy rows into " + tableName, e);
+        }
+    }
+
+    /**
+     * @return <code>values</code> in the CSV format of <code>COPY</code>, one line per row
+     */
+    static String toCsv(List<Object[]> values) {
+        StringBuilder csv = new StringBuilder();
+        for (Object[] row : values) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                // unquoted empty values are NULL, quoted ones are empty strings
+                if (row[i] != null) {
+                    csv.append('"').append(row[i].toString().replace("\"", "\"\"")).append('"');
+                }
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -75,4 +75,8 @@ public abstract class MultiFilterCombiner implements SqlGeneratingFilter {
             subFilter.checkFilter(ds);
         }
     }
+
+    public List<SqlGeneratingFilter> getSubFilters() {
+        return subFilters;
+    }
 }
@@ -57,4 +57,8 @@ public class NotFilter implements SqlGeneratingFilter {
     public void checkFilter(JdbcOeDataSource ds) throws OeDataSourceException {
         subFilter.checkFilter(ds);
     }
+
+    public SqlGeneratingFilter getSubFilter() {
+        return subFilter;
+    }
 }
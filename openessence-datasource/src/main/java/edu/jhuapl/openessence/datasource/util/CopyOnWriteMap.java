@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.util;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Insertion ordered map that copies itself on every modification, so readers can iterate it while another thread
+ * updates it. Meant for maps that are read constantly and written rarely, such as a data source's dimensions.
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+
+    private volatile Map<K, V> map = Collections.emptyMap();
+
+    public CopyOnWriteMap() {
+    }
+
+    public CopyOnWriteMap(Map<? extends K, ? extends V> m) {
+        map = Collections.unmodifiableMap(new LinkedHashMap<K, V>(m));
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Map<K, V> copy = new LinkedHashMap<K, V>(map);
+        V old = copy.put(key, value);
+        map = Collections.unmodifiableMap(copy);
+        return old;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> m) {
+        Map<K, V> copy = new LinkedHashMap<K, V>(map);
+        copy.putAll(m);
+        map = Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        Map<K, V> copy = new LinkedHashMap<K, V>(map);
+        V old = copy.remove(key);
+        map = Collections.unmodifiableMap(copy);
+        return old;
+    }
+
+    /**
+     * Removes <code>keys</code> and then puts <code>m</code>, copying the map only once.
+     */
+    public synchronized void update(Collection<?> keys, Map<? extends K, ? extends V> m) {
+        Map<K, V> copy = new LinkedHashMap<K, V>(map);
+        copy.keySet().removeAll(keys);
+        copy.putAll(m);
+        map = Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public synchronized void clear() {
+        map = Collections.emptyMap();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.datasource.dataseries;
+
+import edu.jhuapl.openessence.datasource.jdbc.dataseries.AccumPointImpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DenseSeriesTest {
+
+    private static final List<String> ACCUMS = Arrays.asList("Count", "Total");
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void testCreateZeroFills() {
+        DenseSeries series = DenseSeries.create(date(2013, 6, 1), date(2013, 6, 10), DenseSeries.DAILY,
+                                                Calendar.MONDAY, ACCUMS);
+
+        assertEquals(10, series.getLength());
+        assertEquals(0, series.getRowCount());
+        assertArrayEquals(new double[10], series.getValues("Count"), 0);
+        assertArrayEquals(new double[10], series.getValues("Total"), 0);
+
+        series.add("Count", 3, 2);
+        series.add("Count", 3, 5);
+        assertEquals(7, series.getValues("Count")[3], 0);
+        assertEquals(0, series.getValues("Total")[3], 0);
+    }
+
+    @Test
+    public void testDailyBounds() {
+        DenseSeries series = DenseSeries.create(date(2013, 6, 1), date(2013, 6, 10), DenseSeries.DAILY,
+                                                Calendar.MONDAY, ACCUMS);
+
+        assertEquals(-1, series.indexOf(date(2013, 5, 31)));
+        assertEquals(0, series.indexOf(date(2013, 6, 1)));
+        assertEquals(9, series.indexOf(time(2013, 6, 10, 23, 59)));
+        assertEquals(-1, series.indexOf(date(2013, 6, 11)));
+    }
+
+    @Test
+    public void testWeekStartsOnFirstDayOfWeek() {
+        // 2013-06-05 is a Wednesday
+        DenseSeries monday = DenseSeries.create(date(2013, 6, 5), date(2013, 6, 30), DenseSeries.WEEKLY,
+                                                Calendar.MONDAY, ACCUMS);
+        assertEquals(0, monday.indexOf(date(2013, 6, 3)));
+        assertEquals(0, monday.indexOf(date(2013, 6, 9)));
+        assertEquals(1, monday.indexOf(date(2013, 6, 10)));
+        assertEquals(-1, monday.indexOf(date(2013, 6, 2)));
+
+        DenseSeries sunday = DenseSeries.create(date(2013, 6, 5), date(2013, 6, 30), DenseSeries.WEEKLY,
+                                                Calendar.SUNDAY, ACCUMS);
+        assertEquals(0, sunday.indexOf(date(2013, 6, 2)));
+        assertEquals(0, sunday.indexOf(date(2013, 6, 8)));
+        assertEquals(1, sunday.indexOf(date(2013, 6, 9)));
+        assertEquals(4, sunday.indexOf(date(2013, 6, 30)));
+        assertEquals(5, sunday.getLength());
+    }
+
+    @Test
+    public void testWeeksAcrossYearEnd() {
+        // 2012-12-31 is a Monday
+        DenseSeries series = DenseSeries.create(date(2012, 12, 24), date(2013, 1, 14), DenseSeries.WEEKLY,
+                                                Calendar.MONDAY, ACCUMS);
+
+        assertEquals(4, series.getLength());
+        assertEquals(0, series.indexOf(date(2012, 12, 30)));
+        assertEquals(1, series.indexOf(date(2012, 12, 31)));
+        assertEquals(1, series.indexOf(date(2013, 1, 6)));
+        assertEquals(2, series.indexOf(date(2013, 1, 7)));
+    }
+
+    @Test
+    public void testMonthBoundaries() {
+        DenseSeries series = DenseSeries.create(date(2012, 1, 15), date(2013, 3, 1), DenseSeries.MONTHLY,
+                                                Calendar.MONDAY, ACCUMS);
+
+        assertEquals(15, series.getLength());
+        assertEquals(0, series.indexOf(date(2012, 1, 1)));
+        assertEquals(0, series.indexOf(time(2012, 1, 31, 23, 59)));
+        assertEquals(1, series.indexOf(date(2012, 2, 1)));
+        assertEquals(1, series.indexOf(date(2012, 2, 29)));
+        assertEquals(2, series.indexOf(date(2012, 3, 1)));
+        assertEquals(11, series.indexOf(date(2012, 12, 31)));
+        assertEquals(12, series.indexOf(date(2013, 1, 1)));
+        assertEquals(-1, series.indexOf(date(2011, 12, 31)));
+
+        DenseSeries beforeEpoch = DenseSeries.create(date(1969, 12, 1), date(1970, 1, 31), DenseSeries.MONTHLY,
+                                                     Calendar.MONDAY, ACCUMS);
+        assertEquals(0, beforeEpoch.indexOf(date(1969, 12, 31)));
+        assertEquals(1, beforeEpoch.indexOf(date(1970, 1, 1)));
+    }
+
+    @Test
+    public void testIntervalsMatchCalendar() {
+        for (String id : Arrays.asList("UTC", "America/New_York", "Asia/Kolkata", "Pacific/Auckland")) {
+            TimeZone.setDefault(TimeZone.getTimeZone(id));
+            assertMatchesCalendar(id, DenseSeries.DAILY, Calendar.DAY_OF_MONTH, date(2012, 1, 1), 800);
+            // 2012-01-01 is a Sunday
+            assertMatchesCalendar(id, DenseSeries.WEEKLY, Calendar.WEEK_OF_YEAR, date(2012, 1, 1), 110);
+            assertMatchesCalendar(id, DenseSeries.MONTHLY, Calendar.MONTH, date(2012, 1, 1), 30);
+        }
+    }
+
+    @Test
+    public void testDaylightSavingTime() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        DenseSeries spring = DenseSeries.create(date(2013, 3, 9), date(2013, 3, 12), DenseSeries.DAILY,
+                                                Calendar.MONDAY, ACCUMS);
+        assertEquals(4, spring.getLength());
+        assertEquals(1, spring.indexOf(time(2013, 3, 10, 23, 30)));
+        assertEquals(2, spring.indexOf(date(2013, 3, 11)));
+
+        DenseSeries fall = DenseSeries.create(date(2013, 11, 2), date(2013, 11, 5), DenseSeries.DAILY,
+                                              Calendar.MONDAY, ACCUMS);
+        assertEquals(4, fall.getLength());
+        assertEquals(1, fall.indexOf(time(2013, 11, 3, 23, 30)));
+        assertEquals(2, fall.indexOf(date(2013, 11, 4)));
+    }
+
+    @Test
+    public void testFromPoints() {
+        Map<String, Number> values = new HashMap<String, Number>();
+        values.put("Count", 4);
+        values.put("Total", null);
+        List<AccumPoint> points = Arrays.<AccumPoint>asList(new AccumPointImpl(values, null), null);
+
+        DenseSeries series = DenseSeries.fromPoints(date(2013, 6, 1), DenseSeries.DAILY, points, ACCUMS,
+                                                    Calendar.MONDAY);
+
+        assertEquals(2, series.getLength());
+        assertArrayEquals(new double[]{4, Double.NaN}, series.getValues("Count"), 0);
+        assertArrayEquals(new double[]{Double.NaN, Double.NaN}, series.getValues("Total"), 0);
+        assertArrayEquals(new double[]{4, 0}, series.getTotal(ACCUMS), 0);
+    }
+
+    @Test
+    public void testFromPointsUsesFirstDayOfWeek() {
+        List<AccumPoint> points = Collections.<AccumPoint>nCopies(2, null);
+
+        // 2013-06-02 is a Sunday
+        DenseSeries series = DenseSeries.fromPoints(date(2013, 6, 2), DenseSeries.WEEKLY, points, ACCUMS,
+                                                    Calendar.SUNDAY);
+
+        assertEquals(0, series.indexOf(date(2013, 6, 8)));
+        assertEquals(1, series.indexOf(date(2013, 6, 9)));
+    }
+
+    /**
+     * Steps a calendar through <code>count</code> intervals from <code>start</code> and checks that the start and
+     * last hour of each land in the expected interval.
+     */
+    private static void assertMatchesCalendar(String timeZone, String resolution, int field, Date start, int count) {
+        Calendar cal = new GregorianCalendar();
+        cal.setTime(start);
+        cal.add(field, count);
+        DenseSeries series = DenseSeries.create(start, cal.getTime(), resolution, Calendar.SUNDAY, ACCUMS);
+        assertTrue(timeZone + " " + resolution, series.getLength() >= count);
+
+        cal.setTime(start);
+        for (int i = 0; i < count; i++) {
+            assertEquals(timeZone + " " + resolution + " " + cal.getTime(), i, series.indexOf(cal.getTime()));
+            Calendar next = (Calendar) cal.clone();
+            next.add(field, 1);
+            next.add(Calendar.HOUR_OF_DAY, -1);
+            assertEquals(timeZone + " " + resolution + " " + next.getTime(), i, series.indexOf(next.getTime()));
+            cal.add(field, 1);
+        }
+    }
+
+    private static Date date(int year, int month, int day) {
+        return time(year, month, day, 0, 0);
+    }
+
+    private static Date time(int year, int month, int day, int hour, int minute) {
+        return new GregorianCalendar(year, month - 1, day, hour, minute).getTime();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.Record;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnarRecordsTest {
+
+    private final JdbcOeDataSource ds = new JdbcOeDataSource();
+
+    @Test
+    public void testTypedColumnsRoundTrip() {
+        List<Object[]> rows = Arrays.asList(
+                new Object[]{1, 2L, 1.5, 2.5f, true, new Date(1000L), "a", new BigDecimal("1.10"),
+                             new Timestamp(2000L)},
+                new Object[]{null, null, null, null, null, null, null, null, null},
+                new Object[]{-3, Long.MAX_VALUE, Double.NaN, -0.5f, false, new Date(-1000L), "", BigDecimal.ZERO,
+                             new Timestamp(3000L)});
+        ColumnarRecords records = create(rows, "int", "long", "double", "float", "boolean", "date", "string",
+                                         "decimal", "timestamp");
+
+        assertRows(rows, records);
+        Object[] first = records.get(0).getValues().values().toArray();
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(rows.get(0)[i].getClass(), first[i].getClass());
+        }
+    }
+
+    @Test
+    public void testMixedTypesKeepTheirValues() {
+        List<Object[]> rows = Arrays.asList(new Object[]{1, "a"}, new Object[]{null, "b"}, new Object[]{2L, 3},
+                                            new Object[]{4, null});
+        ColumnarRecords records = create(rows, "number", "text");
+
+        assertRows(rows, records);
+        assertEquals(Long.class, records.get(2).getValue("number").getClass());
+        assertEquals(Integer.class, records.get(3).getValue("number").getClass());
+    }
+
+    @Test
+    public void testDictionaryRoundTrip() {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 5000; i++) {
+            // repeated values stay in the dictionary, distinct ones outgrow it
+            rows.add(new Object[]{"site" + (i % 7), "note " + i, i % 11 == 0 ? null : "site" + (i % 3)});
+        }
+        ColumnarRecords records = create(rows, "site", "note", "sparse");
+
+        assertRows(rows, records);
+    }
+
+    @Test
+    public void testRowsMatchQueryRecords() {
+        List<Object[]> rows = Arrays.asList(new Object[]{1, "a"}, new Object[]{null, "b"});
+        ColumnarRecords records = create(rows, "id", "name");
+
+        Map<String, Dimension> dimensions = new LinkedHashMap<String, Dimension>();
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        dimensions.put("id", records.get(1).getDimension("id"));
+        dimensions.put("name", records.get(1).getDimension("name"));
+        values.put("id", null);
+        values.put("name", "b");
+        QueryRecord record = new QueryRecord(dimensions, values);
+
+        assertEquals(records.get(1), record);
+        assertEquals(record.hashCode(), records.get(1).hashCode());
+        assertEquals(Arrays.asList("id", "name"), new ArrayList<String>(records.get(0).getResultIds()));
+        assertNull(records.get(0).getValue("unknown"));
+    }
+
+    @Test
+    public void testRowArrayIsCopied() {
+        ColumnarRecords records = new ColumnarRecords(dimensions("id"));
+        Object[] row = {1};
+        records.addRow(row);
+        row[0] = 2;
+        records.addRow(row);
+
+        assertEquals(1, records.get(0).getValue("id"));
+        assertEquals(2, records.get(1).getValue("id"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongRowLength() {
+        new ColumnarRecords(dimensions("id", "name")).addRow(new Object[]{1});
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRowOutOfBounds() {
+        new ColumnarRecords(dimensions("id")).get(0);
+    }
+
+    private ColumnarRecords create(List<Object[]> rows, String... ids) {
+        ColumnarRecords records = new ColumnarRecords(dimensions(ids));
+        for (Object[] row : rows) {
+            records.addRow(row);
+        }
+        records.trimToSize();
+        return records;
+    }
+
+    private List<Dimension> dimensions(String... ids) {
+        List<Dimension> dimensions = new ArrayList<Dimension>();
+        for (String id : ids) {
+            dimensions.add(new DimensionBeanAdapter(JdbcOeDataSourceTest.bean(id, id, true), ds));
+        }
+        return dimensions;
+    }
+
+    private static void assertRows(List<Object[]> rows, ColumnarRecords records) {
+        assertEquals(rows.size(), records.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Record record = records.get(i);
+            Object[] row = rows.get(i);
+            int column = 0;
+            for (String id : record.getResultIds()) {
+                assertEquals("row " + i + ", " + id, row[column++], record.getValue(id));
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the column readers and argument binders convert exactly like the <code>instanceof</code> and column type
+ * chains they replaced.
+ */
+public class DataTypeConversionHelperTest {
+
+    private static final long TIME = 1356998400123L;
+
+    /**
+     * The column type a database reports for each field type, and a value of it.
+     */
+    private static final Map<FieldType, Object[]> COLUMNS = new EnumMap<FieldType, Object[]>(FieldType.class);
+
+    static {
+        COLUMNS.put(FieldType.DATE, new Object[]{Types.DATE, new java.sql.Date(TIME)});
+        COLUMNS.put(FieldType.DATE_TIME, new Object[]{Types.TIMESTAMP, new Timestamp(TIME)});
+        COLUMNS.put(FieldType.INTEGER, new Object[]{Types.INTEGER, 42});
+        COLUMNS.put(FieldType.LONG, new Object[]{Types.BIGINT, 4200000000L});
+        COLUMNS.put(FieldType.FLOAT, new Object[]{Types.REAL, 2.5f});
+        COLUMNS.put(FieldType.DOUBLE, new Object[]{Types.DOUBLE, 1.25});
+        COLUMNS.put(FieldType.TEXT, new Object[]{Types.VARCHAR, "text"});
+        COLUMNS.put(FieldType.BOOLEAN, new Object[]{Types.BOOLEAN, true});
+    }
+
+    /**
+     * Column types that no field type maps to, but that drivers return anyway.
+     */
+    private static final Object[][] OTHER_COLUMNS = {
+            {Types.TIME, new java.sql.Time(TIME)},
+            {Types.FLOAT, 0.5},
+            {Types.DECIMAL, new BigDecimal("3.75")},
+            {Types.NUMERIC, new BigDecimal("10")},
+            {Types.NCHAR, "n"},
+            {Types.NVARCHAR, "nv"},
+            {Types.CLOB, "clob"},
+            {Types.OTHER, "other"}
+    };
+
+    @Test
+    public void testReadersMatchTypeChain() throws Exception {
+        for (Object[] column : allColumns()) {
+            int type = (Integer) column[0];
+            for (Object value : new Object[]{column[1], null}) {
+                ResultSet rs = resultSet(type, value);
+                Object expected = legacyRead(rs, 1);
+                String message = "type " + type + " value " + value;
+
+                assertEquals(message, expected, DataTypeConversionHelper.createColumnReader(rs.getMetaData(), 1)
+                        .read(rs));
+                assertEquals(message, expected, DataTypeConversionHelper.createColumnReaders(rs.getMetaData())[0]
+                        .read(rs));
+                assertEquals(message, expected, DataTypeConversionHelper.convert2JavaType(rs, 1));
+                if (value == null) {
+                    assertNull(message, expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNumberReadersMatchTypeChain() throws Exception {
+        for (Object[] column : allColumns()) {
+            int type = (Integer) column[0];
+            for (Object value : new Object[]{column[1], null}) {
+                ResultSet rs = resultSet(type, value);
+                String message = "type " + type + " value " + value;
+
+                Number expected;
+                try {
+                    expected = legacyReadNumber(rs, 1);
+                } catch (OeDataSourceException e) {
+                    try {
+                        DataTypeConversionHelper.createNumberColumnReader(rs.getMetaData(), 1);
+                        fail(message + " is not a number");
+                    } catch (OeDataSourceException expectedException) {
+                        assertEquals(e.getMessage(), expectedException.getMessage());
+                    }
+                    continue;
+                }
+
+                assertEquals(message, expected, DataTypeConversionHelper.createNumberColumnReader(rs.getMetaData(), 1)
+                        .read(rs));
+                assertEquals(message, expected, DataTypeConversionHelper.convert2JavaNumberType(rs, 1));
+            }
+        }
+    }
+
+    @Test
+    public void testBindersMatchInstanceofChain() throws Exception {
+        List<Object> values = new ArrayList<Object>();
+        for (Object[] column : allColumns()) {
+            values.add(column[1]);
+        }
+        values.addAll(Arrays.<Object>asList(new Date(TIME), 7L, 3.5f, false, ""));
+
+        for (Object value : values) {
+            List<Object> expected = new ArrayList<Object>();
+            List<Object> actual = new ArrayList<Object>();
+            boolean legacyBinds = legacyBind(statement(expected), 1, value);
+
+            DataTypeConversionHelper.ArgumentBinder binder = DataTypeConversionHelper.getArgumentBinder(value.getClass());
+            if (legacyBinds) {
+                binder.bind(statement(actual), 1, value);
+            } else {
+                assertNull(value.getClass().getName(), binder);
+            }
+            assertEquals(value.getClass().getName(), expected, actual);
+        }
+    }
+
+    @Test
+    public void testSubclassBindersAreCached() {
+        DataTypeConversionHelper.ArgumentBinder first = DataTypeConversionHelper.getArgumentBinder(java.sql.Time.class);
+        assertEquals(first, DataTypeConversionHelper.getArgumentBinder(java.sql.Time.class));
+        assertEquals(DataTypeConversionHelper.getArgumentBinder(Date.class), first);
+        assertNull(DataTypeConversionHelper.getArgumentBinder(Short.class));
+    }
+
+    private static List<Object[]> allColumns() {
+        assertEquals("Every field type needs a column", FieldType.values().length, COLUMNS.size());
+        List<Object[]> columns = new ArrayList<Object[]>(COLUMNS.values());
+        columns.addAll(Arrays.asList(OTHER_COLUMNS));
+        return columns;
+    }
+
+    /**
+     * How <code>convert2JavaType(ResultSet, int)</code> read values before it had column readers.
+     */
+    private static Object legacyRead(ResultSet rs, int col) throws SQLException {
+        ResultSetMetaData rsMetadata = rs.getMetaData();
+
+        if (rsMetadata.getColumnType(col) == Types.INTEGER ||
+            rsMetadata.getColumnType(col) == Types.BIGINT) {
+            int intValue = rs.getInt(col);
+            return (rs.wasNull()) ? null : intValue;
+        } else if (rsMetadata.getColumnType(col) == Types.DOUBLE ||
+                   rsMetadata.getColumnType(col) == Types.FLOAT ||
+                   rsMetadata.getColumnType(col) == Types.REAL ||
+                   rsMetadata.getColumnType(col) == Types.DECIMAL ||
+                   rsMetadata.getColumnType(col) == Types.NUMERIC) {
+            double doubleValue = rs.getDouble(col);
+            return (rs.wasNull()) ? null : doubleValue;
+        } else if (rsMetadata.getColumnType(col) == Types.VARCHAR ||
+                   rsMetadata.getColumnType(col) == Types.NCHAR ||
+                   rsMetadata.getColumnType(col) == Types.NVARCHAR) {
+            String strValue = rs.getString(col);
+            return (rs.wasNull()) ? null : strValue;
+        } else if (rsMetadata.getColumnType(col) == Types.BOOLEAN) {
+            boolean boolValue = rs.getBoolean(col);
+            return (rs.wasNull()) ? null : boolValue;
+        } else if (rsMetadata.getColumnType(col) == Types.DATE ||
+                   rsMetadata.getColumnType(col) == Types.TIME ||
+                   rsMetadata.getColumnType(col) == Types.TIMESTAMP) {
+            Timestamp sqlDate = rs.getTimestamp(col);
+            return (rs.wasNull()) ? null : new Date(sqlDate.getTime());
+        } else {
+            String strValue = rs.getString(col);
+            return (rs.wasNull()) ? null : strValue;
+        }
+    }
+
+    /**
+     * How <code>convert2JavaNumberType</code> read values before it had column readers.
+     */
+    private static Number legacyReadNumber(ResultSet rs, int col) throws SQLException, OeDataSourceException {
+        ResultSetMetaData rsMetadata = rs.getMetaData();
+        if (rsMetadata.getColumnType(col) == Types.INTEGER ||
+            rsMetadata.getColumnType(col) == Types.BIGINT) {
+            int intValue = rs.getInt(col);
+            return (rs.wasNull()) ? null : intValue;
+        } else if (rsMetadata.getColumnType(col) == Types.DOUBLE ||
+                   rsMetadata.getColumnType(col) == Types.FLOAT ||
+                   rsMetadata.getColumnType(col) == Types.REAL ||
+                   rsMetadata.getColumnType(col) == Types.DECIMAL ||
+                   rsMetadata.getColumnType(col) == Types.NUMERIC) {
+            double doubleValue = rs.getDouble(col);
+            return (rs.wasNull()) ? null : doubleValue;
+        } else {
+            throw new OeDataSourceException("Not a number type");
+        }
+    }
+
+    /**
+     * How <code>setArguments</code> bound values before it had argument binders.
+     *
+     * @return whether the value could be bound
+     */
+    private static boolean legacyBind(PreparedStatement pStmt, int argCount, Object o) throws SQLException {
+        if (o instanceof Timestamp) {
+            pStmt.setTimestamp(argCount, (Timestamp) o);
+        } else if (o instanceof Date) {
+            pStmt.setTimestamp(argCount, new Timestamp(((Date) o).getTime()));
+        } else if (o instanceof Integer) {
+            pStmt.setInt(argCount, (Integer) o);
+        } else if (o instanceof Long) {
+            pStmt.setLong(argCount, (Long) o);
+        } else if (o instanceof Float) {
+            pStmt.setFloat(argCount, (Float) o);
+        } else if (o instanceof Double) {
+            pStmt.setDouble(argCount, (Double) o);
+        } else if (o instanceof String) {
+            pStmt.setString(argCount, (String) o);
+        } else if (o instanceof Boolean) {
+            pStmt.setBoolean(argCount, (Boolean) o);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a result set of one column of <code>type</code>, positioned on a row holding <code>value</code>. Getters
+     *         convert the value the way a driver would.
+     */
+    private static ResultSet resultSet(final int type, final Object value) {
+        final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getColumnType")) {
+                    return type;
+                } else if (method.getName().equals("getColumnCount")) {
+                    return 1;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        return proxy(ResultSet.class, new InvocationHandler() {
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getMetaData")) {
+                    return metaData;
+                } else if (name.equals("wasNull")) {
+                    return wasNull;
+                }
+
+                wasNull = value == null;
+                if (name.equals("getInt")) {
+                    return wasNull ? 0 : ((Number) value).intValue();
+                } else if (name.equals("getDouble")) {
+                    return wasNull ? 0.0 : ((Number) value).doubleValue();
+                } else if (name.equals("getBoolean")) {
+                    return !wasNull && (Boolean) value;
+                } else if (name.equals("getString")) {
+                    return wasNull ? null : value.toString();
+                } else if (name.equals("getTimestamp")) {
+                    return wasNull ? null : new Timestamp(((Date) value).getTime());
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * @return a prepared statement that adds the name and arguments of every setter called on it to
+     *         <code>calls</code>
+     */
+    private static PreparedStatement statement(final List<Object> calls) {
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                calls.addAll(Arrays.asList(args));
+                return null;
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(DataTypeConversionHelperTest.class.getClassLoader(),
+                                                new Class<?>[]{type}, handler));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.Record;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DimensionJoinerTest {
+
+    private SymptomsDataSource symptoms;
+    private JdbcOeDataSource base;
+    private DimensionJoiner joiner;
+
+    @Before
+    public void setUp() {
+        symptoms = new SymptomsDataSource();
+        symptoms.ids.add(1);
+
+        base = new JdbcOeDataSource();
+        joiner = new DimensionJoiner(base, Collections.singletonMap(symptoms, Arrays.asList(bean("Id")))) {
+            @Override
+            protected DimensionBean onDimensionJoin(JdbcOeDataSource otherDs, DimensionBean otherDimension,
+                                                    Record r) {
+                DimensionBean bean = super.onDimensionJoin(otherDs, otherDimension, r);
+                bean.setId("symptom" + r.getValue("Id"));
+                return bean;
+            }
+        };
+        joiner.setRefreshInterval(5 * 60 * 1000L);
+        base.setDimensionJoiner(joiner);
+    }
+
+    @Test
+    public void testJoinsOnFirstUse() {
+        joiner.joinDimensions();
+
+        assertNotNull(base.getAccumulation("symptom1"));
+        assertEquals(1, symptoms.queries);
+    }
+
+    @Test
+    public void testReusesJoinedDimensions() {
+        joiner.joinDimensions();
+        symptoms.ids.add(2);
+        joiner.joinDimensions();
+
+        assertNull(base.getAccumulation("symptom2"));
+        assertEquals(1, symptoms.queries);
+    }
+
+    @Test
+    public void testAddThenQueryAfterInvalidate() {
+        joiner.joinDimensions();
+
+        symptoms.ids.add(2);
+        joiner.invalidate();
+        joiner.joinDimensions();
+
+        assertNotNull(base.getAccumulation("symptom1"));
+        assertNotNull(base.getAccumulation("symptom2"));
+        assertEquals(2, symptoms.queries);
+
+        // only the first join after invalidating queries again
+        joiner.joinDimensions();
+        assertEquals(2, symptoms.queries);
+    }
+
+    @Test
+    public void testRemovesDimensionsNoLongerJoined() {
+        joiner.joinDimensions();
+
+        symptoms.ids.set(0, 3);
+        joiner.invalidate();
+        joiner.joinDimensions();
+
+        assertNull(base.getAccumulation("symptom1"));
+        assertNotNull(base.getAccumulation("symptom3"));
+        assertEquals(1, joiner.getJoinedDimensions().get(symptoms).size());
+    }
+
+    @Test
+    public void testQueriesOnEveryJoinByDefault() {
+        DimensionJoiner defaultJoiner = new DimensionJoiner(new JdbcOeDataSource(),
+                                                            Collections.singletonMap(symptoms,
+                                                                                     Arrays.asList(bean("Id"))));
+        defaultJoiner.joinDimensions();
+        defaultJoiner.joinDimensions();
+
+        assertEquals(0, defaultJoiner.getRefreshInterval());
+        assertEquals(2, symptoms.queries);
+    }
+
+    @Test
+    public void testNoRefreshInterval() {
+        joiner.setRefreshInterval(0);
+        joiner.joinDimensions();
+        symptoms.ids.add(2);
+        joiner.joinDimensions();
+
+        assertEquals(2, symptoms.queries);
+        assertNotNull(base.getAccumulation("symptom2"));
+    }
+
+    @Test
+    public void testReplaceJoinedDataSource() {
+        joiner.joinDimensions();
+        SymptomsDataSource reloaded = new SymptomsDataSource();
+        reloaded.ids.add(5);
+
+        assertTrue(joiner.replaceJoinedDataSource(reloaded));
+        joiner.joinDimensions();
+
+        assertNull(base.getAccumulation("symptom1"));
+        assertNotNull(base.getAccumulation("symptom5"));
+        assertEquals(Collections.<JdbcOeDataSource>singleton(reloaded), joiner.getJoinedDimensions().keySet());
+        assertEquals(1, symptoms.queries);
+        assertEquals(1, reloaded.queries);
+
+        // other datasources aren't joined
+        assertFalse(joiner.replaceJoinedDataSource(new JdbcOeDataSource()));
+    }
+
+    @Test
+    public void testReplaceDimensions() {
+        JdbcOeDataSource ds = new JdbcOeDataSource();
+        ds.addDimension(accumulation("a"));
+        ds.addDimension(accumulation("b"));
+
+        ds.replaceDimensions(Arrays.asList(accumulation("a")), Arrays.asList(accumulation("b"), accumulation("c")));
+
+        List<String> ids = new ArrayList<String>();
+        for (Dimension d : ds.getAccumulations()) {
+            ids.add(d.getId());
+        }
+        assertEquals(Arrays.asList("b", "c"), ids);
+        assertNotNull(ds.getResultDimension("c"));
+        assertNull(ds.getResultDimension("a"));
+    }
+
+    private static DimensionBean bean(String id) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(id.toLowerCase());
+        bean.setSqlType(FieldType.INTEGER);
+        bean.setIsResult(true);
+        return bean;
+    }
+
+    private static DimensionBean accumulation(String id) {
+        DimensionBean bean = bean(id);
+        bean.setIsAccumulation(true);
+        return bean;
+    }
+
+    /**
+     * Answers details queries with one record per ID in {@link #ids}.
+     */
+    private static class SymptomsDataSource extends JdbcOeDataSource {
+
+        private final List<Integer> ids = new CopyOnWriteArrayList<Integer>();
+        private int queries;
+
+        private SymptomsDataSource() {
+            addDimension(bean("Id"));
+        }
+
+        @Override
+        public Collection<Record> detailsQuery(QueryManipulationStore queryManipStore) throws OeDataSourceException {
+            queries++;
+            Collection<Record> records = new ArrayList<Record>();
+            for (Integer id : ids) {
+                Map<String, Dimension> dimensions = Collections.<String, Dimension>singletonMap("Id",
+                                                                                            getResultDimension("Id"));
+                Map<String, Object> values = Collections.<String, Object>singletonMap("Id", id);
+                records.add(new QueryRecord(dimensions, values));
+            }
+            return records;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcOeDataSourceTest {
+
+    private StubDataSource db;
+    private UserFilteredDataSource ds;
+
+    @Before
+    public void setUp() {
+        db = new StubDataSource();
+        ds = new UserFilteredDataSource();
+        ds.setJdbcTemplate(new JdbcTemplate(db.getDataSource()));
+    }
+
+    @Test
+    public void testCountAppliesQueryFilters() throws OeDataSourceException {
+        db.setRows(Collections.singletonList(new Object[]{3L}));
+
+        assertEquals(3, ds.countQuery(store()));
+
+        String sql = db.getStatements().get(0);
+        assertTrue(sql, sql.startsWith("SELECT COUNT(*)"));
+        assertTrue(sql, sql.contains("user_id"));
+        assertEquals(Arrays.<Object>asList(42), db.getArguments().get(0));
+    }
+
+    @Test
+    public void testCountMatchesDetails() throws OeDataSourceException {
+        QueryManipulationStore details = store();
+        details.setPage(0, 10);
+        ds.detailsQuery(details, new RowCallbackHandler() {
+            @Override
+            public void processRow(java.sql.ResultSet rs) {
+            }
+        }, null);
+        ds.countQuery(store());
+
+        assertEquals(db.getArguments().get(0).subList(0, 1), db.getArguments().get(1));
+    }
+
+    @Test
+    public void testValidateReadsNoRows() throws Exception {
+        ds.validate();
+
+        String sql = db.getStatements().get(0);
+        assertTrue(sql, sql.endsWith(" LIMIT ? OFFSET ?"));
+        // the user filter needs a logged in user
+        assertFalse(sql, sql.contains("user_id"));
+        assertEquals(Arrays.<Object>asList(0L, 0L), db.getArguments().get(0));
+    }
+
+    @Test
+    public void testValidateWithoutPaging() throws Exception {
+        db.setProductName("Unknown");
+
+        ds.validate();
+
+        assertTrue(db.getStatements().isEmpty());
+    }
+
+    @Test
+    public void testReportQueriesLimitedByDefault() throws Exception {
+        ds.setJdbcDataSource(db.getDataSource());
+        init(ds);
+
+        assertEquals(10, ds.getQueryLimiter().getMaxQueries());
+
+        db.setRows(Collections.singletonList(new Object[]{3L}));
+        assertEquals(3, ds.countQuery(store()));
+        assertEquals(0, ds.getQueryLimiter().getActiveQueries());
+    }
+
+    @Test
+    public void testMaxQueriesProperty() throws Exception {
+        GenericApplicationContext ctx = new GenericApplicationContext();
+        ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource(
+                "test", Collections.<String, Object>singletonMap(JdbcOeDataSource.MAX_QUERIES, "3")));
+        ds.setApplicationContext(ctx);
+        init(ds);
+
+        assertEquals(3, ds.getQueryLimiter().getMaxQueries());
+
+        JdbcOeDataSource unlimited = new UserFilteredDataSource();
+        unlimited.setMaxConcurrentQueries(0);
+        unlimited.setApplicationContext(ctx);
+        init(unlimited);
+
+        assertNull(unlimited.getQueryLimiter());
+    }
+
+    @Test
+    public void testDataEntryNotLimitedByDefault() throws Exception {
+        JdbcOeDataEntrySource entry = new JdbcOeDataEntrySource();
+        init(entry);
+
+        assertNull(entry.getQueryLimiter());
+    }
+
+    @Test
+    public void testSubclassedSorterNotShared() throws OeDataSourceException {
+        OrderByFilter plain = new OrderByFilter("Id", "ASC");
+        OrderByFilter nullsLast = new OrderByFilter("Id", "ASC") {
+            @Override
+            public String getSqlSnippet(String colName) {
+                return colName + " " + getOperator() + " NULLS LAST ";
+            }
+        };
+
+        ds.detailsQuery(sortedStore(plain));
+        ds.detailsQuery(sortedStore(nullsLast));
+        ds.detailsQuery(sortedStore(plain));
+
+        assertFalse(db.getStatements().get(0).contains("NULLS LAST"));
+        assertTrue(db.getStatements().get(1).contains("NULLS LAST"));
+        assertFalse(db.getStatements().get(2).contains("NULLS LAST"));
+        assertEquals(1, ds.getSqlTemplateCache().size());
+    }
+
+    private QueryManipulationStore sortedStore(OrderByFilter sorter) {
+        return new QueryManipulationStore(Arrays.asList(ds.getResultDimension("Id")), new ArrayList<Dimension>(),
+                                          new ArrayList<Filter>(), new ArrayList<OrderByFilter>(Arrays.asList(sorter)),
+                                          false, null);
+    }
+
+    /**
+     * Runs the data source's @PostConstruct method, as Spring would.
+     */
+    private static void init(JdbcOeDataSource ds) throws Exception {
+        Method init = JdbcOeDataSource.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(ds);
+    }
+
+    private QueryManipulationStore store() {
+        return new QueryManipulationStore(Arrays.asList(ds.getResultDimension("Id")), new ArrayList<Dimension>(),
+                                          new ArrayList<Filter>(), null, false, null);
+    }
+
+    static DimensionBean bean(String id, String sqlCol, boolean isResult) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(sqlCol);
+        bean.setSqlType(FieldType.INTEGER);
+        bean.setIsResult(isResult);
+        bean.setIsFilter(true);
+        return bean;
+    }
+
+    /**
+     * Like the saved query data source, only returns the records of the logged in user.
+     */
+    private static class UserFilteredDataSource extends JdbcOeDataSource {
+
+        private UserFilteredDataSource() {
+            setDimensions(Arrays.asList(bean("Id", "query_id", true), bean("UserId", "user_id", false)));
+            setBaseDetailsQuery("saved_queries");
+        }
+
+        @Override
+        public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+            Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
+            filters.add(new EqFilter("UserId", 42));
+            queryManipStore.setWhereClauseFilters(filters);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.jdbc.filter.sorting.OrderByFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PossibleValuesCacheTest {
+
+    private PossibleValuesCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new PossibleValuesCache(10, 60000);
+        cache.addDataSource(new Regions().getDataSourceId());
+        cache.addDataSource(new SavedQueries().getDataSourceId());
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testOnlyPossibleValuesDataSources() {
+        assertNull(key(new Unregistered()));
+        assertNotNull(key(new Regions()));
+    }
+
+    @Test
+    public void testSharedAcrossUsers() {
+        Regions regions = new Regions();
+
+        login("alice", "ROLE_USER");
+        String alice = key(regions);
+        login("bob", "ROLE_ADMIN");
+
+        assertFalse(cache.isUserDependent(regions));
+        assertEquals(alice, key(regions));
+    }
+
+    @Test
+    public void testPerUserWhenRecordsAreRestricted() {
+        SavedQueries savedQueries = new SavedQueries();
+
+        login("alice", "ROLE_USER");
+        String alice = key(savedQueries);
+        cache.put(alice, savedQueries, "alice's queries");
+        login("bob", "ROLE_USER");
+        String bob = key(savedQueries);
+
+        assertTrue(cache.isUserDependent(savedQueries));
+        assertFalse(alice.equals(bob));
+        assertNull(cache.get(bob));
+
+        login("alice", "ROLE_USER");
+        assertEquals("alice's queries", cache.get(key(savedQueries)));
+    }
+
+    @Test
+    public void testPerRoleWhenRecordsAreRestricted() {
+        SavedQueries savedQueries = new SavedQueries();
+
+        login("alice", "ROLE_USER");
+        String user = key(savedQueries);
+        login("alice", "ROLE_USER", "ROLE_ADMIN");
+
+        assertFalse(user.equals(key(savedQueries)));
+    }
+
+    @Test
+    public void testOverriddenDetailsQueryIsPerUser() {
+        assertTrue(cache.isUserDependent(new Sorted()));
+    }
+
+    private String key(JdbcOeDataSource ds) {
+        List<Dimension> results = new ArrayList<Dimension>();
+        results.add(ds.getResultDimension("Name"));
+        return cache.createKey(ds, results, new ArrayList<Dimension>(), new ArrayList<Filter>(),
+                               new ArrayList<OrderByFilter>(), null, 0, 100);
+    }
+
+    private static void login(String name, String... roles) {
+        List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        for (String role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role));
+        }
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(name, "secret", authorities));
+    }
+
+    private static class Regions extends JdbcOeDataSource {
+
+        private Regions() {
+            DimensionBean bean = new DimensionBean();
+            bean.setId("Name");
+            bean.setSqlCol("name");
+            bean.setSqlType(FieldType.TEXT);
+            bean.setIsResult(true);
+            setDimensions(Arrays.asList(bean));
+            setBaseDetailsQuery("regions");
+        }
+    }
+
+    private static class Unregistered extends Regions {
+    }
+
+    /**
+     * Only returns the logged in user's records.
+     */
+    private static class SavedQueries extends Regions {
+
+        @Override
+        public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+            // would add a filter on the logged in user's ID
+        }
+    }
+
+    private static class Sorted extends Regions {
+
+        @Override
+        public void detailsQuery(QueryManipulationStore queryManipStore, RowCallbackHandler rcbh, Integer fzparm) {
+            // would tweak the sort order, or restrict the records
+        }
+    }
+}
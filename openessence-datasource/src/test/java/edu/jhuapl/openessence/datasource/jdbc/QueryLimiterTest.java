@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryLimiterTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        QueryLimiter limiter = new QueryLimiter(2, 0);
+
+        limiter.acquire("Visits");
+        limiter.acquire("Visits");
+        assertEquals(2, limiter.getActiveQueries());
+
+        limiter.release();
+        assertEquals(1, limiter.getActiveQueries());
+        limiter.release();
+        assertEquals(0, limiter.getActiveQueries());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testRejectsAfterTimeout() {
+        QueryLimiter limiter = new QueryLimiter(1, 50);
+        limiter.acquire("Visits");
+
+        long start = System.nanoTime();
+        try {
+            limiter.acquire("Visits");
+            fail("Expected the query to be rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals("Data source Visits is busy, try again later", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, limiter.getRejectedCount());
+        assertEquals(1, limiter.getActiveQueries());
+    }
+
+    @Test
+    public void testWaitsForRelease() throws Exception {
+        final QueryLimiter limiter = new QueryLimiter(1, 5000);
+        limiter.acquire("Visits");
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                limiter.acquire("Visits");
+                acquired.countDown();
+            }
+        };
+        waiter.start();
+        for (int i = 0; i < 500 && limiter.getWaitingQueries() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, limiter.getWaitingQueries());
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getWaitingQueries());
+        assertEquals(1, limiter.getActiveQueries());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testInterruptedWaitIsRejected() {
+        QueryLimiter limiter = new QueryLimiter(1, 5000);
+        limiter.acquire("Visits");
+
+        Thread.currentThread().interrupt();
+        try {
+            limiter.acquire("Visits");
+            fail("Expected the query to be rejected");
+        } catch (RejectedExecutionException e) {
+            // keeps the interrupt for the caller
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSlots() {
+        new QueryLimiter(0, 0);
+    }
+}
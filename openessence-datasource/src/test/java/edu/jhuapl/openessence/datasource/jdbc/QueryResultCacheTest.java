@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
+import edu.jhuapl.openessence.datasource.dataseries.Grouping;
+import edu.jhuapl.openessence.datasource.entry.ChildTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.dataseries.GroupingImpl;
+import edu.jhuapl.openessence.datasource.jdbc.entry.JdbcOeDataEntrySource;
+import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.filter.GteqFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryResultCacheTest {
+
+    private JdbcOeDataSource visits;
+    private JdbcOeDataSource clinics;
+
+    @Before
+    public void setUp() {
+        visits = new VisitsDataSource();
+        visits.setBaseDetailsQuery("SELECT * FROM public.Visits v JOIN symptoms s ON v.id = s.visit_id");
+        visits.setDimensions(Arrays.asList(bean("Sex", "sex"), bean("Age", "age")));
+
+        clinics = new ClinicsDataSource();
+        clinics.setBaseDetailsQuery("SELECT * FROM clinics");
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testKeyIgnoresAccumulationAndFilterOrder() {
+        String key = QueryResultCache.createKey(visits, store(Arrays.asList("Fever", "Cough"),
+                                                              new EqFilter("Sex", "F"), new GteqFilter("Age", 18)));
+        String reordered = QueryResultCache.createKey(visits, store(Arrays.asList("Cough", "Fever"),
+                                                                    new GteqFilter("Age", 18),
+                                                                    new EqFilter("Sex", "F")));
+
+        assertNotNull(key);
+        assertEquals(key, reordered);
+    }
+
+    @Test
+    public void testKeyDependsOnArgumentsAndExtras() {
+        SeriesQueryManipulationStore store = store(Arrays.asList("Fever"), new EqFilter("Sex", "F"));
+        String key = QueryResultCache.createKey(visits, store, new Date(1000L));
+
+        assertFalse(key.equals(QueryResultCache.createKey(visits, store(Arrays.asList("Fever"),
+                                                                        new EqFilter("Sex", "M")),
+                                                          new Date(1000L))));
+        // dates that only differ in milliseconds are different queries
+        assertFalse(key.equals(QueryResultCache.createKey(visits, store, new Date(1001L))));
+        assertFalse(key.equals(QueryResultCache.createKey(clinics, store, new Date(1000L))));
+    }
+
+    @Test
+    public void testNoKeyForUnknownFilters() {
+        Filter filter = new Filter() {
+        };
+
+        assertNull(QueryResultCache.createKey(visits, store(Arrays.asList("Fever"), filter)));
+    }
+
+    @Test
+    public void testKeySharedAcrossUsers() {
+        login("alice", "ROLE_USER");
+        String alice = QueryResultCache.createKey(visits, store(Arrays.asList("Fever")));
+        login("bob", "ROLE_USER");
+
+        assertFalse(QueryResultCache.isUserDependent(visits));
+        assertEquals(alice, QueryResultCache.createKey(visits, store(Arrays.asList("Fever"))));
+    }
+
+    @Test
+    public void testKeyPerUserWhenRecordsAreRestricted() {
+        JdbcOeDataSource ownVisits = new OwnVisitsDataSource();
+        ownVisits.setBaseDetailsQuery(visits.getBaseDetailsQuery());
+        QueryResultCache cache = new QueryResultCache(10, 60000);
+
+        login("alice", "ROLE_USER");
+        String alice = QueryResultCache.createKey(ownVisits, store(Arrays.asList("Fever")));
+        cache.put(alice, ownVisits, "alice's series");
+        login("bob", "ROLE_USER");
+        String bob = QueryResultCache.createKey(ownVisits, store(Arrays.asList("Fever")));
+
+        assertTrue(QueryResultCache.isUserDependent(ownVisits));
+        assertFalse(alice.equals(bob));
+        assertNull(cache.get(bob));
+
+        login("bob", "ROLE_USER", "ROLE_ADMIN");
+        assertFalse(bob.equals(QueryResultCache.createKey(ownVisits, store(Arrays.asList("Fever")))));
+
+        login("alice", "ROLE_USER");
+        assertEquals("alice's series", cache.get(QueryResultCache.createKey(ownVisits,
+                                                                            store(Arrays.asList("Fever")))));
+    }
+
+    @Test
+    public void testGetAndPut() {
+        QueryResultCache cache = new QueryResultCache(10, 60000);
+        cache.put("a", visits, "result");
+
+        assertEquals("result", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        QueryResultCache cache = new QueryResultCache(10, 50);
+        cache.put("a", visits, "result");
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        QueryResultCache cache = new QueryResultCache(2, 60000);
+        cache.put("a", visits, "a");
+        cache.put("b", visits, "b");
+        cache.get("a");
+        cache.put("c", visits, "c");
+
+        assertEquals("a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("c", cache.get("c"));
+    }
+
+    @Test
+    public void testDisabled() {
+        QueryResultCache cache = new QueryResultCache(0, 60000);
+        cache.put("a", visits, "result");
+
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testInvalidateByDataSource() {
+        QueryResultCache cache = new QueryResultCache(10, 60000);
+        cache.put("visits", visits, "visits");
+        cache.put("clinics", clinics, "clinics");
+
+        cache.invalidate(visits.getDataSourceId(), Collections.<String>emptySet());
+
+        assertNull(cache.get("visits"));
+        assertEquals("clinics", cache.get("clinics"));
+    }
+
+    @Test
+    public void testInvalidateByTable() {
+        QueryResultCache cache = new QueryResultCache(10, 60000);
+        cache.put("visits", visits, "visits");
+        cache.put("clinics", clinics, "clinics");
+
+        // the base query names the table schema qualified and in mixed case
+        cache.invalidate("VisitsEntry", Arrays.asList("VISITS"));
+        assertNull(cache.get("visits"));
+        assertEquals("clinics", cache.get("clinics"));
+
+        cache.put("visits", visits, "visits");
+        cache.invalidate("SymptomsEntry", Arrays.asList("public.symptoms"));
+        assertNull(cache.get("visits"));
+    }
+
+    @Test
+    public void testInvalidateByWrittenTables() {
+        JdbcOeDataEntrySource entry = new JdbcOeDataEntrySource();
+        entry.setTableName("visits");
+        Map<String, Object> symptoms = new HashMap<String, Object>();
+        symptoms.put("tableName", "symptoms");
+        symptoms.put("fksToParent", Collections.singletonMap("VisitId", "Id"));
+        entry.addChildTableDetails(new ChildTableDetails(symptoms));
+
+        assertEquals(new HashSet<String>(Arrays.asList("visits", "symptoms")),
+                     QueryResultCache.getWrittenTableNames(entry));
+        assertEquals(Collections.<String>emptySet(), QueryResultCache.getWrittenTableNames(clinics));
+
+        QueryResultCache cache = new QueryResultCache(10, 60000);
+        cache.put("visits", visits, "visits");
+        cache.put("clinics", clinics, "clinics");
+        cache.invalidate(entry);
+
+        assertNull(cache.get("visits"));
+        assertEquals("clinics", cache.get("clinics"));
+    }
+
+    private static SeriesQueryManipulationStore store(List<String> accumIds, Filter... filters) {
+        return new SeriesQueryManipulationStore(accumIds,
+                                                Arrays.<Grouping>asList(new GroupingImpl("VisitDate", "daily")),
+                                                Arrays.asList(filters));
+    }
+
+    private static DimensionBean bean(String id, String sqlCol) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(sqlCol);
+        bean.setSqlType(FieldType.TEXT);
+        bean.setIsFilter(true);
+        return bean;
+    }
+
+    private static void login(String name, String... roles) {
+        List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        for (String role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role));
+        }
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(name, "secret", authorities));
+    }
+
+    private static class VisitsDataSource extends JdbcOeDataSource {
+    }
+
+    /**
+     * Only returns visits to the logged in user's clinic.
+     */
+    private static class OwnVisitsDataSource extends JdbcOeDataSource {
+
+        @Override
+        public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+            Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
+            filters.add(new EqFilter("Clinic", getAuthentication().getName()));
+            queryManipStore.setWhereClauseFilters(filters);
+        }
+    }
+
+    private static class ClinicsDataSource extends JdbcOeDataSource {
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource that records the statements run against it and answers every query with the same rows. Just enough JDBC
+ * for {@link org.springframework.jdbc.core.JdbcTemplate} to run queries without a database.
+ */
+public class StubDataSource {
+
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+    private final List<List<Object>> arguments = Collections.synchronizedList(new ArrayList<List<Object>>());
+    private volatile List<Object[]> rows = new ArrayList<Object[]>();
+    private volatile List<String> columnLabels = new ArrayList<String>();
+    private volatile String productName = "PostgreSQL";
+
+    public DataSource getDataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getConnection")) {
+                    return createConnection();
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    public void setRows(List<Object[]> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Sets the column labels of the rows, e.g. of generated keys.
+     */
+    public void setColumnLabels(List<String> columnLabels) {
+        this.columnLabels = columnLabels;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    /**
+     * @return the SQL of each query, update and batch run, and <code>COMMIT</code> for each commit
+     */
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the arguments of each query and update, and of each statement added to a batch
+     */
+    public List<List<Object>> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Called for each query, update, batch and commit before it's run. Does nothing by default.
+     */
+    protected void beforeExecute(String sql) throws Exception {
+    }
+
+    private Object createConnection() {
+        return proxy(java.sql.Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("prepareStatement")) {
+                    return createStatement((String) args[0]);
+                } else if (name.equals("createStatement")) {
+                    return createStatement(null);
+                } else if (name.equals("getMetaData")) {
+                    return proxy(java.sql.DatabaseMetaData.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("getDatabaseProductName")) {
+                                return productName;
+                            }
+                            return defaultValue(method);
+                        }
+                    });
+                } else if (name.equals("getAutoCommit")) {
+                    return true;
+                } else if (name.equals("commit")) {
+                    statements.add("COMMIT");
+                    beforeExecute("COMMIT");
+                    return null;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @param preparedSql SQL of a prepared statement, or <code>null</code> for a plain statement that's passed its SQL on
+     *                    execution
+     */
+    private Object createStatement(final String preparedSql) {
+        final Map<Integer, Object> statementArgs = new TreeMap<Integer, Object>();
+        return proxy(java.sql.PreparedStatement.class, new InvocationHandler() {
+            private int batchSize;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    statementArgs.put((Integer) args[0], args[1]);
+                    return null;
+                } else if (name.equals("executeQuery")) {
+                    String sql = preparedSql != null ? preparedSql : (String) args[0];
+                    statements.add(sql);
+                    arguments.add(new ArrayList<Object>(statementArgs.values()));
+                    beforeExecute(sql);
+                    return createResultSet(rows, columnLabels);
+                } else if (name.equals("executeUpdate")) {
+                    statements.add(preparedSql);
+                    arguments.add(new ArrayList<Object>(statementArgs.values()));
+                    beforeExecute(preparedSql);
+                    return 1;
+                } else if (name.equals("addBatch")) {
+                    arguments.add(new ArrayList<Object>(statementArgs.values()));
+                    statementArgs.clear();
+                    batchSize++;
+                    return null;
+                } else if (name.equals("executeBatch")) {
+                    statements.add(preparedSql);
+                    beforeExecute(preparedSql);
+                    int[] counts = new int[batchSize];
+                    Arrays.fill(counts, 1);
+                    batchSize = 0;
+                    return counts;
+                } else if (name.equals("getGeneratedKeys")) {
+                    return createResultSet(rows, columnLabels);
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private static Object createResultSet(final List<Object[]> rows, final List<String> columnLabels) {
+        return proxy(java.sql.ResultSet.class, new InvocationHandler() {
+            private int row = -1;
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return ++row < rows.size();
+                } else if (name.equals("wasNull")) {
+                    return wasNull;
+                } else if (name.equals("getMetaData")) {
+                    return createMetaData(rows.isEmpty() ? new Object[0] : rows.get(0), columnLabels);
+                } else if (name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+                    Object value = rows.get(row)[(Integer) args[0] - 1];
+                    wasNull = value == null;
+                    if (value instanceof Number && method.getReturnType() == long.class) {
+                        return ((Number) value).longValue();
+                    } else if (value instanceof Number && method.getReturnType() == int.class) {
+                        return ((Number) value).intValue();
+                    } else if (value instanceof Number && method.getReturnType() == double.class) {
+                        return ((Number) value).doubleValue();
+                    }
+                    return value == null ? defaultValue(method) : value;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return metadata with the column types of <code>row</code>'s values
+     */
+    private static Object createMetaData(final Object[] row, final List<String> columnLabels) {
+        return proxy(java.sql.ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getColumnCount")) {
+                    return row.length;
+                } else if (name.equals("getColumnType")) {
+                    Object value = row[(Integer) args[0] - 1];
+                    if (value instanceof Integer || value instanceof Long) {
+                        return Types.BIGINT;
+                    } else if (value instanceof Number) {
+                        return Types.DOUBLE;
+                    } else if (value instanceof java.util.Date) {
+                        return Types.TIMESTAMP;
+                    }
+                    return Types.VARCHAR;
+                } else if (name.equals("getColumnLabel")) {
+                    int column = (Integer) args[0];
+                    return column <= columnLabels.size() ? columnLabels.get(column - 1) : "column" + column;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StubDataSource.class.getClassLoader(), new Class<?>[]{type},
+                                                handler));
+    }
+}
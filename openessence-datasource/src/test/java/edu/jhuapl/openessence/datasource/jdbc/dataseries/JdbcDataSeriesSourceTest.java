@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.datasource.jdbc.dataseries;
+
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.Filter;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.QueryManipulationStore;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.SeriesQueryManipulationStore;
+import edu.jhuapl.openessence.datasource.dataseries.AccumPoint;
+import edu.jhuapl.openessence.datasource.dataseries.DenseSeries;
+import edu.jhuapl.openessence.datasource.dataseries.Grouping;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryLimiter;
+import edu.jhuapl.openessence.datasource.jdbc.QueryMetrics;
+import edu.jhuapl.openessence.datasource.jdbc.ResolutionHandler;
+import edu.jhuapl.openessence.datasource.jdbc.StubDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.filter.EqFilter;
+import edu.jhuapl.openessence.datasource.jdbc.timeresolution.sql.pgsql.PgSqlDailyHandler;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcDataSeriesSourceTest {
+
+    private final StubDataSource db = new StubDataSource();
+
+    @Test
+    public void testDenseMatchesSparse() throws Exception {
+        // date_part year and day of year: 2013-06-01, 2013-06-03 and a row past the end
+        db.setRows(Arrays.asList(new Object[]{5L, 2013.0, 152.0}, new Object[]{null, 2013.0, 154.0},
+                                 new Object[]{2L, 2013.0, 170.0}));
+        SeriesDataSource ds = create(new SeriesDataSource());
+
+        DenseSeries dense = ds.denseSeriesQuery(store(), date(1), date(4), Calendar.MONDAY);
+        List<AccumPoint> points = ds.seriesQuery(store());
+
+        DenseSeries sparse = DenseSeries.create(date(1), date(4), DenseSeries.DAILY, Calendar.MONDAY,
+                                                Arrays.asList("Count"));
+        for (AccumPoint point : points) {
+            int index = sparse.indexOf((Date) point.getGroupingCombination().getValue("ReportDate"));
+            if (index >= 0) {
+                Number value = point.getValue("Count");
+                sparse.add("Count", index, value == null ? Double.NaN : value.doubleValue());
+            }
+        }
+
+        assertArrayEquals(new double[]{5, 0, Double.NaN, 0}, dense.getValues("Count"), 0);
+        assertArrayEquals(sparse.getValues("Count"), dense.getValues("Count"), 0);
+        assertEquals(3, dense.getRowCount());
+        assertEquals(db.getStatements().get(0), db.getStatements().get(1));
+    }
+
+    @Test
+    public void testSeriesApplyUpdateQueryManipStore() throws Exception {
+        SeriesDataSource ds = create(new SeriesDataSource() {
+            @Override
+            public void updateQueryManipStore(QueryManipulationStore queryManipStore) {
+                Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
+                filters.add(new EqFilter("Site", 7));
+                queryManipStore.setWhereClauseFilters(filters);
+            }
+        });
+
+        ds.denseSeriesQuery(store(), date(1), date(4), Calendar.MONDAY);
+        ds.seriesQuery(store());
+
+        for (String sql : db.getStatements()) {
+            assertTrue(sql, sql.contains("site_id"));
+        }
+        assertEquals(Arrays.<Object>asList(7), db.getArguments().get(0));
+        assertEquals(Arrays.<Object>asList(7), db.getArguments().get(1));
+    }
+
+    @Test
+    public void testSeriesUseDetailsQueryOverride() throws Exception {
+        db.setRows(Collections.singletonList(new Object[]{5, 2013.0, 153.0}));
+        SeriesDataSource ds = create(new SeriesDataSource() {
+            @Override
+            public Collection<Record> detailsQuery(QueryManipulationStore queryManipStore)
+                    throws OeDataSourceException {
+                Collection<Filter> filters = queryManipStore.getWhereClauseFilters();
+                filters.add(new EqFilter("Site", 7));
+                queryManipStore.setWhereClauseFilters(filters);
+                return super.detailsQuery(queryManipStore);
+            }
+        });
+
+        DenseSeries dense = ds.denseSeriesQuery(store(), date(1), date(4), Calendar.MONDAY);
+        List<AccumPoint> points = ds.seriesQuery(store());
+
+        assertArrayEquals(new double[]{0, 5, 0, 0}, dense.getValues("Count"), 0);
+        assertEquals(1, points.size());
+        assertEquals(5, points.get(0).getValue("Count").intValue());
+        for (String sql : db.getStatements()) {
+            assertTrue(sql, sql.contains("site_id"));
+        }
+    }
+
+    @Test
+    public void testSeriesQueriesTakeLimiterSlot() throws Exception {
+        final List<Integer> active = new ArrayList<Integer>();
+        final SeriesDataSource ds = new SeriesDataSource();
+        StubDataSource limited = new StubDataSource() {
+            @Override
+            protected void beforeExecute(String sql) {
+                active.add(ds.getQueryLimiter().getActiveQueries());
+            }
+        };
+        ds.setJdbcTemplate(new JdbcTemplate(limited.getDataSource()));
+        ds.setJdbcDataSource(limited.getDataSource());
+        ds.setMaxConcurrentQueries(1);
+        init(ds);
+
+        ds.denseSeriesQuery(store(), date(1), date(4), Calendar.MONDAY);
+        ds.seriesQuery(store());
+
+        assertEquals(Arrays.asList(1, 1), active);
+        assertEquals(0, ds.getQueryLimiter().getActiveQueries());
+    }
+
+    @Test
+    public void testSeriesQueriesRecordMetrics() throws Exception {
+        db.setRows(Arrays.asList(new Object[]{5L, 2013.0, 152.0}, new Object[]{2L, 2013.0, 154.0}));
+        SeriesDataSource ds = create(new SeriesDataSource());
+        RecordingMetrics metrics = new RecordingMetrics();
+        Field field = JdbcOeDataSource.class.getDeclaredField("queryMetrics");
+        field.setAccessible(true);
+        field.set(ds, metrics);
+
+        ds.denseSeriesQuery(store(), date(1), date(4), Calendar.MONDAY);
+        ds.seriesQuery(store());
+
+        assertEquals(Arrays.asList(QueryMetrics.SERIES + " 2", QueryMetrics.SERIES + " 2"), metrics.queries);
+    }
+
+    @Test
+    public void testPlainDataSourceDoesNotOverrideDetailsQuery() {
+        assertFalse(new SeriesDataSource().isDetailsQueryOverridden());
+    }
+
+    private SeriesDataSource create(SeriesDataSource ds) {
+        ds.setJdbcTemplate(new JdbcTemplate(db.getDataSource()));
+        return ds;
+    }
+
+    /**
+     * Runs the data source's @PostConstruct method, as Spring would.
+     */
+    private static void init(JdbcOeDataSource ds) throws Exception {
+        Method init = JdbcOeDataSource.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(ds);
+    }
+
+    private static SeriesQueryManipulationStore store() {
+        List<Grouping> groupings = new ArrayList<Grouping>();
+        groupings.add(new GroupingImpl("ReportDate", DenseSeries.DAILY));
+        return new SeriesQueryManipulationStore(Arrays.asList("Count"), groupings, new ArrayList<Filter>());
+    }
+
+    private static Date date(int dayOfJune) {
+        return new GregorianCalendar(2013, Calendar.JUNE, dayOfJune).getTime();
+    }
+
+    private static DimensionBean bean(String id, String sqlCol, FieldType type) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(sqlCol);
+        bean.setSqlType(type);
+        bean.setIsResult(true);
+        bean.setIsFilter(true);
+        return bean;
+    }
+
+    private static class RecordingMetrics implements QueryMetrics {
+
+        private final List<String> queries = new ArrayList<String>();
+
+        @Override
+        public void queryExecuted(JdbcOeDataSource ds, String queryType, long sqlNanos, long mappingNanos,
+                                  long rows) {
+            assertTrue(sqlNanos >= 0 && mappingNanos >= 0);
+            queries.add(queryType + " " + rows);
+        }
+
+        @Override
+        public void queryLimited(JdbcOeDataSource ds, QueryLimiter limiter) {
+        }
+
+        @Override
+        public void queryQueued(JdbcOeDataSource ds, long waitNanos, boolean rejected) {
+        }
+    }
+
+    private static class SeriesDataSource extends JdbcDataSeriesSource {
+
+        private SeriesDataSource() {
+            DimensionBean count = bean("Count", "count(*)", FieldType.INTEGER);
+            count.setIsAccumulation(true);
+            DimensionBean reportDate = bean("ReportDate", "report_date", FieldType.DATE);
+            reportDate.setIsGrouping(true);
+            Map<String, ResolutionHandler> handlers = Collections.<String, ResolutionHandler>singletonMap(
+                    DenseSeries.DAILY, new PgSqlDailyHandler());
+            reportDate.setResolutionHandlers(handlers);
+            setDimensions(Arrays.asList(count, reportDate, bean("Site", "site_id", FieldType.INTEGER)));
+            setBaseDetailsQuery("visits");
+        }
+    }
+}
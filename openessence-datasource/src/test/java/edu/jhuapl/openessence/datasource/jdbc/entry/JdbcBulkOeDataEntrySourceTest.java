@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc.entry;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceException;
+import edu.jhuapl.openessence.datasource.Record;
+import edu.jhuapl.openessence.datasource.entry.ParentTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.QueryRecord;
+import edu.jhuapl.openessence.datasource.jdbc.StubDataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JdbcBulkOeDataEntrySourceTest {
+
+    private static final String INSERT = "INSERT INTO visits (count, name) VALUES (?, ?)";
+
+    private FailingDataSource db;
+    private JdbcBulkOeDataEntrySource ds;
+
+    @Before
+    public void setUp() {
+        db = new FailingDataSource();
+        DataSource dataSource = db.getDataSource();
+
+        ds = new JdbcBulkOeDataEntrySource();
+        ds.setJdbcTemplate(new JdbcTemplate(dataSource));
+        ds.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        ds.setTableName("visits");
+        ds.setDimensions(Arrays.asList(bean("Id", "id", FieldType.INTEGER, true),
+                                       bean("Name", "name", FieldType.TEXT, false),
+                                       bean("Count", "count", FieldType.INTEGER, false)));
+
+        ParentTableDetails parent = new ParentTableDetails();
+        parent.setTableName("visits");
+        parent.setPks(Collections.singleton("Id"));
+        ds.setParentTableDetails(parent);
+    }
+
+    @Test
+    public void testAddRecordsCommitsEachBatch() {
+        ds.setBatchSize(2);
+
+        ds.addRecords(Arrays.asList(record("a", 1), record("b", 2), record("c", 3)));
+
+        assertEquals(Arrays.asList(INSERT, "COMMIT", INSERT, "COMMIT"), db.getStatements());
+        assertEquals(Arrays.asList(Arrays.<Object>asList(1, "a"), Arrays.<Object>asList(2, "b"),
+                                   Arrays.<Object>asList(3, "c")), db.getArguments());
+    }
+
+    @Test
+    public void testAddRecordsWithKeys() {
+        db.setRows(Arrays.asList(new Object[]{7}, new Object[]{8}));
+        db.setColumnLabels(Arrays.asList("id"));
+
+        List<Map<String, Object>> keys = ds.addRecordsWithKeys(Arrays.asList(record("a", 1), record("b", 2)));
+
+        assertEquals(Arrays.asList(Collections.<String, Object>singletonMap("Id", 7),
+                                   Collections.<String, Object>singletonMap("Id", 8)), keys);
+    }
+
+    @Test
+    public void testUpdateBindsValuesThenKeys() {
+        ds.updateRecords(Arrays.<Object>asList(key(5)), Arrays.<Object>asList(record("a", 1)));
+
+        assertEquals(Arrays.asList("UPDATE visits SET count = ?, name = ? WHERE id = ?", "COMMIT"),
+                     db.getStatements());
+        assertEquals(Arrays.<Object>asList(1, "a", 5), db.getArguments().get(0));
+    }
+
+    @Test
+    public void testDeleteRecords() {
+        ds.deleteRecords(Arrays.<Object>asList(key(5), key(6)));
+
+        assertEquals(Arrays.asList("DELETE FROM visits WHERE id = ?", "COMMIT"), db.getStatements());
+        assertEquals(Arrays.asList(Arrays.<Object>asList(5), Arrays.<Object>asList(6)), db.getArguments());
+    }
+
+    @Test
+    public void testFailedCommitReportsBatch() {
+        ds.setBatchSize(2);
+        db.failOnCommit = 2;
+
+        try {
+            ds.addRecords(Arrays.asList(record("a", 1), record("b", 2), record("c", 3)));
+            fail("Expected the second batch to fail");
+        } catch (OeDataSourceException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("starting at record 2"));
+        }
+    }
+
+    @Test
+    public void testCopyCsv() {
+        String csv = PgCopyWriter.toCsv(Arrays.asList(new Object[]{1, "say \"hi\""}, new Object[]{null, ""}));
+
+        assertEquals("\"1\",\"say \"\"hi\"\"\"\n,\"\"\n", csv);
+    }
+
+    private Record record(String name, int count) {
+        Map<String, Dimension> dimensions = new HashMap<String, Dimension>();
+        dimensions.put("Name", ds.getEditDimension("Name"));
+        dimensions.put("Count", ds.getEditDimension("Count"));
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("Name", name);
+        values.put("Count", count);
+        return new QueryRecord(dimensions, values);
+    }
+
+    private static Map<String, Object> key(int id) {
+        Map<String, Object> key = new LinkedHashMap<String, Object>();
+        key.put("Id", id);
+        return key;
+    }
+
+    private static DimensionBean bean(String id, String sqlCol, FieldType sqlType, boolean autoGen) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(sqlCol);
+        bean.setSqlType(sqlType);
+        bean.setIsEdit(true);
+        bean.setIsAutoGen(autoGen);
+        return bean;
+    }
+
+    /**
+     * Fails the n-th commit, if set.
+     */
+    private static class FailingDataSource extends StubDataSource {
+
+        private int failOnCommit;
+        private int commits;
+
+        @Override
+        protected void beforeExecute(String sql) throws Exception {
+            if (sql.equals("COMMIT") && ++commits == failOnCommit) {
+                throw new SQLException("Commit failed");
+            }
+        }
+    }
+}
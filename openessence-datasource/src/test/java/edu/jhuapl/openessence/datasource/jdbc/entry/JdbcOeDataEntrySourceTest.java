@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+
+package edu.jhuapl.openessence.datasource.jdbc.entry;
+
+import edu.jhuapl.openessence.datasource.Dimension;
+import edu.jhuapl.openessence.datasource.FieldType;
+import edu.jhuapl.openessence.datasource.OeDataSourceAccessException;
+import edu.jhuapl.openessence.datasource.entry.CompleteRecord;
+import edu.jhuapl.openessence.datasource.entry.DbKeyValMap;
+import edu.jhuapl.openessence.datasource.entry.ParentTableDetails;
+import edu.jhuapl.openessence.datasource.jdbc.DimensionBean;
+import edu.jhuapl.openessence.datasource.jdbc.JdbcOeDataSource;
+import edu.jhuapl.openessence.datasource.jdbc.QueryResultCache;
+import edu.jhuapl.openessence.datasource.jdbc.StubDataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes through a data entry data source must drop the cached query results that read its table.
+ */
+public class JdbcOeDataEntrySourceTest {
+
+    private FailingDataSource db;
+    private JdbcOeDataEntrySource ds;
+    private QueryResultCache cache;
+    private JdbcOeDataSource report;
+    private JdbcOeDataSource other;
+
+    @Before
+    public void setUp() {
+        db = new FailingDataSource();
+        DataSource dataSource = db.getDataSource();
+
+        ds = new JdbcOeDataEntrySource();
+        ds.setJdbcTemplate(new JdbcTemplate(dataSource));
+        ds.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        ds.setTableName("visits");
+        ds.setDimensions(Arrays.asList(bean("Id", "id", FieldType.INTEGER, true),
+                                       bean("Name", "name", FieldType.TEXT, false),
+                                       bean("Count", "count", FieldType.INTEGER, false)));
+
+        ParentTableDetails parent = new ParentTableDetails();
+        parent.setTableName("visits");
+        parent.setPks(Collections.singleton("Id"));
+        ds.setParentTableDetails(parent);
+
+        cache = new QueryResultCache(10, 60000);
+        ds.setQueryResultCache(cache);
+
+        report = new ReportDataSource();
+        report.setBaseDetailsQuery("SELECT * FROM visits");
+        other = new OtherDataSource();
+        other.setBaseDetailsQuery("SELECT * FROM clinics");
+        cache.put("report", report, "report");
+        cache.put("other", other, "other");
+    }
+
+    @Test
+    public void testAddInvalidates() throws OeDataSourceAccessException {
+        db.setRows(Collections.singletonList(new Object[]{7}));
+        db.setColumnLabels(Arrays.asList("id"));
+
+        ds.addCompleteRecord(new CompleteRecord(record(null, "a", 1)), false);
+
+        assertInvalidated();
+    }
+
+    @Test
+    public void testUpdateInvalidates() throws OeDataSourceAccessException {
+        db.setRows(Collections.singletonList(new Object[]{7, "a", 1}));
+
+        ds.updateCompleteRecord(key(7), new CompleteRecord(record(7, "b", 2)));
+
+        assertInvalidated();
+    }
+
+    @Test
+    public void testDeleteInvalidates() throws OeDataSourceAccessException {
+        ds.deleteQueryRecords("visits", Arrays.asList(key(7), key(8)));
+
+        assertInvalidated();
+    }
+
+    @Test
+    public void testDeleteCompleteRecordInvalidates() throws OeDataSourceAccessException {
+        ds.deleteCompleteRecord(key(7));
+
+        assertInvalidated();
+    }
+
+    @Test
+    public void testFailedWriteKeepsResults() {
+        db.failCommit = true;
+
+        try {
+            ds.deleteQueryRecords("visits", Arrays.asList(key(7)));
+            fail("Expected the commit to fail");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertEquals("report", cache.get("report"));
+        assertEquals("other", cache.get("other"));
+    }
+
+    private void assertInvalidated() {
+        assertNull(cache.get("report"));
+        assertEquals("other", cache.get("other"));
+    }
+
+    private TableAwareQueryRecord record(Integer id, String name, int count) {
+        Map<String, Dimension> dimensions = new HashMap<String, Dimension>();
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (id != null) {
+            dimensions.put("Id", ds.getEditDimension("Id"));
+            values.put("Id", id);
+        }
+        dimensions.put("Name", ds.getEditDimension("Name"));
+        dimensions.put("Count", ds.getEditDimension("Count"));
+        values.put("Name", name);
+        values.put("Count", count);
+        return new TableAwareQueryRecord("visits", Collections.singleton("Id"), dimensions, values);
+    }
+
+    private static DbKeyValMap key(int id) {
+        DbKeyValMap key = new DbKeyValMap();
+        key.put("Id", id);
+        return key;
+    }
+
+    private static DimensionBean bean(String id, String sqlCol, FieldType sqlType, boolean autoGen) {
+        DimensionBean bean = new DimensionBean();
+        bean.setId(id);
+        bean.setSqlCol(sqlCol);
+        bean.setSqlType(sqlType);
+        bean.setIsEdit(true);
+        bean.setIsFilter(true);
+        bean.setIsAutoGen(autoGen);
+        return bean;
+    }
+
+    private static class ReportDataSource extends JdbcOeDataSource {
+    }
+
+    private static class OtherDataSource extends JdbcOeDataSource {
+    }
+
+    private static class FailingDataSource extends StubDataSource {
+
+        private boolean failCommit;
+
+        @Override
+        protected void beforeExecute(String sql) throws Exception {
+            if (failCommit && sql.equals("COMMIT")) {
+                throw new SQLException("Commit failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 The Johns Hopkins University/Applied Physics Laboratory
+ *                             All rights reserved.
+ *
+ * This material may be used, modified, or reproduced by or for the U.S.
+ * Government pursuant to the rights granted under the clauses at
+ * DFARS 252.227-7013/7014 or FAR 52.227-14.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * NO WARRANTY.   THIS MATERIAL IS PROVIDED "AS IS."  JHU/APL DISCLAIMS ALL
+ * WARRANTIES IN THE MATERIAL, WHETHER EXPRESS OR IMPLIED, INCLUDING (BUT NOT
+ * LIMITED TO) ANY AND ALL IMPLIED WARRANTIES OF PERFORMANCE,
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, AND NON-INFRINGEMENT OF
+ * INTELLECTUAL PROPERTY RIGHTS. ANY USER OF THE MATERIAL ASSUMES THE ENTIRE
+ * RISK AND LIABILITY FOR USING THE MATERIAL.  IN NO EVENT SHALL JHU/APL BE
+ * LIABLE TO ANY USER OF THE MATERIAL FOR ANY ACTUAL, INDIRECT,
+ * CONSEQUENTIAL, SPECIAL OR OTHER DAMAGES ARISING FROM THE USE OF, OR
+ * INABILITY TO USE, THE MATERIAL, INCLUDING, BUT NOT LIMITED TO, ANY DAMAGES
+ * FOR LOST PROFITS.
+ */
+package edu.jhuapl.openessence.datasource.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CopyOnWriteMapTest {
+
+    @Test
+    public void testIteratorsSeeASnapshot() {
+        Map<String, Integer> map = new CopyOnWriteMap<String, Integer>();
+        map.put("a", 1);
+        map.put("b", 2);
+
+        Iterator<Map.Entry<String, Integer>> entries = map.entrySet().iterator();
+        Iterator<String> keys = map.keySet().iterator();
+        map.put("c", 3);
+        map.remove("a");
+        map.put("b", 20);
+
+        assertEquals("a", entries.next().getKey());
+        Map.Entry<String, Integer> b = entries.next();
+        assertEquals("b", b.getKey());
+        assertEquals(2, b.getValue().intValue());
+        assertFalse(entries.hasNext());
+        assertEquals(Arrays.asList("a", "b"), toList(keys));
+
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(map.keySet()));
+        assertEquals(20, map.get("b").intValue());
+    }
+
+    @Test
+    public void testKeepsInsertionOrder() {
+        Map<String, Integer> map = new CopyOnWriteMap<String, Integer>();
+        map.put("z", 1);
+        map.put("a", 2);
+        map.put("m", 3);
+        map.put("z", 4);
+
+        assertEquals(Arrays.asList("z", "a", "m"), new ArrayList<String>(map.keySet()));
+        assertEquals(Arrays.asList(4, 2, 3), new ArrayList<Integer>(map.values()));
+    }
+
+    @Test
+    public void testSnapshotsAreReadOnly() {
+        Map<String, Integer> map = new CopyOnWriteMap<String, Integer>();
+        map.put("a", 1);
+
+        try {
+            map.entrySet().iterator().next().setValue(2);
+            fail("Entries should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            Iterator<String> keys = map.keySet().iterator();
+            keys.next();
+            keys.remove();
+            fail("Iterators should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(1, map.get("a").intValue());
+    }
+
+    @Test
+    public void testCopiesConstructorArgument() {
+        Map<String, Integer> source = new HashMap<String, Integer>();
+        source.put("a", 1);
+        Map<String, Integer> map = new CopyOnWriteMap<String, Integer>(source);
+        source.put("b", 2);
+
+        assertEquals(1, map.size());
+        assertFalse(map.containsKey("b"));
+    }
+
+    @Test
+    public void testUpdates() {
+        Map<String, Integer> map = new CopyOnWriteMap<String, Integer>();
+        assertNull(map.put("a", 1));
+        assertEquals(1, map.put("a", 2).intValue());
+        assertNull(map.remove("b"));
+
+        Map<String, Integer> more = new HashMap<String, Integer>();
+        more.put("b", 3);
+        map.putAll(more);
+        assertEquals(2, map.size());
+        assertEquals(2, map.remove("a").intValue());
+
+        Iterator<String> keys = map.keySet().iterator();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(Arrays.asList("b"), toList(keys));
+    }
+
+    @Test
+    public void testUpdateInOneStep() {
+        Map<String, Integer> more = new HashMap<String, Integer>();
+        more.put("a", 10);
+        more.put("c", 3);
+        CopyOnWriteMap<String, Integer> map = new CopyOnWriteMap<String, Integer>();
+        map.put("a", 1);
+        map.put("b", 2);
+        Iterator<String> keys = map.keySet().iterator();
+
+        map.update(Arrays.asList("a", "b"), more);
+
+        assertEquals(Arrays.asList("a", "c"), new ArrayList<String>(map.keySet()));
+        assertEquals(10, map.get("a").intValue());
+        assertEquals(Arrays.asList("a", "b"), toList(keys));
+    }
+
+    @Test
+    public void testReadersDuringWrites() throws Exception {
+        final Map<Integer, Integer> map = new CopyOnWriteMap<Integer, Integer>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2000; i++) {
+                    map.put(i, i);
+                    if (i % 3 == 0) {
+                        map.remove(i / 2);
+                    }
+                }
+            }
+        };
+        writer.start();
+        try {
+            while (writer.isAlive()) {
+                int size = 0;
+                for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                    assertEquals(entry.getKey(), entry.getValue());
+                    size++;
+                }
+                assertTrue(size <= 2000);
+            }
+        } finally {
+            writer.join();
+        }
+        assertEquals(map.size(), new ArrayList<Integer>(map.keySet()).size());
+    }
+
+    private static <T> List<T> toList(Iterator<T> it) {
+        List<T> list = new ArrayList<T>();
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+        return list;
+    }
+}